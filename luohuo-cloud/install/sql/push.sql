@@ -2,7 +2,7 @@
 CREATE TABLE IF NOT EXISTS `im_push_device` (
   `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键',
   `user_id` bigint NOT NULL COMMENT '用户ID',
-  `device_type` varchar(20) NOT NULL COMMENT '设备类型：ios/android',
+  `device_type` varchar(20) NOT NULL COMMENT '设备类型：ios/android/huawei/xiaomi/oppo/vivo',
   `device_token` varchar(255) NOT NULL COMMENT '设备Token',
   `app_version` varchar(50) DEFAULT NULL COMMENT 'App版本',
   `os_version` varchar(50) DEFAULT NULL COMMENT '系统版本',
@@ -51,4 +51,27 @@ CREATE TABLE IF NOT EXISTS `im_push_statistics` (
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_date_type` (`stat_date`, `push_type`),
   KEY `idx_stat_date` (`stat_date`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='推送统计表';
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='推送统计表';
+-- 推送小时统计表，推送记录批量入库时按 (小时, 推送类型) 累加，统计查询不再扫描记录表
+CREATE TABLE IF NOT EXISTS `im_push_stat_hourly` (
+  `stat_hour` datetime NOT NULL COMMENT '统计小时（整点）',
+  `push_type` varchar(20) NOT NULL COMMENT '推送类型：apns/fcm/huawei/xiaomi/oppo/vivo',
+  `total_count` bigint NOT NULL DEFAULT '0' COMMENT '推送记录数',
+  `success_count` bigint NOT NULL DEFAULT '0' COMMENT '成功数',
+  `failure_count` bigint NOT NULL DEFAULT '0' COMMENT '失败数',
+  `update_time` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`stat_hour`, `push_type`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='推送小时统计表';
+
+-- 历史推送记录回填到小时统计：按记录表重新计数，覆盖已结束的小时，可重复执行。
+-- 当前小时的计数器可能正在累加，不回填；部署所在的小时结束后再执行一次，补齐该小时部署前的记录
+INSERT INTO `im_push_stat_hourly` (stat_hour, push_type, total_count, success_count, failure_count)
+SELECT DATE_FORMAT(create_time, '%Y-%m-%d %H:00:00'), push_type, COUNT(*),
+       SUM(status = 'success'), SUM(status = 'failed')
+FROM `im_push_record`
+WHERE create_time < DATE_FORMAT(NOW(), '%Y-%m-%d %H:00:00')
+GROUP BY DATE_FORMAT(create_time, '%Y-%m-%d %H:00:00'), push_type
+ON DUPLICATE KEY UPDATE
+  total_count = VALUES(total_count),
+  success_count = VALUES(success_count),
+  failure_count = VALUES(failure_count);
\ No newline at end of file
@@ -6,13 +6,8 @@ import cn.dev33.satoken.exception.NotPermissionException;
 import cn.dev33.satoken.exception.StopMatchException;
 import cn.dev33.satoken.reactor.context.SaReactorHolder;
 import cn.dev33.satoken.reactor.context.SaReactorSyncHolder;
-import cn.dev33.satoken.router.SaHttpMethod;
-import cn.dev33.satoken.router.SaRouter;
-import cn.dev33.satoken.spring.pathmatch.SaPathPatternParserUtil;
 import cn.dev33.satoken.stp.StpUtil;
-import cn.hutool.core.util.StrUtil;
 import com.luohuo.basic.exception.code.ResponseEnum;
-import com.luohuo.flex.im.facade.DefResourceFacade;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.Ordered;
@@ -28,11 +23,8 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 import com.luohuo.basic.base.R;
 import com.luohuo.flex.common.properties.IgnoreProperties;
-import com.luohuo.flex.model.vo.result.ResourceApiVO;
 
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import static com.luohuo.basic.context.ContextConstants.JWT_KEY_SYSTEM_TYPE;
 
@@ -45,7 +37,7 @@ import static com.luohuo.basic.context.ContextConstants.JWT_KEY_SYSTEM_TYPE;
 @Slf4j
 @RequiredArgsConstructor
 public class AuthenticationSaInterceptor implements WebFilter, Ordered {
-    private final DefResourceFacade defResourceFacade;
+    private final RoutePermissionIndexLoader routePermissionIndexLoader;
     private final IgnoreProperties ignoreProperties;
 
     @Override
@@ -65,32 +57,14 @@ public class AuthenticationSaInterceptor implements WebFilter, Ordered {
 				SaReactorSyncHolder.setContext(exchange);
 
 				// 执行全局过滤器
+				String path = SaHolder.getRequest().getRequestPath();
+				String method = SaHolder.getRequest().getMethod();
+				RoutePermissionIndex index = routePermissionIndexLoader.get();
 
-				Map<String, Set<String>> anyUser = ignoreProperties.buildAnyUser();
 				// 验证token 排除掉需要租户ID，但不需要登录
-				SaRouter
-						.match("/**")    // 拦截的 path 列表，可以写多个 */
-						.notMatch(r -> {
-							String path = SaHolder.getRequest().getRequestPath();
-							String method = SaHolder.getRequest().getMethod();
-							for (Map.Entry<String, Set<String>> map : anyUser.entrySet()) {
-								String key = map.getKey();
-								Set<String> value = map.getValue();
-								if (StrUtil.equalsAny(key, method, SaHttpMethod.ALL.name())) {
-									for (String ignore : value) {
-										if (StrUtil.equals(ignore, path)) {
-											return true;
-										}
-
-										if (SaPathPatternParserUtil.match(ignore, path)) {
-											return true;
-										}
-									}
-								}
-							}
-							return false;
-						})
-						.check(r -> StpUtil.checkLogin());
+				if (!index.isAnyUser(method, path)) {
+					StpUtil.checkLogin();
+				}
 
 				// 无需校验权限
 				if (!ignoreProperties.getAuthEnabled()) {
@@ -103,63 +77,14 @@ public class AuthenticationSaInterceptor implements WebFilter, Ordered {
 				}
 
 				// 接口权限
-				Map<String, Set<String>> anyone = ignoreProperties.buildAnyone();
-				Map<String, Set<String>> allApi = this.defResourceFacade.listAllApi();
-
-				allApi.forEach((api, auth) -> {
-					List<String> list = StrUtil.split(api, "###");
-					String uri = list.get(0);
-					String requestMethod = list.get(1);
-					SaRouter.match(uri).matchMethod(requestMethod)
-							.notMatch(r -> {
-								String path = SaHolder.getRequest().getRequestPath();
-								String method = SaHolder.getRequest().getMethod();
-								for (Map.Entry<String, Set<String>> map : anyone.entrySet()) {
-									String key = map.getKey();
-									Set<String> value = map.getValue();
-									if (StrUtil.equalsAny(key, method, SaHttpMethod.ALL.name())) {
-										for (String ignore : value) {
-											if (StrUtil.equals(ignore, path)) {
-												return true;
-											}
-
-											if (SaPathPatternParserUtil.match(ignore, path)) {
-												return true;
-											}
-										}
-									}
-								}
-								return false;
-							})
-							.check(r -> StpUtil.checkPermissionOr(auth.toArray(String[]::new)));
-				});
-
-
-				if (!ignoreProperties.getNotConfigUriAllow()) {
-					String path = SaHolder.getRequest().getRequestPath();
-					String method = SaHolder.getRequest().getMethod();
-					ResourceApiVO resourceApi = new ResourceApiVO();
-					resourceApi.setUri(path);
-					resourceApi.setRequestMethod(method);
-
-
-					if (!ignoreProperties.isIgnoreAnyone(method, path)) {
-						boolean flag = false;
-						for (Map.Entry<String, Set<String>> map : allApi.entrySet()) {
-							List<String> list = StrUtil.split(map.getKey(), "###");
-							String uri = list.get(0);
-							String requestMethod = list.get(1);
-
-							if (StrUtil.equalsAny(requestMethod, method, SaHttpMethod.ALL.name())) {
-								if (StrUtil.equals(uri, path) || SaPathPatternParserUtil.match(uri, path)) {
-									flag = true;
-								}
-							}
-						}
-
-						if (!flag) {
-							throw new NotPermissionException(resourceApi.getUri(), StpUtil.TYPE).setCode(SaErrorCode.CODE_11051);
-						}
+				if (!index.isAnyone(method, path)) {
+					List<String[]> matchedAuth = index.matchApis(method, path);
+					for (String[] auth : matchedAuth) {
+						StpUtil.checkPermissionOr(auth);
+					}
+
+					if (matchedAuth.isEmpty() && !ignoreProperties.getNotConfigUriAllow()) {
+						throw new NotPermissionException(path, StpUtil.TYPE).setCode(SaErrorCode.CODE_11051);
 					}
 				}
 
@@ -0,0 +1,276 @@
+package com.luohuo.flex.gateway.filter;
+
+import cn.dev33.satoken.router.SaHttpMethod;
+import cn.dev33.satoken.spring.pathmatch.SaPathPatternParserUtil;
+import cn.hutool.core.util.StrUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 预编译的路由鉴权索引（构建后只读）
+ * <p>
+ * 按请求方法分组，每组是一棵按路径段组织的前缀树：
+ * 1. 纯字面量的 uri 放在哈希表中，按完整路径直接命中
+ * 2. 含通配符的 uri 挂在其第一个非字面量段所在的节点上，查询时沿请求路径向下走，
+ * 只有字面量前缀一致的候选才交给 SaPathPatternParserUtil 校验
+ * <p>
+ * 因此单次查询的开销只与路径深度和同前缀下的通配符数量有关，与接口总数无关。
+ * 匹配规则与逐条调用 SaPathPatternParserUtil.match 保持一致。
+ *
+ * @author 乾乾
+ * @date 2025-12-14
+ */
+public final class RoutePermissionIndex {
+    private static final String ALL = SaHttpMethod.ALL.name();
+    private static final String API_SEPARATOR = "###";
+
+    /** 需要租户、不需要登录的 uri */
+    private final Map<String, PathTrie<Boolean>> anyUser;
+    /** 需要登录、不需要校验权限的 uri */
+    private final Map<String, PathTrie<Boolean>> anyone;
+    /** 系统中配置的 uri 及其权限编码 */
+    private final Map<String, PathTrie<String[]>> apis;
+    private final int apiCount;
+
+    private RoutePermissionIndex(Map<String, PathTrie<Boolean>> anyUser, Map<String, PathTrie<Boolean>> anyone,
+                                 Map<String, PathTrie<String[]>> apis, int apiCount) {
+        this.anyUser = anyUser;
+        this.anyone = anyone;
+        this.apis = apis;
+        this.apiCount = apiCount;
+    }
+
+    /**
+     * 构建索引
+     *
+     * @param anyUser IgnoreProperties#buildAnyUser
+     * @param anyone  IgnoreProperties#buildAnyone
+     * @param allApi  DefResourceFacade#listAllApi，key 为 uri###method
+     */
+    public static RoutePermissionIndex build(Map<String, Set<String>> anyUser, Map<String, Set<String>> anyone,
+                                             Map<String, Set<String>> allApi) {
+        Map<String, PathTrie<String[]>> apis = new HashMap<>();
+        int count = 0;
+        if (allApi != null) {
+            for (Map.Entry<String, Set<String>> entry : allApi.entrySet()) {
+                List<String> list = StrUtil.split(entry.getKey(), API_SEPARATOR);
+                if (list.size() < 2 || StrUtil.isEmpty(list.get(0))) {
+                    continue;
+                }
+                Set<String> auth = entry.getValue() == null ? Collections.emptySet() : entry.getValue();
+                apis.computeIfAbsent(normalizeMethod(list.get(1)), k -> new PathTrie<>())
+                        .add(list.get(0), auth.toArray(String[]::new));
+                count++;
+            }
+        }
+        return new RoutePermissionIndex(buildIgnore(anyUser), buildIgnore(anyone), apis, count);
+    }
+
+    private static Map<String, PathTrie<Boolean>> buildIgnore(Map<String, Set<String>> ignore) {
+        Map<String, PathTrie<Boolean>> tries = new HashMap<>();
+        if (ignore == null) {
+            return tries;
+        }
+        ignore.forEach((method, paths) -> {
+            if (paths == null) {
+                return;
+            }
+            PathTrie<Boolean> trie = tries.computeIfAbsent(normalizeMethod(method), k -> new PathTrie<>());
+            paths.forEach(path -> trie.add(path, Boolean.TRUE));
+        });
+        return tries;
+    }
+
+    private static String normalizeMethod(String method) {
+        return method == null ? ALL : method.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * 是否无需登录
+     */
+    public boolean isAnyUser(String method, String path) {
+        return matchAny(anyUser, method, new RequestPath(path));
+    }
+
+    /**
+     * 是否无需校验 uri 权限
+     */
+    public boolean isAnyone(String method, String path) {
+        return matchAny(anyone, method, new RequestPath(path));
+    }
+
+    /**
+     * 查找请求命中的全部接口
+     *
+     * @return 每个命中接口的权限编码，未配置该 uri 时返回空列表
+     */
+    public List<String[]> matchApis(String method, String path) {
+        RequestPath request = new RequestPath(path);
+        List<String[]> result = new ArrayList<>(2);
+        String upper = normalizeMethod(method);
+        PathTrie<String[]> trie = apis.get(upper);
+        if (trie != null) {
+            trie.collect(request, result, false);
+        }
+        if (!ALL.equals(upper) && (trie = apis.get(ALL)) != null) {
+            trie.collect(request, result, false);
+        }
+        return result;
+    }
+
+    public int apiCount() {
+        return apiCount;
+    }
+
+    private static boolean matchAny(Map<String, PathTrie<Boolean>> tries, String method, RequestPath request) {
+        String upper = normalizeMethod(method);
+        PathTrie<Boolean> trie = tries.get(upper);
+        if (trie != null && trie.collect(request, null, true)) {
+            return true;
+        }
+        return !ALL.equals(upper) && (trie = tries.get(ALL)) != null && trie.collect(request, null, true);
+    }
+
+    /**
+     * 请求路径，按 / 切分一次，多棵树共用
+     */
+    private static final class RequestPath {
+        private final String path;
+        private final String[] segments;
+
+        private RequestPath(String path) {
+            this.path = path == null ? "" : path;
+            this.segments = split(this.path);
+        }
+    }
+
+    private static String[] split(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        if (start >= path.length()) {
+            return new String[0];
+        }
+        return path.substring(start).split("/", -1);
+    }
+
+    private static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?' || c == '{' || c == '}') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Route<V>(String pattern, V value) {
+    }
+
+    private static final class Node<V> {
+        private Map<String, Node<V>> children;
+        private List<Route<V>> patterns;
+    }
+
+    /**
+     * 单个请求方法下的路径前缀树
+     */
+    private static final class PathTrie<V> {
+        private final Map<String, List<Route<V>>> exact = new HashMap<>();
+        private final Node<V> root = new Node<>();
+        /** 不以 / 开头等无法按段索引的 uri，每次都逐条校验 */
+        private final List<Route<V>> unindexed = new ArrayList<>();
+
+        private void add(String pattern, V value) {
+            if (StrUtil.isEmpty(pattern)) {
+                return;
+            }
+            Route<V> route = new Route<>(pattern, value);
+            if (!pattern.startsWith("/")) {
+                unindexed.add(route);
+                return;
+            }
+            String[] segments = split(pattern);
+            Node<V> node = root;
+            for (String segment : segments) {
+                if (!isLiteral(segment)) {
+                    if (node.patterns == null) {
+                        node.patterns = new ArrayList<>(2);
+                    }
+                    node.patterns.add(route);
+                    return;
+                }
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                node = node.children.computeIfAbsent(segment, k -> new Node<>());
+            }
+            exact.computeIfAbsent(pattern, k -> new ArrayList<>(1)).add(route);
+        }
+
+        /**
+         * @param out      命中的值，firstOnly 时可为空
+         * @param firstOnly 命中一个即返回
+         * @return 是否命中
+         */
+        private boolean collect(RequestPath request, List<V> out, boolean firstOnly) {
+            boolean found = false;
+            List<Route<V>> routes = exact.get(request.path);
+            if (routes != null) {
+                if (firstOnly) {
+                    return true;
+                }
+                routes.forEach(route -> out.add(route.value));
+                found = true;
+            }
+            // 末尾带 / 的请求交给 PathPattern 决定是否与字面量 uri 等价
+            String path = request.path;
+            if (path.length() > 1 && path.endsWith("/")) {
+                routes = exact.get(path.substring(0, path.length() - 1));
+                if (routes != null && verify(routes, path, out, firstOnly)) {
+                    if (firstOnly) {
+                        return true;
+                    }
+                    found = true;
+                }
+            }
+
+            Node<V> node = root;
+            String[] segments = request.segments;
+            for (int depth = 0; node != null; depth++) {
+                if (node.patterns != null && verify(node.patterns, path, out, firstOnly)) {
+                    if (firstOnly) {
+                        return true;
+                    }
+                    found = true;
+                }
+                if (depth == segments.length || node.children == null) {
+                    break;
+                }
+                node = node.children.get(segments[depth]);
+            }
+            if (!unindexed.isEmpty() && verify(unindexed, path, out, firstOnly)) {
+                found = true;
+            }
+            return found;
+        }
+
+        private boolean verify(List<Route<V>> routes, String path, List<V> out, boolean firstOnly) {
+            boolean found = false;
+            for (Route<V> route : routes) {
+                if (SaPathPatternParserUtil.match(route.pattern, path)) {
+                    if (firstOnly) {
+                        return true;
+                    }
+                    out.add(route.value);
+                    found = true;
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.luohuo.flex.gateway.filter;
+
+import com.luohuo.flex.common.properties.IgnoreProperties;
+import com.luohuo.flex.im.facade.DefResourceFacade;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由鉴权索引的加载与后台刷新
+ * <p>
+ * 启动后立即构建一次，之后定时拉取 listAllApi 和忽略配置，内容有变化时重建并整体替换；
+ * 请求线程只读取 volatile 引用，不访问缓存，也不参与构建。
+ * 资源变更最迟在一个刷新周期后生效。
+ *
+ * @author 乾乾
+ * @date 2025-12-14
+ */
+@Slf4j
+@Component
+public class RoutePermissionIndexLoader implements SmartInitializingSingleton, DisposableBean {
+    private final DefResourceFacade defResourceFacade;
+    private final IgnoreProperties ignoreProperties;
+    private final long refreshSeconds;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "route-permission-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile RoutePermissionIndex index;
+    // 构建当前索引所用的数据，用于判断内容是否变化
+    private Map<String, Set<String>> lastAnyUser;
+    private Map<String, Set<String>> lastAnyone;
+    private Map<String, Set<String>> lastAllApi;
+
+    public RoutePermissionIndexLoader(DefResourceFacade defResourceFacade, IgnoreProperties ignoreProperties,
+                                      @Value("${luohuo.ignore.index-refresh-seconds:30}") long refreshSeconds) {
+        this.defResourceFacade = defResourceFacade;
+        this.ignoreProperties = ignoreProperties;
+        this.refreshSeconds = Math.max(1, refreshSeconds);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                // 刷新失败时继续使用旧索引
+                log.warn("刷新路由鉴权索引失败", e);
+            }
+        }, 0, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 获取当前索引，首次请求早于后台构建完成时同步构建
+     */
+    public RoutePermissionIndex get() {
+        RoutePermissionIndex current = index;
+        if (current == null) {
+            current = refresh();
+        }
+        return current;
+    }
+
+    /**
+     * 重新拉取资源，内容有变化时重建索引
+     */
+    public synchronized RoutePermissionIndex refresh() {
+        Map<String, Set<String>> anyUser = ignoreProperties.buildAnyUser();
+        Map<String, Set<String>> anyone = ignoreProperties.buildAnyone();
+        Map<String, Set<String>> allApi = defResourceFacade.listAllApi();
+
+        RoutePermissionIndex current = index;
+        if (current != null && Objects.equals(anyUser, lastAnyUser) && Objects.equals(anyone, lastAnyone)
+                && Objects.equals(allApi, lastAllApi)) {
+            return current;
+        }
+
+        long start = System.nanoTime();
+        current = RoutePermissionIndex.build(anyUser, anyone, allApi);
+        index = current;
+        lastAnyUser = anyUser;
+        lastAnyone = anyone;
+        lastAllApi = allApi;
+        log.info("路由鉴权索引已重建, 接口数: {}, 耗时: {}ms", current.apiCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return current;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
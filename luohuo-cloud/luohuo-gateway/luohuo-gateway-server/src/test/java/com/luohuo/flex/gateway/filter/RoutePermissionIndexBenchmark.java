@@ -0,0 +1,158 @@
+package com.luohuo.flex.gateway.filter;
+
+import cn.dev33.satoken.spring.pathmatch.SaPathPatternParserUtil;
+import cn.hutool.core.util.StrUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网关路由鉴权基准测试
+ * <p>
+ * 生成 apis 个接口：按 服务/模块/资源 三级组织，其中约 1/3 带 {id} 路径变量；
+ * 忽略配置使用 IgnoreProperties 默认的 baseUri 加少量 anyUser / anyone。
+ * 请求路径 80% 命中已配置接口，20% 为未配置的路径。
+ * linear 复现改造前每个请求遍历全部接口和忽略配置的做法，index 为预编译索引的一次查询。
+ * 运行: 在 IDE 中执行 main，或 mvn test-compile 后以 test classpath 启动本类。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutePermissionIndexBenchmark {
+
+    private static final int PATH_COUNT = 1024;
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE"};
+
+    @Param({"1000", "5000"})
+    private int apis;
+
+    private Map<String, Set<String>> anyUser;
+    private Map<String, Set<String>> anyone;
+    private Map<String, Set<String>> allApi;
+    private RoutePermissionIndex index;
+    private String[] paths;
+    private String[] methods;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        Set<String> base = new HashSet<>(List.of("/{p:[a-zA-Z0-9]+}.css", "/{p:[a-zA-Z0-9]+}.js", "/{p:[a-zA-Z0-9]+}.html",
+                "/{p:[a-zA-Z0-9]+}.ico", "/cache/**", "/swagger-ui.html**", "/doc.html**", "/favicon.ico", "/v3/**",
+                "/webjars/**", "/static/**", "/public/**", "/error", "/anno/**", "/*/cache/**", "/*/v3/**",
+                "/*/webjars/**", "/*/static/**", "/*/public/**", "/*/error", "/*/anno/**"));
+        anyUser = new HashMap<>();
+        anyUser.put("ALL", new HashSet<>(base));
+        anyUser.get("ALL").addAll(List.of("/oauth/anyUser/**", "/base/anyUser/**"));
+        anyone = new HashMap<>();
+        anyone.put("ALL", new HashSet<>(anyUser.get("ALL")));
+        anyone.put("GET", new HashSet<>(List.of("/oauth/anyone/**", "/base/anyone/dict/**", "/base/file/download/{id}")));
+
+        allApi = new LinkedHashMap<>();
+        List<String[]> configured = new ArrayList<>(apis);
+        for (int i = 0; allApi.size() < apis; i++) {
+            String uri = "/service" + (i % 8) + "/module" + (i % 97) + "/resource" + i
+                    + (i % 3 == 0 ? "/{id}" : "/page");
+            String method = METHODS[random.nextInt(METHODS.length)];
+            Set<String> codes = new HashSet<>();
+            codes.add("perm:" + i);
+            allApi.put(uri + "###" + method, codes);
+            configured.add(new String[]{uri, method});
+        }
+        index = RoutePermissionIndex.build(anyUser, anyone, allApi);
+
+        paths = new String[PATH_COUNT];
+        methods = new String[PATH_COUNT];
+        for (int i = 0; i < PATH_COUNT; i++) {
+            if (random.nextInt(5) == 0) {
+                paths[i] = "/service" + random.nextInt(8) + "/unknown/" + random.nextInt(100_000);
+                methods[i] = "GET";
+            } else {
+                String[] api = configured.get(random.nextInt(configured.size()));
+                paths[i] = api[0].replace("{id}", String.valueOf(random.nextInt(100_000)));
+                methods[i] = api[1];
+            }
+        }
+    }
+
+    @Benchmark
+    public int linear() {
+        int i = cursor++ & (PATH_COUNT - 1);
+        String path = paths[i];
+        String method = methods[i];
+        int matched = 0;
+        boolean login = !isIgnore(anyUser, method, path);
+        for (Map.Entry<String, Set<String>> entry : allApi.entrySet()) {
+            List<String> list = StrUtil.split(entry.getKey(), "###");
+            String uri = list.get(0);
+            String requestMethod = list.get(1);
+            if (StrUtil.equalsAny(requestMethod, method, "ALL") && SaPathPatternParserUtil.match(uri, path)
+                    && !isIgnore(anyone, method, path)) {
+                matched += entry.getValue().size();
+            }
+        }
+        return login ? matched + 1 : matched;
+    }
+
+    @Benchmark
+    public int index() {
+        int i = cursor++ & (PATH_COUNT - 1);
+        String path = paths[i];
+        String method = methods[i];
+        boolean login = !index.isAnyUser(method, path);
+        int matched = 0;
+        if (!index.isAnyone(method, path)) {
+            for (String[] auth : index.matchApis(method, path)) {
+                matched += auth.length;
+            }
+        }
+        return login ? matched + 1 : matched;
+    }
+
+    @Benchmark
+    public RoutePermissionIndex build() {
+        return RoutePermissionIndex.build(anyUser, anyone, allApi);
+    }
+
+    private static boolean isIgnore(Map<String, Set<String>> ignore, String method, String path) {
+        for (Map.Entry<String, Set<String>> entry : ignore.entrySet()) {
+            if (StrUtil.equalsAny(entry.getKey(), method, "ALL")) {
+                for (String pattern : entry.getValue()) {
+                    if (StrUtil.equals(pattern, path) || SaPathPatternParserUtil.match(pattern, path)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RoutePermissionIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
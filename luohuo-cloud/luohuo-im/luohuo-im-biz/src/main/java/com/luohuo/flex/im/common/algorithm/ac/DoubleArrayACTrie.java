@@ -0,0 +1,383 @@
+package com.luohuo.flex.im.common.algorithm.ac;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 双数组 aho-corasick 自动机
+ * <p>
+ * 与 {@link ACTrie} 相比，节点全部压缩在 base/check/fail/output 四个 int 数组里，没有装箱的 HashMap 子节点。
+ * 字符先经过预先算好的映射表：大写字母折叠为小写，跳过字符映射为 {@link #SKIP}，词典外的字符映射为 0。
+ * 匹配时对文本只扫一遍，跳过字符不推进状态，命中后再从命中位置往回数出起点，
+ * 所以匹配区间可以跨过跳过字符，与 {@link com.luohuo.flex.im.common.utils.sensitiveword.DFAFilter} 的规则一致。
+ * <p>
+ * 构建完成后不再修改，可以被多个线程同时使用；词库更新时整体重建后替换引用。
+ *
+ * @author 乾乾
+ */
+public final class DoubleArrayACTrie {
+
+    private static final int SKIP = -1;
+    private static final int ROOT = 0;
+    private static final int FREE = -1;
+    private static final int MAX_MULTI_TRIES = 64;
+
+    // 字符 -> 编码，0 表示词典中没有该字符
+    private final int[] codes = new int[Character.MAX_VALUE + 1];
+    private int[] base;
+    private int[] check;
+    private int[] fail;
+    // 以该状态结尾的最长敏感词长度（包含 fail 链上的输出），不计跳过字符，0 表示不是终止状态
+    private int[] output;
+    // 构建期间的空闲位置链表，构建完成后释放
+    private int[] nextFree;
+    private int[] prevFree;
+    private int freeHead;
+    private int freeTail;
+    // 多子节点状态开始找 base 的位置
+    private int multiCursor;
+
+    /**
+     * @param words     敏感词
+     * @param skipChars 匹配时忽略的字符
+     */
+    public DoubleArrayACTrie(Collection<String> words, String skipChars) {
+        for (int i = 0; i < skipChars.length(); i++) {
+            codes[skipChars.charAt(i)] = SKIP;
+        }
+        List<int[]> keys = encode(words);
+        build(keys);
+    }
+
+    /**
+     * 文本中是否包含敏感词，命中第一个即返回
+     *
+     * @param text 文本
+     */
+    public boolean containsAny(String text) {
+        int state = ROOT;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            int code = codes[text.charAt(i)];
+            if (code == SKIP) {
+                continue;
+            }
+            state = next(state, code);
+            if (output[state] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把所有命中的敏感词替换为掩码字符，命中区间重叠时取并集
+     *
+     * @param text 文本
+     * @param mask 掩码字符
+     * @return 没有命中时返回原字符串本身
+     */
+    public String replace(String text, char mask) {
+        char[] result = null;
+        // 已替换到的位置，重叠的命中不重复替换
+        int masked = -1;
+        int state = ROOT;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            int code = codes[text.charAt(i)];
+            if (code == SKIP) {
+                continue;
+            }
+            state = next(state, code);
+            int length = output[state];
+            if (length == 0) {
+                continue;
+            }
+            if (result == null) {
+                result = text.toCharArray();
+            }
+            for (int j = Math.max(startOf(text, i, length), masked + 1); j <= i; j++) {
+                result[j] = mask;
+            }
+            masked = i;
+        }
+        return result == null ? text : new String(result);
+    }
+
+    /**
+     * 状态数，用于观察内存占用
+     */
+    public int size() {
+        return check.length;
+    }
+
+    private int next(int state, int code) {
+        if (code == 0) {
+            return ROOT;
+        }
+        while (true) {
+            int target = base[state] + code;
+            if (target < check.length && check[target] == state) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * 从命中位置往回数 length 个非跳过字符，得到命中的起点
+     */
+    private int startOf(String text, int end, int length) {
+        int j = end;
+        while (true) {
+            if (codes[text.charAt(j)] != SKIP && --length == 0) {
+                return j;
+            }
+            j--;
+        }
+    }
+
+    /**
+     * 去掉跳过字符、折叠大小写后编码，按编码序排序去重
+     * <p>
+     * 编码按字符出现次数从高到低分配，常用字编码小，双数组更紧凑
+     */
+    private List<int[]> encode(Collection<String> words) {
+        Set<String> normalized = new LinkedHashSet<>();
+        int[] frequency = new int[Character.MAX_VALUE + 1];
+        for (String word : words) {
+            if (word == null) {
+                continue;
+            }
+            StringBuilder builder = new StringBuilder(word.length());
+            for (int i = 0; i < word.length(); i++) {
+                char c = fold(word.charAt(i));
+                if (codes[c] != SKIP) {
+                    builder.append(c);
+                }
+            }
+            if (!builder.isEmpty() && normalized.add(builder.toString())) {
+                for (int i = 0; i < builder.length(); i++) {
+                    frequency[builder.charAt(i)]++;
+                }
+            }
+        }
+
+        List<Character> alphabet = new ArrayList<>();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (frequency[c] > 0) {
+                alphabet.add((char) c);
+            }
+        }
+        alphabet.sort(Comparator.comparingInt((Character c) -> frequency[c]).reversed());
+        for (int i = 0; i < alphabet.size(); i++) {
+            codes[alphabet.get(i)] = i + 1;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            if (codes[c] != SKIP) {
+                codes[c] = codes[c + 32];
+            }
+        }
+
+        List<int[]> keys = new ArrayList<>(normalized.size());
+        for (String word : normalized) {
+            int[] key = new int[word.length()];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = codes[word.charAt(i)];
+            }
+            keys.add(key);
+        }
+        keys.sort(Arrays::compare);
+        return keys;
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+
+    /**
+     * 按层构建：为每个状态找一个 base，使其所有子节点的 base+code 位置都空闲；
+     * 同一趟里计算 fail 和 output，fail 指向的状态层数更浅，已经构建完成
+     * <p>
+     * 空闲位置串成双向链表，找 base 时只遍历空闲位置；大部分状态只有一个子节点，通常第一个空位就能放下
+     */
+    private void build(List<int[]> keys) {
+        int capacity = Math.max(1024, keys.size() * 4);
+        base = new int[capacity];
+        check = new int[capacity];
+        fail = new int[capacity];
+        output = new int[capacity];
+        nextFree = new int[capacity];
+        prevFree = new int[capacity];
+        Arrays.fill(check, FREE);
+        check[ROOT] = Integer.MIN_VALUE;
+        freeHead = -1;
+        freeTail = -1;
+        linkFree(1, capacity);
+        int maxUsed = 0;
+
+        Queue<Node> queue = new ArrayDeque<>();
+        queue.add(new Node(ROOT, 0, 0, keys.size()));
+        int[] children = new int[64];
+        int[] ranges = new int[65];
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+
+            // 收集子节点编码及各自在 keys 中的区间，keys 已排序，相同编码连续出现
+            int count = 0;
+            int left = node.left;
+            if (left < node.right && keys.get(left).length == node.depth) {
+                left++;
+            }
+            for (int i = left; i < node.right; i++) {
+                int code = keys.get(i)[node.depth];
+                if (count == 0 || children[count - 1] != code) {
+                    if (count == children.length) {
+                        children = Arrays.copyOf(children, count * 2);
+                        ranges = Arrays.copyOf(ranges, count * 2 + 1);
+                    }
+                    children[count] = code;
+                    ranges[count] = i;
+                    count++;
+                }
+            }
+            ranges[count] = node.right;
+            if (count == 0) {
+                continue;
+            }
+
+            int begin = findBase(children, count);
+            base[node.state] = begin;
+
+            for (int k = 0; k < count; k++) {
+                int child = begin + children[k];
+                check[child] = node.state;
+                unlinkFree(child);
+                maxUsed = Math.max(maxUsed, child);
+
+                int childDepth = node.depth + 1;
+                int from = ranges[k];
+                if (keys.get(from).length == childDepth) {
+                    output[child] = childDepth;
+                }
+                fail[child] = node.state == ROOT ? ROOT : next(fail[node.state], children[k]);
+                if (output[child] == 0) {
+                    output[child] = output[fail[child]];
+                }
+                queue.add(new Node(child, childDepth, from, ranges[k + 1]));
+            }
+        }
+
+        int size = maxUsed + 1;
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+        fail = Arrays.copyOf(fail, size);
+        output = Arrays.copyOf(output, size);
+        nextFree = null;
+        prevFree = null;
+    }
+
+    /**
+     * 以每个空闲位置作为第一个子节点的落点尝试，直到所有子节点的位置都空闲
+     * <p>
+     * 多子节点的状态在已经很密的区域几乎放不下，连续失败多次后记下落点，之后的多子节点状态从这里往后找，
+     * 前面留下的空位由单子节点的状态从链表头开始填
+     */
+    private int findBase(int[] children, int count) {
+        int slot = freeHead;
+        if (count > 1 && multiCursor > slot) {
+            slot = multiCursor;
+            while (slot < check.length && check[slot] != FREE) {
+                slot++;
+            }
+            if (slot == check.length) {
+                slot = -1;
+            }
+        }
+        int tries = 0;
+        while (true) {
+            if (slot == -1) {
+                int old = check.length;
+                grow(old + 1);
+                slot = old;
+            }
+            int begin = slot - children[0];
+            if (begin >= 1) {
+                grow(begin + children[count - 1] + 1);
+                boolean fit = true;
+                for (int k = 1; k < count; k++) {
+                    if (check[begin + children[k]] != FREE) {
+                        fit = false;
+                        break;
+                    }
+                }
+                if (fit) {
+                    if (tries > MAX_MULTI_TRIES) {
+                        multiCursor = slot;
+                    }
+                    return begin;
+                }
+            }
+            tries++;
+            slot = nextFree[slot];
+        }
+    }
+
+    private void grow(int required) {
+        if (required <= check.length) {
+            return;
+        }
+        int capacity = Math.max(required, check.length + (check.length >> 1));
+        int old = check.length;
+        base = Arrays.copyOf(base, capacity);
+        check = Arrays.copyOf(check, capacity);
+        fail = Arrays.copyOf(fail, capacity);
+        output = Arrays.copyOf(output, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+        prevFree = Arrays.copyOf(prevFree, capacity);
+        Arrays.fill(check, old, capacity, FREE);
+        linkFree(old, capacity);
+    }
+
+    /**
+     * 把 [from, to) 追加到空闲链表尾部
+     */
+    private void linkFree(int from, int to) {
+        for (int i = from; i < to; i++) {
+            prevFree[i] = freeTail;
+            nextFree[i] = -1;
+            if (freeTail == -1) {
+                freeHead = i;
+            } else {
+                nextFree[freeTail] = i;
+            }
+            freeTail = i;
+        }
+    }
+
+    private void unlinkFree(int slot) {
+        int prev = prevFree[slot];
+        int next = nextFree[slot];
+        if (prev == -1) {
+            freeHead = next;
+        } else {
+            nextFree[prev] = next;
+        }
+        if (next == -1) {
+            freeTail = prev;
+        } else {
+            prevFree[next] = prev;
+        }
+    }
+
+    private record Node(int state, int depth, int left, int right) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 消息回执写缓冲配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.ack-buffer")
+@Component
+@Data
+public class AckBufferProperties {
+	// 刷盘间隔（毫秒），需明显小于在途消息的重试延迟，否则已回执的消息会被再次推送
+	private long flushInterval = 200;
+	// 缓冲中最多积压的回执数，达到后由写入线程同步刷盘
+	private int maxPending = 50000;
+	// 单条 upsert 语句的最大行数
+	private int batchSize = 500;
+}
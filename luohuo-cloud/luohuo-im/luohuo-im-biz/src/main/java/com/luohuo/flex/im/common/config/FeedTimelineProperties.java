@@ -0,0 +1,22 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 朋友圈时间线配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.feed-timeline")
+@Component
+@Data
+public class FeedTimelineProperties {
+	// 每个收件箱/发件箱保留的最新朋友圈条数，更早的内容回源数据库
+	private int capacity = 1000;
+	// 可见人数超过该值的发布者不再写扩散，改为读者拉取其发件箱
+	private int pullThreshold = 2000;
+	// 收件箱闲置过期天数，过期后首次读取时从数据库重建
+	private int expireDays = 30;
+	// 单次读取时间线时最多补拉的轮数，避免过滤后页面过短
+	private int maxFillRounds = 3;
+}
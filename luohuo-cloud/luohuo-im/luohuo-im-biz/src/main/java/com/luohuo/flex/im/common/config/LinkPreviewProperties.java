@@ -0,0 +1,36 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 链接预览配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.link-preview")
+@Component
+@Data
+public class LinkPreviewProperties {
+	// 是否解析消息中的链接预览
+	private boolean enabled = true;
+	// 单条消息最多解析的链接数
+	private int maxUrls = 5;
+	// 抓取线程数
+	private int poolSize = 8;
+	// 抓取队列长度，满了之后新的链接不再解析
+	private int queueCapacity = 1000;
+	// 同一域名同时抓取的最大数量
+	private int perHostConcurrency = 2;
+	// 等待域名抓取许可的时间（毫秒）
+	private long hostWaitMillis = 1000;
+	// 单条消息等待所有链接解析的最长时间（毫秒），超时的链接不再写入该消息
+	private long timeoutMillis = 5000;
+	// 本地缓存的链接数
+	private int localMaxSize = 10000;
+	// 本地缓存有效期（秒）
+	private long localExpireSeconds = 600;
+	// 解析成功的 Redis 缓存有效期（秒）
+	private long cacheSeconds = 86400;
+	// 解析失败的 Redis 缓存有效期（秒），期间不再重复抓取
+	private long negativeCacheSeconds = 600;
+}
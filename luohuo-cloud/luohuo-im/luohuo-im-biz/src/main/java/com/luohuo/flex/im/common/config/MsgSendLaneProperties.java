@@ -0,0 +1,22 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 消息下发分道执行配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.msg-send-lane")
+@Component
+@Data
+public class MsgSendLaneProperties {
+	// 分道数，同一房间的消息总是落在同一条道上按顺序处理
+	private int lanes = 16;
+	// 每条道最多排队的消息数，满了以后消费线程等待
+	private int queueCapacity = 1000;
+	// 一次从道上取出合并处理的最大消息数
+	private int maxBatch = 64;
+	// 消费线程等待入队和处理完成的最长时间（毫秒），超时后抛出异常交给 MQ 重投
+	private long timeout = 30_000;
+}
@@ -0,0 +1,28 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 全量广播推送配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.push-broadcast")
+@Component
+@Data
+public class PushBroadcastProperties {
+	// 每次从数据库读取的设备数
+	private int pageSize = 2000;
+	// 单次厂商请求的设备数上限，实际取此值与渠道上限中较小的一个
+	private int maxChunkSize = 1000;
+	// 每个渠道同时进行的请求数
+	private int concurrency = 2;
+	// 每个渠道每秒最多发起的请求数
+	private double requestsPerSecond = 5;
+	// 执行节点的租约（毫秒），超过租约没有进度的广播由其他节点接手续推
+	private long lease = 2 * 60_000;
+	// 检查可接手广播的间隔（毫秒）
+	private long resumeInterval = 30_000;
+	// 已完成广播的进度保留小时数
+	private int retainHours = 72;
+}
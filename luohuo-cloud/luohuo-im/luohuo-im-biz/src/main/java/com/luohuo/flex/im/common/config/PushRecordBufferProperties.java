@@ -0,0 +1,26 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 推送记录写缓冲配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.push-record-buffer")
+@Component
+@Data
+public class PushRecordBufferProperties {
+	// 刷盘间隔（毫秒）
+	private long flushInterval = 1000;
+	// 仍为 pending 的记录最多等待多久（毫秒）再入库，等待期间的状态变更直接合并进 INSERT
+	private long pendingHold = 10_000;
+	// 缓冲中最多积压的记录和状态变更数，达到后由写入线程同步刷盘
+	private int maxPending = 10_000;
+	// 单条 INSERT / UPDATE 语句的最大行数
+	private int batchSize = 500;
+	// 写库失败的批次最多重试次数，超过后丢弃
+	private int maxRetries = 3;
+	// 首次重试的等待时间（毫秒），之后每次翻倍
+	private long retryBackoff = 2000;
+}
@@ -0,0 +1,33 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 离线推送重试队列配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.push-retry")
+@Component
+@Data
+public class PushRetryProperties {
+	// 最大重试次数
+	private int maxRetryCount = 3;
+	// 首次重试延迟（毫秒），之后每次乘以 multiplier，上限 maxDelay
+	private long baseDelay = 60_000;
+	private int multiplier = 4;
+	private long maxDelay = 15 * 60_000;
+	// 扫描到期任务的间隔（毫秒）
+	private long pollInterval = 5_000;
+	// 单次最多领取的任务数
+	private int batchSize = 200;
+	// 单次领取最多查看的到期任务数，线程池已满的渠道的任务留在队列中跳过
+	private int scanSize = 1000;
+	// 领取后的租约（毫秒），节点宕机时租约到期的任务会被其他节点重新领取
+	private long lease = 5 * 60_000;
+	// 每种推送渠道的并发数和本地排队上限
+	private int concurrency = 4;
+	private int queueCapacity = 200;
+	// 任务最长保留小时数，超过后清理
+	private int maxAgeHours = 24;
+}
@@ -0,0 +1,18 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 离线推送设备索引配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.push-token-index")
+@Component
+@Data
+public class PushTokenIndexProperties {
+	// 用户设备索引过期小时数，过期后从数据库重建（同时淘汰超过30天不活跃的设备）
+	private int expireHours = 24;
+	// 一次管道查询或回源数据库的用户数
+	private int batchSize = 500;
+}
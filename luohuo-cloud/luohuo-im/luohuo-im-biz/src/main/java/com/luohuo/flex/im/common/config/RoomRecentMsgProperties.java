@@ -0,0 +1,20 @@
+package com.luohuo.flex.im.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 房间最近消息缓存配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.room-recent-msg")
+@Component
+@Data
+public class RoomRecentMsgProperties {
+	// 是否从缓存读取消息列表的前几页，关闭后全部走数据库
+	private boolean enabled = true;
+	// 每个房间保留的最新消息条数，更早的消息回源数据库
+	private int capacity = 200;
+	// 房间闲置过期小时数，过期后首次读取时从数据库重建
+	private int expireHours = 24;
+}
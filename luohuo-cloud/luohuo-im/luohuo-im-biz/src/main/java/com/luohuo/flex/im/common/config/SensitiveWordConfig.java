@@ -1,6 +1,6 @@
 package com.luohuo.flex.im.common.config;
 
-import com.luohuo.flex.im.common.utils.sensitiveword.DFAFilter;
+import com.luohuo.flex.im.common.utils.sensitiveword.DoubleArrayACFilter;
 import com.luohuo.flex.im.common.utils.sensitiveword.SensitiveWordBs;
 import com.luohuo.flex.im.sensitive.MyWordFactory;
 import jakarta.annotation.Resource;
@@ -24,7 +24,7 @@ public class SensitiveWordConfig {
     @Bean
     public SensitiveWordBs sensitiveWordBs() {
         return SensitiveWordBs.newInstance()
-                .filterStrategy(DFAFilter.getInstance())
+                .filterStrategy(DoubleArrayACFilter.getInstance())
                 .sensitiveWord(myWordFactory)
                 .init();
     }
@@ -31,6 +31,26 @@ public class RedisKey {
 	 */
 	public static final String FEED_TARGET = BASE_KEY + "feedTarget";
 
+	/**
+	 * 朋友圈收件箱 zset: feedId -> 发布时间毫秒，发布时按可见范围写入
+	 */
+	public static final String FEED_INBOX_FORMAT = "feedInbox:uid_%d";
+
+	/**
+	 * 大V朋友圈发件箱 zset: feedId -> 发布时间毫秒，读者拉取
+	 */
+	public static final String FEED_OUTBOX_FORMAT = "feedOutbox:uid_%d";
+
+	/**
+	 * 用户需要拉取发件箱的大V集合
+	 */
+	public static final String FEED_PULL_FORMAT = "feedPull:uid_%d";
+
+	/**
+	 * 大V最近一次同步拉取关系的标记
+	 */
+	public static final String FEED_PULL_SYNC_FORMAT = "feedPullSync:uid_%d";
+
 	/**
 	 * 用户徽章
 	 */
@@ -51,6 +71,27 @@ public class RedisKey {
 	 */
 	public static final String ROOM_MSG_FORMAT = "msg:%d";
 
+	/**
+	 * 房间最近消息 zset: 补齐到 19 位的消息id，分值均为 0，按字典序即按id排序
+	 * 与 ROOM_RECENT_MSG_DEEP_FORMAT 共用 {roomId_x} 哈希标签，集群下落在同一槽位，供同一段 lua 脚本操作
+	 */
+	public static final String ROOM_RECENT_MSG_FORMAT = "roomRecentMsg:{roomId_%d}";
+
+	/**
+	 * 房间最近消息之前（已回源数据库部分）的消息条数，存在即表示缓存已初始化
+	 */
+	public static final String ROOM_RECENT_MSG_DEEP_FORMAT = "roomRecentMsgDeep:{roomId_%d}";
+
+	/**
+	 * 用户各会话的未读数 hash: roomId -> count
+	 */
+	public static final String CONTACT_UNREAD_FORMAT = "contactUnread:uid_%d";
+
+	/**
+	 * 链接预览 url 摘要 -> UrlInfo json，空串表示抓取失败
+	 */
+	public static final String URL_INFO_FORMAT = "urlInfo:%s";
+
     /**
      * 房间详情
      */
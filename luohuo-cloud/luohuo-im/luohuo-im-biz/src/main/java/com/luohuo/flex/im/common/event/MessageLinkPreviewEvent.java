@@ -0,0 +1,20 @@
+package com.luohuo.flex.im.common.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 消息中含有链接，事务提交后异步补充链接预览
+ */
+@Getter
+public class MessageLinkPreviewEvent extends ApplicationEvent {
+
+	private final Long msgId;
+	private final String content;
+
+	public MessageLinkPreviewEvent(Object source, Long msgId, String content) {
+		super(source);
+		this.msgId = msgId;
+		this.content = content;
+	}
+}
@@ -0,0 +1,22 @@
+package com.luohuo.flex.im.common.event.listener;
+
+import com.luohuo.flex.im.common.event.MessageLinkPreviewEvent;
+import com.luohuo.flex.im.core.chat.service.impl.LinkPreviewService;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * 链接预览监听器
+ * 事务提交后只把消息交给解析线程池，不在发送线程上抓取网页
+ */
+@Component
+public class MessageLinkPreviewListener {
+	@Resource
+	private LinkPreviewService linkPreviewService;
+
+	@TransactionalEventListener(classes = MessageLinkPreviewEvent.class, fallbackExecution = true)
+	public void enrich(MessageLinkPreviewEvent event) {
+		linkPreviewService.enrich(event.getMsgId(), event.getContent());
+	}
+}
@@ -1,6 +1,10 @@
 package com.luohuo.flex.im.common.event.listener;
 
 import com.luohuo.flex.im.common.event.MessageRecallEvent;
+import com.luohuo.flex.im.core.chat.dao.ContactDao;
+import com.luohuo.flex.im.core.chat.dao.MessageDao;
+import com.luohuo.flex.im.core.chat.service.cache.ContactUnreadCache;
+import com.luohuo.flex.im.domain.entity.Message;
 import com.luohuo.flex.model.entity.dto.ChatMsgRecallDTO;
 import com.luohuo.flex.im.core.chat.service.cache.MsgCache;
 import com.luohuo.flex.im.core.user.service.adapter.WsAdapter;
@@ -11,6 +15,8 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.Objects;
+
 import static com.luohuo.flex.im.common.config.ThreadPoolConfig.LUOHUO_EXECUTOR;
 
 /**
@@ -25,6 +31,12 @@ public class MessageRecallListener {
     private MsgCache msgCache;
     @Resource
     private PushService pushService;
+    @Resource
+    private MessageDao messageDao;
+    @Resource
+    private ContactDao contactDao;
+    @Resource
+    private ContactUnreadCache contactUnreadCache;
 
     @Async(LUOHUO_EXECUTOR)
     @TransactionalEventListener(classes = MessageRecallEvent.class, fallbackExecution = true)
@@ -33,6 +45,19 @@ public class MessageRecallListener {
         msgCache.delete(recallDTO.getMsgId());
     }
 
+    /**
+     * 撤回的消息不再计入未读，还没读到它的成员未读数 -1
+     */
+    @Async(LUOHUO_EXECUTOR)
+    @TransactionalEventListener(classes = MessageRecallEvent.class, fallbackExecution = true)
+    public void decrUnread(MessageRecallEvent event) {
+        Message message = messageDao.getById(event.getRecallDTO().getMsgId());
+        if (Objects.isNull(message)) {
+            return;
+        }
+        contactUnreadCache.decr(message.getRoomId(), contactDao.getUnReadUids(message));
+    }
+
     @Async(LUOHUO_EXECUTOR)
     @TransactionalEventListener(classes = MessageRecallEvent.class, fallbackExecution = true)
     public void sendToAll(MessageRecallEvent event) {
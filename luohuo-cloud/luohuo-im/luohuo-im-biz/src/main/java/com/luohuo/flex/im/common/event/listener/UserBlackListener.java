@@ -1,6 +1,9 @@
 package com.luohuo.flex.im.common.event.listener;
 
 import com.luohuo.basic.context.ContextUtil;
+import com.luohuo.flex.im.core.chat.dao.ContactDao;
+import com.luohuo.flex.im.core.chat.service.cache.ContactUnreadCache;
+import com.luohuo.flex.im.core.chat.service.cache.RoomRecentMsgCache;
 import com.luohuo.flex.im.core.user.service.cache.UserSummaryCache;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,6 +17,8 @@ import com.luohuo.flex.model.entity.WsBaseResp;
 import com.luohuo.flex.model.entity.ws.WSBlack;
 import com.luohuo.flex.im.core.user.service.impl.PushService;
 
+import java.util.List;
+
 import static com.luohuo.flex.im.common.config.ThreadPoolConfig.LUOHUO_EXECUTOR;
 
 /**
@@ -27,6 +32,9 @@ import static com.luohuo.flex.im.common.config.ThreadPoolConfig.LUOHUO_EXECUTOR;
 public class UserBlackListener {
 
     private final MessageDao messageDao;
+    private final ContactDao contactDao;
+    private final ContactUnreadCache contactUnreadCache;
+    private final RoomRecentMsgCache roomRecentMsgCache;
     private final UserSummaryCache userSummaryCache;
     private final PushService pushService;
 
@@ -39,7 +47,12 @@ public class UserBlackListener {
     @Async(LUOHUO_EXECUTOR)
     @EventListener(classes = UserBlackEvent.class)
     public void deleteMsg(UserBlackEvent event) {
-        messageDao.invalidByUid(event.getUser().getId());
+        Long uid = event.getUser().getId();
+        messageDao.invalidByUid(uid);
+        List<Long> roomIds = messageDao.getRoomIdsByFromUid(uid);
+        roomRecentMsgCache.evict(roomIds);
+        // 删除的消息无法逐条扣减未读数，相关会话的计数丢弃后重新统计
+        contactUnreadCache.evict(contactDao.getUidsByRoomIds(roomIds));
     }
 
     @Async(LUOHUO_EXECUTOR)
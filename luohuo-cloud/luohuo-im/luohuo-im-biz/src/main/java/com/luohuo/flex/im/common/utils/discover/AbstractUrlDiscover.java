@@ -50,7 +50,7 @@ public abstract class AbstractUrlDiscover implements UrlDiscover {
 	public Map<String, UrlInfo> getUrlContentMap(String content) {
 		if (StrUtil.isBlank(content)) return Collections.emptyMap();
 
-		List<String> matchList = ReUtil.findAll(PATTERN, content, 0);
+		List<String> matchList = findUrls(content);
 		CompletionService<Pair<String, UrlInfo>> cs = new ExecutorCompletionService<>(EXECUTOR);
 		List<Future<Pair<String, UrlInfo>>> futures = matchList.stream()
 				.map(match -> cs.submit(() -> {
@@ -90,6 +90,15 @@ public abstract class AbstractUrlDiscover implements UrlDiscover {
 		return resultMap;
 	}
 
+	/**
+	 * 识别文本中的链接
+	 * @param content 文本内容
+	 */
+	public static List<String> findUrls(String content) {
+		if (StrUtil.isBlank(content)) return Collections.emptyList();
+		return ReUtil.findAll(PATTERN, content, 0).stream().distinct().collect(Collectors.toList());
+	}
+
     @Nullable
     @Override
     public UrlInfo getContent(String url) {
@@ -139,6 +148,8 @@ public abstract class AbstractUrlDiscover implements UrlDiscover {
         try {
             url = new URL(href);
             HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
+            httpURLConnection.setConnectTimeout(2000);
+            httpURLConnection.setReadTimeout(2000);
             state = httpURLConnection.getResponseCode();
             fileType = httpURLConnection.getHeaderField("Content-Disposition");
             //如果成功200，缓存304，移动302都算有效链接，并且不是下载链接
@@ -25,7 +25,7 @@ public final class DFAFilter implements SensitiveWordFilter {
 
     private static Word root = new Word(' '); // 敏感词字典的根节点
     private final static char replace = '*'; // 替代字符
-    private final static String skipChars = " !*-+_=,，.@;:；：。、？?（）()【】[]《》<>“”\"‘’"; // 遇到这些字符就会跳过
+    final static String skipChars = " !*-+_=,，.@;:；：。、？?（）()【】[]《》<>“”\"‘’"; // 遇到这些字符就会跳过
     private final static Set<Character> skipSet = new HashSet<>(); // 遇到这些字符就会跳过
 
     static {
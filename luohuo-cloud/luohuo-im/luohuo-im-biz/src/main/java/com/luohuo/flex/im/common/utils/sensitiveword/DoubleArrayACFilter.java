@@ -0,0 +1,63 @@
+package com.luohuo.flex.im.common.utils.sensitiveword;
+
+import com.luohuo.flex.im.common.algorithm.ac.DoubleArrayACTrie;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于双数组ac自动机的敏感词过滤工具类
+ * <p>
+ * 大小写折叠、跳过字符与 {@link DFAFilter} 一致，但整段文本只扫描一遍，没有命中时不分配内存。
+ * 重新加载词库时在新的自动机上构建完成后才替换引用，正在过滤的线程不受影响。
+ *
+ * @author 乾乾
+ */
+public class DoubleArrayACFilter implements SensitiveWordFilter {
+
+    // 替代字符
+    private static final char MASK_CHAR = '*';
+
+    private volatile DoubleArrayACTrie trie = new DoubleArrayACTrie(Collections.emptyList(), DFAFilter.skipChars);
+
+    public static DoubleArrayACFilter getInstance() {
+        return new DoubleArrayACFilter();
+    }
+
+    /**
+     * 有敏感词
+     *
+     * @param text 文本
+     * @return boolean
+     */
+    @Override
+    public boolean hasSensitiveWord(String text) {
+        if (StringUtils.isBlank(text)) { return false; }
+        return trie.containsAny(text);
+    }
+
+    /**
+     * 敏感词替换
+     *
+     * @param text 待替换文本
+     * @return 替换后的文本
+     */
+    @Override
+    public String filter(String text) {
+        if (StringUtils.isEmpty(text)) { return text; }
+        return trie.replace(text, MASK_CHAR);
+    }
+
+    /**
+     * 加载敏感词列表
+     *
+     * @param words 敏感词数组
+     */
+    @Override
+    public void loadWord(List<String> words) {
+        if (words == null) { return; }
+        trie = new DoubleArrayACTrie(words, DFAFilter.skipChars);
+    }
+
+}
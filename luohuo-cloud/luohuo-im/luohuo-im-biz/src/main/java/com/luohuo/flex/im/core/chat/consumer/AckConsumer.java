@@ -1,10 +1,8 @@
 package com.luohuo.flex.im.core.chat.consumer;
 
-import com.luohuo.basic.cache.repository.CachePlusOps;
-import com.luohuo.flex.common.cache.PassageMsgCacheKeyBuilder;
 import com.luohuo.flex.common.constant.MqConstant;
-import com.luohuo.flex.im.core.chat.dao.ContactDao;
 import com.luohuo.flex.im.core.chat.service.cache.MsgCache;
+import com.luohuo.flex.im.core.user.service.impl.InFlightTracker;
 import com.luohuo.flex.im.domain.entity.Message;
 import com.luohuo.flex.model.ws.AckMessageDTO;
 import lombok.AllArgsConstructor;
@@ -14,8 +12,6 @@ import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
-
 /**
  * 目前架构ws服务无法处理业务，客户端回执给ws服务之后进行mq跳转至此
  * @author 乾乾
@@ -27,8 +23,8 @@ import java.util.Arrays;
 public class AckConsumer implements RocketMQListener<AckMessageDTO> {
 
     private MsgCache msgCache;
-    private ContactDao contactDao;
-	private CachePlusOps cachePlusOps;
+	private AckWriteBehindBuffer ackWriteBehindBuffer;
+	private InFlightTracker inFlightTracker;
 
 	/**
 	 * 通过mq的方式 回调进行回执
@@ -41,10 +37,9 @@ public class AckConsumer implements RocketMQListener<AckMessageDTO> {
 			return;
 		}
 
-		// 1. 更新收到消息的状态
-		contactDao.refreshOrCreateActiveTime(message.getRoomId(), Arrays.asList(dto.getUid()), message.getId(), message.getCreateTime());
-
-		// 2. 删除在途消息
-		cachePlusOps.sRem(PassageMsgCacheKeyBuilder.build(dto.getUid()), message.getId());
+		// 更新收到消息的状态、删除在途消息，由写缓冲合并后批量执行
+		ackWriteBehindBuffer.add(message.getRoomId(), dto.getUid(), message.getId(), message.getCreateTime());
+		// 回执落在本机时直接结束跟踪，省掉到期核对
+		inFlightTracker.ack(message.getId(), dto.getUid());
     }
 }
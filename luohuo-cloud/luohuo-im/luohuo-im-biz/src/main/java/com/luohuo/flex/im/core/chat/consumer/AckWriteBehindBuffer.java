@@ -0,0 +1,238 @@
+package com.luohuo.flex.im.core.chat.consumer;
+
+import cn.hutool.core.collection.CollUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.luohuo.flex.common.cache.PassageMsgCacheKeyBuilder;
+import com.luohuo.flex.im.common.config.AckBufferProperties;
+import com.luohuo.flex.im.core.chat.dao.ContactDao;
+import com.luohuo.flex.im.domain.entity.Contact;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消息回执写缓冲
+ * <p>
+ * 每条回执原本都是一次单行 upsert 加一次 SREM，千人群的一条消息就是上千条 SQL。
+ * 这里把一个刷盘周期内的回执按 (roomId, uid) 合并，只保留最大的消息id，
+ * 到期后用多行 upsert 刷会话、用 pipeline 批量删除在途消息。
+ * 缓冲达到上限时由写入线程同步刷盘，相当于对 MQ 消费做背压。
+ * 同一时间只有一个刷盘在执行，避免两批回执并发写同一会话时旧位置覆盖新位置；
+ * 写库或删除失败的条目放回缓冲，与期间新到的回执按最大消息id合并，下个周期重试。
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AckWriteBehindBuffer {
+
+	private static final String METRIC_PREFIX = "im.ack.buffer.";
+
+	private final ContactDao contactDao;
+	private final RedisTemplate<String, Object> redisTemplate;
+	private final AckBufferProperties properties;
+	private final MeterRegistry meterRegistry;
+
+	private final Object lock = new Object();
+	// 串行化刷盘，定时线程与达到上限的写入线程不会同时写库
+	private final ReentrantLock flushLock = new ReentrantLock();
+	// (roomId, uid) -> 会话最新消息
+	private Map<ContactKey, Contact> pendingContacts = new HashMap<>();
+	// uid -> 已回执的在途消息
+	private Map<Long, Set<Long>> pendingPassages = new HashMap<>();
+	// 当前缓冲中最早一条回执的时间
+	private long oldestAckNanos;
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private ScheduledExecutorService flushScheduler;
+	private DistributionSummary batchSizeSummary;
+	private Timer lagTimer;
+	private Counter requeuedCounter;
+
+	@PostConstruct
+	public void init() {
+		batchSizeSummary = DistributionSummary.builder(METRIC_PREFIX + "batch.size")
+				.description("Acks merged into one flush")
+				.register(meterRegistry);
+		lagTimer = Timer.builder(METRIC_PREFIX + "lag")
+				.description("Time from the oldest buffered ack to its flush")
+				.register(meterRegistry);
+		requeuedCounter = Counter.builder(METRIC_PREFIX + "requeued")
+				.description("Contacts put back into the buffer after a failed upsert")
+				.register(meterRegistry);
+		Gauge.builder(METRIC_PREFIX + "pending", pendingCount, AtomicInteger::get)
+				.description("Acks waiting to be flushed")
+				.register(meterRegistry);
+
+		flushScheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder()
+						.setNameFormat("ack-flush-%d")
+						.setDaemon(true)
+						.build());
+		flushScheduler.scheduleWithFixedDelay(this::flushQuietly, properties.getFlushInterval(), properties.getFlushInterval(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 记录一条回执
+	 * @param roomId 房间id
+	 * @param uid 回执人
+	 * @param msgId 消息id
+	 * @param activeTime 消息发送时间
+	 */
+	public void add(Long roomId, Long uid, Long msgId, LocalDateTime activeTime) {
+		int pending;
+		synchronized (lock) {
+			if (pendingContacts.isEmpty() && pendingPassages.isEmpty()) {
+				oldestAckNanos = System.nanoTime();
+			}
+			pendingContacts.merge(new ContactKey(roomId, uid), buildContact(roomId, uid, msgId, activeTime), AckWriteBehindBuffer::newer);
+			// 重复回执不计数，和 flush 时按去重后的条数扣减保持一致
+			if (pendingPassages.computeIfAbsent(uid, k -> new HashSet<>()).add(msgId)) {
+				pending = pendingCount.incrementAndGet();
+			} else {
+				pending = pendingCount.get();
+			}
+		}
+		if (pending >= properties.getMaxPending()) {
+			flushQuietly();
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		flushScheduler.shutdown();
+		try {
+			flushScheduler.awaitTermination(properties.getFlushInterval() * 5, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flushQuietly();
+	}
+
+	private void flushQuietly() {
+		flushLock.lock();
+		try {
+			flush();
+		} catch (Exception e) {
+			log.error("回执刷盘失败", e);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private void flush() {
+		Map<ContactKey, Contact> contacts;
+		Map<Long, Set<Long>> passages;
+		long oldest;
+		int acks;
+		synchronized (lock) {
+			if (pendingContacts.isEmpty() && pendingPassages.isEmpty()) {
+				return;
+			}
+			contacts = pendingContacts;
+			passages = pendingPassages;
+			oldest = oldestAckNanos;
+			pendingContacts = new HashMap<>();
+			pendingPassages = new HashMap<>();
+			acks = passages.values().stream().mapToInt(Set::size).sum();
+			pendingCount.addAndGet(-acks);
+		}
+
+		// 1. 先删在途消息，避免回执已到仍被重试推送
+		try {
+			removePassages(passages);
+		} catch (Exception e) {
+			log.error("批量删除在途消息失败, 用户数: {}", passages.size(), e);
+			requeue(List.of(), passages, oldest);
+		}
+
+		// 2. 按 (uid, roomId) 排序后分批 upsert，固定加锁顺序避免多实例间死锁
+		List<Contact> contactList = new ArrayList<>(contacts.values());
+		contactList.sort(Comparator.comparing(Contact::getUid).thenComparing(Contact::getRoomId));
+		for (List<Contact> batch : CollUtil.split(contactList, properties.getBatchSize())) {
+			try {
+				contactDao.batchRefreshOrCreateActiveTime(batch);
+			} catch (Exception e) {
+				log.error("批量刷新会话失败, 放回缓冲等待重试, 行数: {}", batch.size(), e);
+				requeue(batch, Map.of(), oldest);
+			}
+		}
+
+		batchSizeSummary.record(acks);
+		lagTimer.record(System.nanoTime() - oldest, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 把刷盘失败的条目放回缓冲，与期间新到的回执合并，会话保留消息id较大的一条
+	 */
+	private void requeue(List<Contact> contactList, Map<Long, Set<Long>> passages, long oldest) {
+		synchronized (lock) {
+			if ((pendingContacts.isEmpty() && pendingPassages.isEmpty()) || oldest - oldestAckNanos < 0) {
+				oldestAckNanos = oldest;
+			}
+			contactList.forEach(contact -> pendingContacts.merge(new ContactKey(contact.getRoomId(), contact.getUid()), contact, AckWriteBehindBuffer::newer));
+			passages.forEach((uid, msgIds) -> {
+				Set<Long> pending = pendingPassages.computeIfAbsent(uid, k -> new HashSet<>());
+				msgIds.forEach(msgId -> {
+					if (pending.add(msgId)) {
+						pendingCount.incrementAndGet();
+					}
+				});
+			});
+		}
+		requeuedCounter.increment(contactList.size());
+	}
+
+	private void removePassages(Map<Long, Set<Long>> passages) {
+		redisTemplate.executePipelined(new SessionCallback<Object>() {
+			@Override
+			public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+				RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+				passages.forEach((uid, msgIds) -> ops.opsForSet().remove(PassageMsgCacheKeyBuilder.build(uid).getKey(), msgIds.toArray()));
+				return null;
+			}
+		});
+	}
+
+	private static Contact newer(Contact old, Contact latest) {
+		return latest.getLastMsgId() > old.getLastMsgId() ? latest : old;
+	}
+
+	private static Contact buildContact(Long roomId, Long uid, Long msgId, LocalDateTime activeTime) {
+		Contact contact = new Contact();
+		contact.setRoomId(roomId);
+		contact.setUid(uid);
+		contact.setLastMsgId(msgId);
+		contact.setActiveTime(activeTime);
+		return contact;
+	}
+
+	private record ContactKey(Long roomId, Long uid) {
+	}
+}
@@ -15,15 +15,20 @@ import com.luohuo.flex.im.domain.entity.RoomFriend;
 import com.luohuo.flex.im.domain.vo.response.msg.AudioCallMsgDTO;
 import com.luohuo.flex.im.domain.entity.msg.MessageExtra;
 import com.luohuo.flex.im.domain.vo.response.msg.VideoCallMsgDTO;
+import com.luohuo.flex.im.domain.enums.MessageStatusEnum;
 import com.luohuo.flex.im.domain.enums.MessageTypeEnum;
 import com.luohuo.flex.im.domain.enums.RoomTypeEnum;
 import com.luohuo.flex.model.entity.WsBaseResp;
 import com.luohuo.flex.model.entity.ws.ChatMessageResp;
 import com.luohuo.flex.im.core.chat.service.ChatService;
+import com.luohuo.flex.im.core.chat.service.cache.ContactUnreadCache;
 import com.luohuo.flex.im.core.chat.service.cache.GroupMemberCache;
 import com.luohuo.flex.im.core.chat.service.cache.RoomCache;
+import com.luohuo.flex.im.core.chat.service.cache.RoomRecentMsgCache;
 import com.luohuo.flex.im.core.user.service.adapter.WsAdapter;
+import com.luohuo.flex.im.core.user.service.impl.InFlightTracker;
 import com.luohuo.flex.im.core.user.service.impl.PushService;
+import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.rocketmq.spring.annotation.MessageModel;
@@ -33,6 +38,8 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -41,6 +48,7 @@ import java.util.Set;
 /**
  * 发送消息更新房间收信箱，并同步给房间成员信箱
  * 加入 在途消息缓存，三秒没有回执则再次推送
+ * 消息按房间分道处理，见 {@link MsgSendLanes}
  * @author 乾乾
  */
 @Slf4j
@@ -58,6 +66,15 @@ public class MsgSendConsumer implements RocketMQListener<MsgSendMessageDTO> {
 	private OnlineService onlineService;
     private PushService pushService;
 	private CachePlusOps cachePlusOps;
+	private ContactUnreadCache contactUnreadCache;
+	private RoomRecentMsgCache roomRecentMsgCache;
+	private InFlightTracker inFlightTracker;
+	private MsgSendLanes msgSendLanes;
+
+	@PostConstruct
+	public void init() {
+		msgSendLanes.start(this::onRoomBatch);
+	}
 
     @Override
     public void onMessage(MsgSendMessageDTO dto) {
@@ -65,10 +82,33 @@ public class MsgSendConsumer implements RocketMQListener<MsgSendMessageDTO> {
         if (Objects.isNull(message)) {
             return;
         }
-        Room room = roomCache.get(message.getRoomId());
-        // 1. 所有房间更新房间最新消息
-        roomDao.refreshActiveTime(room.getId(), message.getId(), message.getCreateTime());
-        roomCache.refresh(room.getId());
+		// 按房间分道处理，等待处理完成后再确认消费
+		msgSendLanes.execute(message, dto.getUid());
+    }
+
+	/**
+	 * 处理同一房间的一批消息：房间刷新、成员和在线查询每批一次，路由下发逐条进行
+	 * @param roomId 房间id
+	 * @param tasks 按入队顺序排列的消息
+	 */
+	private void onRoomBatch(Long roomId, List<MsgSendLanes.Task> tasks) {
+		// 消费线程之间入队的先后不一定是发送顺序，按消息id重新排序
+		List<MsgSendLanes.Task> sorted = new ArrayList<>(tasks);
+		sorted.sort(Comparator.comparing(task -> task.message().getId()));
+		ContextUtil.setLocalMap(sorted.get(0).context());
+
+		Room room = roomCache.get(roomId);
+		if (Objects.isNull(room)) {
+			// 房间已删除，消息不再下发，直接确认消费，避免整批反复重投
+			log.warn("房间不存在，跳过消息下发: roomId={}, size={}", roomId, sorted.size());
+			sorted.forEach(task -> task.done().complete(null));
+			return;
+		}
+		// 1. 所有房间更新房间最新消息，一批只更新为最新的一条
+		Message latest = sorted.get(sorted.size() - 1).message();
+		roomDao.refreshActiveTime(room.getId(), latest.getId(), latest.getCreateTime());
+		roomCache.refresh(room.getId());
+		sorted.forEach(task -> appendRecentMsg(task.message()));
 
 		List<Long> memberUidList = new ArrayList<>();
 		if (Objects.equals(room.getType(), RoomTypeEnum.GROUP.getType())) {
@@ -83,17 +123,35 @@ public class MsgSendConsumer implements RocketMQListener<MsgSendMessageDTO> {
 		// 2. 过滤出在线的人员
 		Set<Long> onlineUsersList = onlineService.getOnlineUsersList(memberUidList);
 
-		// 3. 与在线人员交集并进行路由
+		for (MsgSendLanes.Task task : sorted) {
+			try {
+				ContextUtil.setLocalMap(task.context());
+				send(task.message(), task.uid(), memberUidList, new HashSet<>(onlineUsersList));
+				task.done().complete(null);
+			} catch (Exception e) {
+				log.error("消息下发失败: roomId={}, msgId={}", roomId, task.message().getId(), e);
+				task.done().completeExceptionally(e);
+			}
+		}
+	}
+
+	private void send(Message message, Long operatorUid, List<Long> memberUidList, Set<Long> onlineUsersList) {
+		// 3. 除发送者外所有成员的未读数 +1
+		if (Objects.nonNull(memberUidList)) {
+			contactUnreadCache.incr(message.getRoomId(), memberUidList.stream().filter(memberUid -> !Objects.equals(memberUid, message.getFromUid())).toList());
+		}
+
+		// 4. 与在线人员交集并进行路由
 		switch (MessageTypeEnum.of(message.getType())) {
 			case AUDIO_CALL, VIDEO_CALL -> {
 				Long uid = ContextUtil.getUid();
 
-				// 3.1 给自己推送原始消息
+				// 4.1 给自己推送原始消息
 				WsBaseResp<ChatMessageResp> selfResp = WsAdapter.buildMsgSend(chatService.getMsgResp(message, null));
-				pushService.sendPushMsg(selfResp, uid, dto.getUid());
-				asyncSavePassageMsg(message.getId(), selfResp, Set.of(uid), dto.getUid());
+				pushService.sendPushMsg(selfResp, uid, operatorUid);
+				asyncSavePassageMsg(message.getId(), selfResp, Set.of(uid), operatorUid);
 
-				// 3.2 修改消息发送者为通话创建者（用于其他人接收）
+				// 4.2 修改消息发送者为通话创建者（用于其他人接收）
 				Long originalFromUid = message.getFromUid();
 				MessageExtra extra = message.getExtra();
 
@@ -107,25 +165,40 @@ public class MsgSendConsumer implements RocketMQListener<MsgSendMessageDTO> {
 						);
 				message.setFromUid(creator);
 
-				// 3.3 推送给其他成员
+				// 4.3 推送给其他成员
 				onlineUsersList.remove(uid);
 				List<Long> otherMembers = new ArrayList<>(onlineUsersList);
 
 				WsBaseResp<ChatMessageResp> othersResp = WsAdapter.buildMsgSend(chatService.getMsgResp(message, null));
 				// 恢复原始发送者显示
 				othersResp.getData().getFromUser().setUid(originalFromUid + "");
-				pushService.sendPushMsg(othersResp, otherMembers, dto.getUid());
-				asyncSavePassageMsg(message.getId(), othersResp, onlineUsersList, dto.getUid());
+				pushService.sendPushMsg(othersResp, otherMembers, operatorUid);
+				asyncSavePassageMsg(message.getId(), othersResp, onlineUsersList, operatorUid);
 				message.setFromUid(originalFromUid);
 			}
 			default -> {
 				// 常规消息处理
 				WsBaseResp<ChatMessageResp> wsBaseResp = WsAdapter.buildMsgSend(chatService.getMsgResp(message, null));
-				pushService.sendPushMsg(wsBaseResp, new ArrayList<>(onlineUsersList), dto.getUid());
-				asyncSavePassageMsg(message.getId(), wsBaseResp, onlineUsersList, dto.getUid());
+				pushService.sendPushMsg(wsBaseResp, new ArrayList<>(onlineUsersList), operatorUid);
+				asyncSavePassageMsg(message.getId(), wsBaseResp, onlineUsersList, operatorUid);
 			}
 		}
-    }
+	}
+
+	/**
+	 * 写入房间最近消息缓存，失败时让缓存失效，避免消息列表缺这一条
+	 */
+	private void appendRecentMsg(Message message) {
+		if (!Objects.equals(message.getStatus(), MessageStatusEnum.NORMAL.getStatus())) {
+			return;
+		}
+		try {
+			roomRecentMsgCache.append(message.getRoomId(), message.getId());
+		} catch (Exception e) {
+			log.error("写入房间最近消息缓存失败: roomId={}, msgId={}", message.getRoomId(), message.getId(), e);
+			roomRecentMsgCache.evict(message.getRoomId());
+		}
+	}
 
 	/**
 	 * 这里理论上一定会比 pushService 到达前端后在ack给后端 先执行完成
@@ -136,8 +209,8 @@ public class MsgSendConsumer implements RocketMQListener<MsgSendMessageDTO> {
 	 */
 	@Async
 	public void asyncSavePassageMsg(Long messageId, WsBaseResp<?> wsBaseResp, Set<Long> memberUidList, Long cuid) {
-		// 1. 发送重试消息
-		pushService.sendPushMsgWithRetry(wsBaseResp, new ArrayList<>(memberUidList), messageId, cuid);
+		// 1. 交给时间轮跟踪，到期未回执再重推
+		inFlightTracker.track(wsBaseResp, memberUidList, messageId, cuid);
 
 		// 2. 给每条消息加入 在途的状态
 		memberUidList.forEach(memberUid -> {
@@ -0,0 +1,221 @@
+package com.luohuo.flex.im.core.chat.consumer;
+
+import com.luohuo.basic.context.ContextUtil;
+import com.luohuo.flex.im.common.config.MsgSendLaneProperties;
+import com.luohuo.flex.im.domain.entity.Message;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * 消息下发分道执行
+ * <p>
+ * 按 roomId 把消息散列到固定数量的道上，每条道一个线程顺序处理，同一房间的消息保持先后顺序，不同房间并行。
+ * 道上积压时一次取出多条，同一房间的消息合并成一批交给处理函数，成员、在线状态等查询每批只做一次。
+ * 消费线程等待消息处理完成后才返回，处理失败时抛出异常交给 MQ 重投，投递语义与逐条消费一致。
+ * 等待超时时，还没开始处理的消息标记为已领取后交给 MQ 重投，道上不再处理；已经开始处理的继续等待结果，避免重复下发。
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MsgSendLanes {
+
+	private static final String METRIC_PREFIX = "im.msg.send.lane.";
+
+	private final MsgSendLaneProperties properties;
+	private final MeterRegistry meterRegistry;
+
+	private Lane[] lanes;
+	private volatile boolean running;
+
+	/**
+	 * 道上的一条消息
+	 * @param message 消息
+	 * @param uid 操作人
+	 * @param context 消费线程上的上下文（租户等），处理时还原
+	 * @param started 道上开始处理或消费线程放弃时置位，只有置位成功的一方处理这条消息
+	 */
+	public record Task(Message message, Long uid, Map<String, String> context, long enqueueNanos,
+					   AtomicBoolean started, CompletableFuture<Void> done) {
+	}
+
+	/**
+	 * 启动各条道
+	 * @param handler 处理同一房间的一批消息（按入队顺序），可以自行完成单条消息的 done，未完成的在返回后视为成功
+	 */
+	public synchronized void start(BiConsumer<Long, List<Task>> handler) {
+		if (running) {
+			return;
+		}
+		running = true;
+		lanes = new Lane[Math.max(1, properties.getLanes())];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Lane(i, handler);
+			lanes[i].thread.start();
+		}
+	}
+
+	/**
+	 * 提交一条消息并等待处理完成
+	 * @param message 消息
+	 * @param uid 操作人
+	 */
+	public void execute(Message message, Long uid) {
+		if (!running) {
+			throw new IllegalStateException("msg send lanes not running");
+		}
+		Lane lane = lanes[Math.floorMod(Long.hashCode(message.getRoomId()), lanes.length)];
+		Task task = new Task(message, uid, new HashMap<>(ContextUtil.getLocalMap()), System.nanoTime(), new AtomicBoolean(), new CompletableFuture<>());
+		long timeout = properties.getTimeout();
+		try {
+			if (!lane.queue.offer(task, timeout, TimeUnit.MILLISECONDS)) {
+				throw new IllegalStateException("msg send lane " + lane.index + " is full");
+			}
+			try {
+				task.done().get(timeout, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// 还没开始处理的放弃掉交给 MQ 重投，已经开始处理的等待结果
+				if (task.started().compareAndSet(false, true)) {
+					task.done().cancel(false);
+					throw new IllegalStateException("msg send lane " + lane.index + " timed out, msgId=" + message.getId(), e);
+				}
+				task.done().get();
+			}
+		} catch (InterruptedException e) {
+			task.started().compareAndSet(false, true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for msg send lane", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	@PreDestroy
+	public synchronized void destroy() {
+		running = false;
+		if (lanes == null) {
+			return;
+		}
+		for (Lane lane : lanes) {
+			lane.thread.interrupt();
+		}
+		for (Lane lane : lanes) {
+			try {
+				lane.thread.join(properties.getTimeout());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			// 未处理的消息交还给 MQ 重投
+			List<Task> rest = new ArrayList<>();
+			lane.queue.drainTo(rest);
+			rest.forEach(task -> task.done().completeExceptionally(new IllegalStateException("msg send lane stopped")));
+		}
+	}
+
+	private class Lane implements Runnable {
+
+		private final int index;
+		private final BiConsumer<Long, List<Task>> handler;
+		private final BlockingQueue<Task> queue;
+		private final Thread thread;
+		private final Timer lagTimer;
+		private final Timer processTimer;
+		private final DistributionSummary batchSizeSummary;
+
+		Lane(int index, BiConsumer<Long, List<Task>> handler) {
+			this.index = index;
+			this.handler = handler;
+			this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+			this.thread = new Thread(this, "msg-send-lane-" + index);
+			this.thread.setDaemon(true);
+			String lane = String.valueOf(index);
+			this.lagTimer = Timer.builder(METRIC_PREFIX + "lag")
+					.description("Time a message waits on its lane before being processed")
+					.tag("lane", lane)
+					.register(meterRegistry);
+			this.processTimer = Timer.builder(METRIC_PREFIX + "process")
+					.description("Time spent processing one room batch")
+					.tag("lane", lane)
+					.register(meterRegistry);
+			this.batchSizeSummary = DistributionSummary.builder(METRIC_PREFIX + "batch.size")
+					.description("Messages of one room coalesced into one batch")
+					.tag("lane", lane)
+					.register(meterRegistry);
+			Gauge.builder(METRIC_PREFIX + "depth", queue, BlockingQueue::size)
+					.description("Messages waiting on the lane")
+					.tag("lane", lane)
+					.register(meterRegistry);
+		}
+
+		@Override
+		public void run() {
+			List<Task> drained = new ArrayList<>();
+			while (running) {
+				try {
+					Task first = queue.poll(1, TimeUnit.SECONDS);
+					if (first == null) {
+						continue;
+					}
+					drained.add(first);
+					queue.drainTo(drained, Math.max(0, properties.getMaxBatch() - 1));
+
+					// 同一房间的消息合并，房间之间、房间内部都保持入队顺序，已被消费线程放弃的跳过
+					Map<Long, List<Task>> byRoom = new LinkedHashMap<>();
+					for (Task task : drained) {
+						if (task.started().compareAndSet(false, true)) {
+							byRoom.computeIfAbsent(task.message().getRoomId(), k -> new ArrayList<>()).add(task);
+						}
+					}
+					byRoom.forEach(this::process);
+				} catch (InterruptedException e) {
+					if (running) {
+						log.warn("消息下发分道线程被中断: lane={}", index);
+					}
+				} finally {
+					drained.clear();
+				}
+			}
+		}
+
+		private void process(Long roomId, List<Task> tasks) {
+			long start = System.nanoTime();
+			tasks.forEach(task -> lagTimer.record(start - task.enqueueNanos(), TimeUnit.NANOSECONDS));
+			try {
+				handler.accept(roomId, tasks);
+				tasks.forEach(task -> task.done().complete(null));
+			} catch (Exception e) {
+				log.error("消息下发失败: roomId={}, size={}", roomId, tasks.size(), e);
+				tasks.forEach(task -> task.done().completeExceptionally(e));
+			} finally {
+				ContextUtil.remove();
+			}
+			batchSizeSummary.record(tasks.size());
+			processTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+}
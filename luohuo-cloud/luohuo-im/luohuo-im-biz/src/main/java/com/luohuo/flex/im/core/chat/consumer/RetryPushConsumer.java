@@ -19,6 +19,7 @@ import java.util.Map;
 /**
  * 消息推送延迟二次推送专属消费者 [系统自己发起]
  * 收到重试消息之后判断路由的uid是否传递的消息是否还在途中，再途的话再次发送
+ * 常规重试已由 InFlightTracker 在本机完成，这里只处理超出本机容量或停机时转交过来的投递
  * @author 乾乾
  */
 @Slf4j
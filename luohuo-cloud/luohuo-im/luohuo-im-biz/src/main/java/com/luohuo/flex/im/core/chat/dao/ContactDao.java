@@ -17,6 +17,8 @@ import com.luohuo.flex.im.domain.entity.Message;
 import com.luohuo.flex.im.core.chat.mapper.ContactMapper;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -69,6 +71,33 @@ public class ContactDao extends ServiceImpl<ContactMapper, Contact> {
                 .count());
     }
 
+    /**
+     * 还没读到这条消息的成员（不含发送者）
+     */
+    public List<Long> getUnReadUids(Message message) {
+        return lambdaQuery()
+                .select(Contact::getUid)
+                .eq(Contact::getRoomId, message.getRoomId())
+                .ne(Contact::getUid, message.getFromUid())
+                .lt(Contact::getReadTime, message.getCreateTime())
+                .list()
+                .stream().map(Contact::getUid).collect(Collectors.toList());
+    }
+
+    /**
+     * 房间内所有会话的用户
+     */
+    public List<Long> getUidsByRoomIds(Collection<Long> roomIds) {
+        if (CollectionUtil.isEmpty(roomIds)) {
+            return new ArrayList<>();
+        }
+        return lambdaQuery()
+                .select(Contact::getUid)
+                .in(Contact::getRoomId, roomIds)
+                .list()
+                .stream().map(Contact::getUid).distinct().collect(Collectors.toList());
+    }
+
     public CursorPageBaseResp<Contact> getReadPage(Message message, CursorPageBaseReq cursorPageBaseReq) {
         return CursorUtils.getCursorPageByMysql(this, cursorPageBaseReq, wrapper -> {
             wrapper.eq(Contact::getRoomId, message.getRoomId());
@@ -103,6 +132,11 @@ public class ContactDao extends ServiceImpl<ContactMapper, Contact> {
         baseMapper.refreshOrCreateActiveTime(roomId, memberUidList, msgId, activeTime);
     }
 
+	@TenantIgnore
+	public void batchRefreshOrCreateActiveTime(List<Contact> contactList) {
+		baseMapper.batchRefreshOrCreateActiveTime(contactList);
+	}
+
 	@TenantIgnore
 	public void refreshOrCreateActive(Object roomId, List<Long> memberUidList, Object msgId, Object activeTime) {
 		baseMapper.refreshOrCreateActive(roomId, memberUidList, msgId, activeTime);
@@ -38,6 +38,43 @@ public class MessageDao extends ServiceImpl<MessageMapper, Message> {
         }, Message::getId);
     }
 
+    /**
+     * 房间最新的 limit 条正常消息id，倒序
+     */
+    public List<Long> getLatestIds(Long roomId, int limit) {
+        return lambdaQuery()
+                .select(Message::getId)
+                .eq(Message::getRoomId, roomId)
+                .eq(Message::getStatus, MessageStatusEnum.NORMAL.getStatus())
+                .orderByDesc(Message::getId)
+                .last("limit " + limit)
+                .list()
+                .stream().map(Message::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 房间中id小于 msgId 的正常消息条数
+     */
+    public long countBefore(Long roomId, Long msgId) {
+        return lambdaQuery()
+                .eq(Message::getRoomId, roomId)
+                .eq(Message::getStatus, MessageStatusEnum.NORMAL.getStatus())
+                .lt(Message::getId, msgId)
+                .count();
+    }
+
+    /**
+     * 用户发过消息的房间
+     */
+    public List<Long> getRoomIdsByFromUid(Long uid) {
+        return lambdaQuery()
+                .select(Message::getRoomId)
+                .eq(Message::getFromUid, uid)
+                .groupBy(Message::getRoomId)
+                .list()
+                .stream().map(Message::getRoomId).collect(Collectors.toList());
+    }
+
     /**
      * 乐观更新消息类型
      */
@@ -20,6 +20,12 @@ public interface ContactMapper extends BaseMapper<Contact> {
 
     void refreshOrCreateActiveTime(@Param("roomId") Long roomId, @Param("memberUidList") List<Long> memberUidList, @Param("msgId") Long msgId, @Param("activeTime") LocalDateTime activeTime);
 
+	/**
+	 * 批量刷新会话的最后一条消息
+	 * @param contactList 只需要 roomId、uid、lastMsgId、activeTime
+	 */
+	void batchRefreshOrCreateActiveTime(@Param("contactList") List<Contact> contactList);
+
 	/**
 	 * 刷新会话状态，ack专用
 	 */
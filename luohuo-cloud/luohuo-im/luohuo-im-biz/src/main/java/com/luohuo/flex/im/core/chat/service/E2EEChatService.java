@@ -11,6 +11,7 @@ import com.luohuo.flex.im.domain.vo.request.ChatMessageReq;
 import com.luohuo.flex.model.entity.ws.ChatMessageResp;
 import com.luohuo.flex.im.domain.vo.response.EncryptedMessageListItemVO;
 import com.luohuo.flex.im.core.chat.dao.MessageDao;
+import com.luohuo.flex.im.core.chat.service.cache.MsgCache;
 import com.luohuo.flex.im.core.e2ee.mapper.MessageEncryptedMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -37,6 +38,7 @@ public class E2EEChatService {
     private final E2EEMessageService e2eeMessageService;
     private final ApplicationEventPublisher applicationEventPublisher;
     private final MessageDao messageDao;
+    private final MsgCache msgCache;
     private final MessageEncryptedMapper messageEncryptedMapper;
 
     /**
@@ -155,6 +157,7 @@ public class E2EEChatService {
      */
     private void updateMessage(Message message) {
         messageDao.updateById(message);
+        msgCache.delete(message.getId());
     }
 
     /**
@@ -0,0 +1,278 @@
+package com.luohuo.flex.im.core.chat.service.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.NumberUtil;
+import com.luohuo.flex.im.common.constant.RedisKey;
+import com.luohuo.flex.im.core.chat.dao.ContactDao;
+import com.luohuo.flex.im.core.chat.dao.MessageDao;
+import com.luohuo.flex.im.domain.entity.Contact;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话未读数缓存
+ * <p>
+ * 每个用户一个 hash: roomId -> 未读数，消息下发时累加、已读时清零，
+ * 会话列表直接 HGETALL，不再每次按 read_time 去 im_message 里 COUNT。
+ * 消息撤回时给未读的成员 -1，消息批量删除时丢弃受影响用户的 hash，下次加载重新统计。
+ * 计数只在 Redis 中维护，不回写数据库：hash 过期或被丢弃期间的增减都没有记录，回写的值也无法作为统计来源。
+ * <p>
+ * hash 里的 {@link #INIT_FIELD} 表示该用户的计数已经从数据库初始化过，
+ * 没有初始化的用户不做累加，等加载会话列表时按 read_time 整体统计一次。
+ * 统计前先递增 hash 里的 {@link #VERSION_FIELD}，统计期间的累加、扣减、已读和丢弃都会再递增版本，
+ * 写回时版本已变说明统计结果可能漏掉了这些变更，放弃写回，下次加载重新统计。
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContactUnreadCache {
+
+	private static final String INIT_FIELD = "_init";
+	private static final String VERSION_FIELD = "_ver";
+	private static final long EXPIRE_SECONDS = TimeUnit.DAYS.toSeconds(30);
+	// 正在统计、尚未初始化的 hash 只保留版本，统计超时后自然过期
+	private static final long LOADING_EXPIRE_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+	private static final int BATCH_SIZE = 500;
+
+	/**
+	 * KEYS[1..n] 各成员的未读 hash
+	 * ARGV[1] 初始化标记, ARGV[2] 版本字段, ARGV[3] roomId, ARGV[4] 过期秒数
+	 * 未初始化但正在统计的 hash 只递增版本
+	 */
+	private static final RedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>("""
+			local hit = 0
+			for i = 1, #KEYS do
+				if redis.call('HEXISTS', KEYS[i], ARGV[1]) == 1 then
+					redis.call('HINCRBY', KEYS[i], ARGV[3], 1)
+					redis.call('EXPIRE', KEYS[i], ARGV[4])
+					hit = hit + 1
+				elseif redis.call('HEXISTS', KEYS[i], ARGV[2]) == 1 then
+					redis.call('HINCRBY', KEYS[i], ARGV[2], 1)
+				end
+			end
+			return hit
+			""", Long.class);
+
+	/**
+	 * KEYS[1..n] 各成员的未读 hash
+	 * ARGV[1] 初始化标记, ARGV[2] 版本字段, ARGV[3] roomId, ARGV[4] 过期秒数
+	 * 计数已经是 0 的不再减，避免撤回早于累加时出现负数
+	 */
+	private static final RedisScript<Long> DECR_SCRIPT = new DefaultRedisScript<>("""
+			local hit = 0
+			for i = 1, #KEYS do
+				if redis.call('HEXISTS', KEYS[i], ARGV[1]) == 1 then
+					if tonumber(redis.call('HGET', KEYS[i], ARGV[3]) or '0') > 0 then
+						redis.call('HINCRBY', KEYS[i], ARGV[3], -1)
+						redis.call('EXPIRE', KEYS[i], ARGV[4])
+						hit = hit + 1
+					end
+				elseif redis.call('HEXISTS', KEYS[i], ARGV[2]) == 1 then
+					redis.call('HINCRBY', KEYS[i], ARGV[2], 1)
+				end
+			end
+			return hit
+			""", Long.class);
+
+	/**
+	 * KEYS[1] 未读 hash
+	 * ARGV[1] 初始化标记, ARGV[2] 版本字段, ARGV[3] roomId, ARGV[4] 过期秒数
+	 */
+	private static final RedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then
+				if redis.call('HEXISTS', KEYS[1], ARGV[2]) == 1 then
+					redis.call('HINCRBY', KEYS[1], ARGV[2], 1)
+				end
+				return 0
+			end
+			redis.call('HSET', KEYS[1], ARGV[3], 0)
+			redis.call('EXPIRE', KEYS[1], ARGV[4])
+			return 1
+			""", Long.class);
+
+	/**
+	 * KEYS[1..n] 各成员的未读 hash
+	 * ARGV[1] 版本字段, ARGV[2] 统计中 hash 的过期秒数
+	 * 丢弃计数但保留递增后的版本，正在进行的统计不会写回删除前的结果
+	 */
+	private static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>("""
+			for i = 1, #KEYS do
+				local version = redis.call('HGET', KEYS[i], ARGV[1])
+				redis.call('DEL', KEYS[i])
+				if version then
+					redis.call('HSET', KEYS[i], ARGV[1], tonumber(version) + 1)
+					redis.call('EXPIRE', KEYS[i], ARGV[2])
+				end
+			end
+			return 1
+			""", Long.class);
+
+	/**
+	 * KEYS[1] 未读 hash
+	 * ARGV[1] 初始化标记, ARGV[2] 版本字段, ARGV[3] 统计中 hash 的过期秒数
+	 * 已初始化时返回 0，否则递增版本并返回统计开始时的版本
+	 */
+	private static final RedisScript<Long> BEGIN_LOAD_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then
+				return 0
+			end
+			local version = redis.call('HINCRBY', KEYS[1], ARGV[2], 1)
+			redis.call('EXPIRE', KEYS[1], ARGV[3])
+			return version
+			""", Long.class);
+
+	/**
+	 * KEYS[1] 未读 hash
+	 * ARGV[1] 初始化标记, ARGV[2] 版本字段, ARGV[3] 统计开始时的版本, ARGV[4] 过期秒数, ARGV[5..] roomId 与未读数成对出现
+	 */
+	private static final RedisScript<Long> FINISH_LOAD_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 or redis.call('HGET', KEYS[1], ARGV[2]) ~= ARGV[3] then
+				return 0
+			end
+			for i = 5, #ARGV, 2 do
+				redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+			end
+			redis.call('HSET', KEYS[1], ARGV[1], 1)
+			redis.call('EXPIRE', KEYS[1], ARGV[4])
+			return 1
+			""", Long.class);
+
+	private final StringRedisTemplate stringRedisTemplate;
+	private final ContactDao contactDao;
+	private final MessageDao messageDao;
+
+	/**
+	 * 新消息下发，给接收方的未读数 +1
+	 * @param roomId 房间id
+	 * @param uidList 接收方，需要排除发送者
+	 */
+	public void incr(Long roomId, Collection<Long> uidList) {
+		execute(INCR_SCRIPT, roomId, uidList);
+	}
+
+	/**
+	 * 消息撤回，给还没读到这条消息的成员未读数 -1
+	 * @param roomId 房间id
+	 * @param uidList 已读时间早于消息发送时间的成员，需要排除发送者
+	 */
+	public void decr(Long roomId, Collection<Long> uidList) {
+		execute(DECR_SCRIPT, roomId, uidList);
+	}
+
+	private void execute(RedisScript<Long> script, Long roomId, Collection<Long> uidList) {
+		if (CollUtil.isEmpty(uidList)) {
+			return;
+		}
+		for (List<Long> batch : CollUtil.split(uidList, BATCH_SIZE)) {
+			stringRedisTemplate.execute(script, batch.stream().map(this::getKey).toList(),
+					INIT_FIELD, VERSION_FIELD, String.valueOf(roomId), String.valueOf(EXPIRE_SECONDS));
+		}
+	}
+
+	/**
+	 * 丢弃用户的未读计数，下次加载会话列表时从数据库重新统计
+	 * <p>
+	 * 用于一次删除多条消息、无法逐条扣减的场景
+	 */
+	public void evict(Collection<Long> uidList) {
+		if (CollUtil.isEmpty(uidList)) {
+			return;
+		}
+		for (List<Long> batch : CollUtil.split(uidList, BATCH_SIZE)) {
+			stringRedisTemplate.execute(EVICT_SCRIPT, batch.stream().map(this::getKey).toList(),
+					VERSION_FIELD, String.valueOf(LOADING_EXPIRE_SECONDS));
+		}
+	}
+
+	/**
+	 * 已读，清零该会话的未读数
+	 * <p>
+	 * 调用方先更新 read_time；hash 未初始化时无需处理，下次加载会按新的 read_time 统计
+	 */
+	public void reset(Long uid, Long roomId) {
+		stringRedisTemplate.execute(RESET_SCRIPT, List.of(getKey(uid)),
+				INIT_FIELD, VERSION_FIELD, String.valueOf(roomId), String.valueOf(EXPIRE_SECONDS));
+	}
+
+	/**
+	 * 获取用户所有会话的未读数
+	 * @return roomId -> 未读数，没有记录的会话为 0
+	 */
+	public Map<Long, Integer> getUnreadMap(Long uid) {
+		Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(getKey(uid));
+		if (entries.containsKey(INIT_FIELD)) {
+			return parse(entries);
+		}
+		return init(uid);
+	}
+
+	/**
+	 * hash 未初始化时统计计数：按 read_time 统计一次，没有未读消息的会话记为 0；
+	 * 统计期间计数有变动时不写回，本次仍返回统计结果
+	 */
+	private Map<Long, Integer> init(Long uid) {
+		String key = getKey(uid);
+		Long version = stringRedisTemplate.execute(BEGIN_LOAD_SCRIPT, List.of(key),
+				INIT_FIELD, VERSION_FIELD, String.valueOf(LOADING_EXPIRE_SECONDS));
+		if (version == null || version == 0) {
+			// 其他线程刚完成初始化
+			return parse(stringRedisTemplate.opsForHash().entries(key));
+		}
+
+		List<Contact> contactList = contactDao.getAllContactsByUid(uid);
+		Map<Long, Integer> unreadMap = new HashMap<>(contactList.size());
+		List<Contact> countList = new ArrayList<>();
+		for (Contact contact : contactList) {
+			unreadMap.put(contact.getRoomId(), 0);
+			if (Objects.nonNull(contact.getReadTime())) {
+				countList.add(contact);
+			}
+		}
+		for (List<Contact> batch : CollUtil.split(countList, BATCH_SIZE)) {
+			unreadMap.putAll(messageDao.batchGetUnReadCount(uid, batch));
+		}
+
+		List<String> args = new ArrayList<>(unreadMap.size() * 2 + 4);
+		args.add(INIT_FIELD);
+		args.add(VERSION_FIELD);
+		args.add(String.valueOf(version));
+		args.add(String.valueOf(EXPIRE_SECONDS));
+		unreadMap.forEach((roomId, count) -> {
+			args.add(String.valueOf(roomId));
+			args.add(String.valueOf(count));
+		});
+		Long written = stringRedisTemplate.execute(FINISH_LOAD_SCRIPT, List.of(key), args.toArray());
+		if (written == null || written == 0) {
+			log.debug("会话未读数统计期间有变动，放弃写回: uid={}", uid);
+		}
+		return unreadMap;
+	}
+
+	private Map<Long, Integer> parse(Map<Object, Object> entries) {
+		Map<Long, Integer> unreadMap = new HashMap<>(entries.size());
+		entries.forEach((field, value) -> {
+			if (NumberUtil.isLong(field.toString())) {
+				unreadMap.put(Long.parseLong(field.toString()), Math.max(0, Integer.parseInt(value.toString())));
+			}
+		});
+		return unreadMap;
+	}
+
+	private String getKey(Long uid) {
+		return RedisKey.getKey(RedisKey.CONTACT_UNREAD_FORMAT, uid);
+	}
+}
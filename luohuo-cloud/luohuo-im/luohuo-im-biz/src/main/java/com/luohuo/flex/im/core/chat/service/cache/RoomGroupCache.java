@@ -44,6 +44,15 @@ public class RoomGroupCache extends AbstractRedisStringCache<Long, RoomGroup> {
 		return roomGroupDao.getByRoomId(roomId);
 	}
 
+	/**
+	 * 根据群id查询房间id，两者的对应关系创建后不再变化
+	 */
+	@Cacheable(cacheNames = "luohuo:room:groupRoom", key = "#groupId", unless = "#result == null")
+	public Long getRoomIdByGroupId(Long groupId) {
+		RoomGroup roomGroup = roomGroupDao.getById(groupId);
+		return roomGroup == null ? null : roomGroup.getRoomId();
+	}
+
 	public boolean removeById(Serializable id) {
 		return roomGroupDao.removeById(id);
 	}
@@ -0,0 +1,259 @@
+package com.luohuo.flex.im.core.chat.service.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.luohuo.flex.im.common.config.RoomRecentMsgProperties;
+import com.luohuo.flex.im.common.constant.RedisKey;
+import com.luohuo.flex.im.core.chat.dao.MessageDao;
+import com.luohuo.flex.im.domain.entity.Message;
+import com.luohuo.flex.im.domain.enums.MessageStatusEnum;
+import com.luohuo.flex.im.domain.vo.req.CursorPageBaseReq;
+import com.luohuo.flex.im.domain.vo.res.CursorPageBaseResp;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 房间最近消息缓存
+ * <p>
+ * 每个房间一个 zset，只保存最新 capacity 条正常消息的id（补齐到 19 位、分值都为 0，按字典序即按id排序），
+ * 消息实体走 {@link MsgCache}。活跃群里大量成员打开同一个房间时，前几页直接从这里读，
+ * 翻到缓存之前的历史消息再回源数据库。
+ * <p>
+ * 另有一个计数 key 记录缓存之前还有多少条消息（用于 total 和判断是否已到底），它存在即表示缓存已从数据库初始化过。
+ * 未初始化的房间也照常追加，初始化时与数据库结果合并，避免初始化期间新到的消息丢失。
+ * 消息被删除时整体失效，撤回只改类型，清理 MsgCache 即可。
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoomRecentMsgCache {
+
+	private static final String ID_FORMAT = "%019d";
+
+	/**
+	 * KEYS[1] 消息 zset, KEYS[2] 计数
+	 * ARGV[1] 消息id, ARGV[2] 容量, ARGV[3] 过期秒数
+	 */
+	private static final RedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('ZADD', KEYS[1], 0, ARGV[1]) == 0 then
+				return 0
+			end
+			local removed = 0
+			local overflow = redis.call('ZCARD', KEYS[1]) - tonumber(ARGV[2])
+			if overflow > 0 then
+				removed = redis.call('ZREMRANGEBYRANK', KEYS[1], 0, overflow - 1)
+			end
+			redis.call('EXPIRE', KEYS[1], ARGV[3])
+			if redis.call('EXISTS', KEYS[2]) == 1 then
+				if removed > 0 then
+					redis.call('INCRBY', KEYS[2], removed)
+				end
+				redis.call('EXPIRE', KEYS[2], ARGV[3])
+			end
+			return 1
+			""", Long.class);
+
+	/**
+	 * KEYS[1] 消息 zset
+	 * ARGV[1] 容量, ARGV[2] 过期秒数, ARGV[3..n] 数据库中最新的消息id
+	 * 返回 {合并裁剪后最早的消息id, 裁剪掉的条数}
+	 */
+	private static final RedisScript<List> MERGE_SCRIPT = new DefaultRedisScript<>("""
+			for i = 3, #ARGV do
+				redis.call('ZADD', KEYS[1], 0, ARGV[i])
+			end
+			local removed = 0
+			local overflow = redis.call('ZCARD', KEYS[1]) - tonumber(ARGV[1])
+			if overflow > 0 then
+				removed = redis.call('ZREMRANGEBYRANK', KEYS[1], 0, overflow - 1)
+			end
+			redis.call('EXPIRE', KEYS[1], ARGV[2])
+			local floor = redis.call('ZRANGE', KEYS[1], 0, 0)
+			return {floor[1] or '', tostring(removed)}
+			""", List.class);
+
+	/**
+	 * KEYS[1] 消息 zset, KEYS[2] 计数
+	 * ARGV[1] 合并时最早的消息id, ARGV[2] 计数, ARGV[3] 过期秒数
+	 * 合并后又有消息被裁剪时放弃，下次读取重新初始化
+	 */
+	private static final RedisScript<Long> MARK_SCRIPT = new DefaultRedisScript<>("""
+			local floor = redis.call('ZRANGE', KEYS[1], 0, 0)
+			if (floor[1] or '') ~= ARGV[1] then
+				return 0
+			end
+			redis.call('SET', KEYS[2], ARGV[2], 'EX', ARGV[3])
+			return 1
+			""", Long.class);
+
+	/**
+	 * KEYS[1] 消息 zset, KEYS[2] 计数
+	 * ARGV[1] 上界（字典序区间）, ARGV[2] 条数
+	 * 返回 {计数, 上界以内的条数, id...}，未初始化返回空
+	 */
+	private static final RedisScript<List> READ_SCRIPT = new DefaultRedisScript<>("""
+			local deep = redis.call('GET', KEYS[2])
+			if not deep then
+				return {}
+			end
+			local ids = redis.call('ZREVRANGEBYLEX', KEYS[1], ARGV[1], '-', 'LIMIT', 0, ARGV[2])
+			local result = {deep, tostring(redis.call('ZLEXCOUNT', KEYS[1], '-', ARGV[1]))}
+			for i = 1, #ids do
+				result[#result + 1] = ids[i]
+			end
+			return result
+			""", List.class);
+
+	private final StringRedisTemplate stringRedisTemplate;
+	private final RoomRecentMsgProperties properties;
+	private final MessageDao messageDao;
+	private final MsgCache msgCache;
+
+	/**
+	 * 一次读取的结果
+	 * @param ids 上界以内的消息id，倒序
+	 * @param count 缓存中上界以内的消息条数
+	 * @param deep 缓存之前的消息条数
+	 */
+	private record Slice(List<Long> ids, long count, long deep) {
+	}
+
+	/**
+	 * 新消息入缓存
+	 */
+	public void append(Long roomId, Long msgId) {
+		stringRedisTemplate.execute(APPEND_SCRIPT, keys(roomId), member(msgId),
+				String.valueOf(properties.getCapacity()), String.valueOf(expireSeconds()));
+	}
+
+	/**
+	 * 房间内有消息被删除，整体失效，下次读取时从数据库重建
+	 */
+	public void evict(Long roomId) {
+		stringRedisTemplate.delete(keys(roomId));
+	}
+
+	public void evict(Collection<Long> roomIds) {
+		if (CollUtil.isEmpty(roomIds)) {
+			return;
+		}
+		List<String> keys = new ArrayList<>();
+		roomIds.forEach(roomId -> keys.addAll(keys(roomId)));
+		stringRedisTemplate.delete(keys);
+	}
+
+	/**
+	 * 从缓存读取一页消息，语义与 {@link MessageDao#getCursorPage} 一致
+	 *
+	 * @param lastMsgId 能看见的最大一条消息，为空不限制
+	 * @return 缓存不能完整覆盖这一页时返回 null，由调用方回源数据库
+	 */
+	public CursorPageBaseResp<Message> getCursorPage(Long roomId, CursorPageBaseReq request, Long lastMsgId) {
+		int pageSize = request.getPageSize();
+		if (!properties.isEnabled() || pageSize <= 0 || pageSize > properties.getCapacity()) {
+			return null;
+		}
+		Long maxId = lastMsgId;
+		if (StrUtil.isNotBlank(request.getCursor())) {
+			long cursor;
+			try {
+				cursor = Long.parseLong(request.getCursor());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			maxId = maxId == null ? cursor - 1 : Math.min(maxId, cursor - 1);
+		}
+		String max = maxId == null ? "+" : "[" + member(maxId);
+
+		Slice slice = read(roomId, max, pageSize);
+		if (slice == null) {
+			init(roomId);
+			slice = read(roomId, max, pageSize);
+		}
+		// 这一页有一部分在缓存之前
+		if (slice == null || (slice.ids().size() < pageSize && slice.deep() > 0)) {
+			return null;
+		}
+		if (slice.ids().isEmpty()) {
+			return new CursorPageBaseResp<>(null, true, new ArrayList<>(), slice.deep());
+		}
+
+		Map<Long, Message> messageMap = msgCache.getBatch(slice.ids());
+		List<Message> messages = new ArrayList<>(slice.ids().size());
+		for (Long msgId : slice.ids()) {
+			Message message = messageMap.get(msgId);
+			if (message == null || !Objects.equals(message.getStatus(), MessageStatusEnum.NORMAL.getStatus())) {
+				// 消息已不存在，说明有删除没有通知到缓存
+				evict(roomId);
+				return null;
+			}
+			messages.add(message);
+		}
+		String cursor = String.valueOf(messages.get(messages.size() - 1).getId());
+		return new CursorPageBaseResp<>(cursor, messages.size() != pageSize, messages, slice.count() + slice.deep());
+	}
+
+	private Slice read(Long roomId, String max, int limit) {
+		List<Object> result = stringRedisTemplate.execute(READ_SCRIPT, keys(roomId), max, String.valueOf(limit));
+		if (CollUtil.isEmpty(result)) {
+			return null;
+		}
+		List<Long> ids = new ArrayList<>(result.size() - 2);
+		for (int i = 2; i < result.size(); i++) {
+			ids.add(Long.valueOf(result.get(i).toString()));
+		}
+		return new Slice(ids, Long.parseLong(result.get(1).toString()), Long.parseLong(result.get(0).toString()));
+	}
+
+	/**
+	 * 用数据库中最新的消息初始化缓存
+	 */
+	private void init(Long roomId) {
+		int capacity = properties.getCapacity();
+		List<Long> latestIds = messageDao.getLatestIds(roomId, capacity);
+		List<String> args = new ArrayList<>(latestIds.size() + 2);
+		args.add(String.valueOf(capacity));
+		args.add(String.valueOf(expireSeconds()));
+		latestIds.forEach(msgId -> args.add(member(msgId)));
+		List<String> keys = keys(roomId);
+		List<Object> merged = stringRedisTemplate.execute(MERGE_SCRIPT, keys.subList(0, 1), args.toArray());
+		if (CollUtil.isEmpty(merged)) {
+			return;
+		}
+
+		String floor = merged.get(0).toString();
+		long removed = Long.parseLong(merged.get(1).toString());
+		long deep = 0;
+		// 数据库里不足 capacity 条并且没有被裁剪时，缓存就是全部消息
+		if (StrUtil.isNotEmpty(floor) && (latestIds.size() >= capacity || removed > 0)) {
+			deep = messageDao.countBefore(roomId, Long.valueOf(floor));
+		}
+		stringRedisTemplate.execute(MARK_SCRIPT, keys, floor, String.valueOf(deep), String.valueOf(expireSeconds()));
+	}
+
+	private long expireSeconds() {
+		return TimeUnit.HOURS.toSeconds(properties.getExpireHours());
+	}
+
+	private static String member(Long msgId) {
+		return String.format(ID_FORMAT, msgId);
+	}
+
+	private static List<String> keys(Long roomId) {
+		return List.of(RedisKey.getKey(RedisKey.ROOM_RECENT_MSG_FORMAT, roomId),
+				RedisKey.getKey(RedisKey.ROOM_RECENT_MSG_DEEP_FORMAT, roomId));
+	}
+}
@@ -8,6 +8,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.luohuo.basic.utils.SpringUtils;
 import com.luohuo.basic.utils.TimeUtils;
 import com.luohuo.flex.im.core.chat.dao.*;
+import com.luohuo.flex.im.core.chat.service.cache.ContactUnreadCache;
 import com.luohuo.flex.im.core.chat.service.cache.GroupMemberCache;
 import com.luohuo.flex.im.core.chat.service.cache.MsgCache;
 import com.luohuo.flex.im.core.user.dao.UserFriendDao;
@@ -34,6 +35,7 @@ import com.luohuo.flex.im.core.chat.service.ContactService;
 import com.luohuo.flex.im.core.chat.service.adapter.MessageAdapter;
 import com.luohuo.flex.im.core.chat.service.adapter.RoomAdapter;
 import com.luohuo.flex.im.core.chat.service.cache.RoomCache;
+import com.luohuo.flex.im.core.chat.service.cache.RoomRecentMsgCache;
 import com.luohuo.flex.im.core.chat.service.strategy.mark.AbstractMsgMarkStrategy;
 import com.luohuo.flex.im.core.chat.service.strategy.mark.MsgMarkFactory;
 import com.luohuo.flex.im.core.chat.service.strategy.msg.AbstractMsgHandler;
@@ -61,7 +63,9 @@ public class ChatServiceImpl implements ChatService {
     private RecallMsgHandler recallMsgHandler;
     private ContactService contactService;
     private ContactDao contactDao;
+    private ContactUnreadCache contactUnreadCache;
     private RoomCache roomCache;
+    private RoomRecentMsgCache roomRecentMsgCache;
     private GroupMemberDao groupMemberDao;
     /**
      * 发送消息
@@ -94,8 +98,8 @@ public class ChatServiceImpl implements ChatService {
         Room room = roomCache.get(roomId);
         Assert.notNull(room, "房间不存在!");
         if (room.isRoomGroup()) {
-//			GroupMember	member = groupMemberCache.getMemberDetail(roomId, uid);
-            GroupMember member = groupMemberDao.getMember(roomId, uid);
+			// 拉取消息走缓存，成员移除、屏蔽时会清理；发送消息仍查库，以最新状态为准
+			GroupMember member = isSend ? groupMemberDao.getMember(roomId, uid) : groupMemberCache.getMemberDetail(roomId, uid);
             Assert.notNull(member, "您已经被移除该群");
             Assert.isFalse(!isSend && member.getDeFriend(), "您已经屏蔽群聊!");
 			if (member.getDeFriend()) {
@@ -170,7 +174,11 @@ public class ChatServiceImpl implements ChatService {
         Long lastMsgId = getLastMsgId(request.getRoomId(), receiveUid);
         // 2. 判断我屏蔽会话没有权限
         check(false, request.getSkip(), false, request.getRoomId(), receiveUid);
-        CursorPageBaseResp<Message> cursorPage = messageDao.getCursorPage(request.getRoomId(), request, lastMsgId);
+        // 3. 前几页从房间最近消息缓存读取，翻到更早的历史再查库
+        CursorPageBaseResp<Message> cursorPage = roomRecentMsgCache.getCursorPage(request.getRoomId(), request, lastMsgId);
+        if (cursorPage == null) {
+            cursorPage = messageDao.getCursorPage(request.getRoomId(), request, lastMsgId);
+        }
 
         if (cursorPage.isEmpty()) {
             return CursorPageBaseResp.empty();
@@ -385,6 +393,7 @@ public class ChatServiceImpl implements ChatService {
             update.setId(contact.getId());
             update.setReadTime(LocalDateTime.now());
             contactDao.updateById(update);
+            contactUnreadCache.reset(uid, request.getRoomId());
         } else {
             log.error("uid --> ", uid, "roomId --> ", request.getRoomId());
 //            contactDao.save(uid, request.getRoomId());
@@ -0,0 +1,317 @@
+package com.luohuo.flex.im.core.chat.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.luohuo.basic.context.ContextUtil;
+import com.luohuo.flex.common.OnlineService;
+import com.luohuo.flex.im.common.config.LinkPreviewProperties;
+import com.luohuo.flex.im.common.constant.RedisKey;
+import com.luohuo.flex.im.common.utils.discover.AbstractUrlDiscover;
+import com.luohuo.flex.im.common.utils.discover.PrioritizedUrlDiscover;
+import com.luohuo.flex.im.core.chat.dao.MessageDao;
+import com.luohuo.flex.im.core.chat.dao.RoomFriendDao;
+import com.luohuo.flex.im.core.chat.service.ChatService;
+import com.luohuo.flex.im.core.chat.service.cache.GroupMemberCache;
+import com.luohuo.flex.im.core.chat.service.cache.MsgCache;
+import com.luohuo.flex.im.core.chat.service.cache.RoomCache;
+import com.luohuo.flex.im.core.user.service.adapter.WsAdapter;
+import com.luohuo.flex.im.core.user.service.impl.PushService;
+import com.luohuo.flex.im.domain.UrlInfo;
+import com.luohuo.flex.im.domain.entity.Message;
+import com.luohuo.flex.im.domain.entity.Room;
+import com.luohuo.flex.im.domain.entity.RoomFriend;
+import com.luohuo.flex.im.domain.entity.msg.MessageExtra;
+import com.luohuo.flex.im.domain.enums.MessageStatusEnum;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 消息链接预览
+ * <p>
+ * 原先在发送消息的事务里同步抓取网页，第三方网站慢时发送最多要等 5 秒并一直占着数据库连接。
+ * 现在事务提交后把消息交给独立的线程池解析，解析完成后回写消息的 extra，并向在线成员推送 msgUpdate。
+ * <p>
+ * 解析结果先查本地缓存，再查 Redis，都没有才抓取；抓取失败的链接也会短暂缓存，避免反复请求。
+ * 同一域名同时抓取的数量有上限，同一链接并发出现时只抓取一次。
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Component
+public class LinkPreviewService {
+
+	private static final PrioritizedUrlDiscover URL_DISCOVER = new PrioritizedUrlDiscover();
+	// 解析失败的占位
+	private static final UrlInfo EMPTY = new UrlInfo();
+
+	@Resource
+	private LinkPreviewProperties properties;
+	@Resource
+	private StringRedisTemplate stringRedisTemplate;
+	@Resource
+	private MessageDao messageDao;
+	@Resource
+	private MsgCache msgCache;
+	@Resource
+	private RoomCache roomCache;
+	@Resource
+	private RoomFriendDao roomFriendDao;
+	@Resource
+	private GroupMemberCache groupMemberCache;
+	@Resource
+	private OnlineService onlineService;
+	@Resource
+	private PushService pushService;
+	@Resource@Lazy
+	private ChatService chatService;
+
+	private Cache<String, UrlInfo> localCache;
+	// 域名 -> 抓取许可
+	private Cache<String, Semaphore> hostPermits;
+	// 正在抓取的链接，同一链接只抓一次
+	private final Map<String, CompletableFuture<UrlInfo>> fetching = new ConcurrentHashMap<>();
+
+	private ThreadPoolExecutor threadPool;
+	private Executor executor;
+
+	@PostConstruct
+	public void init() {
+		localCache = Caffeine.newBuilder()
+				.expireAfterWrite(Duration.ofSeconds(properties.getLocalExpireSeconds()))
+				.maximumSize(properties.getLocalMaxSize())
+				.build();
+		hostPermits = Caffeine.newBuilder()
+				.expireAfterAccess(Duration.ofMinutes(10))
+				.build();
+		threadPool = new ThreadPoolExecutor(properties.getPoolSize(), properties.getPoolSize(), 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+				new ThreadFactoryBuilder()
+						.setNameFormat("link-preview-%d")
+						.setDaemon(true)
+						.build(),
+				new ThreadPoolExecutor.AbortPolicy());
+		// 携带租户等上下文到解析线程
+		executor = ContextUtil.getContextAwareExecutor(threadPool);
+	}
+
+	/**
+	 * 异步解析消息中的链接
+	 * @param msgId 消息id
+	 * @param content 消息文本
+	 */
+	public void enrich(Long msgId, String content) {
+		if (!properties.isEnabled()) {
+			return;
+		}
+		List<String> urlList = AbstractUrlDiscover.findUrls(content);
+		if (urlList.isEmpty()) {
+			return;
+		}
+		List<String> targetList = urlList.size() > properties.getMaxUrls() ? urlList.subList(0, properties.getMaxUrls()) : urlList;
+		try {
+			executor.execute(() -> {
+				try {
+					Map<String, UrlInfo> urlContentMap = resolve(targetList);
+					if (!urlContentMap.isEmpty()) {
+						patch(msgId, urlContentMap);
+					}
+				} catch (Exception e) {
+					log.error("链接预览失败, msgId: {}", msgId, e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.warn("链接预览队列已满, 跳过消息: {}", msgId);
+		}
+	}
+
+	/**
+	 * 解析链接，超过等待时间的链接不再返回
+	 */
+	private Map<String, UrlInfo> resolve(List<String> urlList) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getTimeoutMillis());
+		Map<String, UrlInfo> resultMap = new LinkedHashMap<>();
+
+		// 1. 本地缓存
+		List<String> missList = new ArrayList<>();
+		for (String url : urlList) {
+			UrlInfo info = localCache.getIfPresent(url);
+			if (info == null) {
+				missList.add(url);
+			} else if (info != EMPTY) {
+				resultMap.put(url, info);
+			}
+		}
+		if (missList.isEmpty()) {
+			return resultMap;
+		}
+
+		// 2. Redis
+		List<String> cachedList = stringRedisTemplate.opsForValue().multiGet(missList.stream().map(this::getKey).toList());
+		List<String> fetchList = new ArrayList<>();
+		for (int i = 0; i < missList.size(); i++) {
+			String url = missList.get(i);
+			String json = cachedList == null ? null : cachedList.get(i);
+			if (json == null) {
+				fetchList.add(url);
+				continue;
+			}
+			UrlInfo info = json.isEmpty() ? EMPTY : JSONUtil.toBean(json, UrlInfo.class);
+			localCache.put(url, info);
+			if (info != EMPTY) {
+				resultMap.put(url, info);
+			}
+		}
+
+		// 3. 抓取
+		for (String url : fetchList) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				log.warn("链接预览超时, 未解析: {}", fetchList.subList(fetchList.indexOf(url), fetchList.size()));
+				break;
+			}
+			UrlInfo info = fetch(url, remaining);
+			if (info != null && info != EMPTY) {
+				resultMap.put(url, info);
+			}
+		}
+		return resultMap;
+	}
+
+	/**
+	 * 抓取链接，其他线程正在抓取同一链接时等待其结果
+	 */
+	private UrlInfo fetch(String url, long timeoutNanos) {
+		CompletableFuture<UrlInfo> own = new CompletableFuture<>();
+		CompletableFuture<UrlInfo> existing = fetching.putIfAbsent(url, own);
+		if (existing != null) {
+			try {
+				return existing.get(timeoutNanos, TimeUnit.NANOSECONDS);
+			} catch (TimeoutException | ExecutionException e) {
+				return null;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+
+		UrlInfo info = null;
+		try {
+			info = load(url);
+			return info;
+		} finally {
+			own.complete(info);
+			fetching.remove(url, own);
+		}
+	}
+
+	private UrlInfo load(String url) {
+		Semaphore permit = hostPermits.get(getHost(url), host -> new Semaphore(properties.getPerHostConcurrency()));
+		try {
+			if (!permit.tryAcquire(properties.getHostWaitMillis(), TimeUnit.MILLISECONDS)) {
+				// 域名繁忙时直接放弃，不记为失败
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		try {
+			UrlInfo info = URL_DISCOVER.getContent(url);
+			boolean empty = info == null || StrUtil.isAllBlank(info.getTitle(), info.getDescription(), info.getImage());
+			UrlInfo value = empty ? EMPTY : info;
+			localCache.put(url, value);
+			stringRedisTemplate.opsForValue().set(getKey(url), empty ? "" : JSONUtil.toJsonStr(info),
+					empty ? properties.getNegativeCacheSeconds() : properties.getCacheSeconds(), TimeUnit.SECONDS);
+			return value;
+		} finally {
+			permit.release();
+		}
+	}
+
+	/**
+	 * 回写消息并通知在线成员刷新
+	 */
+	private void patch(Long msgId, Map<String, UrlInfo> urlContentMap) {
+		Message message = messageDao.getById(msgId);
+		if (Objects.isNull(message) || !Objects.equals(message.getStatus(), MessageStatusEnum.NORMAL.getStatus())) {
+			return;
+		}
+
+		MessageExtra extra = Optional.ofNullable(message.getExtra()).orElse(new MessageExtra());
+		extra.setUrlContentMap(urlContentMap);
+		Message update = new Message();
+		update.setId(msgId);
+		update.setExtra(extra);
+		messageDao.updateById(update);
+		message.setExtra(extra);
+		msgCache.delete(msgId);
+
+		Set<Long> onlineUidList = onlineService.getOnlineUsersList(getMemberUidList(message.getRoomId()));
+		if (onlineUidList.isEmpty()) {
+			return;
+		}
+		pushService.sendPushMsg(WsAdapter.buildMsgUpdate(chatService.getMsgResp(message, null)), new ArrayList<>(onlineUidList), message.getFromUid());
+	}
+
+	private List<Long> getMemberUidList(Long roomId) {
+		Room room = roomCache.get(roomId);
+		if (Objects.isNull(room)) {
+			return new ArrayList<>();
+		}
+		if (room.isRoomGroup()) {
+			return Optional.ofNullable(groupMemberCache.getMemberExceptUidList(roomId)).orElseGet(ArrayList::new);
+		}
+		RoomFriend roomFriend = roomFriendDao.getByRoomId(roomId);
+		return Objects.isNull(roomFriend) ? new ArrayList<>() : List.of(roomFriend.getUid1(), roomFriend.getUid2());
+	}
+
+	private String getKey(String url) {
+		return RedisKey.getKey(RedisKey.URL_INFO_FORMAT, DigestUtil.md5Hex(url));
+	}
+
+	private static String getHost(String url) {
+		String target = StrUtil.startWith(url, "http") ? url : "http://" + url;
+		try {
+			String host = new URI(target).getHost();
+			return host == null ? target : host.toLowerCase();
+		} catch (URISyntaxException e) {
+			return target;
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		threadPool.shutdownNow();
+	}
+}
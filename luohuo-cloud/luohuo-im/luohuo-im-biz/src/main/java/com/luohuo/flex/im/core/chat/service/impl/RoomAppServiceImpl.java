@@ -97,8 +97,10 @@ import com.luohuo.flex.im.core.chat.service.cache.GroupMemberCache;
 import com.luohuo.flex.im.core.chat.service.cache.HotRoomCache;
 import com.luohuo.flex.im.core.chat.service.cache.RoomAnnouncementsCache;
 import com.luohuo.flex.im.core.chat.service.cache.RoomCache;
+import com.luohuo.flex.im.core.chat.service.cache.ContactUnreadCache;
 import com.luohuo.flex.im.core.chat.service.cache.RoomFriendCache;
 import com.luohuo.flex.im.core.chat.service.cache.RoomGroupCache;
+import com.luohuo.flex.im.core.chat.service.cache.RoomRecentMsgCache;
 import com.luohuo.flex.im.core.chat.service.strategy.msg.AbstractMsgHandler;
 import com.luohuo.flex.im.core.chat.service.strategy.msg.MsgHandlerFactory;
 import com.luohuo.flex.im.core.user.dao.UserDao;
@@ -147,6 +149,8 @@ public class RoomAppServiceImpl implements RoomAppService, InitializingBean {
 	private CachePlusOps cachePlusOps;
 	private UserCache userCache;
 	private MessageDao messageDao;
+	private ContactUnreadCache contactUnreadCache;
+	private RoomRecentMsgCache roomRecentMsgCache;
 	private HotRoomCache hotRoomCache;
 	private UserSummaryCache userSummaryCache;
 	private RoomAnnouncementsCache roomAnnouncementsCache;
@@ -1178,6 +1182,7 @@ public class RoomAppServiceImpl implements RoomAppService, InitializingBean {
 			});
 			// 4.5 告知所有人群已经被解散, 这里要走groupMemberDao查询，缓存中可能没有屏蔽群的用户
 			roomCache.delete(roomId);
+			roomRecentMsgCache.evict(roomId);
 			groupMemberCache.evictMemberList(room.getId());
 			groupMemberCache.evictExceptMemberList(room.getId());
 			groupMemberCache.evictAllMemberDetails();
@@ -1372,14 +1377,20 @@ public class RoomAppServiceImpl implements RoomAppService, InitializingBean {
 	}
 
 	/**
-	 * 获取未读数
+	 * 获取未读数，计数由 ContactUnreadCache 增量维护
+	 * @return 只包含 contactList 中的会话
 	 */
 	public Map<Long, Integer> getUnReadCountMap(Long uid, Collection<Contact> contactList) {
 		if (CollUtil.isEmpty(contactList)) {
 			return new HashMap<>();
 		}
 
-		return messageDao.batchGetUnReadCount(uid, contactList);
+		Map<Long, Integer> unreadMap = contactUnreadCache.getUnreadMap(uid);
+		Map<Long, Integer> result = new HashMap<>(contactList.size());
+		for (Contact contact : contactList) {
+			result.put(contact.getRoomId(), unreadMap.getOrDefault(contact.getRoomId(), 0));
+		}
+		return result;
 	}
 
 	/**
@@ -2,12 +2,12 @@ package com.luohuo.flex.im.core.chat.service.strategy.msg;
 
 import cn.hutool.core.collection.CollectionUtil;
 import com.luohuo.basic.validator.utils.AssertUtil;
-import com.luohuo.flex.im.common.utils.discover.PrioritizedUrlDiscover;
+import com.luohuo.basic.utils.SpringUtils;
+import com.luohuo.flex.im.common.event.MessageLinkPreviewEvent;
 import com.luohuo.flex.im.common.utils.sensitiveword.SensitiveWordBs;
 import com.luohuo.flex.im.core.chat.dao.MessageDao;
 import com.luohuo.flex.im.core.user.service.RoleService;
 import com.luohuo.flex.im.core.user.service.cache.UserCache;
-import com.luohuo.flex.im.domain.UrlInfo;
 import com.luohuo.flex.im.domain.entity.Message;
 import com.luohuo.flex.im.domain.entity.User;
 import com.luohuo.flex.im.domain.entity.msg.MessageExtra;
@@ -37,8 +37,6 @@ public class BotMsgHandler extends AbstractMsgHandler<TextMsgReq> {
     private RoleService roleService;
     private SensitiveWordBs sensitiveWordBs;
 
-    private static final PrioritizedUrlDiscover URL_TITLE_DISCOVER = new PrioritizedUrlDiscover();
-
     @Override
 	MessageTypeEnum getMsgTypeEnum() {
         return MessageTypeEnum.BOT;
@@ -78,9 +76,8 @@ public class BotMsgHandler extends AbstractMsgHandler<TextMsgReq> {
             update.setGapCount(gapCount);
             update.setReplyMsgId(body.getReplyMsgId());
         }
-        //判断消息url跳转
-        Map<String, UrlInfo> urlContentMap = URL_TITLE_DISCOVER.getUrlContentMap(body.getContent());
-        extra.setUrlContentMap(urlContentMap);
+        // 链接预览在事务提交后异步解析，不阻塞发送
+        SpringUtils.publishEvent(new MessageLinkPreviewEvent(this, msg.getId(), body.getContent()));
         //艾特功能
         if (CollectionUtil.isNotEmpty(body.getAtUidList())) {
             extra.setAtUidList(body.getAtUidList());
@@ -1,7 +1,7 @@
 package com.luohuo.flex.im.core.chat.service.strategy.msg;
 
-import com.luohuo.flex.im.common.utils.discover.PrioritizedUrlDiscover;
-import com.luohuo.flex.im.domain.UrlInfo;
+import com.luohuo.basic.utils.SpringUtils;
+import com.luohuo.flex.im.common.event.MessageLinkPreviewEvent;
 import com.luohuo.flex.im.common.utils.sensitiveword.SensitiveWordBs;
 import com.luohuo.flex.im.core.chat.dao.MessageDao;
 import com.luohuo.flex.im.domain.entity.Message;
@@ -11,7 +11,6 @@ import com.luohuo.flex.im.domain.enums.MessageTypeEnum;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -24,8 +23,6 @@ public class NoticeMsgHandler extends AbstractMsgHandler<NoticeMsgDTO> {
     private MessageDao messageDao;
 	private SensitiveWordBs sensitiveWordBs;
 
-	private static final PrioritizedUrlDiscover URL_TITLE_DISCOVER = new PrioritizedUrlDiscover();
-
 	@Override
     MessageTypeEnum getMsgTypeEnum() {
         return MessageTypeEnum.NOTICE;
@@ -41,9 +38,8 @@ public class NoticeMsgHandler extends AbstractMsgHandler<NoticeMsgDTO> {
 		extra.setNoticeMsgDTO(body);
 		update.setExtra(extra);
 		update.setReplyMsgId(body.getReplyMsgId());
-		// 判断消息url跳转
-		Map<String, UrlInfo> urlContentMap = URL_TITLE_DISCOVER.getUrlContentMap(body.getContent());
-		extra.setUrlContentMap(urlContentMap);
+		// 链接预览在事务提交后异步解析，不阻塞发送
+		SpringUtils.publishEvent(new MessageLinkPreviewEvent(this, message.getId(), body.getContent()));
 		messageDao.updateById(update);
 	}
 
@@ -60,6 +60,11 @@ public class E2EEProperties {
      */
     private Audit audit = new Audit();
 
+    /**
+     * 自毁消息配置
+     */
+    private SelfDestruct selfDestruct = new SelfDestruct();
+
     @Data
     public static class Encryption {
         /**
@@ -214,6 +219,28 @@ public class E2EEProperties {
          */
         private int replayWindowMinutes = 5;
 
+        /**
+         * 是否启用本地重放预过滤（轮换布隆过滤器）
+         * 开启后本节点判定为"一定未出现过"的消息不再同步访问Redis，指纹异步批量写入；
+         * 其他节点在刷写间隔内收到同一条消息时无法拒绝，只能事后审计
+         */
+        private boolean replayLocalFilterEnabled = false;
+
+        /**
+         * 本地预过滤每个窗口期预计的消息数
+         */
+        private int replayLocalFilterExpectedInsertions = 1_000_000;
+
+        /**
+         * 本地预过滤误判率
+         */
+        private double replayLocalFilterFalsePositiveRate = 0.001;
+
+        /**
+         * 本地预过滤指纹刷写Redis的间隔（毫秒）
+         */
+        private long replayLocalFlushIntervalMs = 100;
+
         /**
          * 密钥恢复最大尝试次数
          */
@@ -230,6 +257,24 @@ public class E2EEProperties {
         private boolean requireMfaForRecovery = true;
     }
 
+    @Data
+    public static class SelfDestruct {
+        /**
+         * 每批认领并删除的消息数
+         */
+        private int chunkSize = 500;
+
+        /**
+         * 单次调度最多处理的消息数，积压时分多次调度消化
+         */
+        private int maxPerRun = 20_000;
+
+        /**
+         * 重建索引时向前加载的时间范围（分钟），需大于重建间隔
+         */
+        private int seedHorizonMinutes = 15;
+    }
+
     @Data
     public static class Audit {
         /**
@@ -11,6 +11,7 @@ import com.luohuo.flex.im.core.chat.service.cache.RoomCache;
 import com.luohuo.flex.im.core.e2ee.mapper.MessageEncryptedMapper;
 import com.luohuo.flex.im.core.chat.service.E2EEChatService;
 import com.luohuo.flex.im.core.user.service.adapter.WsAdapter;
+import com.luohuo.flex.im.core.user.service.impl.InFlightTracker;
 import com.luohuo.flex.im.core.user.service.impl.PushService;
 import com.luohuo.flex.im.domain.dto.E2EEMsgSendDTO;
 import com.luohuo.flex.im.domain.entity.MessageEncrypted;
@@ -63,6 +64,7 @@ public class E2EEMsgSendConsumer implements RocketMQListener<E2EEMsgSendDTO> {
     private final PushService pushService;
     private final CachePlusOps cachePlusOps;
     private final E2EEChatService e2eeChatService;
+    private final InFlightTracker inFlightTracker;
 
     @Override
     public void onMessage(E2EEMsgSendDTO dto) {
@@ -147,8 +149,8 @@ public class E2EEMsgSendConsumer implements RocketMQListener<E2EEMsgSendDTO> {
      */
     @Async
     public void asyncSavePassageMsg(Long messageId, WsBaseResp<?> wsBaseResp, Set<Long> memberUidList, Long senderId) {
-        // 1. 发送重试消息
-        pushService.sendPushMsgWithRetry(wsBaseResp, new ArrayList<>(memberUidList), messageId, senderId);
+        // 1. 交给时间轮跟踪，到期未回执再重推
+        inFlightTracker.track(wsBaseResp, memberUidList, messageId, senderId);
 
         // 2. 给每个成员添加在途消息标记
         memberUidList.forEach(memberUid -> {
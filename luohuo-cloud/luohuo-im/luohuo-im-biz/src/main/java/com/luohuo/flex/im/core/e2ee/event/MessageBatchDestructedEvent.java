@@ -0,0 +1,52 @@
+package com.luohuo.flex.im.core.e2ee.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 同一会话内的消息批量销毁事件
+ *
+ * 自毁调度一批删除后按会话分组发布，每个会话只发一条通知。
+ *
+ * @author HuLa Team
+ * @since 2025-12-12
+ */
+@Getter
+public class MessageBatchDestructedEvent extends ApplicationEvent {
+
+    /**
+     * 会话ID
+     */
+    private final String conversationId;
+
+    /**
+     * 已销毁的消息ID，按ID升序
+     */
+    private final List<Long> messageIds;
+
+    private final Long senderId;
+    private final Long recipientId;
+    private final Long roomId;
+    private final Long tenantId;
+
+    /**
+     * 销毁时间
+     */
+    private final LocalDateTime destructedAt;
+
+    public MessageBatchDestructedEvent(Object source, String conversationId, List<Long> messageIds,
+                                       Long senderId, Long recipientId, Long roomId, Long tenantId,
+                                       LocalDateTime destructedAt) {
+        super(source);
+        this.conversationId = conversationId;
+        this.messageIds = messageIds;
+        this.senderId = senderId;
+        this.recipientId = recipientId;
+        this.roomId = roomId;
+        this.tenantId = tenantId;
+        this.destructedAt = destructedAt;
+    }
+}
@@ -4,6 +4,7 @@ import com.luohuo.basic.context.ContextUtil;
 import com.luohuo.basic.service.MQProducer;
 import com.luohuo.flex.common.constant.MqConstant;
 import com.luohuo.flex.im.domain.dto.MessageDestructNotificationDTO;
+import com.luohuo.flex.im.core.e2ee.event.MessageBatchDestructedEvent;
 import com.luohuo.flex.im.core.e2ee.event.MessageDestructedEvent;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +12,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.List;
+
 /**
  * E2EE消息销毁监听器
  *
@@ -18,6 +21,7 @@ import org.springframework.transaction.event.TransactionalEventListener;
  * 1. 监听MessageDestructedEvent事件
  * 2. 通知双方客户端消息已销毁
  * 3. 触发前端清理本地缓存
+ * 4. 自毁调度的批量销毁按会话合并为一条通知
  *
  * @author HuLa Team
  * @since 2025-12-12
@@ -62,6 +66,34 @@ public class E2EEMessageDestructListener {
         }
     }
 
+    /**
+     * 处理批量销毁事件，同一会话只发送一条携带全部消息ID的通知
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, classes = MessageBatchDestructedEvent.class, fallbackExecution = true)
+    public void handleMessageBatchDestruct(MessageBatchDestructedEvent event) {
+        List<Long> messageIds = event.getMessageIds();
+        Long latestId = messageIds.get(messageIds.size() - 1);
+        try {
+            MessageDestructNotificationDTO dto = MessageDestructNotificationDTO.builder()
+                .messageId(latestId)
+                .messageIds(messageIds)
+                .conversationId(event.getConversationId())
+                .senderId(event.getSenderId())
+                .recipientId(event.getRecipientId())
+                .roomId(event.getRoomId())
+                .tenantId(event.getTenantId())
+                .destructedAt(System.currentTimeMillis())
+                .build();
+
+            mqProducer.sendSecureMsg(MqConstant.E2EE_MSG_DESTRUCT_TOPIC, dto, latestId);
+
+            log.debug("批量销毁通知已发送到MQ，会话ID: {}, 数量: {}", event.getConversationId(), messageIds.size());
+
+        } catch (Exception e) {
+            log.error("处理批量销毁事件失败，会话ID: {}, 数量: {}", event.getConversationId(), messageIds.size(), e);
+        }
+    }
+
     /**
      * 处理消息销毁的额外逻辑
      * 例如：统计、审计等
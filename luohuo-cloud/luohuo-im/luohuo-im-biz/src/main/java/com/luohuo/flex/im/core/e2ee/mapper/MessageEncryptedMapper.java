@@ -135,6 +135,51 @@ public interface MessageEncryptedMapper extends BaseMapper<MessageEncrypted> {
     List<MessageEncrypted> selectSelfDestructExpiredMessages(@Param("now") LocalDateTime now,
                                                              @Param("limit") Integer limit);
 
+    /**
+     * 按ID游标查询截止时间前到期的自毁消息（仅ID与销毁时间），用于重建自毁索引
+     *
+     * @param lastId 上一批最大ID
+     * @param until  截止时间
+     * @param limit  限制条数
+     * @return 自毁消息列表
+     */
+    @Select("SELECT id, destruct_at FROM im_message_encrypted WHERE destruct_at IS NOT NULL AND destruct_at <= #{until} AND is_del = 0 AND id > #{lastId} ORDER BY id LIMIT #{limit}")
+    List<MessageEncrypted> selectDestructSchedule(@Param("lastId") Long lastId,
+                                                  @Param("until") LocalDateTime until,
+                                                  @Param("limit") Integer limit);
+
+    /**
+     * 批量查询待销毁消息的通知字段（不加载密文）
+     *
+     * @param ids 消息ID列表
+     * @return 消息列表
+     */
+    @Select("<script>" +
+            "SELECT id, conversation_id, sender_id, recipient_id, room_id, tenant_id, destruct_at FROM im_message_encrypted WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            " AND is_del = 0" +
+            "</script>")
+    List<MessageEncrypted> selectDestructCandidates(@Param("ids") List<Long> ids);
+
+    /**
+     * 批量逻辑删除已到期的自毁消息，与 deleteById 在全局逻辑删除下的行为一致（is_del = 1）
+     * 再次校验 destruct_at，避免删除期间销毁时间被推迟的消息
+     *
+     * @param ids 消息ID列表
+     * @param now 当前时间
+     * @return 删除条数
+     */
+    @Update("<script>" +
+            "UPDATE im_message_encrypted SET is_del = 1 WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            " AND is_del = 0 AND destruct_at IS NOT NULL AND destruct_at &lt;= #{now}" +
+            "</script>")
+    int deleteDestructedByIds(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+
     /**
      * 根据内容哈希查询消息
      *
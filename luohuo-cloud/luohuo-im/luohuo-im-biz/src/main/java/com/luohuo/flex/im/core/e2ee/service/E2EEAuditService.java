@@ -14,6 +14,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -254,6 +255,22 @@ public class E2EEAuditService {
         log.info("消息销毁审计日志记录完成，消息ID: {}, 原因: {}", messageId, reason);
     }
 
+    /**
+     * 批量记录同一会话的消息销毁
+     */
+    @Async("e2eeTaskExecutor")
+    public void logMessageDestructionBatch(String conversationId, List<Long> messageIds, String reason, LocalDateTime destructAt) {
+        Map<String, Object> auditData = createAuditData("MESSAGE_DESTRUCTION");
+        auditData.put("messageIds", messageIds);
+        auditData.put("conversationId", conversationId);
+        auditData.put("reason", reason);
+        auditData.put("destructAt", destructAt.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+
+        saveAuditLog(auditData);
+
+        log.debug("消息批量销毁审计日志记录完成，会话ID: {}, 数量: {}, 原因: {}", conversationId, messageIds.size(), reason);
+    }
+
     /**
      * 记录密钥包分发（兼容overload）
      */
@@ -2,22 +2,31 @@ package com.luohuo.flex.im.core.e2ee.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.luohuo.flex.im.domain.entity.UserPublicKey;
 import com.luohuo.flex.im.domain.entity.MessageEncrypted;
 import com.luohuo.flex.im.domain.entity.SessionKeyPackage;
 import com.luohuo.flex.im.metrics.E2EEMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -36,6 +45,7 @@ public class E2EECacheService {
     private final StringRedisTemplate stringRedisTemplate;
     private final E2EEMetrics e2eeMetrics;
     private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer listenerContainer;
 
     // 缓存键前缀
     private static final String PUBLIC_KEY_PREFIX = "e2ee:pk:";
@@ -44,53 +54,60 @@ public class E2EECacheService {
     private static final String FINGERPRINT_PREFIX = "e2ee:fp:";
     private static final String HOT_DATA_PREFIX = "e2ee:hot:";
     private static final String CACHE_STATS_PREFIX = "e2ee:stats:";
+    // 公钥失效广播频道，消息体为 userId
+    private static final String PUBLIC_KEY_EVICT_CHANNEL = "e2ee:pk:evict";
+    private static final int EVICT_BATCH_SIZE = 500;
 
-    // 本地缓存（Caffeine或类似）
-    private final Map<String, CacheItem> localCache = new HashMap<>();
-    private static final int LOCAL_CACHE_SIZE = 1000;
+    // 本地缓存：容量超出时按 W-TinyLFU 淘汰，过期时间取 TTL 与公钥自身过期时间中较早的一个
+    private LoadingCache<String, UserPublicKey> localCache;
+    private static final int LOCAL_CACHE_SIZE = 10000;
     private static final Duration LOCAL_CACHE_TTL = Duration.ofMinutes(5);
+    // 写入超过该时长后再次读取时，在后台从Redis刷新，读取方直接拿到旧值
+    private static final Duration LOCAL_CACHE_REFRESH = Duration.ofMinutes(1);
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+            .maximumSize(LOCAL_CACHE_SIZE)
+            .expireAfter(new PublicKeyExpiry())
+            .refreshAfterWrite(LOCAL_CACHE_REFRESH)
+            .recordStats()
+            .build(key -> getFromRedisCache(key, UserPublicKey.class));
+        e2eeMetrics.monitorCache("local_public_key", localCache);
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String userId = new String(message.getBody(), StandardCharsets.UTF_8);
+            evictLocalUserKeys(Long.parseLong(userId));
+        }, new ChannelTopic(PUBLIC_KEY_EVICT_CHANNEL));
+    }
 
     /**
      * 多级缓存获取公钥
+     * 只读本地缓存和 Redis，都未命中时返回 null，不查数据库
      */
     public UserPublicKey getPublicKey(Long userId, String keyId) {
         String cacheKey = buildPublicKeyKey(userId, keyId);
 
-        // L1: 本地缓存
-        UserPublicKey cached = getFromLocalCache(cacheKey, UserPublicKey.class);
-        if (cached != null) {
-            e2eeMetrics.recordCacheHit("local_public_key");
-            return cached;
-        }
-
-        // L2: Redis缓存
-        cached = getFromRedisCache(cacheKey, UserPublicKey.class);
-        if (cached != null) {
-            // 回填本地缓存
-            putToLocalCache(cacheKey, cached);
-            e2eeMetrics.recordCacheHit("redis_public_key");
-            return cached;
+        // L1 本地缓存，未命中时由加载器读取 Redis 并回填，同一个键并发未命中时只读一次
+        // 只调用一次 get，本地命中率以 Caffeine 自身的统计为准
+        UserPublicKey cached = localCache.get(cacheKey);
+        if (cached == null) {
+            e2eeMetrics.recordCacheMiss("public_key");
         }
-
-        // L3: 缓存未命中
-        e2eeMetrics.recordCacheMiss("public_key");
-        return null;
+        return cached;
     }
 
     /**
      * 批量获取公钥
      */
     public Map<String, UserPublicKey> batchGetPublicKeys(Set<String> cacheKeys) {
-        Map<String, UserPublicKey> result = new HashMap<>();
-
         // 1. 从本地缓存获取
+        Map<String, UserPublicKey> result = new HashMap<>(localCache.getAllPresent(cacheKeys));
+        if (!result.isEmpty()) {
+            e2eeMetrics.recordCacheHit("local_public_key_batch", result.size());
+        }
         List<String> missedKeys = new ArrayList<>();
         for (String key : cacheKeys) {
-            UserPublicKey cached = getFromLocalCache(key, UserPublicKey.class);
-            if (cached != null) {
-                result.put(key, cached);
-                e2eeMetrics.recordCacheHit("local_public_key_batch");
-            } else {
+            if (!result.containsKey(key)) {
                 missedKeys.add(key);
             }
         }
@@ -108,7 +125,7 @@ public class E2EECacheService {
                     if (publicKey != null) {
                         redisResults.put(key, publicKey);
                         // 回填本地缓存
-                        putToLocalCache(key, publicKey);
+                        localCache.put(key, publicKey);
                     }
                 }
             }
@@ -129,7 +146,7 @@ public class E2EECacheService {
         String cacheKey = buildPublicKeyKey(userId, keyId);
 
         // 缓存到本地
-        putToLocalCache(cacheKey, publicKey);
+        localCache.put(cacheKey, publicKey);
 
         // 缓存到Redis
         cacheToRedis(cacheKey, publicKey, Duration.ofDays(30));
@@ -173,6 +190,36 @@ public class E2EECacheService {
         return CompletableFuture.completedFuture(null);
     }
 
+    /**
+     * 失效用户的全部公钥缓存
+     * 密钥轮换后调用：先删除 Redis 中的 e2ee:pk:{userId}:*，再清理本机并广播其他节点清理本地缓存，
+     * 之后 getPublicKey 在缓存中查不到会返回 null，由调用方从数据库读取并通过 cachePublicKey 回填，不会再读到已废弃的公钥
+     */
+    public void invalidateUserKeys(Long userId) {
+        ScanOptions options = ScanOptions.scanOptions().match(PUBLIC_KEY_PREFIX + userId + ":*").count(1000).build();
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                keys.add(cursor.next());
+                if (keys.size() >= EVICT_BATCH_SIZE) {
+                    stringRedisTemplate.delete(keys);
+                    keys.clear();
+                }
+            }
+        }
+        if (!keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+
+        evictLocalUserKeys(userId);
+        stringRedisTemplate.convertAndSend(PUBLIC_KEY_EVICT_CHANNEL, String.valueOf(userId));
+    }
+
+    private void evictLocalUserKeys(Long userId) {
+        String prefix = PUBLIC_KEY_PREFIX + userId + ":";
+        localCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
     /**
      * 缓存失效策略
      */
@@ -197,8 +244,8 @@ public class E2EECacheService {
         Map<String, Object> stats = new HashMap<>();
 
         // 本地缓存统计
-        stats.put("localCacheSize", localCache.size());
-        stats.put("localCacheHitRate", calculateLocalHitRate());
+        stats.put("localCacheSize", localCache.estimatedSize());
+        stats.put("localCacheHitRate", localCache.stats().hitRate());
 
         // Redis缓存统计
         Properties info = redisTemplate.getConnectionFactory()
@@ -236,37 +283,6 @@ public class E2EECacheService {
         return KEY_PACKAGE_PREFIX + conversationId + ":" + keyId;
     }
 
-    private <T> T getFromLocalCache(String key, Class<T> clazz) {
-        CacheItem item = localCache.get(key);
-        if (item != null && !item.isExpired()) {
-            @SuppressWarnings("unchecked")
-            T value = (T) item.getValue();
-            return value;
-        }
-        return null;
-    }
-
-    private <T> void putToLocalCache(String key, T value) {
-        // 如果本地缓存已满，使用LRU策略移除旧项
-        if (localCache.size() >= LOCAL_CACHE_SIZE) {
-            evictLRUFromLocalCache();
-        }
-
-        CacheItem item = new CacheItem(value, System.currentTimeMillis() + LOCAL_CACHE_TTL.toMillis());
-        localCache.put(key, item);
-    }
-
-    private void evictLRUFromLocalCache() {
-        String oldestKey = localCache.entrySet().stream()
-            .min(Comparator.comparingLong(e -> e.getValue().getExpireTime()))
-            .map(Map.Entry::getKey)
-            .orElse(null);
-
-        if (oldestKey != null) {
-            localCache.remove(oldestKey);
-        }
-    }
-
     private <T> T getFromRedisCache(String key, Class<T> clazz) {
         try {
             Object value = redisTemplate.opsForValue().get(key);
@@ -341,7 +357,8 @@ public class E2EECacheService {
         }
 
         // 清理本地缓存
-        localCache.keySet().removeIf(key -> key.matches(pattern.replace("*", ".*")));
+        Pattern regex = Pattern.compile(Pattern.quote(pattern).replace("*", "\\E.*\\Q"));
+        localCache.asMap().keySet().removeIf(key -> regex.matcher(key).matches());
     }
 
     private void evictBatch(String pattern) {
@@ -374,11 +391,6 @@ public class E2EECacheService {
         return new HashMap<>();
     }
 
-    private double calculateLocalHitRate() {
-        // 计算本地缓存命中率
-        return 0.0;
-    }
-
     private int getHotDataCount() {
         Set<String> hotKeys = redisTemplate.keys(HOT_DATA_PREFIX + "*");
         return hotKeys.size();
@@ -400,18 +412,30 @@ public class E2EECacheService {
 
     // 内部类和枚举
 
-    private static class CacheItem {
-        private final Object value;
-        private final long expireTime;
+    /**
+     * 本地缓存过期时间：不超过 TTL，也不超过公钥自身的过期时间
+     */
+    private static class PublicKeyExpiry implements Expiry<String, UserPublicKey> {
+        @Override
+        public long expireAfterCreate(String key, UserPublicKey value, long currentTime) {
+            long ttl = LOCAL_CACHE_TTL.toNanos();
+            LocalDateTime expiresAt = value.getExpiresAt();
+            if (expiresAt == null) {
+                return ttl;
+            }
+            long remaining = Duration.between(LocalDateTime.now(), expiresAt).toNanos();
+            return Math.max(0, Math.min(ttl, remaining));
+        }
 
-        public CacheItem(Object value, long expireTime) {
-            this.value = value;
-            this.expireTime = expireTime;
+        @Override
+        public long expireAfterUpdate(String key, UserPublicKey value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
         }
 
-        public Object getValue() { return value; }
-        public long getExpireTime() { return expireTime; }
-        public boolean isExpired() { return System.currentTimeMillis() > expireTime; }
+        @Override
+        public long expireAfterRead(String key, UserPublicKey value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 
     public enum EvictStrategy {
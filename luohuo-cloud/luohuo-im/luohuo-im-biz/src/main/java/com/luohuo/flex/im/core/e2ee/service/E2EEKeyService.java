@@ -45,6 +45,7 @@ public class E2EEKeyService {
     private final RedisTemplate<String, String> redisTemplate;
     private final ApplicationEventPublisher applicationEventPublisher;
     private final E2EEAuditService auditService;
+    private final E2EECacheService e2eeCacheService;
 
     private static final String CACHE_PREFIX = "e2ee:public_key:";
     private static final String FINGERPRINT_CACHE_PREFIX = "e2ee:fingerprint:";
@@ -305,9 +306,7 @@ public class E2EEKeyService {
      */
     @CacheEvict(value = "e2ee:public_key", key = "#userId + ':'")
     private void evictUserKeyCache(Long userId) {
-        // 实际实现可能需要更复杂的缓存清除逻辑
-        String pattern = CACHE_PREFIX + userId + ":*";
-        // 这里需要使用Redis的keys命令或scan命令来删除匹配的键
+        e2eeCacheService.invalidateUserKeys(userId);
         log.info("清除用户 {} 的公钥缓存", userId);
     }
 
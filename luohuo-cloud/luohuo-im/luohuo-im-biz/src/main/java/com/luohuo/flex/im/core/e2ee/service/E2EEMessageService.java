@@ -61,6 +61,7 @@ public class E2EEMessageService {
     private final E2EEAuditService auditService;
     private final com.luohuo.flex.im.core.e2ee.config.E2EEProperties e2eeProperties;
     private final UserKeyConverter userKeyConverter;
+    private final E2EESelfDestructScheduler selfDestructScheduler;
 
     private static final String MESSAGE_CACHE_PREFIX = "e2ee:message:";
     private static final String CONTENT_HASH_CACHE_PREFIX = "e2ee:hash:";
@@ -144,6 +145,7 @@ public class E2EEMessageService {
 
         // 7. 更新缓存
         updateMessageCache(message);
+        selfDestructScheduler.schedule(message.getId(), message.getDestructAt());
 
         // 8. 发布消息发送事件
         Long messageId = message.getId();
@@ -657,6 +659,7 @@ public class E2EEMessageService {
         // 7. 清除相关缓存
         String cacheKey = MESSAGE_CACHE_PREFIX + messageId;
         redisTemplate.delete(cacheKey);
+        selfDestructScheduler.schedule(messageId, message.getDestructAt());
 
         // 8. 发布消息已读事件（用于 WebSocket 通知发送方）
         applicationEventPublisher.publishEvent(
@@ -703,103 +706,46 @@ public class E2EEMessageService {
 
     /**
      * 清理到期的自毁消息
-     * 由定时任务调用，删除所有 destructAt <= now 的消息
+     * 直接扫描数据库中 destructAt <= now 的消息，用于自毁索引不可用时兜底；
+     * 正常情况下由 {@link E2EESelfDestructScheduler#expireDue()} 按索引处理
      *
      * @return 清理的消息数量
      */
-    @Transactional(rollbackFor = Exception.class)
     public int cleanupSelfDestructMessages() {
-        LocalDateTime now = LocalDateTime.now();
-
-        // 查询所有到期的自毁消息
-        List<MessageEncrypted> expiredMessages = messageEncryptedMapper.selectSelfDestructExpiredMessages(now, 1000);
-
-        if (expiredMessages.isEmpty()) {
-            return 0;
-        }
-
-        log.info("发现 {} 条到期自毁消息，开始清理", expiredMessages.size());
-
-        // 批量删除 - 使用循环删除以避免deleteBatchIds废弃警告
+        int chunkSize = e2eeProperties.getSelfDestruct().getChunkSize();
+        int maxPerRun = e2eeProperties.getSelfDestruct().getMaxPerRun();
         int affectedRows = 0;
-        for (MessageEncrypted message : expiredMessages) {
-            Long id = message.getId();
-            if (id != null) {
-                affectedRows += messageEncryptedMapper.deleteById(id);
+        while (affectedRows < maxPerRun) {
+            // 查询一批到期的自毁消息，每批删除独立提交
+            List<MessageEncrypted> expiredMessages =
+                messageEncryptedMapper.selectSelfDestructExpiredMessages(LocalDateTime.now(), chunkSize);
+            if (expiredMessages.isEmpty()) {
+                break;
+            }
+            int deleted = selfDestructScheduler.expire(expiredMessages);
+            affectedRows += deleted;
+            if (deleted == 0 || expiredMessages.size() < chunkSize) {
+                break;
             }
         }
 
-        // 清除缓存并通知客户端
-        expiredMessages.forEach(msg -> {
-            // 清除缓存
-            String cacheKey = MESSAGE_CACHE_PREFIX + msg.getId();
-            redisTemplate.delete(cacheKey);
-
-            // 发布消息销毁事件（用于 WebSocket 通知双方）
-            applicationEventPublisher.publishEvent(
-                new MessageDestructedEvent(msg, msg.getId(), msg.getConversationId(),
-                    msg.getSenderId(), msg.getRecipientId(), msg.getRoomId())
-            );
-
-            // 记录审计日志
-            Long messageId = msg.getId();
-            auditService.logMessageDestruction(messageId, msg.getConversationId(),
-                "SELF_DESTRUCT", now);
-        });
-
-        log.info("清理自毁消息完成，删除 {} 条", affectedRows);
+        if (affectedRows > 0) {
+            log.info("清理自毁消息完成，删除 {} 条", affectedRows);
+        }
         return affectedRows;
     }
 
     /**
      * 清理到期的自毁消息（支持批量通知优化）
-     * 新增方法，返回清理的通知列表，支持批量发送
+     * 按自毁索引认领到期消息，分批删除并按会话合并通知
      *
      * @return 清理的消息数量
      */
-    @Transactional(rollbackFor = Exception.class)
     public int cleanupSelfDestructMessagesWithNotifications() {
-        LocalDateTime now = LocalDateTime.now();
-
-        // 查询所有到期的自毁消息（增加批次大小以提高效率）
-        List<MessageEncrypted> expiredMessages = messageEncryptedMapper.selectSelfDestructExpiredMessages(now, 5000);
-
-        if (expiredMessages.isEmpty()) {
-            return 0;
-        }
-
-        log.info("发现 {} 条到期自毁消息，开始批量清理", expiredMessages.size());
-
-        // 批量删除 - 使用循环删除以避免deleteBatchIds废弃警告
-        int affectedRows = 0;
-        for (MessageEncrypted message : expiredMessages) {
-            Long id = message.getId();
-            if (id != null) {
-                affectedRows += messageEncryptedMapper.deleteById(id);
-            }
+        int affectedRows = selfDestructScheduler.expireDue();
+        if (affectedRows > 0) {
+            log.info("自毁消息批量清理完成，实际删除 {} 条消息", affectedRows);
         }
-
-        // 清除缓存
-        expiredMessages.forEach(msg -> {
-            String cacheKey = MESSAGE_CACHE_PREFIX + msg.getId();
-            redisTemplate.delete(cacheKey);
-        });
-
-        // 批量发布事件（优化的通知发送）
-        expiredMessages.forEach(msg -> {
-            // 发布消息销毁事件
-            applicationEventPublisher.publishEvent(
-                new MessageDestructedEvent(msg, msg.getId(), msg.getConversationId(),
-                    msg.getSenderId(), msg.getRecipientId(), msg.getRoomId())
-            );
-
-            // 记录审计日志（可优化为批量）
-            Long messageId = msg.getId();
-            auditService.logMessageDestruction(messageId, msg.getConversationId(),
-                "SELF_DESTRUCT", now);
-        });
-
-        log.info("自毁消息批量清理完成，实际删除 {} 条消息", affectedRows);
         return affectedRows;
     }
 }
@@ -0,0 +1,261 @@
+package com.luohuo.flex.im.core.e2ee.service;
+
+import com.luohuo.flex.im.core.e2ee.config.E2EEProperties;
+import com.luohuo.flex.im.core.e2ee.event.MessageBatchDestructedEvent;
+import com.luohuo.flex.im.core.e2ee.mapper.MessageEncryptedMapper;
+import com.luohuo.flex.im.domain.entity.MessageEncrypted;
+import com.luohuo.flex.im.metrics.E2EEMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 自毁消息调度器
+ *
+ * 待销毁消息按 destructAt 记录在 Redis ZSET（member=消息ID，score=销毁时间毫秒）中：
+ * - 保存消息、标记已读时写入/更新索引
+ * - 调度时用 Lua 原子认领一批到期ID（ZRANGEBYSCORE + ZREM），多节点不会重复处理
+ * - 每批一条 UPDATE ... SET is_del = 1 WHERE id IN（逻辑删除，与原先逐条 deleteById 一致），缓存一次多键 DEL，通知按会话合并发布
+ * - 删除时再次校验 destruct_at，被跳过的消息按新的销毁时间重新登记，通知和审计只包含实际删除的消息
+ * - 认领后节点宕机或索引丢失时，定时从数据库重建索引兜底
+ *
+ * 每批删除独立提交，积压时不会长时间持有大事务的锁。
+ *
+ * @author HuLa Team
+ * @since 2025-01-01
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class E2EESelfDestructScheduler {
+
+    private static final String DESTRUCT_INDEX_KEY = "e2ee:destruct:index";
+    private static final String MESSAGE_CACHE_PREFIX = "e2ee:message:";
+    private static final String DESTRUCT_REASON = "SELF_DESTRUCT";
+
+    /**
+     * KEYS[1] 自毁索引
+     * ARGV[1] 当前时间毫秒, ARGV[2] 认领数量
+     */
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            if #ids > 0 then
+                redis.call('ZREM', KEYS[1], unpack(ids))
+            end
+            return ids
+            """, List.class);
+
+    private final MessageEncryptedMapper messageEncryptedMapper;
+    private final StringRedisTemplate redisTemplate;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final E2EEAuditService auditService;
+    private final E2EEMetrics e2eeMetrics;
+    private final E2EEProperties e2eeProperties;
+
+    /**
+     * 登记或更新消息的销毁时间
+     *
+     * @param messageId 消息ID
+     * @param destructAt 销毁时间，为空时忽略
+     */
+    public void schedule(Long messageId, LocalDateTime destructAt) {
+        if (messageId == null || destructAt == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForZSet().add(DESTRUCT_INDEX_KEY, messageId.toString(), toEpochMilli(destructAt));
+        } catch (Exception e) {
+            // 索引写入失败不影响消息本身，由数据库重建兜底
+            log.warn("登记自毁消息失败，消息ID: {}", messageId, e);
+        }
+    }
+
+    /**
+     * 处理所有已到期的自毁消息
+     *
+     * @return 删除的消息数量
+     */
+    public int expireDue() {
+        E2EEProperties.SelfDestruct config = e2eeProperties.getSelfDestruct();
+        int claimed = 0;
+        int total = 0;
+        while (claimed < config.getMaxPerRun()) {
+            List<Long> ids = claimDue(config.getChunkSize());
+            if (ids.isEmpty()) {
+                break;
+            }
+            claimed += ids.size();
+            total += expireChunk(ids);
+        }
+        return total;
+    }
+
+    /**
+     * 删除一批已到期的消息（数据库扫描兜底路径也复用此方法）
+     *
+     * @param messages 待删除消息，只需ID、会话、收发方、房间、租户和销毁时间
+     * @return 删除的消息数量
+     */
+    public int expire(List<MessageEncrypted> messages) {
+        int chunkSize = e2eeProperties.getSelfDestruct().getChunkSize();
+        int deleted = 0;
+        for (int from = 0; from < messages.size(); from += chunkSize) {
+            deleted += deleteChunk(messages.subList(from, Math.min(messages.size(), from + chunkSize)));
+        }
+        return deleted;
+    }
+
+    /**
+     * 从数据库重建索引：加载 seedHorizonMinutes 内将要到期以及已过期未删除的消息
+     *
+     * @return 登记的消息数量
+     */
+    public int seedFromDatabase() {
+        E2EEProperties.SelfDestruct config = e2eeProperties.getSelfDestruct();
+        LocalDateTime until = LocalDateTime.now().plusMinutes(config.getSeedHorizonMinutes());
+        long lastId = 0L;
+        int seeded = 0;
+        while (true) {
+            List<MessageEncrypted> batch = messageEncryptedMapper.selectDestructSchedule(lastId, until, config.getChunkSize());
+            if (batch.isEmpty()) {
+                break;
+            }
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (MessageEncrypted message : batch) {
+                    conn.zAdd(DESTRUCT_INDEX_KEY, toEpochMilli(message.getDestructAt()), message.getId().toString());
+                }
+                return null;
+            });
+            seeded += batch.size();
+            lastId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < config.getChunkSize()) {
+                break;
+            }
+        }
+        return seeded;
+    }
+
+    private List<Long> claimDue(int limit) {
+        List<?> raw = redisTemplate.execute(CLAIM_SCRIPT, List.of(DESTRUCT_INDEX_KEY),
+            String.valueOf(System.currentTimeMillis()), String.valueOf(limit));
+        if (raw == null || raw.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = new ArrayList<>(raw.size());
+        for (Object id : raw) {
+            ids.add(Long.valueOf(id.toString()));
+        }
+        return ids;
+    }
+
+    private int expireChunk(List<Long> ids) {
+        List<MessageEncrypted> candidates;
+        try {
+            candidates = messageEncryptedMapper.selectDestructCandidates(ids);
+        } catch (DataAccessException e) {
+            // 放回索引，下次调度重试
+            ids.forEach(id -> schedule(id, LocalDateTime.now()));
+            throw e;
+        }
+
+        // 认领后销毁时间被推迟的消息重新登记
+        LocalDateTime now = LocalDateTime.now();
+        List<MessageEncrypted> due = new ArrayList<>(candidates.size());
+        for (MessageEncrypted message : candidates) {
+            if (message.getDestructAt() == null) {
+                continue;
+            }
+            if (message.getDestructAt().isAfter(now)) {
+                schedule(message.getId(), message.getDestructAt());
+            } else {
+                due.add(message);
+            }
+        }
+        return deleteChunk(due);
+    }
+
+    private int deleteChunk(List<MessageEncrypted> messages) {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = messages.stream().map(MessageEncrypted::getId).toList();
+
+        // 1. 单条语句批量逻辑删除，自动提交
+        int deleted = messageEncryptedMapper.deleteDestructedByIds(ids, now);
+        if (deleted == 0) {
+            rescheduleSkipped(ids);
+            return 0;
+        }
+
+        // 2. 销毁时间被推迟的消息没有删除，重新登记后从本批中剔除
+        if (deleted < ids.size()) {
+            Set<Long> skipped = rescheduleSkipped(ids);
+            messages = messages.stream().filter(message -> !skipped.contains(message.getId())).toList();
+            ids = messages.stream().map(MessageEncrypted::getId).toList();
+        }
+
+        // 3. 一次多键 DEL 清除缓存
+        try {
+            redisTemplate.delete(ids.stream().map(id -> MESSAGE_CACHE_PREFIX + id).toList());
+        } catch (Exception e) {
+            log.warn("批量清除自毁消息缓存失败，数量: {}", ids.size(), e);
+        }
+
+        // 4. 按会话合并通知与审计
+        Map<String, List<MessageEncrypted>> byConversation = messages.stream()
+            .sorted(Comparator.comparing(MessageEncrypted::getId))
+            .collect(Collectors.groupingBy(MessageEncrypted::getConversationId, LinkedHashMap::new, Collectors.toList()));
+        byConversation.forEach((conversationId, list) -> {
+            MessageEncrypted latest = list.get(list.size() - 1);
+            List<Long> messageIds = list.stream().map(MessageEncrypted::getId).toList();
+            applicationEventPublisher.publishEvent(new MessageBatchDestructedEvent(this, conversationId, messageIds,
+                latest.getSenderId(), latest.getRecipientId(), latest.getRoomId(), latest.getTenantId(), now));
+            auditService.logMessageDestructionBatch(conversationId, messageIds, DESTRUCT_REASON, now);
+        });
+
+        long nowMillis = toEpochMilli(now);
+        messages.forEach(message -> e2eeMetrics.recordSelfDestructLag(Math.max(0, nowMillis - toEpochMilli(message.getDestructAt()))));
+        e2eeMetrics.recordBatchOperation("self_destruct_delete", deleted);
+
+        log.debug("自毁消息批量删除完成，删除 {} 条，涉及 {} 个会话", deleted, byConversation.size());
+        return deleted;
+    }
+
+    /**
+     * 重新查询本批中仍未删除的消息，按当前的销毁时间重新登记
+     *
+     * @return 未删除的消息ID
+     */
+    private Set<Long> rescheduleSkipped(List<Long> ids) {
+        Set<Long> skipped = new HashSet<>();
+        for (MessageEncrypted message : messageEncryptedMapper.selectDestructCandidates(ids)) {
+            skipped.add(message.getId());
+            schedule(message.getId(), message.getDestructAt());
+        }
+        return skipped;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
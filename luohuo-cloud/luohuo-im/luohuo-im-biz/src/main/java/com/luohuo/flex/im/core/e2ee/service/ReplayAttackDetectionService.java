@@ -1,16 +1,32 @@
 package com.luohuo.flex.im.core.e2ee.service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.luohuo.flex.im.core.e2ee.config.E2EEProperties;
+import com.luohuo.flex.im.core.e2ee.util.RotatingBloomFilter;
 import com.luohuo.flex.im.domain.entity.MessageEncrypted;
 import com.luohuo.flex.im.metrics.E2EEMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -22,6 +38,14 @@ import java.util.concurrent.TimeUnit;
  * 3. 基于消息指纹识别重复消息
  * 4. 支持可配置的检测窗口期
  *
+ * 实现：
+ * - 每条消息一次 Lua 脚本调用，SET NX PX 写入指纹，返回值即判定结果，没有先查后写的竞态
+ * - 同一脚本按分钟累加计数桶，统计信息直接汇总窗口内的计数桶，不再 KEYS 扫描
+ * - 指纹按哈希分成 {@link #SHARDS} 组，指纹键和计数桶都带 {分组} hash tag，
+ *   一次脚本调用只涉及同一分组的键，Redis Cluster 下落在同一个槽位
+ * - 可选本地轮换布隆过滤器：本节点判定为"一定未出现过"的消息不访问Redis，
+ *   指纹进入待刷写表，定时批量写入；刷写时发现Redis中已存在的指纹只能事后审计
+ *
  * @author HuLa Team
  * @since 2025-12-13
  */
@@ -36,6 +60,89 @@ public class ReplayAttackDetectionService {
     private final E2EEAuditService auditService;
 
     private static final String REPLAY_DETECTION_PREFIX = "e2ee:replay:";
+    private static final String REPLAY_COUNTER_PREFIX = "e2ee:replay-count:";
+    private static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int FLUSH_BATCH_SIZE = 200;
+    private static final int SHARDS = 16;
+
+    /**
+     * KEYS[1] 当前分钟计数桶, KEYS[2..n] 指纹键，所有键属于同一分组（hash tag 相同）
+     * ARGV[1] 写入时间, ARGV[2] 指纹过期毫秒数, ARGV[3] 计数桶过期毫秒数
+     * 返回与 KEYS[2..n] 对应的列表：1 新写入，0 已存在（重放）
+     */
+    private static final RedisScript<List> MARK_SCRIPT = new DefaultRedisScript<>("""
+            local result = {}
+            local added = 0
+            for i = 2, #KEYS do
+                if redis.call('SET', KEYS[i], ARGV[1], 'NX', 'PX', ARGV[2]) then
+                    result[i - 1] = 1
+                    added = added + 1
+                else
+                    result[i - 1] = 0
+                end
+            end
+            if added > 0 then
+                redis.call('INCRBY', KEYS[1], added)
+                redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            end
+            return result
+            """, List.class);
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * 本地预过滤，未启用时为 null
+     */
+    private volatile RotatingBloomFilter localFilter;
+
+    /**
+     * 已通过本地预过滤、尚未写入Redis的指纹 -> 消息
+     */
+    private final Map<String, MessageEncrypted> pendingFingerprints = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushScheduler;
+
+    @PostConstruct
+    public void init() {
+        E2EEProperties.Security security = e2eeProperties.getSecurity();
+        if (!security.isReplayDetectionEnabled() || !security.isReplayLocalFilterEnabled()) {
+            return;
+        }
+        localFilter = new RotatingBloomFilter(
+            security.getReplayLocalFilterExpectedInsertions(),
+            security.getReplayLocalFilterFalsePositiveRate(),
+            windowMillis()
+        );
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("e2ee-replay-flush-%d")
+                .setDaemon(true)
+                .build());
+        long interval = security.getReplayLocalFlushIntervalMs();
+        flushScheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("重放检测本地预过滤已启用: bits={}, hashes={}, flushInterval={}ms",
+            localFilter.bitSize(), localFilter.hashCount(), interval);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flushScheduler == null) {
+            return;
+        }
+        flushScheduler.shutdown();
+        try {
+            flushScheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
 
     /**
      * 检测消息是否为重放攻击
@@ -51,37 +158,31 @@ public class ReplayAttackDetectionService {
 
         try {
             // 1. 生成消息指纹
-            String fingerprint = generateMessageFingerprint(message);
-
-            // 2. 构建Redis键
-            String redisKey = REPLAY_DETECTION_PREFIX + fingerprint;
-
-            // 3. 检查Redis���是否已存在该指纹
-            Boolean exists = redisTemplate.hasKey(redisKey);
-
-            if (Boolean.TRUE.equals(exists)) {
-                // 检测到重放攻击
-                log.warn("检测到重放攻击！消息ID: {}, 会话: {}, 发送者: {}",
-                    message.getId(), message.getConversationId(), message.getSenderId());
-
-                // 记录安全事件
-                recordReplayAttack(message, fingerprint);
-
-                // 记录指标
-                e2eeMetrics.recordEvent("security", "replay_attack_detected");
+            byte[] hash = generateMessageFingerprint(message);
+            String fingerprint = Base64.getEncoder().encodeToString(hash);
+
+            // 2. 本地预过滤：一定未出现过的消息只登记待刷写，不访问Redis
+            RotatingBloomFilter filter = localFilter;
+            if (filter != null) {
+                if (pendingFingerprints.putIfAbsent(fingerprint, message) != null) {
+                    onReplayDetected(message, fingerprint);
+                    return true;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(hash);
+                if (filter.put(buffer.getLong(0), buffer.getLong(8))) {
+                    e2eeMetrics.recordEvent("replay", "local_filter_new");
+                    return false;
+                }
+                // 可能出现过，交给Redis确认
+                pendingFingerprints.remove(fingerprint, message);
+                e2eeMetrics.recordEvent("replay", "local_filter_maybe");
+            }
 
+            // 3. SET NX PX 写入指纹，写入失败即重放
+            if (!markFingerprints(List.of(fingerprint)).get(0)) {
+                onReplayDetected(message, fingerprint);
                 return true;
             }
-
-            // 4. 记录消息指纹到Redis（设置过期时间）
-            int windowMinutes = e2eeProperties.getSecurity().getReplayWindowMinutes();
-            redisTemplate.opsForValue().set(
-                redisKey,
-                String.valueOf(System.currentTimeMillis()),
-                windowMinutes,
-                TimeUnit.MINUTES
-            );
-
             return false;
 
         } catch (Exception e) {
@@ -97,71 +198,128 @@ public class ReplayAttackDetectionService {
      * 基于密文、IV、发送者、接收者和会话ID计算唯一标识
      *
      * @param message 加密消息
-     * @return 消息指纹（Base64编码的SHA-256哈希）
+     * @return 消息指纹（SHA-256哈希）
      */
-    private String generateMessageFingerprint(MessageEncrypted message) {
-        try {
-            // 计算总长度
-            int totalLength = 0;
-            totalLength += message.getCiphertext().length;
-            totalLength += message.getIv().length;
-            totalLength += Long.BYTES; // senderId
-            totalLength += message.getRecipientId() != null ? Long.BYTES : 0;
-            totalLength += message.getConversationId().getBytes(StandardCharsets.UTF_8).length;
+    private byte[] generateMessageFingerprint(MessageEncrypted message) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+
+        // 1. 密文（最重要的唯一性标识）
+        digest.update(message.getCiphertext());
 
-            // 使用ByteBuffer优化性能
-            java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(totalLength);
+        // 2. IV（防止相同明文产生相同密文时的冲突）
+        digest.update(message.getIv());
 
-            // 1. 密文（最重要的唯一性标识）
-            buffer.put(message.getCiphertext());
+        // 3. 发送者ID、接收者ID（如果存在）
+        ByteBuffer ids = ByteBuffer.allocate(Long.BYTES * 2);
+        ids.putLong(message.getSenderId());
+        if (message.getRecipientId() != null) {
+            ids.putLong(message.getRecipientId());
+        }
+        digest.update(ids.array(), 0, ids.position());
 
-            // 2. IV（防止相同明文产生相同密文时的冲突）
-            buffer.put(message.getIv());
+        // 4. 会话ID（防止跨会话重放）
+        digest.update(message.getConversationId().getBytes(StandardCharsets.UTF_8));
 
-            // 3. 发送者ID
-            buffer.putLong(message.getSenderId());
+        return digest.digest();
+    }
 
-            // 4. 接收者ID（如果存在）
-            if (message.getRecipientId() != null) {
-                buffer.putLong(message.getRecipientId());
+    /**
+     * 批量写入指纹
+     *
+     * @return 与入参对应的结果：true 新写入，false 已存在
+     */
+    private List<Boolean> markFingerprints(List<String> fingerprints) {
+        long now = System.currentTimeMillis();
+        long windowMillis = windowMillis();
+        // 分组 -> 该组指纹在入参中的下标
+        Map<Integer, List<Integer>> shards = new HashMap<>();
+        for (int i = 0; i < fingerprints.size(); i++) {
+            shards.computeIfAbsent(shardOf(fingerprints.get(i)), k -> new ArrayList<>()).add(i);
+        }
+
+        Boolean[] result = new Boolean[fingerprints.size()];
+        shards.forEach((shard, indexes) -> {
+            List<String> keys = new ArrayList<>(indexes.size() + 1);
+            keys.add(counterKey(shard, now / BUCKET_MILLIS));
+            for (int index : indexes) {
+                keys.add(fingerprintKey(shard, fingerprints.get(index)));
             }
+            List<?> raw = redisTemplate.execute(MARK_SCRIPT, keys,
+                String.valueOf(now), String.valueOf(windowMillis), String.valueOf(windowMillis + BUCKET_MILLIS));
+            for (int i = 0; i < indexes.size(); i++) {
+                Object value = raw != null && i < raw.size() ? raw.get(i) : null;
+                // 脚本结果缺失时按新写入处理，与检测失败默认放行一致
+                result[indexes.get(i)] = value == null || ((Number) value).longValue() == 1L;
+            }
+        });
+        return Arrays.asList(result);
+    }
 
-            // 5. 会话ID（防止跨会话重放）
-            buffer.put(message.getConversationId().getBytes(StandardCharsets.UTF_8));
+    private static int shardOf(String fingerprint) {
+        return Math.floorMod(fingerprint.hashCode(), SHARDS);
+    }
 
-            // 计算SHA-256哈希
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(buffer.array());
+    private static String fingerprintKey(int shard, String fingerprint) {
+        return REPLAY_DETECTION_PREFIX + "{" + shard + "}:" + fingerprint;
+    }
 
-            // Base64编码以便存储
-            return Base64.getEncoder().encodeToString(hash);
+    private static String counterKey(int shard, long bucket) {
+        return REPLAY_COUNTER_PREFIX + "{" + shard + "}:" + bucket;
+    }
 
+    private void flushQuietly() {
+        try {
+            flushPending();
         } catch (Exception e) {
-            log.error("生成消息指纹失败", e);
-            // 降级：使用简单的字符串拼接
-            return String.format("%s:%s:%s",
-                message.getConversationId(),
-                message.getSenderId(),
-                System.currentTimeMillis()
-            );
+            log.error("重放检测指纹刷写失败", e);
+            e2eeMetrics.recordError("replay_flush_failed");
+        }
+    }
+
+    /**
+     * 把本地预过滤放行的指纹批量写入Redis，写入成功后才从待刷写表移除，
+     * 保证刷写前本节点的重复提交仍能被待刷写表拦截
+     */
+    private void flushPending() {
+        if (pendingFingerprints.isEmpty()) {
+            return;
+        }
+        List<String> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        Iterator<String> iterator = pendingFingerprints.keySet().iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() == FLUSH_BATCH_SIZE || !iterator.hasNext()) {
+                List<Boolean> added = markFingerprints(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    MessageEncrypted message = pendingFingerprints.remove(batch.get(i));
+                    if (!added.get(i) && message != null) {
+                        // 其他节点已处理过同一消息，本节点已放行，只能事后审计
+                        log.warn("延迟检测到重放攻击！消息ID: {}, 会话: {}, 发送者: {}",
+                            message.getId(), message.getConversationId(), message.getSenderId());
+                        recordReplayAttack(message, batch.get(i));
+                        e2eeMetrics.recordEvent("security", "replay_attack_detected_late");
+                    }
+                }
+                batch.clear();
+            }
         }
     }
 
     /**
-     * 清除过期的重放检测记录
-     * 注意：Redis的TTL机制会自动清除过期键，此方法主要用于手动触发清理
+     * 统计当前窗口期内跟踪的指纹数
+     * 注意：Redis的TTL机制会自动清除过期键，这里只汇总窗口内的分钟计数桶
      *
-     * @return 清除的记录数
+     * @return 当前跟踪的记录数
      */
     public int cleanupExpiredRecords() {
         try {
-            // Redis会自动清除过期键，这里只是统计信息
-            int count = redisTemplate.keys(REPLAY_DETECTION_PREFIX + "*").size();
+            int count = countTrackedFingerprints();
             log.debug("当前重放检测记录数: {}", count);
             return count;
 
         } catch (Exception e) {
-            log.error("清理过期重放检测记录失败", e);
+            log.error("统计重放检测记录失败", e);
             return 0;
         }
     }
@@ -176,8 +334,7 @@ public class ReplayAttackDetectionService {
 
         try {
             // 统计当前跟踪的消息数量
-            int trackedCount = redisTemplate.keys(REPLAY_DETECTION_PREFIX + "*").size();
-            stats.setTrackedMessagesCount(trackedCount);
+            stats.setTrackedMessagesCount(countTrackedFingerprints());
 
             // 配置信息
             stats.setEnabled(e2eeProperties.getSecurity().isReplayDetectionEnabled());
@@ -201,16 +358,15 @@ public class ReplayAttackDetectionService {
         }
 
         try {
-            String fingerprint = generateMessageFingerprint(message);
-            String redisKey = REPLAY_DETECTION_PREFIX + fingerprint;
-            int windowMinutes = e2eeProperties.getSecurity().getReplayWindowMinutes();
-
-            redisTemplate.opsForValue().set(
-                redisKey,
-                String.valueOf(System.currentTimeMillis()),
-                windowMinutes,
-                TimeUnit.MINUTES
-            );
+            byte[] hash = generateMessageFingerprint(message);
+            String fingerprint = Base64.getEncoder().encodeToString(hash);
+            markFingerprints(List.of(fingerprint));
+
+            RotatingBloomFilter filter = localFilter;
+            if (filter != null) {
+                ByteBuffer buffer = ByteBuffer.wrap(hash);
+                filter.put(buffer.getLong(0), buffer.getLong(8));
+            }
 
             log.debug("标记消息为已处理，消息ID: {}, 指纹: {}", message.getId(), fingerprint);
 
@@ -219,6 +375,46 @@ public class ReplayAttackDetectionService {
         }
     }
 
+    /**
+     * 汇总窗口期内各分钟计数桶（含待刷写的本地指纹）
+     */
+    private int countTrackedFingerprints() {
+        long currentBucket = System.currentTimeMillis() / BUCKET_MILLIS;
+        int windowMinutes = e2eeProperties.getSecurity().getReplayWindowMinutes();
+        List<String> keys = new ArrayList<>((windowMinutes + 1) * SHARDS);
+        for (int shard = 0; shard < SHARDS; shard++) {
+            for (long bucket = currentBucket - windowMinutes; bucket <= currentBucket; bucket++) {
+                keys.add(counterKey(shard, bucket));
+            }
+        }
+        long total = pendingFingerprints.size();
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
+        if (values != null) {
+            for (String value : values) {
+                if (value != null) {
+                    total += Long.parseLong(value);
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, total);
+    }
+
+    private long windowMillis() {
+        return TimeUnit.MINUTES.toMillis(e2eeProperties.getSecurity().getReplayWindowMinutes());
+    }
+
+    private void onReplayDetected(MessageEncrypted message, String fingerprint) {
+        // 检测到重放攻击
+        log.warn("检测到重放攻击！消息ID: {}, 会话: {}, 发送者: {}",
+            message.getId(), message.getConversationId(), message.getSenderId());
+
+        // 记录安全事件
+        recordReplayAttack(message, fingerprint);
+
+        // 记录指标
+        e2eeMetrics.recordEvent("security", "replay_attack_detected");
+    }
+
     /**
      * 记录重放攻击事件
      */
@@ -40,6 +40,7 @@ public class SessionKeyRotationService {
     private final E2EEProperties e2eeProperties;
     private final E2EEMetrics e2eeMetrics;
     private final E2EEAuditService auditService;
+    private final E2EECacheService e2eeCacheService;
 
     /**
      * 检查并处理需要轮换的密钥
@@ -195,7 +196,10 @@ public class SessionKeyRotationService {
                 revokedCount++;
             }
 
-            // 3. 通知用户重新生成密钥
+            // 3. 丢弃本机缓存的公钥，之后的读取重新从Redis加载
+            e2eeCacheService.invalidateUserKeys(userId);
+
+            // 4. 通知用户重新生成密钥
             notifyForceKeyRotation(userId, reason);
 
             log.warn("用户{}的密钥强制轮换完成，废弃数量: {}", userId, revokedCount);
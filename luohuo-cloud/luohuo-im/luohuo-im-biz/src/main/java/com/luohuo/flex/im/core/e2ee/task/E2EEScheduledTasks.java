@@ -3,6 +3,7 @@ package com.luohuo.flex.im.core.e2ee.task;
 import com.luohuo.flex.im.core.e2ee.service.E2EEAuditService;
 import com.luohuo.flex.im.core.e2ee.service.E2EEKeyService;
 import com.luohuo.flex.im.core.e2ee.service.E2EEMessageService;
+import com.luohuo.flex.im.core.e2ee.service.E2EESelfDestructScheduler;
 import com.luohuo.flex.im.core.e2ee.service.SessionKeyRotationService;
 import com.luohuo.flex.im.core.e2ee.service.DatabaseMaintenanceService;
 import com.luohuo.flex.im.common.mq.E2EEMQProducer;
@@ -36,6 +37,7 @@ public class E2EEScheduledTasks {
 
     private final E2EEKeyService keyService;
     private final E2EEMessageService messageService;
+    private final E2EESelfDestructScheduler selfDestructScheduler;
     private final E2EEAuditService auditService;
     private final E2EEMetrics e2eeMetrics;
     private final E2EEMQProducer e2eeMQProducer;
@@ -85,21 +87,18 @@ public class E2EEScheduledTasks {
     }
 
     /**
-     * 每分钟清理到期的自毁消息
-     * 自毁消息最短可设置为5分钟，因此需要高频率检查
+     * 每5秒按自毁索引清理到期的自毁消息
+     * 自毁消息最短可设置为5分钟，索引查询只读取到期部分，可以高频率检查
      */
-    @Scheduled(cron = "0 * * * * ?")
+    @Scheduled(fixedDelay = 5000, initialDelay = 10000)
     public void cleanupSelfDestructMessages() {
         log.debug("开始定时清理自毁消息任务");
         long startTime = System.currentTimeMillis();
 
         try {
-            // 批量清理自毁消息并获取通知列表
+            // 按索引分批清理自毁消息，通知按会话合并由事件监听器发送
             int cleanedCount = messageService.cleanupSelfDestructMessagesWithNotifications();
 
-            // NOTE: 如果需要批量发送通知，可以在这里调用 e2eeMQProducer
-            // 目前使用事件监听器逐个发送
-
             long duration = System.currentTimeMillis() - startTime;
 
             if (cleanedCount > 0) {
@@ -115,6 +114,21 @@ public class E2EEScheduledTasks {
         }
     }
 
+    /**
+     * 启动后及每10分钟从数据库重建自毁索引
+     * 补回认领后未删除、或索引写入失败的消息
+     */
+    @Scheduled(fixedDelay = 600000, initialDelay = 30000)
+    public void seedSelfDestructIndex() {
+        try {
+            int seeded = selfDestructScheduler.seedFromDatabase();
+            log.debug("自毁索引重建完成，登记数量: {}", seeded);
+        } catch (Exception e) {
+            log.error("重建自毁索引失败", e);
+            e2eeMetrics.recordError("seed_self_destruct_index_failed");
+        }
+    }
+
     /**
      * 批量发送消息销毁通知的优化方法
      * 可配置是否启用批量发送（默认启用）
@@ -0,0 +1,143 @@
+package com.luohuo.flex.im.core.e2ee.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 按时间窗口轮换的布隆过滤器
+ *
+ * 同时保留当前代和上一代两组位图，每过一个窗口期丢弃上一代，
+ * 因此写入的元素至少保留一个窗口期、至多两个窗口期。
+ * 调用方传入已经充分散列的两段64位哈希（如SHA-256的前16字节），
+ * 内部用 h1 + i * h2 派生各个位下标，不再重复计算哈希。
+ *
+ * 位图用 AtomicLongArray + CAS 置位，读写都不加锁；只有换代时短暂同步。
+ *
+ * @author HuLa Team
+ * @since 2025-12-13
+ */
+public final class RotatingBloomFilter {
+
+    private final int bitMask;
+    private final int hashCount;
+    private final long windowNanos;
+    private final LongSupplier clock;
+
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+    private volatile long rotateAtNanos;
+
+    /**
+     * @param expectedInsertions 每个窗口期预计写入的元素数
+     * @param falsePositiveRate  期望误判率
+     * @param windowMillis       窗口期（毫秒）
+     */
+    public RotatingBloomFilter(int expectedInsertions, double falsePositiveRate, long windowMillis) {
+        this(expectedInsertions, falsePositiveRate, windowMillis, System::nanoTime);
+    }
+
+    RotatingBloomFilter(int expectedInsertions, double falsePositiveRate, long windowMillis, LongSupplier clock) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1 || windowMillis <= 0) {
+            throw new IllegalArgumentException("invalid bloom filter parameters");
+        }
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        // 位数取2的幂，下标用掩码计算；上限 2^30 位（128MB）
+        int bits = Integer.highestOneBit((int) Math.min(1L << 30, Math.max(64L, optimalBits)) - 1) << 1;
+        this.bitMask = bits - 1;
+        this.hashCount = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.clock = clock;
+        this.current = new AtomicLongArray(bits >>> 6);
+        this.previous = new AtomicLongArray(bits >>> 6);
+        this.rotateAtNanos = clock.getAsLong() + windowNanos;
+    }
+
+    /**
+     * 写入元素
+     *
+     * @return true 写入前该元素一定不存在；false 可能已存在
+     */
+    public boolean put(long h1, long h2) {
+        rotateIfNeeded();
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        boolean absent = false;
+        boolean absentInPrevious = false;
+        long combined = h1;
+        for (int i = 0; i < hashCount; i++) {
+            int index = (int) (combined & bitMask);
+            if (setBit(cur, index)) {
+                absent = true;
+            }
+            if (!absentInPrevious && !getBit(prev, index)) {
+                absentInPrevious = true;
+            }
+            combined += h2;
+        }
+        return absent && absentInPrevious;
+    }
+
+    /**
+     * @return false 元素一定不存在；true 可能存在
+     */
+    public boolean mightContain(long h1, long h2) {
+        rotateIfNeeded();
+        return contains(current, h1, h2) || contains(previous, h1, h2);
+    }
+
+    public int bitSize() {
+        return bitMask + 1;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    private boolean contains(AtomicLongArray bits, long h1, long h2) {
+        long combined = h1;
+        for (int i = 0; i < hashCount; i++) {
+            if (!getBit(bits, (int) (combined & bitMask))) {
+                return false;
+            }
+            combined += h2;
+        }
+        return true;
+    }
+
+    private void rotateIfNeeded() {
+        if (clock.getAsLong() - rotateAtNanos < 0) {
+            return;
+        }
+        synchronized (this) {
+            long now = clock.getAsLong();
+            if (now - rotateAtNanos < 0) {
+                return;
+            }
+            // 停顿超过两个窗口期时两代都已过期
+            previous = now - rotateAtNanos >= windowNanos ? new AtomicLongArray(current.length()) : current;
+            current = new AtomicLongArray(current.length());
+            rotateAtNanos = now + windowNanos;
+        }
+    }
+
+    private static boolean getBit(AtomicLongArray bits, int index) {
+        return (bits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * @return true 该位此前为0
+     */
+    private static boolean setBit(AtomicLongArray bits, int index) {
+        int word = index >>> 6;
+        long mask = 1L << index;
+        while (true) {
+            long old = bits.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(word, old, old | mask)) {
+                return true;
+            }
+        }
+    }
+}
@@ -28,6 +28,21 @@ public class FeedDao extends ServiceImpl<FeedMapper, Feed> {
 		return CursorUtils.getCursorPageByMysql(this, request, wrapper -> wrapper.in(Feed::getUid, uidList), Feed::getCreateTime);
 	}
 
+	/**
+	 * 查询指定用户列表最新的朋友圈，用于重建时间线
+	 *
+	 * @param uidList 用户ID列表
+	 * @param limit 条数
+	 */
+	public List<Feed> getLatestFeeds(List<Long> uidList, int limit) {
+		return lambdaQuery()
+				.select(Feed::getId, Feed::getUid, Feed::getPermission, Feed::getCreateTime)
+				.in(Feed::getUid, uidList)
+				.orderByDesc(Feed::getCreateTime)
+				.last("limit " + limit)
+				.list();
+	}
+
 	public FeedVo getDetail(Long id) {
 		return baseMapper.getDetail(id);
 	}
@@ -7,7 +7,11 @@ import com.luohuo.flex.im.domain.entity.FeedTarget;
 import com.luohuo.flex.im.core.user.mapper.FeedTargetMapper;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class FeedTargetDao extends ServiceImpl<FeedTargetMapper, FeedTarget> {
@@ -28,4 +32,17 @@ public class FeedTargetDao extends ServiceImpl<FeedTargetMapper, FeedTarget> {
 		queryWrapper.eq(FeedTarget::getFeedId, feedId).select(FeedTarget::getTargetId, FeedTarget::getType);
 		return baseMapper.selectList(queryWrapper);
 	}
+
+	/**
+	 * 批量查询朋友圈的权限目标
+	 * @return feedId -> 权限目标
+	 */
+	public Map<Long, List<FeedTarget>> selectFeedTargets(Collection<Long> feedIds) {
+		if (feedIds.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		LambdaQueryWrapper<FeedTarget> queryWrapper = Wrappers.lambdaQuery();
+		queryWrapper.in(FeedTarget::getFeedId, feedIds).select(FeedTarget::getFeedId, FeedTarget::getTargetId, FeedTarget::getType);
+		return baseMapper.selectList(queryWrapper).stream().collect(Collectors.groupingBy(FeedTarget::getFeedId));
+	}
 }
@@ -13,7 +13,9 @@ import com.luohuo.flex.im.domain.entity.UserFriend;
 import com.luohuo.flex.im.core.user.mapper.UserFriendMapper;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -101,6 +103,31 @@ public class UserFriendDao extends ServiceImpl<UserFriendMapper, UserFriend> {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * 查询发布者中与读者互相屏蔽朋友圈的人：我不看他，或者他不让我看
+	 *
+	 * @param uid 读者
+	 * @param authorUids 发布者
+	 * @return
+	 */
+	public Set<Long> getHiddenFeedAuthors(Long uid, Collection<Long> authorUids) {
+		if (authorUids.isEmpty()) {
+			return new HashSet<>();
+		}
+		return lambdaQuery()
+				.select(UserFriend::getUid, UserFriend::getFriendUid)
+				.and(w -> w.eq(UserFriend::getUid, uid)
+						.in(UserFriend::getFriendUid, authorUids)
+						.eq(UserFriend::getHideTheirPosts, true)
+						.or()
+						.eq(UserFriend::getFriendUid, uid)
+						.in(UserFriend::getUid, authorUids)
+						.eq(UserFriend::getHideMyPosts, true))
+				.list().stream()
+				.map(f -> f.getUid().equals(uid) ? f.getFriendUid() : f.getUid())
+				.collect(Collectors.toSet());
+	}
+
 	/**
 	 * 查询仅聊天的好友
 	 *
@@ -26,4 +26,11 @@ public interface FeedService {
 	FeedPermission getFeedPermission(Long uid, Long feedId);
 
 	Boolean editFeed(Long uid, FeedParam param);
+
+	/**
+	 * 读者重新可见发布者的朋友圈（新加好友、取消屏蔽）后补齐时间线
+	 * @param uid 读者
+	 * @param authorUid 发布者
+	 */
+	void restoreTimeline(Long uid, Long authorUid);
 }
@@ -2,7 +2,10 @@ package com.luohuo.flex.im.core.user.service;
 
 import com.luohuo.flex.im.domain.vo.request.room.TargetVo;
 import com.luohuo.flex.im.domain.vo.request.room.UserTargetRelParam;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface UserTargetRelService {
 
@@ -31,4 +34,12 @@ public interface UserTargetRelService {
 	 * @param targetIds 标签集合
 	 */
 	List<Long> getFeedUidList(List<Long> targetIds, Long uid);
+
+	/**
+	 * 查询好友被打上的标签，按标签所属的用户分组
+	 * @param friendId 好友的id
+	 * @param targetIds 标签集合
+	 * @return 标签所属用户 -> 命中的标签
+	 */
+	Map<Long, Set<Long>> getFriendTargets(Long friendId, Collection<Long> targetIds);
 }
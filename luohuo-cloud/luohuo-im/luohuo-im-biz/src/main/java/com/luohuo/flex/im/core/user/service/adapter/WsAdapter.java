@@ -67,6 +67,13 @@ public class WsAdapter {
         return wsBaseResp;
     }
 
+    public static WsBaseResp<ChatMessageResp> buildMsgUpdate(ChatMessageResp msgResp) {
+        WsBaseResp<ChatMessageResp> wsBaseResp = new WsBaseResp<>();
+        wsBaseResp.setType(WSRespTypeEnum.MSG_UPDATE.getType());
+        wsBaseResp.setData(msgResp);
+        return wsBaseResp;
+    }
+
     public static WsBaseResp<WSMsgMark> buildMsgMarkSend(ChatMessageMarkDTO dto, Integer markCount) {
         WSMsgMark.WSMsgMarkItem item = new WSMsgMark.WSMsgMarkItem();
 		item.setMsgId(dto.getMsgId()+"");
@@ -0,0 +1,372 @@
+package com.luohuo.flex.im.core.user.service.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import com.luohuo.flex.im.common.config.FeedTimelineProperties;
+import com.luohuo.flex.im.common.constant.RedisKey;
+import com.luohuo.flex.im.core.user.dao.FeedDao;
+import com.luohuo.flex.im.domain.entity.Feed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 朋友圈时间线缓存
+ * <p>
+ * 每个用户一个收件箱 zset: feedId -> 发布时间毫秒，发布时按已经计算好的可见范围写扩散，
+ * 每个收件箱只保留最新 capacity 条，更早的内容回源数据库。
+ * 可见人数超过 pullThreshold 的发布者只写自己的发件箱，并把自己登记到读者的拉取集合里，
+ * 读者翻页时合并收件箱和拉取集合中各发件箱的结果。
+ * <p>
+ * 收件箱里的 {@link #INIT_MEMBER}（分值为 0）表示已经从数据库初始化过，
+ * 没有初始化的收件箱不做写扩散，等首次读取时整体重建。
+ * {@link #TRUNCATED_MEMBER}（分值为 0）表示数据库里还有比收件箱更早的内容：重建时取满了 capacity 条，或者写入时裁剪过，
+ * 读完收件箱后据此决定是否回源数据库。
+ * 翻页按 (发布时间, feedId) 定位，同一毫秒发布的多条不会在页边界被跳过。
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FeedTimelineCache {
+
+	private static final String INIT_MEMBER = "0";
+	private static final String TRUNCATED_MEMBER = "-1";
+	private static final int BATCH_SIZE = 500;
+	private static final long PULL_SYNC_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+	/**
+	 * KEYS[1..n] 收件箱
+	 * ARGV[1] feedId, ARGV[2] 发布时间, ARGV[3] 裁剪终点（负数下标）, ARGV[4] 过期秒数, ARGV[5] 初始化标记, ARGV[6] 截断标记
+	 * 分值为 0 的标记排在最前，裁剪从标记之后开始，裁掉内容时补上截断标记
+	 */
+	private static final RedisScript<Long> FAN_OUT_SCRIPT = new DefaultRedisScript<>("""
+			local hit = 0
+			for i = 1, #KEYS do
+				if redis.call('ZSCORE', KEYS[i], ARGV[5]) then
+					redis.call('ZADD', KEYS[i], ARGV[2], ARGV[1])
+					local base = redis.call('ZCOUNT', KEYS[i], 0, 0)
+					if redis.call('ZREMRANGEBYRANK', KEYS[i], base, ARGV[3]) > 0 then
+						redis.call('ZADD', KEYS[i], 0, ARGV[6])
+					end
+					redis.call('EXPIRE', KEYS[i], ARGV[4])
+					hit = hit + 1
+				end
+			end
+			return hit
+			""", Long.class);
+
+	/**
+	 * KEYS[1] 收件箱
+	 * ARGV[1] 裁剪终点（负数下标）, ARGV[2] 过期秒数, ARGV[3] 初始化标记, ARGV[4] 截断标记, ARGV[5..] 发布时间与 feedId 成对出现
+	 * 收件箱未初始化时不写入，首次读取时会整体重建
+	 */
+	private static final RedisScript<Long> RESTORE_SCRIPT = new DefaultRedisScript<>("""
+			if not redis.call('ZSCORE', KEYS[1], ARGV[3]) then
+				return 0
+			end
+			for i = 5, #ARGV, 2 do
+				redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])
+			end
+			local base = redis.call('ZCOUNT', KEYS[1], 0, 0)
+			if redis.call('ZREMRANGEBYRANK', KEYS[1], base, ARGV[1]) > 0 then
+				redis.call('ZADD', KEYS[1], 0, ARGV[4])
+			end
+			redis.call('EXPIRE', KEYS[1], ARGV[2])
+			return 1
+			""", Long.class);
+
+	private final StringRedisTemplate stringRedisTemplate;
+	private final FeedTimelineProperties properties;
+	private final FeedDao feedDao;
+
+	/**
+	 * 时间线中的一条朋友圈
+	 * @param feedId 朋友圈id
+	 * @param score 发布时间毫秒
+	 * @param pulled 是否来自大V发件箱，这类内容读取时需要校验可见权限
+	 */
+	public record Entry(Long feedId, long score, boolean pulled) {
+	}
+
+	/**
+	 * 一次读取的结果
+	 * @param entries 按发布时间倒序
+	 * @param exhausted 收件箱和发件箱都已读完
+	 * @param truncated 数据库里还有比收件箱、发件箱更早的内容，读完之后需要回源数据库
+	 */
+	public record Slice(List<Entry> entries, boolean exhausted, boolean truncated) {
+	}
+
+	/**
+	 * 发布朋友圈后写扩散
+	 * @param authorUid 发布者
+	 * @param feedId 朋友圈id
+	 * @param createTime 发布时间毫秒
+	 * @param audience 已经按权限、屏蔽关系计算好的可见用户
+	 */
+	public void fanOut(Long authorUid, Long feedId, long createTime, Collection<Long> audience) {
+		Set<Long> inboxUids = new LinkedHashSet<>();
+		inboxUids.add(authorUid);
+		boolean pullMode = audience.size() > properties.getPullThreshold();
+		if (pullMode) {
+			pushOutbox(authorUid, feedId, createTime);
+			syncPullRelation(authorUid, audience);
+		} else {
+			inboxUids.addAll(audience);
+		}
+
+		String trimStop = String.valueOf(-(properties.getCapacity() + 1));
+		String expire = String.valueOf(TimeUnit.DAYS.toSeconds(properties.getExpireDays()));
+		for (List<Long> batch : CollUtil.split(inboxUids, BATCH_SIZE)) {
+			List<String> keys = batch.stream().map(FeedTimelineCache::inboxKey).toList();
+			stringRedisTemplate.execute(FAN_OUT_SCRIPT, keys, String.valueOf(feedId), String.valueOf(createTime), trimStop, expire, INIT_MEMBER, TRUNCATED_MEMBER);
+		}
+	}
+
+	/**
+	 * 从指定用户的收件箱撤回朋友圈（编辑后不再可见）
+	 */
+	public void retract(Long feedId, Collection<Long> uidList) {
+		if (CollUtil.isEmpty(uidList)) {
+			return;
+		}
+		String member = String.valueOf(feedId);
+		stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+			@Override
+			public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+				RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+				uidList.forEach(uid -> ops.opsForZSet().remove(inboxKey(uid), member));
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * 删除朋友圈，其他读者收件箱里的残留在读取时发现后清理
+	 */
+	public void remove(Long authorUid, Long feedId) {
+		String member = String.valueOf(feedId);
+		stringRedisTemplate.opsForZSet().remove(inboxKey(authorUid), member);
+		stringRedisTemplate.opsForZSet().remove(outboxKey(authorUid), member);
+	}
+
+	/**
+	 * 清理读者收件箱中已经不存在的朋友圈
+	 */
+	public void evict(Long uid, Collection<Long> feedIds) {
+		if (CollUtil.isNotEmpty(feedIds)) {
+			stringRedisTemplate.opsForZSet().remove(inboxKey(uid), feedIds.stream().map(String::valueOf).toArray());
+		}
+	}
+
+	/**
+	 * 解除好友后互相清理时间线
+	 */
+	public void unlink(Long uid, Long friendUid) {
+		hide(uid, friendUid);
+		hide(friendUid, uid);
+	}
+
+	/**
+	 * 读者不再可见发布者的朋友圈（屏蔽、解除好友）：移出拉取集合，清理收件箱中已写入的内容。
+	 * 取消屏蔽后由发布者下一次同步拉取关系时恢复
+	 * @param uid 读者
+	 * @param authorUid 发布者
+	 */
+	public void hide(Long uid, Long authorUid) {
+		List<Feed> authorFeeds = feedDao.getLatestFeeds(List.of(authorUid), properties.getCapacity());
+		stringRedisTemplate.opsForSet().remove(pullKey(uid), String.valueOf(authorUid));
+		if (!authorFeeds.isEmpty()) {
+			stringRedisTemplate.opsForZSet().remove(inboxKey(uid), authorFeeds.stream().map(f -> String.valueOf(f.getId())).toArray());
+		}
+	}
+
+	/**
+	 * 读者重新可见发布者的朋友圈（新加好友、取消屏蔽）：把发布者最近的朋友圈补进收件箱，
+	 * 发布者处于读扩散时同时恢复拉取关系
+	 * @param uid 读者
+	 * @param authorUid 发布者
+	 * @param feeds 发布者最近的朋友圈，已按读者的可见权限过滤
+	 */
+	public void restore(Long uid, Long authorUid, List<Feed> feeds) {
+		if (!feeds.isEmpty()) {
+			List<String> args = new ArrayList<>();
+			args.add(String.valueOf(-(properties.getCapacity() + 1)));
+			args.add(String.valueOf(TimeUnit.DAYS.toSeconds(properties.getExpireDays())));
+			args.add(INIT_MEMBER);
+			args.add(TRUNCATED_MEMBER);
+			feeds.forEach(feed -> {
+				args.add(String.valueOf(toMillis(feed)));
+				args.add(String.valueOf(feed.getId()));
+			});
+			stringRedisTemplate.execute(RESTORE_SCRIPT, List.of(inboxKey(uid)), args.toArray());
+		}
+		if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(outboxKey(authorUid)))) {
+			stringRedisTemplate.opsForSet().add(pullKey(uid), String.valueOf(authorUid));
+		}
+	}
+
+	public boolean isInitialized(Long uid) {
+		return stringRedisTemplate.opsForZSet().score(inboxKey(uid), INIT_MEMBER) != null;
+	}
+
+	/**
+	 * 用数据库中已经过滤好权限的朋友圈重建收件箱
+	 * @param truncated 数据库里还有更早的朋友圈没有放进收件箱
+	 */
+	public void init(Long uid, List<Feed> feeds, boolean truncated) {
+		String key = inboxKey(uid);
+		stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+			@Override
+			public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+				RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+				ops.delete(key);
+				ops.opsForZSet().add(key, INIT_MEMBER, 0);
+				if (truncated) {
+					ops.opsForZSet().add(key, TRUNCATED_MEMBER, 0);
+				}
+				for (List<Feed> batch : CollUtil.split(feeds, BATCH_SIZE)) {
+					Set<ZSetOperations.TypedTuple<String>> tuples = new LinkedHashSet<>();
+					batch.forEach(feed -> tuples.add(ZSetOperations.TypedTuple.of(String.valueOf(feed.getId()), (double) toMillis(feed))));
+					ops.opsForZSet().add(key, tuples);
+				}
+				ops.expire(key, properties.getExpireDays(), TimeUnit.DAYS);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * 按 (发布时间, feedId) 倒序读取位于游标之后的最多 count 条朋友圈，合并收件箱与大V发件箱
+	 * @param maxScore 游标的发布时间毫秒
+	 * @param maxFeedId 游标的 feedId，为空时跳过 maxScore 这一毫秒的全部内容
+	 */
+	public Slice range(Long uid, long maxScore, Long maxFeedId, int count) {
+		Set<String> pullAuthors = stringRedisTemplate.opsForSet().members(pullKey(uid));
+		List<String> keys = new ArrayList<>();
+		keys.add(inboxKey(uid));
+		if (CollUtil.isNotEmpty(pullAuthors)) {
+			pullAuthors.forEach(author -> keys.add(outboxKey(Long.valueOf(author))));
+		}
+		// 早于游标毫秒的按分值取，与游标同一毫秒的单独取出后按 feedId 过滤
+		double below = (double) maxScore - 1;
+		boolean ties = maxFeedId != null;
+		List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+			@Override
+			public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+				RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+				ops.opsForZSet().score(keys.get(0), TRUNCATED_MEMBER);
+				keys.forEach(key -> {
+					ops.opsForZSet().reverseRangeByScoreWithScores(key, 1, below, 0, count);
+					if (ties) {
+						ops.opsForZSet().rangeByScoreWithScores(key, maxScore, maxScore);
+					}
+				});
+				return null;
+			}
+		});
+
+		// 大V发件箱只保留最新的部分，更早的内容也要回源数据库
+		boolean truncated = results.get(0) != null || CollUtil.isNotEmpty(pullAuthors);
+		boolean exhausted = true;
+		Map<Long, Entry> merged = new HashMap<>();
+		int step = ties ? 2 : 1;
+		for (int k = 0; k < keys.size(); k++) {
+			boolean pulled = k > 0;
+			int index = 1 + k * step;
+			Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) results.get(index);
+			if (tuples != null && tuples.size() >= count) {
+				exhausted = false;
+			}
+			List<ZSetOperations.TypedTuple<String>> candidates = new ArrayList<>();
+			if (tuples != null) {
+				candidates.addAll(tuples);
+			}
+			if (ties && results.get(index + 1) != null) {
+				candidates.addAll((Set<ZSetOperations.TypedTuple<String>>) results.get(index + 1));
+			}
+			for (ZSetOperations.TypedTuple<String> tuple : candidates) {
+				Long feedId = Long.valueOf(Objects.requireNonNull(tuple.getValue()));
+				long score = Objects.requireNonNull(tuple.getScore()).longValue();
+				if (score <= 0 || (score == maxScore && (!ties || feedId >= maxFeedId))) {
+					continue;
+				}
+				// 同时在收件箱和发件箱中时以收件箱为准，无需再校验权限
+				merged.merge(feedId, new Entry(feedId, score, pulled), (old, latest) -> old.pulled() ? latest : old);
+			}
+		}
+		List<Entry> entries = merged.values().stream()
+				.sorted(Comparator.comparingLong(Entry::score).reversed().thenComparing(Entry::feedId, Comparator.reverseOrder()))
+				.limit(count)
+				.toList();
+		if (merged.size() > count) {
+			exhausted = false;
+		}
+		return new Slice(entries, exhausted, truncated);
+	}
+
+	private void pushOutbox(Long authorUid, Long feedId, long createTime) {
+		String key = outboxKey(authorUid);
+		stringRedisTemplate.opsForZSet().add(key, String.valueOf(feedId), createTime);
+		stringRedisTemplate.opsForZSet().removeRange(key, 0, -(properties.getCapacity() + 1));
+		stringRedisTemplate.expire(key, properties.getExpireDays(), TimeUnit.DAYS);
+	}
+
+	/**
+	 * 把大V登记到可见用户的拉取集合，每天最多同步一次，新增的好友最迟一天后可见
+	 */
+	private void syncPullRelation(Long authorUid, Collection<Long> audience) {
+		Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(RedisKey.getKey(RedisKey.FEED_PULL_SYNC_FORMAT, authorUid), "1", PULL_SYNC_SECONDS, TimeUnit.SECONDS);
+		if (!Boolean.TRUE.equals(first)) {
+			return;
+		}
+		String author = String.valueOf(authorUid);
+		for (List<Long> batch : CollUtil.split(audience, BATCH_SIZE)) {
+			stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+				@Override
+				public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+					RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+					batch.forEach(uid -> ops.opsForSet().add(pullKey(uid), author));
+					return null;
+				}
+			});
+		}
+		log.info("朋友圈发布者 {} 可见人数 {}，切换为读扩散", authorUid, audience.size());
+	}
+
+	public static long toMillis(Feed feed) {
+		return feed.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	private static String inboxKey(Long uid) {
+		return RedisKey.getKey(RedisKey.FEED_INBOX_FORMAT, uid);
+	}
+
+	private static String outboxKey(Long uid) {
+		return RedisKey.getKey(RedisKey.FEED_OUTBOX_FORMAT, uid);
+	}
+
+	private static String pullKey(Long uid) {
+		return RedisKey.getKey(RedisKey.FEED_PULL_FORMAT, uid);
+	}
+}
@@ -36,11 +36,15 @@ import com.luohuo.flex.im.domain.dto.SummeryInfoDTO;
 import com.luohuo.flex.im.core.user.service.FeedService;
 import com.luohuo.flex.im.core.user.service.FeedCommentService;
 import com.luohuo.flex.im.core.user.service.UserTargetRelService;
+import com.luohuo.flex.im.core.user.service.cache.FeedTimelineCache;
 import com.luohuo.flex.im.core.user.service.cache.UserSummaryCache;
+import com.luohuo.flex.im.common.config.FeedTimelineProperties;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -64,6 +68,8 @@ public class FeedServiceImpl implements FeedService {
 	private final FeedCommentService feedCommentService;
 	private final FeedLikeDao feedLikeDao;
 	private final UserSummaryCache userSummaryCache;
+	private final FeedTimelineCache feedTimelineCache;
+	private final FeedTimelineProperties feedTimelineProperties;
 
 	/**
 	 * @param feedList 朋友圈基础内容
@@ -161,50 +167,210 @@ public class FeedServiceImpl implements FeedService {
 		return feedVos;
 	}
 
+	/**
+	 * 朋友圈列表：先读时间线缓存（收件箱 + 大V发件箱），读完且数据库里还有更早的内容时回源数据库。
+	 * 游标为 "发布时间毫秒:feedId"，兼容只有发布时间的旧游标
+	 */
 	@Override
 	public CursorPageBaseResp<FeedVo> getFeedPage(FeedPageReq request, Long uid) {
+		if (!feedTimelineCache.isInitialized(uid)) {
+			rebuildTimeline(uid);
+		}
+
+		int pageSize = request.getPageSize();
+		long maxScore = Long.MAX_VALUE;
+		Long maxFeedId = null;
+		if (StrUtil.isNotBlank(request.getCursor())) {
+			List<String> cursor = StrUtil.split(request.getCursor(), ':');
+			maxScore = Long.parseLong(cursor.get(0));
+			maxFeedId = cursor.size() > 1 ? Long.valueOf(cursor.get(1)) : null;
+		}
+		List<Feed> pageFeeds = new ArrayList<>(pageSize);
+		boolean exhausted = false;
+		boolean truncated = false;
+		// 过滤后不足一页时继续往后补拉，避免返回过短的页面
+		for (int round = 0; round < feedTimelineProperties.getMaxFillRounds() && pageFeeds.size() < pageSize; round++) {
+			FeedTimelineCache.Slice slice = feedTimelineCache.range(uid, maxScore, maxFeedId, pageSize);
+			truncated = slice.truncated();
+			if (slice.entries().isEmpty()) {
+				exhausted = true;
+				break;
+			}
+			FeedTimelineCache.Entry last = slice.entries().get(slice.entries().size() - 1);
+			maxScore = last.score();
+			maxFeedId = last.feedId();
+			pageFeeds.addAll(hydrateVisibleFeeds(uid, slice.entries(), request.getUserName()));
+			if (slice.exhausted()) {
+				exhausted = true;
+				break;
+			}
+		}
+
+		if (pageFeeds.size() > pageSize) {
+			pageFeeds = new ArrayList<>(pageFeeds.subList(0, pageSize));
+			exhausted = false;
+		}
+
+		// 收件箱只保留最新的部分，更早的内容回源数据库
+		if (exhausted && truncated && pageFeeds.size() < pageSize) {
+			long dbCursor = pageFeeds.isEmpty() ? maxScore : FeedTimelineCache.toMillis(pageFeeds.get(pageFeeds.size() - 1));
+			FeedPageReq dbRequest = new FeedPageReq(request.getUserName());
+			dbRequest.setPageSize(pageSize - pageFeeds.size());
+			dbRequest.setCursor(dbCursor == Long.MAX_VALUE ? null : String.valueOf(dbCursor));
+			CursorPageBaseResp<Feed> dbPage = getFeedPageFromDb(dbRequest, uid);
+			pageFeeds.addAll(dbPage.getList());
+			exhausted = dbPage.getIsLast();
+		}
+
+		CursorPageBaseResp<FeedVo> resp = new CursorPageBaseResp<>();
+		resp.setList(buildFeedResp(pageFeeds, uid));
+		resp.setIsLast(exhausted && pageFeeds.size() < pageSize);
+		resp.setCursor(pageFeeds.isEmpty() ? (maxScore == Long.MAX_VALUE ? null : toCursor(maxScore, maxFeedId))
+				: toCursor(FeedTimelineCache.toMillis(pageFeeds.get(pageFeeds.size() - 1)), pageFeeds.get(pageFeeds.size() - 1).getId()));
+		resp.setTotal((long) resp.getList().size());
+		return resp;
+	}
+
+	private static String toCursor(long score, Long feedId) {
+		return feedId == null ? String.valueOf(score) : score + ":" + feedId;
+	}
+
+	/**
+	 * 加载时间线中的朋友圈，清理已删除的条目，大V发件箱中的内容按权限和屏蔽关系过滤
+	 */
+	private List<Feed> hydrateVisibleFeeds(Long uid, List<FeedTimelineCache.Entry> entries, String userName) {
+		List<Long> feedIds = entries.stream().map(FeedTimelineCache.Entry::feedId).toList();
+		Map<Long, Feed> feedMap = feedDao.listByIds(feedIds).stream().collect(Collectors.toMap(Feed::getId, f -> f));
+
+		List<Long> missing = feedIds.stream().filter(id -> !feedMap.containsKey(id)).toList();
+		feedTimelineCache.evict(uid, missing);
+
+		List<Feed> inboxFeeds = new ArrayList<>();
+		List<Feed> pulledFeeds = new ArrayList<>();
+		for (FeedTimelineCache.Entry entry : entries) {
+			Feed feed = feedMap.get(entry.feedId());
+			if (feed != null) {
+				(entry.pulled() ? pulledFeeds : inboxFeeds).add(feed);
+			}
+		}
+		Set<Long> visible = new HashSet<>();
+		inboxFeeds.forEach(feed -> visible.add(feed.getId()));
+		filterVisible(pulledFeeds, uid).forEach(feed -> visible.add(feed.getId()));
+
+		List<Feed> feeds = new ArrayList<>(visible.size());
+		for (Long feedId : feedIds) {
+			if (visible.contains(feedId)) {
+				feeds.add(feedMap.get(feedId));
+			}
+		}
+		return filterByUserName(feeds, userName);
+	}
+
+	/**
+	 * 从数据库重建时间线：好友和自己最新的 capacity 条朋友圈，按权限过滤后写入收件箱
+	 */
+	private void rebuildTimeline(Long uid) {
+		List<Long> friendIds = userFriendDao.getAllFriendIdsByUid(uid);
+		friendIds.add(uid);
+		List<Feed> feeds = feedDao.getLatestFeeds(friendIds, feedTimelineProperties.getCapacity());
+		feedTimelineCache.init(uid, filterVisible(feeds, uid), feeds.size() >= feedTimelineProperties.getCapacity());
+	}
+
+	/**
+	 * 读者重新可见发布者（新加好友、取消屏蔽）后，把发布者最近的朋友圈按权限过滤后补进读者的时间线
+	 */
+	@Override
+	public void restoreTimeline(Long uid, Long authorUid) {
+		afterCommit(() -> {
+			List<Feed> feeds = feedDao.getLatestFeeds(List.of(authorUid), feedTimelineProperties.getCapacity());
+			feedTimelineCache.restore(uid, authorUid, filterVisible(feeds, uid));
+		});
+	}
+
+	/**
+	 * 直接查询数据库的朋友圈列表，权限目标批量加载
+	 */
+	private CursorPageBaseResp<Feed> getFeedPageFromDb(FeedPageReq request, Long uid) {
 		List<Long> friendIds = userFriendDao.getAllFriendIdsByUid(uid);
 		friendIds.add(uid);
 
 		CursorPageBaseResp<Feed> page = feedDao.getFeedPage(friendIds, request);
+		List<Feed> filteredFeeds = filterByUserName(filterVisible(page.getList(), uid), request.getUserName());
+		return CursorPageBaseResp.init(page, filteredFeeds, page.getTotal());
+	}
 
-		List<Feed> filteredFeeds = page.getList().stream().filter(feed -> {
+	/**
+	 * 按朋友圈权限和好友间的屏蔽关系过滤，权限目标、标签和屏蔽关系每页各一次批量查询
+	 */
+	private List<Feed> filterVisible(List<Feed> feeds, Long uid) {
+		List<Feed> others = feeds.stream().filter(feed -> !feed.getUid().equals(uid)).toList();
+		Set<Long> hiddenAuthors = userFriendDao.getHiddenFeedAuthors(uid, others.stream().map(Feed::getUid).collect(Collectors.toSet()));
+
+		List<Long> targetFeedIds = others.stream()
+				.filter(feed -> {
+					FeedPermissionEnum permission = FeedPermissionEnum.get(feed.getPermission());
+					return permission == FeedPermissionEnum.partVisible || permission == FeedPermissionEnum.notAnyone;
+				})
+				.map(Feed::getId)
+				.toList();
+		Map<Long, List<FeedTarget>> targetMap = feedTargetDao.selectFeedTargets(targetFeedIds);
+		Set<Long> tagIds = targetMap.values().stream()
+				.flatMap(List::stream)
+				.filter(t -> t.getType() == 1)
+				.map(FeedTarget::getTargetId)
+				.collect(Collectors.toSet());
+		// 发布者 -> 给当前用户打上的标签
+		Map<Long, Set<Long>> taggedMap = userTargetRelService.getFriendTargets(uid, tagIds);
+
+		return feeds.stream().filter(feed -> {
 			if (feed.getUid().equals(uid)) {
 				return true;
 			}
+			if (hiddenAuthors.contains(feed.getUid())) {
+				return false;
+			}
 
 			FeedPermissionEnum permission = FeedPermissionEnum.get(feed.getPermission());
+			List<FeedTarget> targets = targetMap.getOrDefault(feed.getId(), List.of());
+			Set<Long> tagged = taggedMap.getOrDefault(feed.getUid(), Set.of());
 			switch (permission) {
 				case privacy:
 					return false;
 				case open:
 					return true;
 				case partVisible:
-					List<FeedTarget> targets = feedTargetDao.selectFeedTargets(feed.getId());
-					return targets.stream().anyMatch(t -> t.getType() == 2 && t.getTargetId().equals(uid));
+					return isTargeted(targets, tagged, uid);
 				case notAnyone:
-					List<FeedTarget> excludes = feedTargetDao.selectFeedTargets(feed.getId());
-					return excludes.stream().noneMatch(t -> t.getType() == 2 && t.getTargetId().equals(uid));
+					return !isTargeted(targets, tagged, uid);
 				default:
 					return false;
 			}
 		}).collect(Collectors.toList());
+	}
 
-		if (StrUtil.isNotBlank(request.getUserName())) {
-			String keyword = request.getUserName().trim();
-			Map<Long, SummeryInfoDTO> userInfoMap = userSummaryCache.getBatch(
-				filteredFeeds.stream().map(Feed::getUid).distinct().collect(Collectors.toList())
-			);
-			filteredFeeds = filteredFeeds.stream()
-				.filter(feed -> {
-					SummeryInfoDTO userInfo = userInfoMap.get(feed.getUid());
-					return userInfo != null && StrUtil.contains(userInfo.getName(), keyword);
-				})
-				.collect(Collectors.toList());
-		}
+	/**
+	 * 用户是否命中朋友圈的权限目标（选中的好友，或选中标签下的好友）
+	 * @param tagged 发布者给用户打上的标签
+	 */
+	private boolean isTargeted(List<FeedTarget> targets, Set<Long> tagged, Long uid) {
+		return targets.stream().anyMatch(t -> (t.getType() == 2 && t.getTargetId().equals(uid))
+				|| (t.getType() == 1 && tagged.contains(t.getTargetId())));
+	}
 
-		List<FeedVo> result = buildFeedResp(filteredFeeds, uid);
-		return CursorPageBaseResp.init(page, result, page.getTotal());
+	private List<Feed> filterByUserName(List<Feed> feeds, String userName) {
+		if (StrUtil.isBlank(userName) || feeds.isEmpty()) {
+			return feeds;
+		}
+		String keyword = userName.trim();
+		Map<Long, SummeryInfoDTO> userInfoMap = userSummaryCache.getBatch(
+			feeds.stream().map(Feed::getUid).distinct().collect(Collectors.toList())
+		);
+		return feeds.stream()
+			.filter(feed -> {
+				SummeryInfoDTO userInfo = userInfoMap.get(feed.getUid());
+				return userInfo != null && StrUtil.contains(userInfo.getName(), keyword);
+			})
+			.collect(Collectors.toList());
 	}
 
 	/**
@@ -241,11 +407,59 @@ public class FeedServiceImpl implements FeedService {
 	 * @param uid 操作人
 	 * @param feed 朋友圈
 	 * @param needClearCache 是否需要清除缓存（编辑时为true，新建时为false）
+	 * @return 可见用户
 	 */
-	private void saveFeed(FeedParam param, Long uid, Feed feed, boolean needClearCache) {
+	private List<Long> saveFeed(FeedParam param, Long uid, Feed feed, boolean needClearCache) {
+		// 1. 保存权限目标
+		FeedPermissionEnum permission = FeedPermissionEnum.get(param.getPermission());
+		if (permission == FeedPermissionEnum.notAnyone || permission == FeedPermissionEnum.partVisible) {
+			if(CollUtil.isNotEmpty(param.getTargetIds())){
+				saveFeedTarget(param.getTargetIds(), feed.getId(), uid);
+			}
+			if(CollUtil.isNotEmpty(param.getUidList())){
+				saveFeedUser(param.getUidList(), feed.getId(), uid);
+			}
+		}
+		List<Long> pushList = resolveAudience(uid, param.getPermission(), param.getTargetIds(), param.getUidList());
+
+		// 2. 处理不同类型的朋友圈内容
+		switch (FeedEnum.get(param.getMediaType())){
+			case WORD -> log.info("发布了一条纯文字朋友圈~~");
+			case IMAGE, VIDEO -> {
+				List<String> images = param.getImages();
+				if (CollUtil.isEmpty(images)){
+					throw new RuntimeException("请至少上传一条素材!");
+				}
+				feedMediaDao.batchSaveMedia(feed.getId(), images, param.getMediaType());
+			}
+		}
+
+		// 3. 清除缓存
+		if (needClearCache) {
+			cachePlusOps.del(FeedMediaRelCacheKeyBuilder.build(feed.getId()));
+			cachePlusOps.del(FeedTargetRelCacheKeyBuilder.build(feed.getId()));
+		}
+
+		// 4. 提交后写入可见用户的时间线
+		Long feedId = feed.getId();
+		long createTime = feed.getCreateTime() != null ? FeedTimelineCache.toMillis(feed) : System.currentTimeMillis();
+		afterCommit(() -> feedTimelineCache.fanOut(uid, feedId, createTime, pushList));
+
+		// 5. 告知 pushList 我发布了朋友圈
+		pushService.sendPushMsg(MemberAdapter.buildFeedPushWS(uid), pushList, uid);
+		return pushList;
+	}
+
+	/**
+	 * 计算朋友圈的可见用户
+	 * @param uid 发布者
+	 * @param permission 权限
+	 * @param targetIds 选中的标签
+	 * @param selectedUids 选中的好友
+	 */
+	private List<Long> resolveAudience(Long uid, String permission, List<Long> targetIds, List<Long> selectedUids) {
 		List<Long> pushList = new ArrayList<>();
-		List<FeedTarget> feedTargets = new ArrayList<>();
-		switch (FeedPermissionEnum.get(param.getPermission())){
+		switch (FeedPermissionEnum.get(permission)){
 			case open -> {
 				// 1. 查询所有好友，排除【不让他看我, 他不看我】的好友
 				List<Long> uidList = userFriendDao.getAllFriendIdsByUid(uid);
@@ -257,13 +471,11 @@ public class FeedServiceImpl implements FeedService {
 			case notAnyone -> {
 				// 2.1 查询所有好友, 排除【选中的标签+选中的好友+不让他看我+他不看我】
 				List<Long> uidList = userFriendDao.getAllFriendIdsByUid(uid);
-				if(CollUtil.isNotEmpty(param.getTargetIds())){
-					feedTargets.addAll(saveFeedTarget(param.getTargetIds(), feed.getId(), uid));
-					uidList.removeAll(userTargetRelService.getFeedUidList(param.getTargetIds(), uid));
+				if(CollUtil.isNotEmpty(targetIds)){
+					uidList.removeAll(userTargetRelService.getFeedUidList(targetIds, uid));
 				}
-				if(CollUtil.isNotEmpty(param.getUidList())){
-					feedTargets.addAll(saveFeedUser(param.getUidList(), feed.getId(), uid));
-					uidList.removeAll(param.getUidList());
+				if(CollUtil.isNotEmpty(selectedUids)){
+					uidList.removeAll(selectedUids);
 				}
 				uidList.removeAll(userFriendDao.getHideMyPosts(uid));
 				uidList.removeAll(userFriendDao.getHideLookMe(uid));
@@ -272,41 +484,32 @@ public class FeedServiceImpl implements FeedService {
 			case partVisible -> {
 				// 2.2 解析标签映射的好友 + 选中的好友；同时排除【不让他看我, 他不看我】
 				Set<Long> uidList = new HashSet<>();
-				if(CollUtil.isNotEmpty(param.getTargetIds())){
-					feedTargets.addAll(saveFeedTarget(param.getTargetIds(), feed.getId(), uid));
-					uidList.addAll(userTargetRelService.getFeedUidList(param.getTargetIds(), uid));
+				if(CollUtil.isNotEmpty(targetIds)){
+					uidList.addAll(userTargetRelService.getFeedUidList(targetIds, uid));
 				}
 
-				if(CollUtil.isNotEmpty(param.getUidList())){
-					feedTargets.addAll(saveFeedUser(param.getUidList(), feed.getId(), uid));
-					uidList.addAll(param.getUidList());
+				if(CollUtil.isNotEmpty(selectedUids)){
+					uidList.addAll(selectedUids);
 				}
 				uidList.removeAll(userFriendDao.getHideMyPosts(uid));
 				uidList.removeAll(userFriendDao.getHideLookMe(uid));
 				pushList.addAll(uidList);
 			}
 		}
+		return pushList;
+	}
 
-		// 2. 处理不同类型的朋友圈内容
-		switch (FeedEnum.get(param.getMediaType())){
-			case WORD -> log.info("发布了一条纯文字朋友圈~~");
-			case IMAGE, VIDEO -> {
-				List<String> images = param.getImages();
-				if (CollUtil.isEmpty(images)){
-					throw new RuntimeException("请至少上传一条素材!");
-				}
-				feedMediaDao.batchSaveMedia(feed.getId(), images, param.getMediaType());
-			}
-		}
-
-		// 3. 清除缓存
-		if (needClearCache) {
-			cachePlusOps.del(FeedMediaRelCacheKeyBuilder.build(feed.getId()));
-			cachePlusOps.del(FeedTargetRelCacheKeyBuilder.build(feed.getId()));
+	private static void afterCommit(Runnable runnable) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			runnable.run();
+			return;
 		}
-
-		// 4. 告知 pushList 我发布了朋友圈
-		pushService.sendPushMsg(MemberAdapter.buildFeedPushWS(uid), pushList, uid);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				runnable.run();
+			}
+		});
 	}
 
 	/**
@@ -354,6 +557,8 @@ public class FeedServiceImpl implements FeedService {
 	 */
 	@Transactional
 	public Boolean delFeed(Long feedId){
+		Feed feed = feedDao.getById(feedId);
+
 		// 1. 首先将朋友圈素材、权限、评论、点赞删除
 		feedMediaDao.delMediaByFeedId(feedId);
 		feedTargetDao.delByFeedId(feedId);
@@ -366,6 +571,9 @@ public class FeedServiceImpl implements FeedService {
 		cachePlusOps.del(FeedMediaRelCacheKeyBuilder.build(feedId));
 		cachePlusOps.del(FeedCommentCacheKeyBuilder.build(feedId));
 		cachePlusOps.del(FeedLikeCacheKeyBuilder.build(feedId));
+		if (ObjectUtil.isNotNull(feed)) {
+			afterCommit(() -> feedTimelineCache.remove(feed.getUid(), feedId));
+		}
 		return true;
 	}
 
@@ -432,6 +640,12 @@ public class FeedServiceImpl implements FeedService {
 			throw new BizException("只能编辑自己的朋友圈!");
 		}
 
+		// 0. 记录编辑前的可见用户，编辑后不再可见的从其时间线撤回
+		List<FeedTarget> oldTargets = feedTargetDao.selectFeedTargets(feed.getId());
+		List<Long> oldAudience = resolveAudience(uid, feed.getPermission(),
+				oldTargets.stream().filter(t -> t.getType() == 1).map(FeedTarget::getTargetId).toList(),
+				oldTargets.stream().filter(t -> t.getType() == 2).map(FeedTarget::getTargetId).toList());
+
 		// 1. 更新朋友圈基础信息
 		feed.setMediaType(param.getMediaType());
 		feed.setPermission(param.getPermission());
@@ -443,7 +657,11 @@ public class FeedServiceImpl implements FeedService {
 		feedMediaDao.delMediaByFeedId(feed.getId());
 
 		// 3. 更新朋友圈的权限+素材（编辑场景，需要清除缓存）
-		saveFeed(param, uid, feed, true);
+		List<Long> newAudience = saveFeed(param, uid, feed, true);
+		Set<Long> removed = new HashSet<>(oldAudience);
+		newAudience.forEach(removed::remove);
+		removed.remove(uid);
+		afterCommit(() -> feedTimelineCache.retract(feed.getId(), removed));
 		return true;
 	}
 }
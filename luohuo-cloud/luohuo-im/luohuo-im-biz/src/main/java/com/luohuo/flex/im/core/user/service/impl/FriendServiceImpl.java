@@ -10,6 +10,8 @@ import com.luohuo.flex.common.OnlineService;
 import com.luohuo.flex.common.cache.FriendCacheKeyBuilder;
 import com.luohuo.flex.common.cache.PresenceCacheKeyBuilder;
 import com.luohuo.flex.common.constant.DefValConstants;
+import com.luohuo.flex.im.core.user.service.FeedService;
+import com.luohuo.flex.im.core.user.service.cache.FeedTimelineCache;
 import com.luohuo.flex.im.core.user.service.cache.UserSummaryCache;
 import com.luohuo.flex.im.domain.dto.SummeryInfoDTO;
 import com.luohuo.flex.im.domain.enums.ApplyReadStatusEnum;
@@ -73,6 +75,8 @@ public class FriendServiceImpl implements FriendService, InitializingBean {
 	private final PushService pushService;
 	private CachePlusOps cachePlusOps;
 	private OnlineService onlineService;
+	private FeedTimelineCache feedTimelineCache;
+	private FeedService feedService;
 
 	/**
 	 * 注入好友关系
@@ -173,9 +177,27 @@ public class FriendServiceImpl implements FriendService, InitializingBean {
 		AssertUtil.isNotEmpty(userFriend, "你们不是好友!");
 
 		// 2. 修改权限
+		boolean hidMyPosts = Boolean.TRUE.equals(userFriend.getHideMyPosts());
+		boolean hidTheirPosts = Boolean.TRUE.equals(userFriend.getHideTheirPosts());
 		userFriend.setHideMyPosts(request.getHideMyPosts());
 		userFriend.setHideTheirPosts(request.getHideTheirPosts());
-		return userFriendDao.updateById(userFriend);
+		boolean updated = userFriendDao.updateById(userFriend);
+		if (!updated) {
+			return false;
+		}
+
+		// 3. 屏蔽后清理时间线，大V的拉取关系也一并移除；取消屏蔽后补回对方最近的朋友圈
+		if (Boolean.TRUE.equals(request.getHideMyPosts())) {
+			feedTimelineCache.hide(request.getFriendId(), uid);
+		} else if (hidMyPosts) {
+			feedService.restoreTimeline(request.getFriendId(), uid);
+		}
+		if (Boolean.TRUE.equals(request.getHideTheirPosts())) {
+			feedTimelineCache.hide(uid, request.getFriendId());
+		} else if (hidTheirPosts) {
+			feedService.restoreTimeline(uid, request.getFriendId());
+		}
+		return true;
 	}
 
 	@Override
@@ -275,6 +297,10 @@ public class FriendServiceImpl implements FriendService, InitializingBean {
 		// 创建好友会话
 		chatService.createContact(uid, roomId);
 		chatService.createContact(targetUid, roomId);
+
+		// 互相补齐朋友圈时间线
+		feedService.restoreTimeline(uid, targetUid);
+		feedService.restoreTimeline(targetUid, uid);
     }
 
 	/**
@@ -324,6 +350,9 @@ public class FriendServiceImpl implements FriendService, InitializingBean {
 		cachePlusOps.sRem(FriendCacheKeyBuilder.reverseFriendsKey(friendUid), uid);
 
 		cachePlusOps.set(FriendCacheKeyBuilder.friendStatusKey(uid, friendUid), "0");
+
+		// 互相从朋友圈时间线中移除
+		feedTimelineCache.unlink(uid, friendUid);
 	}
 
 }
@@ -0,0 +1,452 @@
+package com.luohuo.flex.im.core.user.service.impl;
+
+import cn.hutool.core.util.IdUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.luohuo.flex.common.cache.PassageMsgCacheKeyBuilder;
+import com.luohuo.flex.im.core.chat.dao.ContactDao;
+import com.luohuo.flex.model.entity.WsBaseResp;
+import com.luohuo.flex.model.entity.ws.ChatMessageResp;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.collection.LongObjectHashMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在途消息跟踪 [时间轮]
+ * <p>
+ * 原先每条消息都按节点投递一条延迟 MQ，到期后再逐个 uid 查询在途集合，重试成本与消息量成正比。
+ * 现在由本机时间轮跟踪未回执的投递，回执落在本机时直接在内存里勾掉，
+ * 到期时只对仍未回执的 uid 批量核对 Redis 在途集合（回执可能被其他实例消费），确认未回执的才重推。
+ * <p>
+ * 时间轮是在途投递的唯一存放处，正常回执的投递不产生任何 Redis 写入。
+ * 到期仍有未回执的 uid 时，才把这部分 uid 写入 Redis（ZSET 按到期时间排序，hash 保存投递内容），再排进重试线程池，
+ * Redis 写入量只随回执丢失量增长，与消息量无关。
+ * 重试线程开始处理时先删除自己的记录，删除失败说明已被其他实例认领，本机不再重推。
+ * 实例崩溃时，已到期排队中的投递由各实例定时认领超过到期时间 {@code recover-grace-seconds} 仍未删除的记录补做重试；
+ * 尚未到期的投递随时间轮丢失，由客户端拉取离线消息兜底。
+ * 超出本机容量的投递、以及正常停机时尚未到期的投递，交给原来的延迟 MQ 兜底。
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InFlightTracker {
+
+	private static final String DUE_KEY = "luohuo:in_flight:{delivery}:due";
+	private static final String DATA_KEY = "luohuo:in_flight:{delivery}:data";
+	private static final int RECOVER_BATCH = 100;
+	private static final String METRIC_PREFIX = "im.in_flight.retry.";
+
+	/**
+	 * KEYS[1] 到期 ZSET, KEYS[2] 投递内容 hash
+	 * ARGV[1] 当前时间, ARGV[2] 单次认领上限
+	 * 认领即删除，同一条记录只会被一个实例取走
+	 */
+	private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+			local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+			local result = {}
+			for _, id in ipairs(ids) do
+				redis.call('ZREM', KEYS[1], id)
+				local data = redis.call('HGET', KEYS[2], id)
+				redis.call('HDEL', KEYS[2], id)
+				if data then
+					table.insert(result, data)
+				end
+			end
+			return result
+			""", List.class);
+
+	/**
+	 * KEYS[1] 到期 ZSET, KEYS[2] 投递内容 hash
+	 * ARGV[1] 投递id
+	 * 本机重试前先取回自己的记录，返回 0 表示已被其他实例认领
+	 */
+	private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then
+				return 0
+			end
+			redis.call('HDEL', KEYS[2], ARGV[1])
+			return 1
+			""", Long.class);
+
+	private final PushService pushService;
+	private final ContactDao contactDao;
+	private final RedisTemplate<String, Object> redisTemplate;
+	private final StringRedisTemplate stringRedisTemplate;
+	private final ObjectMapper objectMapper;
+	private final MeterRegistry meterRegistry;
+
+	@Value("${luohuo.thread.retry.delay-seconds:3}")
+	private Integer delaySeconds;
+
+	// 本机最多跟踪的未回执投递数 (uid 维度)
+	@Value("${luohuo.thread.retry.max-in-flight:200000}")
+	private Integer maxInFlight;
+
+	// 到期多久仍未处理的记录视为所属实例已宕机，由其他实例接管
+	@Value("${luohuo.thread.retry.recover-grace-seconds:30}")
+	private Integer recoverGraceSeconds;
+
+	// 重试线程数，排队时间需明显小于 recover-grace-seconds，否则记录会被其他实例重复认领
+	@Value("${luohuo.thread.retry.retry-threads:4}")
+	private Integer retryThreads;
+
+	// msgId -> 该消息的投递批次，同一条消息可能分多批推送（如音视频通话）
+	private final LongObjectHashMap<List<Delivery>> deliveries = new LongObjectHashMap<>();
+	private final AtomicInteger inFlightCount = new AtomicInteger();
+
+	private HashedWheelTimer wheelTimer;
+	private ThreadPoolExecutor retryExecutor;
+	private Timer lagTimer;
+	private Counter stolenCounter;
+
+	@PostConstruct
+	public void init() {
+		wheelTimer = new HashedWheelTimer(
+				new ThreadFactoryBuilder()
+						.setNameFormat("in-flight-wheel-%d")
+						.setDaemon(true)
+						.build(),
+				100, TimeUnit.MILLISECONDS, 512);
+		retryExecutor = new ThreadPoolExecutor(retryThreads, retryThreads, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder()
+						.setNameFormat("in-flight-retry-%d")
+						.setDaemon(true)
+						.build());
+		lagTimer = Timer.builder(METRIC_PREFIX + "lag")
+				.description("Time an expired delivery waits for a retry thread")
+				.register(meterRegistry);
+		stolenCounter = Counter.builder(METRIC_PREFIX + "stolen")
+				.description("Expired deliveries claimed by another instance before the local retry started")
+				.register(meterRegistry);
+		Gauge.builder(METRIC_PREFIX + "depth", retryExecutor, executor -> executor.getQueue().size())
+				.description("Expired deliveries waiting for a retry thread")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * 跟踪一批投递，到期未回执则重推
+	 * @param msg 推送的消息
+	 * @param uidList 推送的用户
+	 * @param msgId 消息id
+	 * @param cuid 操作人
+	 */
+	public void track(WsBaseResp<?> msg, Collection<Long> uidList, Long msgId, Long cuid) {
+		if (uidList.isEmpty()) {
+			return;
+		}
+		if (inFlightCount.get() + uidList.size() > maxInFlight) {
+			pushService.sendPushMsgWithRetry(msg, new ArrayList<>(uidList), msgId, cuid);
+			return;
+		}
+
+		Delivery delivery = new Delivery(IdUtil.fastSimpleUUID(), msgId, msg, cuid, uidList.stream().mapToLong(Long::longValue).sorted().distinct().toArray());
+		synchronized (deliveries) {
+			List<Delivery> list = deliveries.get(msgId);
+			if (list == null) {
+				list = new ArrayList<>(1);
+				deliveries.put(msgId, list);
+			}
+			list.add(delivery);
+		}
+		inFlightCount.addAndGet(delivery.uids.length);
+		delivery.timeout = wheelTimer.newTimeout(t -> expire(delivery), delaySeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 客户端回执
+	 * @param msgId 消息id
+	 * @param uid 回执人
+	 */
+	public void ack(Long msgId, Long uid) {
+		synchronized (deliveries) {
+			List<Delivery> list = deliveries.get(msgId);
+			if (list == null) {
+				return;
+			}
+			Iterator<Delivery> iterator = list.iterator();
+			while (iterator.hasNext()) {
+				Delivery delivery = iterator.next();
+				if (!delivery.ack(uid)) {
+					continue;
+				}
+				inFlightCount.decrementAndGet();
+				if (delivery.isFinished()) {
+					delivery.done = true;
+					iterator.remove();
+					if (delivery.timeout != null) {
+						delivery.timeout.cancel();
+					}
+				}
+			}
+			if (list.isEmpty()) {
+				deliveries.remove(msgId);
+			}
+		}
+	}
+
+	/**
+	 * 到期：摘出仍未回执的 uid 写入 Redis，交给重试线程核对后重推
+	 */
+	private void expire(Delivery delivery) {
+		List<Long> unackedList;
+		synchronized (deliveries) {
+			if (delivery.done) {
+				return;
+			}
+			unackedList = detach(delivery);
+		}
+		inFlightCount.addAndGet(-unackedList.size());
+		if (unackedList.isEmpty()) {
+			return;
+		}
+		boolean persisted = persist(delivery, unackedList);
+		long expiredAt = System.nanoTime();
+		retryExecutor.execute(() -> {
+			lagTimer.record(System.nanoTime() - expiredAt, TimeUnit.NANOSECONDS);
+			if (persisted && !release(delivery.id)) {
+				stolenCounter.increment();
+				return;
+			}
+			retry(delivery.msgId, delivery.msg, delivery.cuid, unackedList);
+		});
+	}
+
+	/**
+	 * 认领已宕机实例遗留的投递并补做重试
+	 */
+	@Scheduled(fixedDelay = 5000)
+	public void recover() {
+		long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(recoverGraceSeconds);
+		List<String> claimed;
+		do {
+			claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, List.of(DUE_KEY, DATA_KEY), String.valueOf(deadline), String.valueOf(RECOVER_BATCH));
+			if (claimed == null || claimed.isEmpty()) {
+				return;
+			}
+			for (String data : claimed) {
+				try {
+					Snapshot snapshot = objectMapper.readValue(data, Snapshot.class);
+					List<Long> uidList = Arrays.stream(snapshot.uids()).boxed().toList();
+					long claimedAt = System.nanoTime();
+					retryExecutor.execute(() -> {
+						lagTimer.record(System.nanoTime() - claimedAt, TimeUnit.NANOSECONDS);
+						retry(snapshot.msgId(), snapshot.msg(), snapshot.cuid(), uidList);
+					});
+				} catch (JsonProcessingException e) {
+					log.error("在途消息记录解析失败, data: {}", data, e);
+				}
+			}
+			log.info("接管遗留的在途消息: {}", claimed.size());
+		} while (claimed.size() == RECOVER_BATCH);
+	}
+
+	private void retry(long msgId, WsBaseResp<?> msg, Long cuid, List<Long> unackedList) {
+		try {
+			List<Object> existList = redisTemplate.executePipelined(new SessionCallback<Object>() {
+				@Override
+				public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+					RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+					unackedList.forEach(uid -> ops.opsForSet().isMember(PassageMsgCacheKeyBuilder.build(uid).getKey(), msgId));
+					return null;
+				}
+			});
+
+			List<Long> retryList = new ArrayList<>();
+			for (int i = 0; i < unackedList.size(); i++) {
+				if (Boolean.TRUE.equals(existList.get(i))) {
+					retryList.add(unackedList.get(i));
+				}
+			}
+			if (retryList.isEmpty()) {
+				return;
+			}
+
+			log.info("ack失败重新发送消息, msgId: {}, uidList: {}", msgId, retryList);
+			pushService.sendPushMsg(msg, retryList, cuid);
+
+			// 直接更新会话的最后一条消息的id，从 Redis 恢复的消息体是 Map，处理方式同 RetryPushConsumer
+			if (msg.getData() instanceof ChatMessageResp resp) {
+				ChatMessageResp.Message message = resp.getMessage();
+				contactDao.refreshOrCreateActive(Long.parseLong(message.getRoomId()), Arrays.asList(Long.parseLong(resp.getFromUser().getUid())), Long.parseLong(message.getId()), message.getSendTime());
+			} else if (msg.getData() instanceof Map<?, ?> dataMap && dataMap.get("message") instanceof Map<?, ?> message
+					&& dataMap.get("fromUser") instanceof Map<?, ?> user) {
+				contactDao.refreshOrCreateActive(message.get("roomId"), Arrays.asList(Long.parseLong(user.get("uid").toString())), message.get("id"), message.get("sendTime"));
+			}
+		} catch (Exception e) {
+			log.error("在途消息重试失败, msgId: {}", msgId, e);
+		}
+	}
+
+	/**
+	 * 写入 Redis 到期记录，只包含仍未回执的 uid；写入失败时仍由本机重试，只是失去崩溃后的接管
+	 */
+	private boolean persist(Delivery delivery, List<Long> unackedList) {
+		try {
+			long[] uids = unackedList.stream().mapToLong(Long::longValue).toArray();
+			String data = objectMapper.writeValueAsString(new Snapshot(delivery.msgId, delivery.msg, delivery.cuid, uids));
+			double dueAt = System.currentTimeMillis();
+			stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+				@Override
+				public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+					RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+					ops.opsForHash().put(DATA_KEY, delivery.id, data);
+					ops.opsForZSet().add(DUE_KEY, delivery.id, dueAt);
+					return null;
+				}
+			});
+			return true;
+		} catch (Exception e) {
+			log.warn("在途消息记录写入失败, msgId: {}", delivery.msgId, e);
+			return false;
+		}
+	}
+
+	/**
+	 * 取回本机的到期记录，已被其他实例认领时返回 false
+	 */
+	private boolean release(String id) {
+		try {
+			Long removed = stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(DUE_KEY, DATA_KEY), id);
+			return removed != null && removed > 0;
+		} catch (Exception e) {
+			// 记录残留只会在宽限期后被多核对一次在途集合，已回执的不会重推
+			log.warn("在途消息记录删除失败, id: {}", id, e);
+			return true;
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		wheelTimer.stop();
+
+		// 未到期的投递交给延迟 MQ，由 RetryPushConsumer 继续重试
+		List<Delivery> remaining = new ArrayList<>();
+		synchronized (deliveries) {
+			deliveries.values().forEach(remaining::addAll);
+		}
+		int handed = 0;
+		for (Delivery delivery : remaining) {
+			List<Long> unackedList;
+			synchronized (deliveries) {
+				if (delivery.done) {
+					continue;
+				}
+				unackedList = detach(delivery);
+			}
+			pushService.sendPushMsgWithRetry(delivery.msg, unackedList, delivery.msgId, delivery.cuid);
+			handed += unackedList.size();
+		}
+		inFlightCount.set(0);
+
+		// 排队中的到期投递已写入 Redis，来不及处理的由其他实例认领
+		retryExecutor.shutdown();
+		try {
+			retryExecutor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.info("在途消息跟踪已关闭, 转交延迟队列: {}", handed);
+	}
+
+	/**
+	 * 从索引中摘除投递，调用方需持有 deliveries 锁
+	 */
+	private List<Long> detach(Delivery delivery) {
+		delivery.done = true;
+		List<Delivery> list = deliveries.get(delivery.msgId);
+		if (list != null) {
+			list.remove(delivery);
+			if (list.isEmpty()) {
+				deliveries.remove(delivery.msgId);
+			}
+		}
+		return delivery.unackedList();
+	}
+
+	/**
+	 * 写入 Redis 的投递内容
+	 */
+	private record Snapshot(long msgId, WsBaseResp<?> msg, Long cuid, long[] uids) {
+	}
+
+	/**
+	 * 一批投递：uid 有序存放，回执按下标记到位图上
+	 */
+	private static class Delivery {
+		private final String id;
+		private final long msgId;
+		private final WsBaseResp<?> msg;
+		private final Long cuid;
+		private final long[] uids;
+		private final BitSet acked;
+		private int pending;
+		private volatile Timeout timeout;
+		private boolean done;
+
+		Delivery(String id, long msgId, WsBaseResp<?> msg, Long cuid, long[] uids) {
+			this.id = id;
+			this.msgId = msgId;
+			this.msg = msg;
+			this.cuid = cuid;
+			this.uids = uids;
+			this.acked = new BitSet(uids.length);
+			this.pending = uids.length;
+		}
+
+		boolean ack(long uid) {
+			int index = Arrays.binarySearch(uids, uid);
+			if (index < 0 || acked.get(index)) {
+				return false;
+			}
+			acked.set(index);
+			pending--;
+			return true;
+		}
+
+		boolean isFinished() {
+			return pending == 0;
+		}
+
+		List<Long> unackedList() {
+			List<Long> list = new ArrayList<>(pending);
+			for (int i = acked.nextClearBit(0); i < uids.length; i = acked.nextClearBit(i + 1)) {
+				list.add(uids[i]);
+			}
+			return list;
+		}
+	}
+}
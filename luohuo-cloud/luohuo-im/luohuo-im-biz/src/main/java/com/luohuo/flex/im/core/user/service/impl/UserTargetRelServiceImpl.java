@@ -14,7 +14,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -86,4 +90,21 @@ public class UserTargetRelServiceImpl implements UserTargetRelService {
 				.map(o -> (Long) o)
 				.collect(Collectors.toList());
 	}
+
+	/**
+	 * 查询好友被打上的标签，朋友圈按标签过滤时每页只查一次
+	 * @param friendId 好友的id
+	 * @param targetIds 标签集合
+	 */
+	public Map<Long, Set<Long>> getFriendTargets(Long friendId, Collection<Long> targetIds) {
+		if (CollUtil.isEmpty(targetIds)) {
+			return new HashMap<>();
+		}
+		return userTargetRelDao.lambdaQuery()
+				.select(UserTargetRel::getUid, UserTargetRel::getTargetId)
+				.eq(UserTargetRel::getFriendId, friendId)
+				.in(UserTargetRel::getTargetId, targetIds)
+				.list().stream()
+				.collect(Collectors.groupingBy(UserTargetRel::getUid, Collectors.mapping(UserTargetRel::getTargetId, Collectors.toSet())));
+	}
 }
@@ -1,9 +1,11 @@
 package com.luohuo.flex.im.mapper;
 
 import com.luohuo.flex.im.domain.entity.PushDevice;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
 
@@ -59,6 +61,24 @@ public interface PushDeviceMapper {
             """)
     List<PushDevice> selectAllActiveDevices();
 
+    /**
+     * 按主键游标分页查询活跃设备，全量广播逐页读取
+     *
+     * @param lastId 上一页最后一个设备ID，首页传 0
+     * @param limit 每页条数
+     * @return 设备列表，按ID升序
+     */
+    @Select("""
+            SELECT id, user_id, device_type, device_token FROM im_push_device
+            WHERE id > #{lastId}
+            AND active = 1
+            AND last_active_time > DATE_SUB(NOW(), INTERVAL 30 DAY)
+            ORDER BY id
+            LIMIT #{limit}
+            """)
+    List<PushDevice> selectActiveDevicesAfterId(@Param("lastId") Long lastId,
+                                                @Param("limit") int limit);
+
     /**
      * 更新设备最后活跃时间
      *
@@ -81,8 +101,37 @@ public interface PushDeviceMapper {
      * @param device 设备信息
      * @return 影响行数
      */
+    @Insert("""
+            INSERT INTO im_push_device (user_id, device_type, device_token, app_version, os_version,
+                                        device_model, active, last_active_time, tenant_id)
+            VALUES (#{userId}, #{deviceType}, #{deviceToken}, #{appVersion}, #{osVersion},
+                    #{deviceModel}, 1, NOW(), #{tenantId})
+            ON DUPLICATE KEY UPDATE
+                device_type = VALUES(device_type),
+                app_version = VALUES(app_version),
+                os_version = VALUES(os_version),
+                device_model = VALUES(device_model),
+                active = 1,
+                last_active_time = NOW()
+            """)
     int insertOrUpdate(PushDevice device);
 
+    /**
+     * 注销设备
+     *
+     * @param userId 用户ID
+     * @param deviceToken 设备Token
+     * @return 影响行数
+     */
+    @Update("""
+            UPDATE im_push_device
+            SET active = 0
+            WHERE user_id = #{userId}
+            AND device_token = #{deviceToken}
+            """)
+    int deactivateDevice(@Param("userId") Long userId,
+                         @Param("deviceToken") String deviceToken);
+
     /**
      * 批量查询多个用户的活跃设备（解决N+1查询问题）
      *
@@ -1,6 +1,7 @@
 package com.luohuo.flex.im.mapper;
 
 import com.luohuo.flex.im.domain.entity.PushRecord;
+import com.luohuo.flex.im.domain.entity.PushStatHourly;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Options;
@@ -33,6 +34,106 @@ public interface PushRecordMapper {
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(PushRecord record);
 
+    /**
+     * 批量插入推送记录，回填自增id
+     *
+     * @param records 推送记录
+     * @return 影响行数
+     */
+    @Insert("""
+            <script>
+            INSERT INTO im_push_record (user_id, device_token, push_type, title, content, extra, status, error_message, create_time, tenant_id)
+            VALUES
+            <foreach collection="records" item="r" separator=",">
+                (#{r.userId}, #{r.deviceToken}, #{r.pushType}, #{r.title}, #{r.content}, #{r.extra}, #{r.status}, #{r.errorMessage}, #{r.createTime}, #{r.tenantId})
+            </foreach>
+            </script>
+            """)
+    @Options(useGeneratedKeys = true, keyProperty = "records.id")
+    int insertBatch(@Param("records") List<PushRecord> records);
+
+    /**
+     * 批量更新推送状态，只更新仍为旧状态的记录
+     *
+     * @param ids 记录ID
+     * @param oldStatus 旧状态
+     * @param status 状态
+     * @param errorMessage 错误信息
+     * @return 影响行数
+     */
+    @Update("""
+            <script>
+            UPDATE im_push_record
+            SET status = #{status}, error_message = #{errorMessage}
+            WHERE id IN
+            <foreach collection="ids" item="id" open="(" separator="," close=")">
+                #{id}
+            </foreach>
+            AND status = #{oldStatus}
+            </script>
+            """)
+    int updateStatusBatch(@Param("ids") List<Long> ids, @Param("oldStatus") String oldStatus,
+                          @Param("status") String status, @Param("errorMessage") String errorMessage);
+
+    /**
+     * 锁定并查询记录的类型、状态和创建时间，用于批量更新状态时修正小时统计，需在事务中调用
+     *
+     * @param ids 记录ID
+     * @return 推送记录（仅 id/push_type/status/create_time）
+     */
+    @Select("""
+            <script>
+            SELECT id, push_type, status, create_time FROM im_push_record
+            WHERE id IN
+            <foreach collection="ids" item="id" open="(" separator="," close=")">
+                #{id}
+            </foreach>
+            FOR UPDATE
+            </script>
+            """)
+    List<PushRecord> selectStatusByIdsForUpdate(@Param("ids") List<Long> ids);
+
+    /**
+     * 累加小时统计
+     *
+     * @param stats 各 (小时, 推送类型) 的增量
+     * @return 影响行数
+     */
+    @Insert("""
+            <script>
+            INSERT INTO im_push_stat_hourly (stat_hour, push_type, total_count, success_count, failure_count)
+            VALUES
+            <foreach collection="stats" item="s" separator=",">
+                (#{s.statHour}, #{s.pushType}, #{s.totalCount}, #{s.successCount}, #{s.failureCount})
+            </foreach>
+            ON DUPLICATE KEY UPDATE
+                total_count = total_count + VALUES(total_count),
+                success_count = success_count + VALUES(success_count),
+                failure_count = failure_count + VALUES(failure_count)
+            </script>
+            """)
+    int upsertHourlyStats(@Param("stats") List<PushStatHourly> stats);
+
+    /**
+     * 按推送类型汇总小时统计，时间为空时不限制
+     *
+     * @param startHour 开始小时（含）
+     * @param endTime 结束时间（含）
+     * @return 各推送类型的汇总
+     */
+    @Select("""
+            <script>
+            SELECT push_type, SUM(total_count) AS total_count, SUM(success_count) AS success_count, SUM(failure_count) AS failure_count
+            FROM im_push_stat_hourly
+            <where>
+                <if test="startHour != null">AND stat_hour &gt;= #{startHour}</if>
+                <if test="endTime != null">AND stat_hour &lt;= #{endTime}</if>
+            </where>
+            GROUP BY push_type
+            </script>
+            """)
+    List<PushStatHourly> sumHourlyStatsByType(@Param("startHour") LocalDateTime startHour, @Param("endTime") LocalDateTime endTime);
+
     /**
      * 更新推送状态
      *
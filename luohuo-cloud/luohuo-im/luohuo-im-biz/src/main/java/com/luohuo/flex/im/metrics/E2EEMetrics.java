@@ -1,8 +1,10 @@
 package com.luohuo.flex.im.metrics;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -152,6 +154,14 @@ public class E2EEMetrics {
                 .increment(count);
     }
 
+    /**
+     * 导出本地缓存的命中、未命中、淘汰、大小等统计
+     * 指标名为 cache.gets{result=hit|miss} / cache.evictions / cache.size 等，cache 标签为缓存名，module 标签为 e2ee
+     */
+    public void monitorCache(String cacheName, Cache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName, "module", "e2ee");
+    }
+
     /**
      * 获取活跃用户数
      */
@@ -373,4 +383,16 @@ public class E2EEMetrics {
                 .register(meterRegistry)
                 .increment(cleanedCount);
     }
+
+    /**
+     * 记录自毁消息实际删除时间与预定销毁时间的延迟
+     *
+     * @param milliseconds 延迟（毫秒）
+     */
+    public void recordSelfDestructLag(long milliseconds) {
+        Timer.builder(METRIC_PREFIX + "self_destruct.lag")
+                .description("Delay between destructAt and the actual deletion")
+                .register(meterRegistry)
+                .record(milliseconds, TimeUnit.MILLISECONDS);
+    }
 }
@@ -0,0 +1,158 @@
+package com.luohuo.flex.im.monitor.histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 定长的无锁延迟直方图（HDR 风格的对数-线性分桶）
+ *
+ * 0~31 每个值一个桶；之后每个 2 的幂区间再均分 16 个桶，相对误差不超过 1/16，
+ * 取桶中点作为分位值时误差约 3%。可记录的上限为 2^24-1（毫秒约 4.6 小时），超出的值计入最后一个桶。
+ * 共 336 个桶，内存固定，记录时只做原子自增，不分配对象。
+ *
+ * @author HuLa
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+    static final long MAX_VALUE = (1L << 24) - 1;
+    static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值，负数按 0 处理
+     */
+    public void record(long value) {
+        long v = Math.min(Math.max(value, 0L), MAX_VALUE);
+        counts.incrementAndGet(indexOf(v));
+        sum.add(v);
+        if (v < min.get()) {
+            min.accumulateAndGet(v, Math::min);
+        }
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * 清空。与并发的 record 之间不保证原子，清空瞬间写入的少量样本可能丢失
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * 累加到快照
+     */
+    public void mergeInto(Snapshot snapshot) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = counts.get(i);
+            if (c != 0) {
+                snapshot.counts[i] += c;
+                total += c;
+            }
+        }
+        if (total == 0) {
+            return;
+        }
+        snapshot.count += total;
+        snapshot.sum += sum.sum();
+        snapshot.min = Math.min(snapshot.min, min.get());
+        snapshot.max = Math.max(snapshot.max, max.get());
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        mergeInto(snapshot);
+        return snapshot;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return subBucket << shift;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        return lowerBound(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * 直方图快照，可由多个直方图合并而成，非线程安全
+     */
+    public static final class Snapshot {
+        private final long[] counts = new long[BUCKET_COUNT];
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max;
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile 0~1
+         * @return 分位值，取所在桶的中点并限制在 [min, max] 内
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long mid = (lowerBound(i) + upperBound(i)) >>> 1;
+                    return Math.min(Math.max(mid, getMin()), max);
+                }
+            }
+            return max;
+        }
+    }
+}
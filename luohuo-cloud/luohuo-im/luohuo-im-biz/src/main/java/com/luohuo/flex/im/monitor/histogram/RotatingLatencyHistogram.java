@@ -0,0 +1,90 @@
+package com.luohuo.flex.im.monitor.histogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 按时间窗口轮换的延迟直方图
+ *
+ * 环形保存最近 slotCount 个窗口，每个窗口一个 LatencyHistogram，
+ * 写入时根据当前时间定位窗口，窗口过期后由第一个写入者 CAS 认领并清空复用。
+ * 查询时合并落在时间范围内的窗口，早于最旧窗口的数据已被覆盖。
+ *
+ * @author HuLa
+ */
+public final class RotatingLatencyHistogram {
+
+    private final long slotMillis;
+    private final LatencyHistogram[] slots;
+    private final AtomicLongArray slotEpochs;
+    private final LongSupplier clock;
+
+    /**
+     * @param slotCount  保留的窗口数
+     * @param slotMillis 窗口长度（毫秒）
+     */
+    public RotatingLatencyHistogram(int slotCount, long slotMillis) {
+        this(slotCount, slotMillis, System::currentTimeMillis);
+    }
+
+    RotatingLatencyHistogram(int slotCount, long slotMillis, LongSupplier clock) {
+        if (slotCount <= 0 || slotMillis <= 0) {
+            throw new IllegalArgumentException("invalid histogram window");
+        }
+        this.slotMillis = slotMillis;
+        this.slots = new LatencyHistogram[slotCount];
+        this.slotEpochs = new AtomicLongArray(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new LatencyHistogram();
+            slotEpochs.set(i, -1);
+        }
+        this.clock = clock;
+    }
+
+    public void record(long value) {
+        long epoch = clock.getAsLong() / slotMillis;
+        int index = (int) (epoch % slots.length);
+        long current = slotEpochs.get(index);
+        if (current != epoch) {
+            if (current < epoch && slotEpochs.compareAndSet(index, current, epoch)) {
+                slots[index].reset();
+            } else if (slotEpochs.get(index) != epoch) {
+                // 时钟回拨写到了已被新窗口占用的槽位，丢弃
+                return;
+            }
+        }
+        slots[index].record(value);
+    }
+
+    /**
+     * 合并 [fromMillis, toMillis] 内的窗口
+     */
+    public LatencyHistogram.Snapshot snapshot(long fromMillis, long toMillis) {
+        long nowEpoch = clock.getAsLong() / slotMillis;
+        long fromEpoch = Math.max(fromMillis / slotMillis, nowEpoch - slots.length + 1);
+        long toEpoch = Math.min(toMillis / slotMillis, nowEpoch);
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+        for (int i = 0; i < slots.length; i++) {
+            long epoch = slotEpochs.get(i);
+            if (epoch >= fromEpoch && epoch <= toEpoch) {
+                slots[i].mergeInto(snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 最近 millis 毫秒内的数据
+     */
+    public LatencyHistogram.Snapshot recent(long millis) {
+        long now = clock.getAsLong();
+        return snapshot(now - millis, now);
+    }
+
+    /**
+     * 可查询的最长时间范围（毫秒）
+     */
+    public long retentionMillis() {
+        return slotMillis * slots.length;
+    }
+}
@@ -5,6 +5,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -36,7 +37,9 @@ public class PerformanceInterceptor implements HandlerInterceptor {
             if (startTime != null) {
                 long took = System.currentTimeMillis() - startTime;
 
-                String apiPath = request.getRequestURI();
+                // 优先使用匹配到的路由模板，避免路径参数导致指标键无限增长
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                String apiPath = pattern != null ? pattern.toString() : request.getRequestURI();
                 String method = request.getMethod();
                 int statusCode = response.getStatus();
                 Long userId = getUserIdFromRequest(request);
@@ -1,6 +1,12 @@
 package com.luohuo.flex.im.monitor.service.impl;
 
 import com.luohuo.flex.im.monitor.PerformanceMonitorService;
+import com.luohuo.flex.im.monitor.histogram.LatencyHistogram;
+import com.luohuo.flex.im.monitor.histogram.RotatingLatencyHistogram;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -8,8 +14,8 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -18,6 +24,11 @@ import java.util.stream.Collectors;
 /**
  * 性能监控服务实现
  *
+ * 内存指标使用定长的无锁直方图，按 1 分钟轮换：
+ * - 每个分类（搜索/API/数据库/缓存）保留最近 1 小时，用于统计报告和健康检查
+ * - 每个指标键（如 "GET /api/x"）保留最近 5 分钟，用于找出最慢的接口；键的数量有上限，超出后归入 other
+ * 同一份数据按指标键注册为 Micrometer Timer，分类的分位值注册为 Gauge
+ *
  * @author HuLa
  */
 @Slf4j
@@ -27,11 +38,31 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
     @Autowired(required = false)
     private RedisTemplate<String, Object> redisTemplate;
 
-    // 内存中的性能指标缓存（用于实时监控）
-    private final Map<String, List<Long>> searchMetricsCache = new ConcurrentHashMap<>();
-    private final Map<String, List<Long>> apiMetricsCache = new ConcurrentHashMap<>();
-    private final Map<String, List<Long>> dbMetricsCache = new ConcurrentHashMap<>();
-    private final Map<String, List<Boolean>> cacheMetricsCache = new ConcurrentHashMap<>();
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // 直方图窗口配置
+    private static final long SLOT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int CATEGORY_SLOTS = 60;
+    private static final int KEY_SLOTS = 5;
+    private static final long RECENT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_METRIC_KEYS = 500;
+    private static final int SLOWEST_LIMIT = 10;
+    private static final String OTHER_KEY = "other";
+    private static final String METER_PREFIX = "im.performance.";
+
+    // 内存中的性能指标（用于实时监控），按分类汇总
+    private final RotatingLatencyHistogram searchHistogram = new RotatingLatencyHistogram(CATEGORY_SLOTS, SLOT_MILLIS);
+    private final RotatingLatencyHistogram apiHistogram = new RotatingLatencyHistogram(CATEGORY_SLOTS, SLOT_MILLIS);
+    private final RotatingLatencyHistogram dbHistogram = new RotatingLatencyHistogram(CATEGORY_SLOTS, SLOT_MILLIS);
+    private final RotatingLatencyHistogram cacheHitHistogram = new RotatingLatencyHistogram(CATEGORY_SLOTS, SLOT_MILLIS);
+    private final RotatingLatencyHistogram cacheMissHistogram = new RotatingLatencyHistogram(CATEGORY_SLOTS, SLOT_MILLIS);
+
+    // 内存中的性能指标（用于实时监控），按指标键
+    private final Map<String, KeyMetrics> searchMetricsCache = new ConcurrentHashMap<>();
+    private final Map<String, KeyMetrics> apiMetricsCache = new ConcurrentHashMap<>();
+    private final Map<String, KeyMetrics> dbMetricsCache = new ConcurrentHashMap<>();
+    private final Map<String, KeyMetrics> cacheMetricsCache = new ConcurrentHashMap<>();
 
     // 阈值配置
     private static final Long SEARCH_SLOW_THRESHOLD = 3000L;  // 3秒
@@ -43,6 +74,30 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
     private static final String METRICS_PREFIX = "metrics:";
     private static final String ALERTS_PREFIX = "alerts:";
 
+    @PostConstruct
+    public void registerGauges() {
+        if (meterRegistry == null) {
+            return;
+        }
+        registerPercentileGauges("search", searchHistogram);
+        registerPercentileGauges("api", apiHistogram);
+        registerPercentileGauges("database", dbHistogram);
+        Gauge.builder(METER_PREFIX + "cache.hit.rate", this, service -> service.cacheHitRate(
+                        cacheHitHistogram.recent(RECENT_MILLIS), cacheMissHistogram.recent(RECENT_MILLIS)))
+                .description("最近5分钟缓存命中率（%）")
+                .register(meterRegistry);
+    }
+
+    private void registerPercentileGauges(String category, RotatingLatencyHistogram histogram) {
+        for (double quantile : new double[]{0.5, 0.95, 0.99}) {
+            Gauge.builder(METER_PREFIX + "latency", histogram, h -> h.recent(RECENT_MILLIS).getPercentile(quantile))
+                    .description("最近5分钟耗时分位值（毫秒）")
+                    .tag("category", category)
+                    .tag("quantile", String.valueOf(quantile))
+                    .register(meterRegistry);
+        }
+    }
+
     @Override
     @Async
     public void recordSearchMetrics(Long userId, String keyword, Long took, Integer resultCount, Boolean success) {
@@ -65,9 +120,10 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
                 redisTemplate.expire(key, 7, TimeUnit.DAYS);
             }
 
-            // 记录到内存缓存
-            String cacheKey = "search";
-            searchMetricsCache.computeIfAbsent(cacheKey, k -> new ArrayList<>()).add(took);
+            // 记录到内存直方图
+            searchHistogram.record(took);
+            String result = Boolean.TRUE.equals(success) ? "success" : "failure";
+            recordKey(searchMetricsCache, result, "search", took, "result", result);
 
             // 检查慢查询
             if (took > SEARCH_SLOW_THRESHOLD) {
@@ -75,9 +131,6 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
                     String.format("Slow search detected: keyword='%s', took=%dms", keyword, took));
             }
 
-            // 检查失败率
-            checkFailureRate(cacheKey);
-
         } catch (Exception e) {
             log.error("Failed to record search metrics", e);
         }
@@ -104,9 +157,9 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
                 redisTemplate.expire(key, 7, TimeUnit.DAYS);
             }
 
-            // 记录到内存缓存
-            String cacheKey = method + " " + apiPath;
-            apiMetricsCache.computeIfAbsent(cacheKey, k -> new ArrayList<>()).add(took);
+            // 记录到内存直方图
+            apiHistogram.record(took);
+            recordKey(apiMetricsCache, method + " " + apiPath, "api", took, "method", method, "uri", apiPath);
 
             // 检查慢API
             if (took > API_SLOW_THRESHOLD) {
@@ -145,9 +198,9 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
                 redisTemplate.expire(key, 7, TimeUnit.DAYS);
             }
 
-            // 记录到内存缓存
-            String cacheKey = operation + ":" + table;
-            dbMetricsCache.computeIfAbsent(cacheKey, k -> new ArrayList<>()).add(took);
+            // 记录到内存直方图
+            dbHistogram.record(took);
+            recordKey(dbMetricsCache, operation + ":" + table, "database", took, "operation", operation, "table", table);
 
             // 检查慢查询
             if (took > DB_SLOW_THRESHOLD) {
@@ -180,8 +233,9 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
                 redisTemplate.expire(key, 7, TimeUnit.DAYS);
             }
 
-            // 记录到内存缓存
-            cacheMetricsCache.computeIfAbsent(cacheType, k -> new ArrayList<>()).add(hit);
+            // 记录到内存直方图，命中与未命中分开统计
+            (Boolean.TRUE.equals(hit) ? cacheHitHistogram : cacheMissHistogram).record(took);
+            recordKey(cacheMetricsCache, cacheType, "cache", took, "type", cacheType);
 
             // 检查慢缓存操作
             if (took > CACHE_SLOW_THRESHOLD) {
@@ -322,90 +376,107 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
     }
 
     private Map<String, Object> getSearchMetricsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
-        Map<String, Object> metrics = new HashMap<>();
-
-        // 从内存缓存获取实时数据
-        List<Long> allSearchTimes = searchMetricsCache.values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
+        return latencyStats(searchHistogram.snapshot(toMillis(startTime), toMillis(endTime)));
+    }
 
-        if (!allSearchTimes.isEmpty()) {
-            metrics.put("count", allSearchTimes.size());
-            metrics.put("avgTook", allSearchTimes.stream().mapToLong(Long::longValue).average().orElse(0.0));
-            metrics.put("minTook", Collections.min(allSearchTimes));
-            metrics.put("maxTook", Collections.max(allSearchTimes));
-            metrics.put("p95Took", calculatePercentile(allSearchTimes, 0.95));
-            metrics.put("p99Took", calculatePercentile(allSearchTimes, 0.99));
-        } else {
-            metrics.put("count", 0);
-        }
+    private Map<String, Object> getApiMetricsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
+        Map<String, Object> metrics = latencyStats(apiHistogram.snapshot(toMillis(startTime), toMillis(endTime)));
+        metrics.put("slowest", slowestKeys(apiMetricsCache));
+        return metrics;
+    }
 
+    private Map<String, Object> getDatabaseMetricsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
+        Map<String, Object> metrics = latencyStats(dbHistogram.snapshot(toMillis(startTime), toMillis(endTime)));
+        metrics.put("slowest", slowestKeys(dbMetricsCache));
         return metrics;
     }
 
-    private Map<String, Object> getApiMetricsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
+    private Map<String, Object> getCacheMetricsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
         Map<String, Object> metrics = new HashMap<>();
 
-        List<Long> allApiTimes = apiMetricsCache.values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
+        LatencyHistogram.Snapshot hits = cacheHitHistogram.snapshot(toMillis(startTime), toMillis(endTime));
+        LatencyHistogram.Snapshot misses = cacheMissHistogram.snapshot(toMillis(startTime), toMillis(endTime));
+        long totalRequests = hits.getCount() + misses.getCount();
 
-        if (!allApiTimes.isEmpty()) {
-            metrics.put("count", allApiTimes.size());
-            metrics.put("avgTook", allApiTimes.stream().mapToLong(Long::longValue).average().orElse(0.0));
-            metrics.put("minTook", Collections.min(allApiTimes));
-            metrics.put("maxTook", Collections.max(allApiTimes));
-            metrics.put("p95Took", calculatePercentile(allApiTimes, 0.95));
-            metrics.put("p99Took", calculatePercentile(allApiTimes, 0.99));
+        if (totalRequests > 0) {
+            metrics.put("totalRequests", totalRequests);
+            metrics.put("totalHits", hits.getCount());
+            metrics.put("hitRate", cacheHitRate(hits, misses));
         } else {
-            metrics.put("count", 0);
+            metrics.put("totalRequests", 0);
+            metrics.put("hitRate", 0.0);
         }
 
         return metrics;
     }
 
-    private Map<String, Object> getDatabaseMetricsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
+    private Map<String, Object> latencyStats(LatencyHistogram.Snapshot snapshot) {
         Map<String, Object> metrics = new HashMap<>();
-
-        List<Long> allDbTimes = dbMetricsCache.values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
-
-        if (!allDbTimes.isEmpty()) {
-            metrics.put("count", allDbTimes.size());
-            metrics.put("avgTook", allDbTimes.stream().mapToLong(Long::longValue).average().orElse(0.0));
-            metrics.put("minTook", Collections.min(allDbTimes));
-            metrics.put("maxTook", Collections.max(allDbTimes));
-            metrics.put("p95Took", calculatePercentile(allDbTimes, 0.95));
-            metrics.put("p99Took", calculatePercentile(allDbTimes, 0.99));
+        if (snapshot.getCount() > 0) {
+            metrics.put("count", snapshot.getCount());
+            metrics.put("avgTook", snapshot.getMean());
+            metrics.put("minTook", snapshot.getMin());
+            metrics.put("maxTook", snapshot.getMax());
+            metrics.put("p95Took", snapshot.getPercentile(0.95));
+            metrics.put("p99Took", snapshot.getPercentile(0.99));
         } else {
             metrics.put("count", 0);
         }
-
         return metrics;
     }
 
-    private Map<String, Object> getCacheMetricsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
-        Map<String, Object> metrics = new HashMap<>();
-
-        int totalRequests = 0;
-        int totalHits = 0;
+    /**
+     * 最近5分钟按 p99 排序最慢的指标键
+     */
+    private List<Map<String, Object>> slowestKeys(Map<String, KeyMetrics> cache) {
+        List<Map.Entry<String, LatencyHistogram.Snapshot>> snapshots = new ArrayList<>(cache.size());
+        cache.forEach((key, metrics) -> {
+            LatencyHistogram.Snapshot snapshot = metrics.histogram.recent(RECENT_MILLIS);
+            if (snapshot.getCount() > 0) {
+                snapshots.add(Map.entry(key, snapshot));
+            }
+        });
+        return snapshots.stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LatencyHistogram.Snapshot> e) -> e.getValue().getPercentile(0.99)).reversed())
+                .limit(SLOWEST_LIMIT)
+                .map(e -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("key", e.getKey());
+                    item.put("count", e.getValue().getCount());
+                    item.put("avgTook", e.getValue().getMean());
+                    item.put("p99Took", e.getValue().getPercentile(0.99));
+                    return item;
+                })
+                .collect(Collectors.toList());
+    }
 
-        for (List<Boolean> hitList : cacheMetricsCache.values()) {
-            totalRequests += hitList.size();
-            totalHits += hitList.stream().mapToInt(b -> b ? 1 : 0).sum();
-        }
+    private double cacheHitRate(LatencyHistogram.Snapshot hits, LatencyHistogram.Snapshot misses) {
+        long total = hits.getCount() + misses.getCount();
+        return total == 0 ? 0.0 : (double) hits.getCount() / total * 100;
+    }
 
-        if (totalRequests > 0) {
-            metrics.put("totalRequests", totalRequests);
-            metrics.put("totalHits", totalHits);
-            metrics.put("hitRate", (double) totalHits / totalRequests * 100);
-        } else {
-            metrics.put("totalRequests", 0);
-            metrics.put("hitRate", 0.0);
+    /**
+     * 记录到指标键的直方图和 Micrometer Timer，键数量超过上限后归入 other
+     */
+    private void recordKey(Map<String, KeyMetrics> cache, String key, String meterName, long took, String... tags) {
+        KeyMetrics metrics = cache.get(key);
+        if (metrics == null) {
+            boolean overflow = cache.size() >= MAX_METRIC_KEYS;
+            if (overflow) {
+                key = OTHER_KEY;
+            }
+            String[] meterTags = tags.clone();
+            for (int i = 1; i < meterTags.length; i += 2) {
+                meterTags[i] = overflow ? OTHER_KEY : Objects.toString(meterTags[i], "unknown");
+            }
+            metrics = cache.computeIfAbsent(key, k -> new KeyMetrics(meterRegistry == null ? null
+                    : Timer.builder(METER_PREFIX + meterName).tags(meterTags).register(meterRegistry)));
         }
+        metrics.record(took);
+    }
 
-        return metrics;
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     private List<Map<String, Object>> getAlertsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
@@ -459,58 +530,34 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
     }
 
     private String checkSearchPerformance() {
-        List<Long> searchTimes = searchMetricsCache.get("search");
-        if (searchTimes != null && !searchTimes.isEmpty()) {
-            double avgTook = searchTimes.stream().mapToLong(Long::longValue).average().orElse(0.0);
-            if (avgTook > SEARCH_SLOW_THRESHOLD) {
-                return "warning";
-            }
+        LatencyHistogram.Snapshot snapshot = searchHistogram.recent(RECENT_MILLIS);
+        if (snapshot.getCount() > 0 && snapshot.getMean() > SEARCH_SLOW_THRESHOLD) {
+            return "warning";
         }
         return "healthy";
     }
 
     private String checkApiPerformance() {
-        List<Long> apiTimes = apiMetricsCache.values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
-
-        if (!apiTimes.isEmpty()) {
-            double avgTook = apiTimes.stream().mapToLong(Long::longValue).average().orElse(0.0);
-            if (avgTook > API_SLOW_THRESHOLD) {
-                return "warning";
-            }
+        LatencyHistogram.Snapshot snapshot = apiHistogram.recent(RECENT_MILLIS);
+        if (snapshot.getCount() > 0 && snapshot.getMean() > API_SLOW_THRESHOLD) {
+            return "warning";
         }
         return "healthy";
     }
 
     private String checkDatabasePerformance() {
-        List<Long> dbTimes = dbMetricsCache.values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
-
-        if (!dbTimes.isEmpty()) {
-            double avgTook = dbTimes.stream().mapToLong(Long::longValue).average().orElse(0.0);
-            if (avgTook > DB_SLOW_THRESHOLD) {
-                return "warning";
-            }
+        LatencyHistogram.Snapshot snapshot = dbHistogram.recent(RECENT_MILLIS);
+        if (snapshot.getCount() > 0 && snapshot.getMean() > DB_SLOW_THRESHOLD) {
+            return "warning";
         }
         return "healthy";
     }
 
     private String checkCachePerformance() {
-        int totalRequests = 0;
-        int totalHits = 0;
-
-        for (List<Boolean> hitList : cacheMetricsCache.values()) {
-            totalRequests += hitList.size();
-            totalHits += hitList.stream().mapToInt(b -> b ? 1 : 0).sum();
-        }
-
-        if (totalRequests > 0) {
-            double hitRate = (double) totalHits / totalRequests * 100;
-            if (hitRate < 70) {
-                return "warning";
-            }
+        LatencyHistogram.Snapshot hits = cacheHitHistogram.recent(RECENT_MILLIS);
+        LatencyHistogram.Snapshot misses = cacheMissHistogram.recent(RECENT_MILLIS);
+        if (hits.getCount() + misses.getCount() > 0 && cacheHitRate(hits, misses) < 70) {
+            return "warning";
         }
         return "healthy";
     }
@@ -535,26 +582,27 @@ public class PerformanceMonitorServiceImpl implements PerformanceMonitorService
         log.warn("Performance Alert [{}][{}]: {}", level, type, message);
     }
 
-    private void checkFailureRate(String cacheKey) {
-        List<Long> times = searchMetricsCache.get(cacheKey);
-        if (times != null && times.size() > 100) {
-            // 简单的失败率检查（假设最后10个中有3个以上失败，则发出警报）
-            // 这里需要更复杂的逻辑来准确计算失败率
-        }
-    }
-
     private PerformanceAlert convertToAlert(Object alertObj) {
         // 对象转换（基础实现，返回空警报对象）
         return new PerformanceAlert();
     }
 
-    private double calculatePercentile(List<Long> values, double percentile) {
-        if (values.isEmpty()) {
-            return 0.0;
+    /**
+     * 单个指标键的直方图和 Micrometer Timer
+     */
+    private static final class KeyMetrics {
+        private final RotatingLatencyHistogram histogram = new RotatingLatencyHistogram(KEY_SLOTS, SLOT_MILLIS);
+        private final Timer timer;
+
+        private KeyMetrics(Timer timer) {
+            this.timer = timer;
         }
 
-        List<Long> sorted = values.stream().sorted().collect(Collectors.toList());
-        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
-        return sorted.get(Math.max(0, index));
+        private void record(long took) {
+            histogram.record(took);
+            if (timer != null) {
+                timer.record(took, TimeUnit.MILLISECONDS);
+            }
+        }
     }
-}
\ No newline at end of file
+}
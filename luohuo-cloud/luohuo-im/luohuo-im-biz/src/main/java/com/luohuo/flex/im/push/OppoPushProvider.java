@@ -58,6 +58,11 @@ public class OppoPushProvider implements PushProvider {
         return PushType.OPPO;
     }
 
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
     @Override
     public boolean push(String deviceToken, String title, String content, Map<String, Object> extra) {
         if (!config.isEnabled()) {
@@ -36,4 +36,11 @@ public interface PushProvider {
      * @return 是否成功
      */
     boolean batchPush(List<String> deviceTokens, String title, String content, Map<String, Object> extra);
+
+    /**
+     * 单次批量推送的设备数上限，全量广播按此切分
+     */
+    default int getMaxBatchSize() {
+        return 500;
+    }
 }
\ No newline at end of file
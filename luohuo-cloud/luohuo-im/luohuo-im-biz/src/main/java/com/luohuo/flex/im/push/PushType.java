@@ -34,5 +34,26 @@ public enum PushType {
     /**
      * vivo推送
      */
-    VIVO
+    VIVO;
+
+    /**
+     * 设备类型转推送类型：ios/android 走 APNs/FCM，厂商通道直接登记厂商名（huawei/xiaomi/oppo/vivo）
+     *
+     * @param deviceType 设备类型
+     * @return 推送类型，无法识别时返回 null
+     */
+    public static PushType fromDeviceType(String deviceType) {
+        if (deviceType == null) {
+            return null;
+        }
+        return switch (deviceType.toLowerCase()) {
+            case "ios", "apns" -> APNS;
+            case "android", "fcm" -> FCM;
+            case "huawei" -> HUAWEI;
+            case "xiaomi" -> XIAOMI;
+            case "oppo" -> OPPO;
+            case "vivo" -> VIVO;
+            default -> null;
+        };
+    }
 }
\ No newline at end of file
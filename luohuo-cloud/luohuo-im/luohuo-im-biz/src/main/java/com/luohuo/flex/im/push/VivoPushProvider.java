@@ -59,6 +59,11 @@ public class VivoPushProvider implements PushProvider {
         return PushType.VIVO;
     }
 
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
     @Override
     public boolean push(String deviceToken, String title, String content, Map<String, Object> extra) {
         if (!config.isEnabled()) {
@@ -49,6 +49,11 @@ public class XiaomiPushProvider implements PushProvider {
         return PushType.XIAOMI;
     }
 
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
     @Override
     public boolean push(String deviceToken, String title, String content, Map<String, Object> extra) {
         if (!config.isEnabled()) {
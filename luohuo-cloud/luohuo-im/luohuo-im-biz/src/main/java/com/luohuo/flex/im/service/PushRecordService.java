@@ -14,7 +14,7 @@ import java.util.Map;
 public interface PushRecordService {
 
     /**
-     * 创建推送记录
+     * 创建推送记录，记录先进入写缓冲，返回时尚未入库、id 为空
      *
      * @param userId 用户ID
      * @param deviceToken 设备Token
@@ -37,7 +37,16 @@ public interface PushRecordService {
     void updateStatus(Long recordId, String status, String errorMessage);
 
     /**
-     * 获取推送统计数据
+     * 更新 {@link #createRecord} 返回的记录的状态，记录尚未入库时与 INSERT 合并
+     *
+     * @param record 推送记录
+     * @param status 状态：pending/success/failed
+     * @param errorMessage 错误信息（失败时）
+     */
+    void updateStatus(PushRecord record, String status, String errorMessage);
+
+    /**
+     * 获取推送统计数据，来自小时统计表，时间按整点对齐
      *
      * @param startTime 开始时间
      * @param endTime 结束时间
@@ -0,0 +1,68 @@
+package com.luohuo.flex.im.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.luohuo.flex.common.OnlineService;
+import com.luohuo.flex.im.core.chat.service.cache.GroupMemberCache;
+import com.luohuo.flex.im.core.chat.service.cache.RoomGroupCache;
+import com.luohuo.flex.im.push.PushType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 离线推送接收人解析
+ * <p>
+ * 群所在房间取自群缓存，群成员取自成员缓存（不含屏蔽该群的成员），去掉在线用户后从 {@link PushTokenIndex} 批量取设备，
+ * 按推送类型合并，群消息离线推送不再查询数据库。
+ *
+ * @author HuLa
+ */
+@Component
+@RequiredArgsConstructor
+public class OfflinePushResolver {
+
+    private final RoomGroupCache roomGroupCache;
+    private final GroupMemberCache groupMemberCache;
+    private final OnlineService onlineService;
+    private final PushTokenIndex pushTokenIndex;
+
+    /**
+     * 群内离线成员的设备
+     *
+     * @param groupId 群组ID
+     * @param excludeUserId 排除的用户ID（通常是发送者）
+     * @return 推送类型 -> 设备Token
+     */
+    public Map<PushType, List<String>> resolveGroup(Long groupId, Long excludeUserId) {
+        Long roomId = roomGroupCache.getRoomIdByGroupId(groupId);
+        if (Objects.isNull(roomId)) {
+            return new EnumMap<>(PushType.class);
+        }
+        return resolve(groupMemberCache.getMemberExceptUidList(roomId), excludeUserId);
+    }
+
+    /**
+     * 指定用户中离线用户的设备
+     */
+    public Map<PushType, List<String>> resolve(Collection<Long> uids, Long excludeUserId) {
+        if (CollUtil.isEmpty(uids)) {
+            return new EnumMap<>(PushType.class);
+        }
+        List<Long> candidates = new ArrayList<>(uids.size());
+        for (Long uid : uids) {
+            if (!Objects.equals(uid, excludeUserId)) {
+                candidates.add(uid);
+            }
+        }
+        Set<Long> online = onlineService.getOnlineUsersList(candidates);
+        candidates.removeIf(online::contains);
+        return pushTokenIndex.getTokens(candidates);
+    }
+}
@@ -0,0 +1,474 @@
+package com.luohuo.flex.im.service.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.luohuo.flex.im.common.config.PushBroadcastProperties;
+import com.luohuo.flex.im.domain.entity.PushDevice;
+import com.luohuo.flex.im.mapper.PushDeviceMapper;
+import com.luohuo.flex.im.push.PushProvider;
+import com.luohuo.flex.im.push.PushType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全量广播推送任务
+ * <p>
+ * 不再一次把所有活跃设备读进内存，而是按主键游标逐页读取，按推送渠道攒满一批（渠道上限，小米/OPPO/vivo 为 1000）
+ * 交给该渠道的发送线程。每个渠道固定并发、按每秒请求数限流，渠道积压时读取线程等待，内存中最多只有几页设备。
+ * <p>
+ * 进度保存在 redis hash 中：游标只推进到所有已读设备中最早一个未发送完成的设备之前，
+ * 执行节点宕机后，其他节点在租约到期后从游标处接手，游标之后已发送过的设备可能会重复推送一次。
+ * 执行节点每次写进度时校验归属，被接手的旧节点发现后停止读取。
+ * 广播在本节点排队期间不续租，开始执行前重新认领并读取最新游标，排队期间已被其他节点接手的不再执行。
+ *
+ * @author HuLa
+ */
+@Slf4j
+@Component
+public class PushBroadcastJob implements DisposableBean {
+
+    private static final String METRIC_PREFIX = "im.push.broadcast.";
+    private static final String RUNNING_KEY = "push:broadcast:running";
+    private static final String TASK_KEY_PREFIX = "push:broadcast:task:";
+
+    private static final String STATUS_RUNNING = "running";
+    private static final String SUCCESS_PREFIX = "success:";
+    private static final String FAILURE_PREFIX = "failure:";
+
+    /**
+     * KEYS[1] 广播进度
+     * ARGV[1] 当前毫秒, ARGV[2] 租约毫秒, ARGV[3] 节点标识
+     */
+    private static final RedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], 'status') ~= 'running' then
+                return 0
+            end
+            local owner = redis.call('HGET', KEYS[1], 'owner')
+            local heartbeat = tonumber(redis.call('HGET', KEYS[1], 'heartbeat') or '0')
+            if owner and owner ~= ARGV[3] and tonumber(ARGV[1]) - heartbeat < tonumber(ARGV[2]) then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'owner', ARGV[3], 'heartbeat', ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS[1] 广播进度
+     * ARGV[1] 节点标识, ARGV[2] 当前毫秒, ARGV[3] 游标, ARGV[4..n] 计数项与增量
+     */
+    private static final RedisScript<Long> CHECKPOINT_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], 'owner') ~= ARGV[1] then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'heartbeat', ARGV[2], 'cursor', ARGV[3])
+            for i = 4, #ARGV - 1, 2 do
+                redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS[1] 广播进度, KEYS[2] 进行中的广播
+     * ARGV[1] 节点标识, ARGV[2] 当前毫秒, ARGV[3] 保留秒数, ARGV[4] 广播id
+     */
+    private static final RedisScript<Long> FINISH_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HGET', KEYS[1], 'owner') ~= ARGV[1] then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'status', 'done', 'finishTime', ARGV[2])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            redis.call('SREM', KEYS[2], ARGV[4])
+            return 1
+            """, Long.class);
+
+    private final PushDeviceMapper pushDeviceMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final PushBroadcastProperties properties;
+    private final Map<PushType, Lane> lanes = new EnumMap<>(PushType.class);
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Set<String> localRuns = ConcurrentHashMap.newKeySet();
+    private final ExecutorService runner;
+    private volatile boolean shutdown;
+
+    public PushBroadcastJob(PushDeviceMapper pushDeviceMapper, StringRedisTemplate stringRedisTemplate,
+                            ObjectMapper objectMapper, PushBroadcastProperties properties,
+                            List<PushProvider> providers, MeterRegistry meterRegistry) {
+        this.pushDeviceMapper = pushDeviceMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        providers.forEach(provider -> lanes.put(provider.getType(), new Lane(provider, meterRegistry)));
+        this.runner = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("push-broadcast-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * 发起一次全量广播，在后台执行
+     *
+     * @return 广播id
+     */
+    public String start(String title, String content, Map<String, Object> extra) throws Exception {
+        String broadcastId = UUID.randomUUID().toString().replace("-", "");
+        long now = System.currentTimeMillis();
+        Map<String, String> task = new HashMap<>();
+        task.put("title", title);
+        task.put("content", content);
+        task.put("extra", objectMapper.writeValueAsString(extra));
+        task.put("status", STATUS_RUNNING);
+        task.put("cursor", "0");
+        task.put("owner", nodeId);
+        task.put("heartbeat", String.valueOf(now));
+        task.put("createTime", String.valueOf(now));
+        stringRedisTemplate.opsForHash().putAll(TASK_KEY_PREFIX + broadcastId, task);
+        stringRedisTemplate.opsForSet().add(RUNNING_KEY, broadcastId);
+
+        submit(broadcastId, title, content, extra, 0L);
+        log.info("Broadcast push started: {}", broadcastId);
+        return broadcastId;
+    }
+
+    /**
+     * 接手租约已过期的广播（执行节点宕机或重启）
+     */
+    @Scheduled(fixedDelayString = "${luohuo.push-broadcast.resume-interval:30000}")
+    public void resumeBroadcasts() {
+        try {
+            Set<String> running = stringRedisTemplate.opsForSet().members(RUNNING_KEY);
+            if (running == null) {
+                return;
+            }
+            for (String broadcastId : running) {
+                if (localRuns.contains(broadcastId)) {
+                    continue;
+                }
+                String key = TASK_KEY_PREFIX + broadcastId;
+                Map<Object, Object> task = stringRedisTemplate.opsForHash().entries(key);
+                if (task.isEmpty()) {
+                    stringRedisTemplate.opsForSet().remove(RUNNING_KEY, broadcastId);
+                    continue;
+                }
+                Long claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, List.of(key),
+                        String.valueOf(System.currentTimeMillis()), String.valueOf(properties.getLease()), nodeId);
+                if (claimed == null || claimed == 0) {
+                    continue;
+                }
+                Map<String, Object> extra = objectMapper.readValue(String.valueOf(task.get("extra")),
+                        new TypeReference<Map<String, Object>>() {});
+                long cursor = Long.parseLong(String.valueOf(task.get("cursor")));
+                log.info("Resuming broadcast push: {}, cursor: {}", broadcastId, cursor);
+                submit(broadcastId, String.valueOf(task.get("title")), String.valueOf(task.get("content")), extra, cursor);
+            }
+        } catch (Exception e) {
+            log.error("Failed to resume broadcast push", e);
+        }
+    }
+
+    /**
+     * 广播进度
+     */
+    public Map<Object, Object> getProgress(String broadcastId) {
+        return stringRedisTemplate.opsForHash().entries(TASK_KEY_PREFIX + broadcastId);
+    }
+
+    private void submit(String broadcastId, String title, String content, Map<String, Object> extra, long cursor) {
+        if (!localRuns.add(broadcastId)) {
+            return;
+        }
+        Run run = new Run(broadcastId, title, content, extra);
+        try {
+            runner.execute(() -> {
+                try {
+                    run.execute(cursor);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    // 不写完成标记，租约到期后从最近的进度重新开始
+                    log.error("Broadcast push failed: {}", broadcastId, e);
+                } finally {
+                    localRuns.remove(broadcastId);
+                }
+            });
+        } catch (Exception e) {
+            localRuns.remove(broadcastId);
+            throw e;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        shutdown = true;
+        runner.shutdownNow();
+        lanes.values().forEach(lane -> lane.executor.shutdownNow());
+    }
+
+    /**
+     * 一个推送渠道的发送通道：固定并发、限流，在途批次数受信号量约束
+     */
+    private class Lane {
+
+        private final PushProvider provider;
+        private final int chunkSize;
+        private final RateLimiter rateLimiter;
+        private final Semaphore permits;
+        private final ThreadPoolExecutor executor;
+        private final Counter sentCounter;
+        private final Counter failedCounter;
+        private final Timer chunkTimer;
+
+        Lane(PushProvider provider, MeterRegistry meterRegistry) {
+            String name = provider.getType().name().toLowerCase();
+            this.provider = provider;
+            this.chunkSize = Math.max(1, Math.min(provider.getMaxBatchSize(), properties.getMaxChunkSize()));
+            this.rateLimiter = RateLimiter.create(properties.getRequestsPerSecond());
+            // 每个发送线程最多再排队一批
+            this.permits = new Semaphore(properties.getConcurrency() * 2);
+            AtomicInteger index = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(properties.getConcurrency(), properties.getConcurrency(),
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "push-broadcast-" + name + "-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.sentCounter = Counter.builder(METRIC_PREFIX + "tokens")
+                    .description("Device tokens sent by broadcast push")
+                    .tag("provider", name)
+                    .tag("result", "success")
+                    .register(meterRegistry);
+            this.failedCounter = Counter.builder(METRIC_PREFIX + "tokens")
+                    .description("Device tokens sent by broadcast push")
+                    .tag("provider", name)
+                    .tag("result", "failure")
+                    .register(meterRegistry);
+            this.chunkTimer = Timer.builder(METRIC_PREFIX + "chunk")
+                    .description("Time spent sending one broadcast chunk")
+                    .tag("provider", name)
+                    .register(meterRegistry);
+            Gauge.builder(METRIC_PREFIX + "inflight", executor, e -> e.getActiveCount() + e.getQueue().size())
+                    .description("Broadcast chunks sending or queued")
+                    .tag("provider", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 一次广播在本节点上的执行
+     */
+    private class Run {
+
+        private final String broadcastId;
+        private final String key;
+        private final String title;
+        private final String content;
+        private final Map<String, Object> extra;
+        private final Map<PushType, List<PushDevice>> buffers = new EnumMap<>(PushType.class);
+        // 在途批次中最小的设备id -> 批次数
+        private final TreeMap<Long, Integer> inFlight = new TreeMap<>();
+        private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+        // 已读到的最后一个设备id
+        private long scanned;
+        private volatile boolean stopped;
+
+        Run(String broadcastId, String title, String content, Map<String, Object> extra) {
+            this.broadcastId = broadcastId;
+            this.key = TASK_KEY_PREFIX + broadcastId;
+            this.title = title;
+            this.content = content;
+            this.extra = extra;
+        }
+
+        void execute(long cursor) throws InterruptedException {
+            // 排队等待前一个广播期间租约可能已过期并被接手
+            Long claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, List.of(key),
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(properties.getLease()), nodeId);
+            if (claimed == null || claimed == 0) {
+                log.info("Broadcast push claimed by another node while queued, skip: {}", broadcastId);
+                return;
+            }
+            Object latest = stringRedisTemplate.opsForHash().get(key, "cursor");
+            scanned = latest != null ? Math.max(cursor, Long.parseLong(latest.toString())) : cursor;
+            int pageSize = properties.getPageSize();
+            while (!stopped && !shutdown) {
+                List<PushDevice> page = pushDeviceMapper.selectActiveDevicesAfterId(scanned, pageSize);
+                for (PushDevice device : page) {
+                    PushType pushType = PushType.fromDeviceType(device.getDeviceType());
+                    Lane lane = pushType != null ? lanes.get(pushType) : null;
+                    if (lane == null) {
+                        count("skipped", 1);
+                        continue;
+                    }
+                    List<PushDevice> buffer = buffers.computeIfAbsent(pushType, k -> new ArrayList<>(lane.chunkSize));
+                    buffer.add(device);
+                    if (buffer.size() >= lane.chunkSize) {
+                        dispatch(lane, buffers.remove(pushType));
+                    }
+                }
+                if (page.isEmpty()) {
+                    break;
+                }
+                scanned = page.get(page.size() - 1).getId();
+                count("scanned", page.size());
+                checkpoint();
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+            if (stopped || shutdown) {
+                return;
+            }
+
+            for (PushType pushType : new ArrayList<>(buffers.keySet())) {
+                dispatch(lanes.get(pushType), buffers.remove(pushType));
+            }
+            synchronized (inFlight) {
+                while (!inFlight.isEmpty()) {
+                    inFlight.wait(properties.getLease() / 2);
+                    // 等待期间续租
+                    if (!inFlight.isEmpty()) {
+                        checkpoint();
+                    }
+                }
+            }
+            checkpoint();
+            Long finished = stringRedisTemplate.execute(FINISH_SCRIPT, List.of(key, RUNNING_KEY), nodeId,
+                    String.valueOf(System.currentTimeMillis()),
+                    String.valueOf(TimeUnit.HOURS.toSeconds(properties.getRetainHours())), broadcastId);
+            if (finished != null && finished > 0) {
+                log.info("Broadcast push finished: {}, counters: {}", broadcastId, getProgress(broadcastId));
+            }
+        }
+
+        private void dispatch(Lane lane, List<PushDevice> chunk) throws InterruptedException {
+            long minId = chunk.get(0).getId();
+            // 渠道积压时等待，期间续租
+            while (!lane.permits.tryAcquire(properties.getLease() / 2, TimeUnit.MILLISECONDS)) {
+                checkpoint();
+            }
+            track(minId);
+            try {
+                lane.executor.execute(() -> {
+                    try {
+                        send(lane, chunk);
+                    } finally {
+                        untrack(minId);
+                        lane.permits.release();
+                    }
+                });
+            } catch (Exception e) {
+                untrack(minId);
+                lane.permits.release();
+                throw e;
+            }
+        }
+
+        private void send(Lane lane, List<PushDevice> chunk) {
+            List<String> tokens = new ArrayList<>(chunk.size());
+            chunk.forEach(device -> tokens.add(device.getDeviceToken()));
+            String type = lane.provider.getType().name();
+            boolean success;
+            lane.rateLimiter.acquire();
+            long start = System.nanoTime();
+            try {
+                success = lane.provider.batchPush(tokens, title, content, extra);
+            } catch (Exception e) {
+                log.error("Broadcast chunk failed: {}, type: {}, size: {}", broadcastId, type, tokens.size(), e);
+                success = false;
+            }
+            lane.chunkTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (success) {
+                lane.sentCounter.increment(tokens.size());
+                count(SUCCESS_PREFIX + type, tokens.size());
+            } else {
+                lane.failedCounter.increment(tokens.size());
+                count(FAILURE_PREFIX + type, tokens.size());
+            }
+        }
+
+        private void track(long minId) {
+            synchronized (inFlight) {
+                inFlight.merge(minId, 1, Integer::sum);
+            }
+        }
+
+        private void untrack(long minId) {
+            synchronized (inFlight) {
+                inFlight.computeIfPresent(minId, (k, v) -> v > 1 ? v - 1 : null);
+                inFlight.notifyAll();
+            }
+        }
+
+        private void count(String name, long delta) {
+            counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+        }
+
+        /**
+         * 写入进度：游标推进到在途批次和未发出的缓冲中最早的设备之前
+         */
+        private void checkpoint() {
+            long safe = scanned;
+            synchronized (inFlight) {
+                if (!inFlight.isEmpty()) {
+                    safe = Math.min(safe, inFlight.firstKey() - 1);
+                }
+            }
+            for (List<PushDevice> buffer : buffers.values()) {
+                if (!buffer.isEmpty()) {
+                    safe = Math.min(safe, buffer.get(0).getId() - 1);
+                }
+            }
+
+            List<String> args = new ArrayList<>();
+            args.add(nodeId);
+            args.add(String.valueOf(System.currentTimeMillis()));
+            args.add(String.valueOf(safe));
+            Map<String, Long> deltas = new HashMap<>();
+            counters.forEach((name, adder) -> {
+                long delta = adder.sum();
+                if (delta != 0) {
+                    deltas.put(name, delta);
+                    args.add(name);
+                    args.add(String.valueOf(delta));
+                }
+            });
+            Long updated = stringRedisTemplate.execute(CHECKPOINT_SCRIPT, List.of(key), args.toArray());
+            if (updated == null || updated == 0) {
+                stopped = true;
+                log.warn("Broadcast push taken over by another node, stop: {}", broadcastId);
+                return;
+            }
+            // 写入成功后才扣减已提交的增量，写入失败时留到下次一起提交
+            deltas.forEach((name, delta) -> counters.get(name).add(-delta));
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.luohuo.flex.im.api.PushStatistics;
 import com.luohuo.flex.im.domain.entity.PushRecord;
+import com.luohuo.flex.im.domain.entity.PushStatHourly;
 import com.luohuo.flex.im.mapper.PushRecordMapper;
 import com.luohuo.flex.im.service.PushRecordService;
 import lombok.RequiredArgsConstructor;
@@ -11,6 +12,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +29,7 @@ public class PushRecordServiceImpl implements PushRecordService {
 
     private final PushRecordMapper pushRecordMapper;
     private final ObjectMapper objectMapper;
+    private final PushRecordWriteBuffer pushRecordWriteBuffer;
 
     /**
      * 推送状态常量
@@ -57,8 +60,7 @@ public class PushRecordServiceImpl implements PushRecordService {
             }
         }
 
-        pushRecordMapper.insert(record);
-        log.debug("Created push record: id={}, userId={}, type={}", record.getId(), userId, pushType);
+        pushRecordWriteBuffer.add(record);
         return record;
     }
 
@@ -68,32 +70,30 @@ public class PushRecordServiceImpl implements PushRecordService {
             log.warn("Cannot update status: recordId is null");
             return;
         }
+        pushRecordWriteBuffer.updateStatus(recordId, status, errorMessage);
+    }
 
-        int updated = pushRecordMapper.updateStatus(recordId, status, errorMessage);
-        if (updated > 0) {
-            log.debug("Updated push record status: id={}, status={}", recordId, status);
-        } else {
-            log.warn("Failed to update push record status: id={}", recordId);
+    @Override
+    public void updateStatus(PushRecord record, String status, String errorMessage) {
+        if (record == null) {
+            log.warn("Cannot update status: record is null");
+            return;
         }
+        pushRecordWriteBuffer.updateStatus(record, status, errorMessage);
     }
 
     @Override
     public PushStatistics getStatistics(LocalDateTime startTime, LocalDateTime endTime) {
         try {
-            // 获取总数
-            long totalCount = pushRecordMapper.countTotal(startTime, endTime);
-
-            // 按状态统计
-            long successCount = pushRecordMapper.countByStatus(STATUS_SUCCESS, startTime, endTime);
-            long failureCount = pushRecordMapper.countByStatus(STATUS_FAILED, startTime, endTime);
-
-            // 按类型统计
-            List<Map<String, Object>> typeStats = pushRecordMapper.countGroupByType(startTime, endTime);
+            long totalCount = 0;
+            long successCount = 0;
+            long failureCount = 0;
             Map<String, Long> typeCountMap = new HashMap<>();
-            for (Map<String, Object> stat : typeStats) {
-                String pushType = (String) stat.get("pushType");
-                Long count = ((Number) stat.get("count")).longValue();
-                typeCountMap.put(pushType, count);
+            for (PushStatHourly stat : sumHourlyStats(startTime, endTime)) {
+                totalCount += stat.getTotalCount();
+                successCount += stat.getSuccessCount();
+                failureCount += stat.getFailureCount();
+                typeCountMap.put(stat.getPushType(), stat.getTotalCount());
             }
 
             return PushStatistics.builder()
@@ -128,11 +128,8 @@ public class PushRecordServiceImpl implements PushRecordService {
     public Map<String, Long> countByType(LocalDateTime startTime, LocalDateTime endTime) {
         Map<String, Long> result = new HashMap<>();
         try {
-            List<Map<String, Object>> typeStats = pushRecordMapper.countGroupByType(startTime, endTime);
-            for (Map<String, Object> stat : typeStats) {
-                String pushType = (String) stat.get("pushType");
-                Long count = ((Number) stat.get("count")).longValue();
-                result.put(pushType, count);
+            for (PushStatHourly stat : sumHourlyStats(startTime, endTime)) {
+                result.put(stat.getPushType(), stat.getTotalCount());
             }
         } catch (Exception e) {
             log.error("Failed to count by type", e);
@@ -140,6 +137,14 @@ public class PushRecordServiceImpl implements PushRecordService {
         return result;
     }
 
+    /**
+     * 按推送类型汇总小时统计，开始时间向下取整到小时
+     */
+    private List<PushStatHourly> sumHourlyStats(LocalDateTime startTime, LocalDateTime endTime) {
+        LocalDateTime startHour = startTime != null ? startTime.truncatedTo(ChronoUnit.HOURS) : null;
+        return pushRecordMapper.sumHourlyStatsByType(startHour, endTime);
+    }
+
     @Override
     public PushRecord getById(Long id) {
         if (id == null) {
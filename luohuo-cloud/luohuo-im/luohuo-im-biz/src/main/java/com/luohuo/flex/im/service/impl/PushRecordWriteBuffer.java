@@ -0,0 +1,394 @@
+package com.luohuo.flex.im.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.luohuo.flex.im.common.config.PushRecordBufferProperties;
+import com.luohuo.flex.im.domain.entity.PushRecord;
+import com.luohuo.flex.im.domain.entity.PushStatHourly;
+import com.luohuo.flex.im.mapper.PushRecordMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 推送记录写缓冲
+ * <p>
+ * 每个设备一次 INSERT、推送完成后再一次 UPDATE，群推送时就是成千上万条 SQL。
+ * 这里把记录和状态变更先放在内存里：
+ * 1. 仍为 pending 的记录最多等待 pendingHold，期间的状态变更直接改在待插入的对象上，入库时一条 INSERT 即为最终状态
+ * 2. 已入库记录的状态变更按 (状态, 错误信息) 合并成 UPDATE ... WHERE id IN
+ * 3. 同时按 (小时, 推送类型) 累加统计，每批记录的写入和统计 upsert 到 im_push_stat_hourly 在同一个事务中完成，
+ * 状态变更先锁定记录读出旧状态，UPDATE 以旧状态为条件，多个节点并发变更同一条记录时统计不会重复转移
+ * 缓冲达到上限时由写入线程同步刷盘。
+ * 写库失败的批次放回缓冲，按 retryBackoff 指数退避重试，超过 maxRetries 次后丢弃并计数。
+ *
+ * @author HuLa
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PushRecordWriteBuffer {
+
+    private static final String METRIC_PREFIX = "im.push.record.buffer.";
+
+    private final PushRecordMapper pushRecordMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final PushRecordBufferProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+    private final Object flushLock = new Object();
+    // 待插入的记录 -> 加入缓冲的时间及重试状态
+    private Map<PushRecord, PendingInsert> pendingInserts = new IdentityHashMap<>();
+    // 已入库（或正在入库）记录的状态变更，按加入顺序，同一条记录以最后一次为准
+    private List<StatusUpdate> pendingUpdates = new ArrayList<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // 等待重试的记录和状态变更数，不参与同步刷盘的判断
+    private final AtomicInteger retryingCount = new AtomicInteger();
+
+    private ScheduledExecutorService flushScheduler;
+    private DistributionSummary batchSizeSummary;
+    private Timer flushTimer;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void init() {
+        batchSizeSummary = DistributionSummary.builder(METRIC_PREFIX + "batch.size")
+                .description("Push records and status changes written in one flush")
+                .register(meterRegistry);
+        flushTimer = Timer.builder(METRIC_PREFIX + "flush")
+                .description("Time spent writing one flush")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder(METRIC_PREFIX + "dropped")
+                .description("Push records and status changes dropped after exhausting retries")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "pending", pendingCount, AtomicInteger::get)
+                .description("Push records and status changes waiting to be flushed")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "retrying", retryingCount, AtomicInteger::get)
+                .description("Push records and status changes waiting to be retried after a failed write")
+                .register(meterRegistry);
+
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("push-record-flush-%d")
+                        .setDaemon(true)
+                        .build());
+        flushScheduler.scheduleWithFixedDelay(() -> flushQuietly(false), properties.getFlushInterval(),
+                properties.getFlushInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 加入待插入的记录
+     */
+    public void add(PushRecord record) {
+        synchronized (lock) {
+            pendingInserts.put(record, new PendingInsert(System.currentTimeMillis(), 0, 0));
+        }
+        afterAdd();
+    }
+
+    /**
+     * 变更记录状态。记录还没入库时直接改在对象上，否则在下次刷盘时批量 UPDATE
+     */
+    public void updateStatus(PushRecord record, String status, String errorMessage) {
+        synchronized (lock) {
+            if (pendingInserts.containsKey(record)) {
+                record.setStatus(status);
+                record.setErrorMessage(errorMessage);
+                return;
+            }
+            pendingUpdates.add(new StatusUpdate(record, null, status, errorMessage, 0, 0));
+        }
+        afterAdd();
+    }
+
+    /**
+     * 按id变更已入库记录的状态
+     */
+    public void updateStatus(Long recordId, String status, String errorMessage) {
+        synchronized (lock) {
+            pendingUpdates.add(new StatusUpdate(null, recordId, status, errorMessage, 0, 0));
+        }
+        afterAdd();
+    }
+
+    private void afterAdd() {
+        if (pendingCount.incrementAndGet() >= properties.getMaxPending()) {
+            flushQuietly(true);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flushScheduler.shutdown();
+        try {
+            flushScheduler.awaitTermination(properties.getFlushInterval() * 5, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly(true);
+        if (retryingCount.get() > 0) {
+            log.warn("停机时仍有推送记录等待重试, 丢弃: {}", retryingCount.get());
+            droppedCounter.increment(retryingCount.get());
+        }
+    }
+
+    private void flushQuietly(boolean force) {
+        try {
+            synchronized (flushLock) {
+                flush(force);
+            }
+        } catch (Exception e) {
+            log.error("推送记录刷盘失败", e);
+        }
+    }
+
+    private void flush(boolean force) {
+        Map<PushRecord, PendingInsert> inserts = new IdentityHashMap<>();
+        List<StatusUpdate> updates;
+        long now = System.currentTimeMillis();
+        long holdBefore = now - properties.getPendingHold();
+        synchronized (lock) {
+            pendingInserts.entrySet().removeIf(entry -> {
+                PushRecord record = entry.getKey();
+                PendingInsert pending = entry.getValue();
+                if (pending.notBefore() > now) {
+                    return false;
+                }
+                if (force || pending.attempts() > 0 || pending.addedAt() <= holdBefore
+                        || !PushRecordServiceImpl.STATUS_PENDING.equals(record.getStatus())) {
+                    inserts.put(record, pending);
+                    return true;
+                }
+                return false;
+            });
+            updates = pendingUpdates;
+            pendingUpdates = new ArrayList<>();
+        }
+        int size = inserts.size() + updates.size();
+        if (size == 0) {
+            return;
+        }
+        int retried = (int) (inserts.values().stream().filter(pending -> pending.attempts() > 0).count()
+                + updates.stream().filter(update -> update.attempts() > 0).count());
+        pendingCount.addAndGet(retried - size);
+        retryingCount.addAndGet(-retried);
+
+        long start = System.nanoTime();
+        insertRecords(inserts, now);
+        updateRecords(updates, now);
+        batchSizeSummary.record(size);
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void insertRecords(Map<PushRecord, PendingInsert> inserts, long now) {
+        for (List<PushRecord> batch : CollUtil.split(new ArrayList<>(inserts.keySet()), properties.getBatchSize())) {
+            Map<StatKey, PushStatHourly> stats = new HashMap<>();
+            for (PushRecord record : batch) {
+                PushStatHourly stat = stat(stats, record);
+                stat.setTotalCount(stat.getTotalCount() + 1);
+                count(stat, record.getStatus(), 1);
+            }
+            try {
+                transactionTemplate.executeWithoutResult(tx -> {
+                    pushRecordMapper.insertBatch(batch);
+                    upsertStats(stats);
+                });
+            } catch (Exception e) {
+                // 回滚后清掉回填的id，放回缓冲等待重试，期间的状态变更继续直接改在对象上
+                batch.forEach(record -> record.setId(null));
+                log.error("批量插入推送记录失败, 行数: {}", batch.size(), e);
+                requeueInserts(batch, inserts, now);
+            }
+        }
+    }
+
+    private void requeueInserts(List<PushRecord> batch, Map<PushRecord, PendingInsert> inserts, long now) {
+        int requeued = 0;
+        synchronized (lock) {
+            for (PushRecord record : batch) {
+                PendingInsert pending = inserts.get(record);
+                int attempts = pending.attempts() + 1;
+                if (attempts > properties.getMaxRetries()) {
+                    continue;
+                }
+                pendingInserts.put(record, new PendingInsert(pending.addedAt(), attempts, now + backoff(attempts)));
+                requeued++;
+            }
+        }
+        retryingCount.addAndGet(requeued);
+        dropped(batch.size() - requeued);
+    }
+
+    private void updateRecords(List<StatusUpdate> updates, long now) {
+        // 同一条记录只保留最后一次变更，等待重试的旧变更排在前面，会被新的变更覆盖
+        Map<Long, StatusUpdate> latest = new LinkedHashMap<>();
+        List<StatusUpdate> deferred = new ArrayList<>();
+        for (StatusUpdate update : updates) {
+            Long id = update.record() != null ? update.record().getId() : update.recordId();
+            if (id == null) {
+                applyToRetryingInsert(update);
+                continue;
+            }
+            latest.put(id, update);
+        }
+        latest.values().removeIf(update -> {
+            if (update.notBefore() > now) {
+                deferred.add(update);
+                return true;
+            }
+            return false;
+        });
+        requeueUpdates(deferred);
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        // id 升序分批加锁，固定加锁顺序避免多实例间死锁
+        List<Long> ids = new ArrayList<>(latest.keySet());
+        ids.sort(null);
+        for (List<Long> batch : CollUtil.split(ids, properties.getBatchSize())) {
+            try {
+                transactionTemplate.executeWithoutResult(tx -> updateBatch(batch, latest));
+            } catch (Exception e) {
+                log.error("批量更新推送状态失败, 行数: {}", batch.size(), e);
+                List<StatusUpdate> retries = new ArrayList<>();
+                for (Long id : batch) {
+                    StatusUpdate update = latest.get(id);
+                    int attempts = update.attempts() + 1;
+                    if (attempts <= properties.getMaxRetries()) {
+                        retries.add(update.retry(attempts, now + backoff(attempts)));
+                    }
+                }
+                requeueUpdates(retries);
+                dropped(batch.size() - retries.size());
+            }
+        }
+    }
+
+    /**
+     * 记录的插入还在等待重试时，状态变更直接改在对象上；插入已被丢弃的，变更一并丢弃
+     */
+    private void applyToRetryingInsert(StatusUpdate update) {
+        synchronized (lock) {
+            if (update.record() != null && pendingInserts.containsKey(update.record())) {
+                update.record().setStatus(update.status());
+                update.record().setErrorMessage(update.errorMessage());
+                return;
+            }
+        }
+        log.warn("推送记录入库失败，丢弃状态变更: status={}", update.status());
+    }
+
+    /**
+     * 放回缓冲头部，保证比期间新到的变更先处理
+     */
+    private void requeueUpdates(List<StatusUpdate> retries) {
+        if (retries.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            pendingUpdates.addAll(0, retries);
+        }
+        retryingCount.addAndGet(retries.size());
+    }
+
+    private long backoff(int attempts) {
+        return properties.getRetryBackoff() << Math.min(attempts - 1, 10);
+    }
+
+    private void dropped(int count) {
+        if (count > 0) {
+            log.error("推送记录重试次数耗尽, 丢弃: {}", count);
+            droppedCounter.increment(count);
+        }
+    }
+
+    private void updateBatch(List<Long> batch, Map<Long, StatusUpdate> latest) {
+        Map<StatKey, PushStatHourly> stats = new HashMap<>();
+        Map<StatusKey, List<Long>> byStatus = new LinkedHashMap<>();
+        // 锁定记录后按旧状态修正统计：旧状态计数减一，新状态计数加一
+        for (PushRecord old : pushRecordMapper.selectStatusByIdsForUpdate(batch)) {
+            StatusUpdate update = latest.get(old.getId());
+            if (!Objects.equals(old.getStatus(), update.status())) {
+                PushStatHourly stat = stat(stats, old);
+                count(stat, old.getStatus(), -1);
+                count(stat, update.status(), 1);
+            }
+            byStatus.computeIfAbsent(new StatusKey(old.getStatus(), update.status(), update.errorMessage()), k -> new ArrayList<>()).add(old.getId());
+        }
+        byStatus.forEach((key, ids) -> pushRecordMapper.updateStatusBatch(ids, key.oldStatus(), key.status(), key.errorMessage()));
+        upsertStats(stats);
+    }
+
+    /**
+     * 按 (小时, 推送类型) 排序后 upsert，各节点以相同顺序锁统计行
+     */
+    private void upsertStats(Map<StatKey, PushStatHourly> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        List<PushStatHourly> rows = new ArrayList<>(stats.values());
+        rows.sort(Comparator.comparing(PushStatHourly::getStatHour).thenComparing(PushStatHourly::getPushType));
+        pushRecordMapper.upsertHourlyStats(rows);
+    }
+
+    private static PushStatHourly stat(Map<StatKey, PushStatHourly> stats, PushRecord record) {
+        LocalDateTime createTime = record.getCreateTime() != null ? record.getCreateTime() : LocalDateTime.now();
+        LocalDateTime hour = createTime.truncatedTo(ChronoUnit.HOURS);
+        return stats.computeIfAbsent(new StatKey(hour, record.getPushType()), key -> new PushStatHourly()
+                .setStatHour(hour)
+                .setPushType(record.getPushType())
+                .setTotalCount(0L)
+                .setSuccessCount(0L)
+                .setFailureCount(0L));
+    }
+
+    private static void count(PushStatHourly stat, String status, int delta) {
+        if (PushRecordServiceImpl.STATUS_SUCCESS.equals(status)) {
+            stat.setSuccessCount(stat.getSuccessCount() + delta);
+        } else if (PushRecordServiceImpl.STATUS_FAILED.equals(status)) {
+            stat.setFailureCount(stat.getFailureCount() + delta);
+        }
+    }
+
+    private record PendingInsert(long addedAt, int attempts, long notBefore) {
+    }
+
+    private record StatusUpdate(PushRecord record, Long recordId, String status, String errorMessage,
+                                int attempts, long notBefore) {
+        StatusUpdate retry(int attempts, long notBefore) {
+            return new StatusUpdate(record, recordId, status, errorMessage, attempts, notBefore);
+        }
+    }
+
+    private record StatusKey(String oldStatus, String status, String errorMessage) {
+    }
+
+    private record StatKey(LocalDateTime hour, String pushType) {
+    }
+}
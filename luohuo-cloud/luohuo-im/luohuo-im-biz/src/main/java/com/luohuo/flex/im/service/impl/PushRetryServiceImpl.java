@@ -1,145 +1,367 @@
 package com.luohuo.flex.im.service.impl;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.luohuo.flex.im.common.config.PushRetryProperties;
 import com.luohuo.flex.im.push.PushProvider;
 import com.luohuo.flex.im.push.PushType;
 import com.luohuo.flex.im.service.PushRetryService;
-import lombok.RequiredArgsConstructor;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 推送重试服务实现
+ * <p>
+ * 任务按下次执行时间存放在 zset（taskId -> 到期毫秒），内容放在 hash（taskId -> json），
+ * taskId 由推送渠道和推送内容摘要组成，同一条推送重复失败只保留一个任务。
+ * 各节点用脚本原子领取到期任务：领取时把分值推到租约到期时间而不是删除，
+ * 节点宕机时任务在租约到期后被其他节点重新领取。
+ * 每个推送渠道最多领取自己线程池空闲的数量，领取到的任务交给该渠道固定并发的线程池执行，失败按指数退避重新排期。
+ * 统计数据来自 hash 计数器，不再扫描 key。
  *
  * @author HuLa
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
-public class PushRetryServiceImpl implements PushRetryService {
+public class PushRetryServiceImpl implements PushRetryService, DisposableBean {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    // 三个 key 由同一段脚本操作，共用 {push:retry} 哈希标签，集群下落在同一槽位
+    private static final String QUEUE_KEY = "{push:retry}:queue";
+    private static final String PAYLOAD_KEY = "{push:retry}:payload";
+    private static final String STATS_KEY = "{push:retry}:stats";
+    private static final List<String> KEYS = List.of(QUEUE_KEY, PAYLOAD_KEY, STATS_KEY);
+    private static final String PENDING_PREFIX = "pending:";
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_EXHAUSTED = "exhausted";
+    private static final String OUTCOME_DROPPED = "dropped";
+    private static final String OUTCOME_EXPIRED = "expired";
+    private static final String COUNTER_RETRIED = "retried";
+
+    /**
+     * ARGV[1] taskId, ARGV[2] 到期毫秒, ARGV[3] 任务内容, ARGV[4] 推送渠道
+     */
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HSETNX', KEYS[2], ARGV[1], ARGV[3]) == 0 then
+                return 0
+            end
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            redis.call('HINCRBY', KEYS[3], 'added', 1)
+            redis.call('HINCRBY', KEYS[3], 'pending:' .. ARGV[4], 1)
+            return 1
+            """, Long.class);
+
+    /**
+     * ARGV[1] 当前毫秒, ARGV[2] 查看上限, ARGV[3] 租约到期毫秒, ARGV[4..] 推送渠道与该渠道领取上限成对出现
+     * 按 taskId 前缀的推送渠道分别计数，名额用完的渠道的任务不领取，留在队列中
+     * 返回 {taskId, 任务内容, ...}
+     */
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local quota = {}
+            local remaining = 0
+            for i = 4, #ARGV, 2 do
+                local n = tonumber(ARGV[i + 1])
+                if n > 0 then
+                    quota[ARGV[i]] = n
+                    remaining = remaining + n
+                end
+            end
+            local result = {}
+            if remaining == 0 then
+                return result
+            end
+            local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            for i = 1, #ids do
+                local pushType = string.match(ids[i], '^([^:]*):')
+                local left = pushType and quota[pushType]
+                if left and left > 0 then
+                    local payload = redis.call('HGET', KEYS[2], ids[i])
+                    if payload then
+                        redis.call('ZADD', KEYS[1], ARGV[3], ids[i])
+                        result[#result + 1] = ids[i]
+                        result[#result + 1] = payload
+                        quota[pushType] = left - 1
+                        remaining = remaining - 1
+                        if remaining == 0 then
+                            break
+                        end
+                    else
+                        redis.call('ZREM', KEYS[1], ids[i])
+                    end
+                end
+            end
+            return result
+            """, List.class);
+
+    /**
+     * ARGV[1] taskId, ARGV[2] 到期毫秒, ARGV[3] 任务内容, ARGV[4] 计数项（为空不计数）
+     */
+    private static final RedisScript<Long> RESCHEDULE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HEXISTS', KEYS[2], ARGV[1]) == 0 then
+                return 0
+            end
+            redis.call('HSET', KEYS[2], ARGV[1], ARGV[3])
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            if ARGV[4] ~= '' then
+                redis.call('HINCRBY', KEYS[3], ARGV[4], 1)
+            end
+            return 1
+            """, Long.class);
+
+    /**
+     * ARGV[1] taskId, ARGV[2] 推送渠道, ARGV[3] 结果计数项
+     */
+    private static final RedisScript<Long> FINISH_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZREM', KEYS[1], ARGV[1])
+            local removed = redis.call('HDEL', KEYS[2], ARGV[1])
+            if removed == 1 then
+                redis.call('HINCRBY', KEYS[3], 'pending:' .. ARGV[2], -1)
+                redis.call('HINCRBY', KEYS[3], ARGV[3], 1)
+            end
+            return removed
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final PushRetryProperties properties;
     private final Map<PushType, PushProvider> pushProviders;
+    private final Map<PushType, ThreadPoolExecutor> executors = new EnumMap<>(PushType.class);
+
+    public PushRetryServiceImpl(StringRedisTemplate stringRedisTemplate, ObjectMapper objectMapper,
+                                PushRetryProperties properties, List<PushProvider> providers) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.pushProviders = new EnumMap<>(PushType.class);
+        providers.forEach(provider -> pushProviders.put(provider.getType(), provider));
+        pushProviders.keySet().forEach(pushType -> executors.put(pushType, newExecutor(pushType)));
+    }
 
-    // 重试任务Redis key前缀
-    private static final String RETRY_TASK_PREFIX = "push:retry:task:";
-    // 最大重试次数
-    private static final int MAX_RETRY_COUNT = 3;
-    // 重试间隔（分钟）
-    private static final int[] RETRY_INTERVALS = {1, 5, 15}; // 第1次1分钟，第2次5分钟，第3次15分钟
+    /**
+     * 重试任务
+     */
+    @Data
+    static class RetryTask {
+        private String pushType;
+        private String deviceToken;
+        private String title;
+        private String content;
+        private Map<String, Object> extra;
+        private int retryCount;
+        private long createTime;
+    }
 
     @Override
     public void addRetryTask(String pushType, String deviceToken, String title,
                             String content, Map<String, Object> extra, int retryCount) {
-        if (retryCount >= MAX_RETRY_COUNT) {
+        if (retryCount >= properties.getMaxRetryCount()) {
             log.warn("Push retry reached max count: {}, device: {}", retryCount, deviceToken);
             return;
         }
+        // 领取时按渠道分配名额，没有对应渠道的任务永远不会被领取
+        if (executors.keySet().stream().noneMatch(type -> type.name().equals(pushType))) {
+            log.warn("No push provider found for retry task, type: {}, device: {}", pushType, deviceToken);
+            return;
+        }
 
         try {
-            // 构建重试任务
-            Map<String, Object> task = new HashMap<>();
-            task.put("pushType", pushType);
-            task.put("deviceToken", deviceToken);
-            task.put("title", title);
-            task.put("content", content);
-            task.put("extra", extra);
-            task.put("retryCount", retryCount);
-            task.put("createTime", LocalDateTime.now().toString());
-
-            // 计算下次重试时间
-            int delayMinutes = RETRY_INTERVALS[Math.min(retryCount, RETRY_INTERVALS.length - 1)];
-            String taskKey = RETRY_TASK_PREFIX + System.currentTimeMillis() + ":" + deviceToken;
-
-            // 存储重试任务
-            redisTemplate.opsForValue().set(taskKey, task, delayMinutes, TimeUnit.MINUTES);
-
-            log.info("Added push retry task: {}, retryCount: {}, nextRetryIn: {} minutes",
-                    deviceToken, retryCount, delayMinutes);
+            RetryTask task = new RetryTask();
+            task.setPushType(pushType);
+            task.setDeviceToken(deviceToken);
+            task.setTitle(title);
+            task.setContent(content);
+            task.setExtra(extra);
+            task.setRetryCount(retryCount);
+            task.setCreateTime(System.currentTimeMillis());
 
+            String payload = objectMapper.writeValueAsString(task);
+            String taskId = pushType + ":" + DigestUtil.md5Hex(deviceToken + "\n" + title + "\n" + content + "\n"
+                    + objectMapper.writeValueAsString(extra));
+            long delay = backoff(retryCount);
+            Long added = stringRedisTemplate.execute(ADD_SCRIPT, KEYS, taskId,
+                    String.valueOf(System.currentTimeMillis() + delay), payload, pushType);
+
+            if (added != null && added > 0) {
+                log.info("Added push retry task: {}, retryCount: {}, nextRetryIn: {} ms", deviceToken, retryCount, delay);
+            } else {
+                log.debug("Push retry task already queued: {}", taskId);
+            }
         } catch (Exception e) {
             log.error("Failed to add push retry task: {}", deviceToken, e);
         }
     }
 
     @Override
-    @Scheduled(fixedRate = 60000) // 每分钟执行一次
+    @Scheduled(fixedDelayString = "${luohuo.push-retry.poll-interval:5000}")
     public void processRetryTasks() {
         try {
-            Set<String> keys = redisTemplate.keys(RETRY_TASK_PREFIX + "*");
-            if (keys == null || keys.isEmpty()) {
+            // 每个渠道最多领取自己线程池能接收的数量，避免领到被拒绝的任务又逐轮退回
+            List<String> args = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            args.add(String.valueOf(now));
+            args.add(String.valueOf(properties.getScanSize()));
+            args.add(String.valueOf(now + properties.getLease()));
+            int total = 0;
+            for (Map.Entry<PushType, ThreadPoolExecutor> entry : executors.entrySet()) {
+                int limit = Math.min(properties.getBatchSize() - total, freeSlots(entry.getValue()));
+                if (limit > 0) {
+                    args.add(entry.getKey().name());
+                    args.add(String.valueOf(limit));
+                    total += limit;
+                }
+            }
+            if (total <= 0) {
                 return;
             }
-
-            log.debug("Processing {} push retry tasks", keys.size());
-
-            for (String key : keys) {
-                try {
-                    Object taskObj = redisTemplate.opsForValue().get(key);
-                    if (taskObj instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> task = (Map<String, Object>) taskObj;
-
-                        String pushTypeStr = (String) task.get("pushType");
-                        String deviceToken = (String) task.get("deviceToken");
-                        String title = (String) task.get("title");
-                        String content = (String) task.get("content");
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> extra = (Map<String, Object>) task.get("extra");
-                        Integer retryCount = (Integer) task.get("retryCount");
-
-                        // 获取推送提供者
-                        PushType pushType = PushType.valueOf(pushTypeStr);
-                        PushProvider provider = pushProviders.get(pushType);
-
-                        if (provider != null) {
-                            boolean success = provider.push(deviceToken, title, content, extra);
-
-                            if (success) {
-                                // 推送成功，删除重试任务
-                                redisTemplate.delete(key);
-                                log.info("Push retry success: {}, device: {}, retryCount: {}",
-                                        pushType, deviceToken, retryCount);
-                            } else {
-                                // 推送失败，增加重试次数
-                                int newRetryCount = retryCount + 1;
-                                if (newRetryCount < MAX_RETRY_COUNT) {
-                                    addRetryTask(pushTypeStr, deviceToken, title, content, extra, newRetryCount);
-                                }
-                                // 删除当前任务
-                                redisTemplate.delete(key);
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("Failed to process retry task: {}", key, e);
-                    // 删除异常的任务
-                    redisTemplate.delete(key);
-                }
+            List<Object> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, KEYS.subList(0, 2), args.toArray());
+            if (claimed == null || claimed.isEmpty()) {
+                return;
             }
 
+            log.debug("Processing {} push retry tasks", claimed.size() / 2);
+            for (int i = 0; i + 1 < claimed.size(); i += 2) {
+                dispatch(claimed.get(i).toString(), claimed.get(i + 1).toString());
+            }
         } catch (Exception e) {
             log.error("Failed to process push retry tasks", e);
         }
     }
 
+    private void dispatch(String taskId, String payload) {
+        RetryTask task;
+        PushType pushType;
+        try {
+            task = objectMapper.readValue(payload, RetryTask.class);
+            pushType = PushType.valueOf(task.getPushType());
+        } catch (Exception e) {
+            log.error("Invalid push retry task: {}", taskId, e);
+            finish(taskId, taskId.substring(0, Math.max(taskId.indexOf(':'), 0)), OUTCOME_DROPPED);
+            return;
+        }
+
+        ThreadPoolExecutor executor = executors.get(pushType);
+        if (executor == null) {
+            log.warn("No push provider found for retry task: {}, type: {}", taskId, pushType);
+            finish(taskId, task.getPushType(), OUTCOME_DROPPED);
+            return;
+        }
+        try {
+            executor.execute(() -> retry(taskId, task, pushProviders.get(pushType)));
+        } catch (RejectedExecutionException e) {
+            // 本地队列已满，交还给队列下一轮再领取
+            reschedule(taskId, System.currentTimeMillis() + properties.getPollInterval(), payload, "");
+        }
+    }
+
+    private void retry(String taskId, RetryTask task, PushProvider provider) {
+        boolean success;
+        try {
+            success = provider.push(task.getDeviceToken(), task.getTitle(), task.getContent(), task.getExtra());
+        } catch (Exception e) {
+            log.error("Push retry error: {}, device: {}", task.getPushType(), task.getDeviceToken(), e);
+            success = false;
+        }
+
+        try {
+            if (success) {
+                finish(taskId, task.getPushType(), OUTCOME_SUCCESS);
+                log.info("Push retry success: {}, device: {}, retryCount: {}",
+                        task.getPushType(), task.getDeviceToken(), task.getRetryCount());
+                return;
+            }
+            int newRetryCount = task.getRetryCount() + 1;
+            if (newRetryCount >= properties.getMaxRetryCount()) {
+                finish(taskId, task.getPushType(), OUTCOME_EXHAUSTED);
+                log.warn("Push retry reached max count: {}, device: {}", newRetryCount, task.getDeviceToken());
+                return;
+            }
+            task.setRetryCount(newRetryCount);
+            reschedule(taskId, System.currentTimeMillis() + backoff(newRetryCount),
+                    objectMapper.writeValueAsString(task), COUNTER_RETRIED);
+        } catch (Exception e) {
+            // 租约到期后会被重新领取
+            log.error("Failed to update push retry task: {}", taskId, e);
+        }
+    }
+
+    private void finish(String taskId, String pushType, String outcome) {
+        stringRedisTemplate.execute(FINISH_SCRIPT, KEYS, taskId, pushType, outcome);
+    }
+
+    private void reschedule(String taskId, long dueTime, String payload, String counter) {
+        stringRedisTemplate.execute(RESCHEDULE_SCRIPT, KEYS, taskId, String.valueOf(dueTime), payload, counter);
+    }
+
+    /**
+     * 第 retryCount 次重试前的等待时间，带 ±20% 抖动，避免同一时刻失败的任务同时到期
+     */
+    private long backoff(int retryCount) {
+        double delay = properties.getBaseDelay() * Math.pow(properties.getMultiplier(), retryCount);
+        long capped = (long) Math.min(delay, properties.getMaxDelay());
+        return (long) (capped * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    /**
+     * 渠道线程池还能接收的任务数
+     */
+    private static int freeSlots(ThreadPoolExecutor executor) {
+        return executor.getQueue().remainingCapacity() + Math.max(0, executor.getMaximumPoolSize() - executor.getActiveCount());
+    }
+
+    private ThreadPoolExecutor newExecutor(PushType pushType) {
+        AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(properties.getConcurrency(), properties.getConcurrency(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()), r -> {
+            Thread thread = new Thread(r, "push-retry-" + pushType.name().toLowerCase() + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
     @Override
     @Scheduled(cron = "0 0 3 * * ?") // 每天凌晨3点执行
     public void cleanupExpiredTasks() {
-        try {
-            Set<String> keys = redisTemplate.keys(RETRY_TASK_PREFIX + "*");
-            if (keys != null && !keys.isEmpty()) {
-                long deletedCount = redisTemplate.delete(keys);
-                log.info("Cleaned up {} expired push retry tasks", deletedCount);
+        long expireBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(properties.getMaxAgeHours());
+        int cleaned = 0;
+        ScanOptions options = ScanOptions.scanOptions().count(500).build();
+        try (Cursor<Map.Entry<Object, Object>> cursor = stringRedisTemplate.opsForHash().scan(PAYLOAD_KEY, options)) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                String taskId = entry.getKey().toString();
+                String pushType = taskId.substring(0, Math.max(taskId.indexOf(':'), 0));
+                boolean orphan = stringRedisTemplate.opsForZSet().score(QUEUE_KEY, taskId) == null;
+                long createTime = 0;
+                try {
+                    createTime = objectMapper.readValue(entry.getValue().toString(), RetryTask.class).getCreateTime();
+                } catch (Exception e) {
+                    log.warn("Invalid push retry task: {}", taskId);
+                }
+                if (orphan || createTime < expireBefore) {
+                    finish(taskId, pushType, OUTCOME_EXPIRED);
+                    cleaned++;
+                }
             }
+            log.info("Cleaned up {} expired push retry tasks", cleaned);
         } catch (Exception e) {
             log.error("Failed to cleanup expired push retry tasks", e);
         }
@@ -150,26 +372,32 @@ public class PushRetryServiceImpl implements PushRetryService {
         Map<String, Object> statistics = new HashMap<>();
 
         try {
-            Set<String> keys = redisTemplate.keys(RETRY_TASK_PREFIX + "*");
-            int totalRetryTasks = keys != null ? keys.size() : 0;
-
-            // 统计各推送类型的重试任务数
-            Map<String, Integer> typeCount = new HashMap<>();
-            if (keys != null) {
-                for (String key : keys) {
-                    Object taskObj = redisTemplate.opsForValue().get(key);
-                    if (taskObj instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> task = (Map<String, Object>) taskObj;
-                        String pushType = (String) task.get("pushType");
-                        typeCount.put(pushType, typeCount.getOrDefault(pushType, 0) + 1);
-                    }
+            Long total = stringRedisTemplate.opsForZSet().zCard(QUEUE_KEY);
+            Long due = stringRedisTemplate.opsForZSet().count(QUEUE_KEY, Double.NEGATIVE_INFINITY, System.currentTimeMillis());
+            Map<Object, Object> counters = stringRedisTemplate.opsForHash().entries(STATS_KEY);
+
+            Map<String, Long> typeCount = new HashMap<>();
+            Map<String, Long> outcomeCount = new HashMap<>();
+            counters.forEach((field, value) -> {
+                String name = field.toString();
+                long count = Long.parseLong(value.toString());
+                if (name.startsWith(PENDING_PREFIX)) {
+                    typeCount.put(name.substring(PENDING_PREFIX.length()), count);
+                } else {
+                    outcomeCount.put(name, count);
                 }
-            }
+            });
 
-            statistics.put("totalRetryTasks", totalRetryTasks);
-            statistics.put("maxRetryCount", MAX_RETRY_COUNT);
+            Map<String, Integer> inFlight = new HashMap<>();
+            executors.forEach((pushType, executor) ->
+                    inFlight.put(pushType.name(), executor.getQueue().size() + executor.getActiveCount()));
+
+            statistics.put("totalRetryTasks", total != null ? total : 0);
+            statistics.put("dueRetryTasks", due != null ? due : 0);
+            statistics.put("maxRetryCount", properties.getMaxRetryCount());
             statistics.put("retryTasksByType", typeCount);
+            statistics.put("counters", outcomeCount);
+            statistics.put("inFlightByType", inFlight);
 
         } catch (Exception e) {
             log.error("Failed to get retry statistics", e);
@@ -178,4 +406,9 @@ public class PushRetryServiceImpl implements PushRetryService {
 
         return statistics;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void destroy() {
+        executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+}
@@ -38,15 +38,23 @@ public class PushServiceImpl implements PushService {
     private final Map<PushType, PushProvider> pushProviders;
     private final PushRetryService pushRetryService;
     private final PushRecordService pushRecordService;
+    private final PushBroadcastJob pushBroadcastJob;
+    private final PushTokenIndex pushTokenIndex;
+    private final OfflinePushResolver offlinePushResolver;
 
     @Autowired
     public PushServiceImpl(PushDeviceMapper pushDeviceMapper, List<PushProvider> providers, 
-                          PushRetryService pushRetryService, PushRecordService pushRecordService) {
+                          PushRetryService pushRetryService, PushRecordService pushRecordService,
+                          PushBroadcastJob pushBroadcastJob, PushTokenIndex pushTokenIndex,
+                          OfflinePushResolver offlinePushResolver) {
         this.pushDeviceMapper = pushDeviceMapper;
         this.pushProviders = providers.stream()
                 .collect(Collectors.toMap(PushProvider::getType, provider -> provider));
         this.pushRetryService = pushRetryService;
         this.pushRecordService = pushRecordService;
+        this.pushBroadcastJob = pushBroadcastJob;
+        this.pushTokenIndex = pushTokenIndex;
+        this.offlinePushResolver = offlinePushResolver;
     }
 
     @Override
@@ -94,7 +102,7 @@ public class PushServiceImpl implements PushService {
                     String status = pushResult ? PushRecordServiceImpl.STATUS_SUCCESS : PushRecordServiceImpl.STATUS_FAILED;
                     String errorMessage = pushResult ? null : "Push failed";
                     for (PushRecord record : records) {
-                        pushRecordService.updateStatus(record.getId(), status, errorMessage);
+                        pushRecordService.updateStatus(record, status, errorMessage);
                     }
 
                     if (pushResult) {
@@ -172,41 +180,11 @@ public class PushServiceImpl implements PushService {
     @Override
     public boolean pushToAll(String title, String content, Object extra) {
         try {
-            // 获取所有活跃设备
-            List<PushDevice> allDevices = pushDeviceMapper.selectAllActiveDevices();
-            if (allDevices.isEmpty()) {
-                log.warn("No active devices found");
-                return false;
-            }
-
-            boolean success = false;
+            // 全量设备由广播任务分页读取、按渠道分批限流发送
             Map<String, Object> extraMap = extra != null ? (Map<String, Object>) extra : new HashMap<>();
-
-            // 按设备类型分组推送
-            Map<String, List<String>> deviceTokensByType = allDevices.stream()
-                    .filter(device -> device.getActive() != null && device.getActive())
-                    .collect(Collectors.groupingBy(
-                            PushDevice::getDeviceType,
-                            Collectors.mapping(PushDevice::getDeviceToken, Collectors.toList())
-                    ));
-
-            for (Map.Entry<String, List<String>> entry : deviceTokensByType.entrySet()) {
-                String deviceType = entry.getKey();
-                List<String> tokens = entry.getValue();
-
-                PushType pushType = convertDeviceTypeToPushType(deviceType);
-                PushProvider provider = pushProviders.get(pushType);
-
-                if (provider != null) {
-                    boolean pushResult = provider.batchPush(tokens, title, content, extraMap);
-                    if (pushResult) {
-                        success = true;
-                        log.debug("Broadcast push successful for type: {}", deviceType);
-                    }
-                }
-            }
-
-            return success;
+            String broadcastId = pushBroadcastJob.start(title, content, extraMap);
+            log.info("Broadcast push submitted: {}", broadcastId);
+            return true;
 
         } catch (Exception e) {
             log.error("Failed to broadcast push", e);
@@ -217,37 +195,29 @@ public class PushServiceImpl implements PushService {
     @Override
     public int pushToGroup(Long groupId, Long excludeUserId, String title, String content, Object extra) {
         try {
-            // 获取群组成员的所有活跃设备
-            List<PushDevice> devices = pushDeviceMapper.selectActiveDevicesByGroupId(groupId, excludeUserId);
-            if (devices.isEmpty()) {
-                log.warn("No active devices found for group: {}", groupId);
+            // 只推送离线成员，设备来自索引，按推送类型合并
+            Map<PushType, List<String>> tokensByType = offlinePushResolver.resolveGroup(groupId, excludeUserId);
+            if (tokensByType.isEmpty()) {
+                log.debug("No offline devices found for group: {}", groupId);
                 return 0;
             }
 
             int successCount = 0;
             Map<String, Object> extraMap = extra != null ? (Map<String, Object>) extra : new HashMap<>();
 
-            // 按设备类型分组推送
-            Map<String, List<String>> deviceTokensByType = devices.stream()
-                    .filter(device -> device.getActive() != null && device.getActive())
-                    .collect(Collectors.groupingBy(
-                            PushDevice::getDeviceType,
-                            Collectors.mapping(PushDevice::getDeviceToken, Collectors.toList())
-                    ));
-
-            for (Map.Entry<String, List<String>> entry : deviceTokensByType.entrySet()) {
-                String deviceType = entry.getKey();
+            for (Map.Entry<PushType, List<String>> entry : tokensByType.entrySet()) {
+                PushType pushType = entry.getKey();
                 List<String> tokens = entry.getValue();
-
-                PushType pushType = convertDeviceTypeToPushType(deviceType);
                 PushProvider provider = pushProviders.get(pushType);
 
                 if (provider != null) {
                     boolean pushResult = provider.batchPush(tokens, title, content, extraMap);
                     if (pushResult) {
                         successCount += tokens.size();
-                        log.debug("Group push successful for group: {}, type: {}", groupId, deviceType);
+                        log.debug("Group push successful for group: {}, type: {}", groupId, pushType);
                     }
+                } else {
+                    log.warn("No push provider found for type: {}", pushType);
                 }
             }
 
@@ -314,11 +284,48 @@ public class PushServiceImpl implements PushService {
         }
     }
 
+    @Override
+    public boolean registerDevice(Long userId, String deviceType, String deviceToken,
+                                  String appVersion, String osVersion, String deviceModel) {
+        PushType pushType = PushType.fromDeviceType(deviceType);
+        if (pushType == null) {
+            log.warn("Unknown device type: {}, user: {}", deviceType, userId);
+            return false;
+        }
+        try {
+            PushDevice device = new PushDevice()
+                    .setUserId(userId)
+                    .setDeviceType(deviceType.toLowerCase())
+                    .setDeviceToken(deviceToken)
+                    .setAppVersion(appVersion)
+                    .setOsVersion(osVersion)
+                    .setDeviceModel(deviceModel);
+            pushDeviceMapper.insertOrUpdate(device);
+            pushTokenIndex.register(userId, deviceToken, pushType);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to register push device, user: {}", userId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean unregisterDevice(Long userId, String deviceToken) {
+        try {
+            pushDeviceMapper.deactivateDevice(userId, deviceToken);
+            pushTokenIndex.unregister(userId, deviceToken);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to unregister push device, user: {}", userId, e);
+            return false;
+        }
+    }
+
     private PushType convertDeviceTypeToPushType(String deviceType) {
-        return switch (deviceType.toLowerCase()) {
-            case "ios" -> PushType.APNS;
-            case "android" -> PushType.FCM;
-            default -> throw new IllegalArgumentException("Unknown device type: " + deviceType);
-        };
+        PushType pushType = PushType.fromDeviceType(deviceType);
+        if (pushType == null) {
+            throw new IllegalArgumentException("Unknown device type: " + deviceType);
+        }
+        return pushType;
     }
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+package com.luohuo.flex.im.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.luohuo.flex.im.common.config.PushTokenIndexProperties;
+import com.luohuo.flex.im.domain.entity.PushDevice;
+import com.luohuo.flex.im.mapper.PushDeviceMapper;
+import com.luohuo.flex.im.push.PushType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 离线推送设备索引
+ * <p>
+ * 每个用户一个 hash：设备Token -> 推送类型，只保存活跃设备。群消息离线推送时一次管道查询取出所有接收人的设备，
+ * 不再每条消息关联查询群成员和设备表。没有设备的用户写入占位字段，避免反复回源。
+ * 索引按需从数据库加载，注册设备时只更新已加载的索引，注销设备时删除索引；过期后重新加载，顺带淘汰长期不活跃的设备。
+ * 每次注册、注销递增用户的索引版本，加载前记下版本，写回时版本已变说明期间设备有变化，放弃写回，避免已注销的设备被写回索引。
+ * 索引和版本用 {uid} 作为 hash tag，集群下同一用户的两个 key 在同一个槽。
+ * 一批用户的写回用 EVALSHA 放在同一个管道里，脚本缓存被清空时先 SCRIPT LOAD 再重发一次。
+ *
+ * @author HuLa
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PushTokenIndex {
+
+    private static final String KEY_PREFIX = "push:token:";
+    private static final String VERSION_SUFFIX = ":ver";
+    private static final String EMPTY_FIELD = "_";
+
+    /**
+     * KEYS[1] 用户设备索引, KEYS[2] 索引版本
+     * ARGV[1] 设备Token, ARGV[2] 推送类型, ARGV[3] 过期秒数
+     * 索引未加载时不写入，避免只有新设备的不完整索引；同时递增版本，正在进行的加载不会写回缺少新设备的索引
+     */
+    private static final RedisScript<Long> REGISTER_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('INCR', KEYS[2])
+            redis.call('EXPIRE', KEYS[2], ARGV[3])
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            redis.call('HDEL', KEYS[1], '_')
+            redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS[1] 用户设备索引, KEYS[2] 索引版本
+     * ARGV[1] 过期秒数
+     */
+    private static final RedisScript<Long> UNREGISTER_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('INCR', KEYS[2])
+            redis.call('EXPIRE', KEYS[2], ARGV[1])
+            redis.call('DEL', KEYS[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS[1] 用户设备索引, KEYS[2] 索引版本
+     * ARGV[1] 加载前读到的版本（不存在为空串）, ARGV[2] 过期秒数, ARGV[3..] 设备Token与推送类型成对出现
+     */
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>("""
+            local current = redis.call('GET', KEYS[2]) or ''
+            if current ~= ARGV[1] then
+                return 0
+            end
+            for i = 3, #ARGV, 2 do
+                redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PushDeviceMapper pushDeviceMapper;
+    private final PushTokenIndexProperties properties;
+
+    /**
+     * 设备注册后更新索引
+     */
+    public void register(Long uid, String deviceToken, PushType pushType) {
+        stringRedisTemplate.execute(REGISTER_SCRIPT, List.of(key(uid), versionKey(uid)), deviceToken, pushType.name(),
+                String.valueOf(TimeUnit.HOURS.toSeconds(properties.getExpireHours())));
+    }
+
+    /**
+     * 设备注销后删除索引并递增版本，下次查询重新加载
+     */
+    public void unregister(Long uid, String deviceToken) {
+        stringRedisTemplate.execute(UNREGISTER_SCRIPT, List.of(key(uid), versionKey(uid)),
+                String.valueOf(TimeUnit.HOURS.toSeconds(properties.getExpireHours())));
+    }
+
+    /**
+     * 查询用户的活跃设备，按推送类型合并去重
+     */
+    public Map<PushType, List<String>> getTokens(Collection<Long> uids) {
+        Map<PushType, Set<String>> merged = new EnumMap<>(PushType.class);
+        if (CollUtil.isEmpty(uids)) {
+            return new EnumMap<>(PushType.class);
+        }
+        for (List<Long> batch : CollUtil.split(new ArrayList<>(new LinkedHashSet<>(uids)), properties.getBatchSize())) {
+            List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    batch.forEach(uid -> ops.opsForHash().entries(key(uid)));
+                    return null;
+                }
+            });
+
+            List<Long> misses = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Map<Object, Object> entries = (Map<Object, Object>) results.get(i);
+                if (CollUtil.isEmpty(entries)) {
+                    misses.add(batch.get(i));
+                    continue;
+                }
+                entries.forEach((token, type) -> {
+                    if (!EMPTY_FIELD.equals(token)) {
+                        merge(merged, PushType.valueOf(type.toString()), token.toString());
+                    }
+                });
+            }
+            if (!misses.isEmpty()) {
+                load(misses).forEach((uid, tokens) -> tokens.forEach((token, type) -> merge(merged, type, token)));
+            }
+        }
+
+        Map<PushType, List<String>> result = new EnumMap<>(PushType.class);
+        merged.forEach((type, tokens) -> result.put(type, new ArrayList<>(tokens)));
+        return result;
+    }
+
+    /**
+     * 从数据库加载索引，版本未变时写回
+     */
+    private Map<Long, Map<String, PushType>> load(List<Long> uids) {
+        // 先读版本再查库，期间有注销时写回会被放弃
+        List<String> versions = stringRedisTemplate.opsForValue().multiGet(uids.stream().map(PushTokenIndex::versionKey).toList());
+
+        Map<Long, Map<String, PushType>> devices = new HashMap<>();
+        uids.forEach(uid -> devices.put(uid, new HashMap<>()));
+        for (PushDevice device : pushDeviceMapper.selectActiveDevicesByUserIds(uids)) {
+            PushType pushType = PushType.fromDeviceType(device.getDeviceType());
+            if (pushType != null && devices.containsKey(device.getUserId())) {
+                devices.get(device.getUserId()).put(device.getDeviceToken(), pushType);
+            }
+        }
+
+        String expireSeconds = String.valueOf(TimeUnit.HOURS.toSeconds(properties.getExpireHours()));
+        List<byte[][]> scripts = new ArrayList<>(uids.size());
+        for (int i = 0; i < uids.size(); i++) {
+            Long uid = uids.get(i);
+            String version = versions != null && versions.get(i) != null ? versions.get(i) : "";
+            List<String> keysAndArgs = new ArrayList<>();
+            keysAndArgs.add(key(uid));
+            keysAndArgs.add(versionKey(uid));
+            keysAndArgs.add(version);
+            keysAndArgs.add(expireSeconds);
+            devices.get(uid).forEach((token, type) -> {
+                keysAndArgs.add(token);
+                keysAndArgs.add(type.name());
+            });
+            if (keysAndArgs.size() == 4) {
+                keysAndArgs.add(EMPTY_FIELD);
+                keysAndArgs.add("");
+            }
+            scripts.add(keysAndArgs.stream().map(arg -> arg.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new));
+        }
+        long skipped = writeBack(scripts).stream().filter(written -> !Long.valueOf(1L).equals(written)).count();
+        log.debug("Loaded push token index for {} users, {} skipped by concurrent unregister", uids.size(), skipped);
+        return devices;
+    }
+
+    /**
+     * 管道批量执行 LOAD_SCRIPT，返回每个用户的写回结果
+     */
+    private List<Object> writeBack(List<byte[][]> scripts) {
+        try {
+            return pipelineLoadScript(scripts);
+        } catch (DataAccessException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            byte[] script = LOAD_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(script));
+            return pipelineLoadScript(scripts);
+        }
+    }
+
+    private List<Object> pipelineLoadScript(List<byte[][]> scripts) {
+        String sha = LOAD_SCRIPT.getSha1();
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            scripts.forEach(keysAndArgs -> connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 2, keysAndArgs));
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void merge(Map<PushType, Set<String>> merged, PushType pushType, String token) {
+        merged.computeIfAbsent(pushType, k -> new LinkedHashSet<>()).add(token);
+    }
+
+    private static String key(Long uid) {
+        return KEY_PREFIX + "{" + uid + "}";
+    }
+
+    private static String versionKey(Long uid) {
+        return key(uid) + VERSION_SUFFIX;
+    }
+}
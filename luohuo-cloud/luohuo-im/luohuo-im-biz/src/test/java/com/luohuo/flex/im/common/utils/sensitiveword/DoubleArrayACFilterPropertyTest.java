@@ -0,0 +1,89 @@
+package com.luohuo.flex.im.common.utils.sensitiveword;
+
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 双数组ac自动机敏感词过滤属性测试
+ * <p>
+ * 以 {@link DFAFilter} 为基准：是否命中必须一致；替换只会把字符改成掩码，且有命中时一定发生替换。
+ * 掩码本身是跳过字符，替换后两侧的字符可能拼出新的敏感词，所以不要求替换后的文本完全干净。
+ */
+class DoubleArrayACFilterPropertyTest {
+
+    /**
+     * 小字母表，便于随机生成大量重叠、跨跳过字符的命中
+     */
+    private static final String ALPHABET = "abAB敏感词 .*";
+
+    @Provide
+    Arbitrary<List<String>> words() {
+        return Arbitraries.strings().withChars(ALPHABET).ofMinLength(1).ofMaxLength(4)
+                .list().ofMinSize(1).ofMaxSize(20);
+    }
+
+    @Provide
+    Arbitrary<String> texts() {
+        return Arbitraries.strings().withChars(ALPHABET).ofMaxLength(40);
+    }
+
+    @Property(tries = 300)
+    void sameDetectionAsDfa(@ForAll("words") List<String> words, @ForAll("texts") String text) {
+        DFAFilter dfa = DFAFilter.getInstance();
+        dfa.loadWord(words);
+        DoubleArrayACFilter ac = DoubleArrayACFilter.getInstance();
+        ac.loadWord(words);
+
+        assertEquals(dfa.hasSensitiveWord(text), ac.hasSensitiveWord(text), () -> "words=" + words + ", text=" + text);
+    }
+
+    @Property(tries = 300)
+    void filterMasksOnlyHits(@ForAll("words") List<String> words, @ForAll("texts") String text) {
+        DoubleArrayACFilter ac = DoubleArrayACFilter.getInstance();
+        ac.loadWord(words);
+
+        String filtered = ac.filter(text);
+        assertEquals(text.length(), filtered.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = filtered.charAt(i);
+            assertTrue(c == text.charAt(i) || c == '*');
+        }
+        assertEquals(ac.hasSensitiveWord(text), !filtered.equals(text), () -> "words=" + words + ", text=" + text);
+    }
+
+    @Test
+    void masksAcrossSkipCharsAndCase() {
+        DoubleArrayACFilter ac = DoubleArrayACFilter.getInstance();
+        ac.loadWord(List.of("敏感词", "Bad", "ab"));
+
+        assertEquals("这是*****，不是敏感", ac.filter("这是敏.感 词，不是敏感"));
+        assertEquals("***d", ac.filter("BADd"));
+        assertEquals("x**a", ac.filter("xaBa"));
+    }
+
+    @Test
+    void returnsSameInstanceWhenClean() {
+        DoubleArrayACFilter ac = DoubleArrayACFilter.getInstance();
+        ac.loadWord(List.of("敏感词"));
+
+        String text = "没有命中的文本";
+        assertSame(text, ac.filter(text));
+        assertFalse(ac.hasSensitiveWord(text));
+    }
+
+    @Test
+    void reloadReplacesDictionary() {
+        DoubleArrayACFilter ac = DoubleArrayACFilter.getInstance();
+        ac.loadWord(List.of("旧词"));
+        assertTrue(ac.hasSensitiveWord("旧词"));
+
+        ac.loadWord(List.of("新词"));
+        assertFalse(ac.hasSensitiveWord("旧词"));
+        assertTrue(ac.hasSensitiveWord("新词"));
+    }
+}
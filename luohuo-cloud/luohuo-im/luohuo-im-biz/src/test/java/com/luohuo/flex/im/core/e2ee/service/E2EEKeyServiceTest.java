@@ -54,6 +54,9 @@ class E2EEKeyServiceTest {
     @Mock
     private E2EEAuditService auditService;
 
+    @Mock
+    private E2EECacheService e2eeCacheService;
+
     @InjectMocks
     private E2EEKeyService e2eeKeyService;
 
@@ -0,0 +1,87 @@
+package com.luohuo.flex.im.core.e2ee.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RotatingBloomFilter 测试
+ *
+ * 验证：
+ * 1. 写入过的元素在窗口期内一定命中
+ * 2. 误判率接近配置值
+ * 3. 两个窗口期后元素被淘汰
+ *
+ * @author HuLa Team
+ * @since 2025-12-13
+ */
+@DisplayName("RotatingBloomFilter - 重放预过滤测试")
+public class RotatingBloomFilterTest {
+
+    private static final long WINDOW_MILLIS = 60_000;
+
+    @Test
+    @DisplayName("写入过的元素不会漏判")
+    void testNoFalseNegatives() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.001, WINDOW_MILLIS);
+        SplittableRandom random = new SplittableRandom(1);
+        long[] h1 = new long[10_000];
+        long[] h2 = new long[10_000];
+        for (int i = 0; i < h1.length; i++) {
+            h1[i] = random.nextLong();
+            h2[i] = random.nextLong();
+            filter.put(h1[i], h2[i]);
+        }
+        for (int i = 0; i < h1.length; i++) {
+            assertTrue(filter.mightContain(h1[i], h2[i]), "写入过的元素必须命中");
+            assertFalse(filter.put(h1[i], h2[i]), "重复写入不能判定为新元素");
+        }
+    }
+
+    @Test
+    @DisplayName("误判率接近配置值")
+    void testFalsePositiveRate() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.001, WINDOW_MILLIS);
+        SplittableRandom random = new SplittableRandom(2);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(random.nextLong(), random.nextLong());
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong(), random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100_000 * 0.001 * 3, "误判数过高: " + falsePositives);
+    }
+
+    @Test
+    @DisplayName("元素至少保留一个窗口期，两个窗口期后淘汰")
+    void testRotation() {
+        AtomicLong clock = new AtomicLong();
+        RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 0.001, WINDOW_MILLIS, clock::get);
+        assertTrue(filter.put(42L, 7L));
+
+        clock.addAndGet(WINDOW_MILLIS * 1_000_000L);
+        assertTrue(filter.mightContain(42L, 7L), "上一代仍应命中");
+
+        clock.addAndGet(WINDOW_MILLIS * 1_000_000L);
+        assertFalse(filter.mightContain(42L, 7L), "两个窗口期后应淘汰");
+        assertTrue(filter.put(42L, 7L));
+    }
+
+    @Test
+    @DisplayName("长时间停顿后两代同时过期")
+    void testLongPause() {
+        AtomicLong clock = new AtomicLong();
+        RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 0.001, WINDOW_MILLIS, clock::get);
+        filter.put(42L, 7L);
+
+        clock.addAndGet(WINDOW_MILLIS * 1_000_000L * 3);
+        assertFalse(filter.mightContain(42L, 7L));
+    }
+}
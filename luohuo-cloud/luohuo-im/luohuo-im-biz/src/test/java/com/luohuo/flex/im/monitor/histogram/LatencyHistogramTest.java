@@ -0,0 +1,132 @@
+package com.luohuo.flex.im.monitor.histogram;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LatencyHistogram / RotatingLatencyHistogram 测试
+ *
+ * 验证：
+ * 1. 分桶边界连续且覆盖全部取值
+ * 2. 分位值相对误差在桶精度内
+ * 3. 并发写入不丢计数
+ * 4. 窗口轮换后旧数据不再计入
+ *
+ * @author HuLa
+ */
+@DisplayName("LatencyHistogram - 延迟直方图测试")
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("分桶边界连续")
+    void testBucketBoundaries() {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lower = LatencyHistogram.lowerBound(i);
+            long upper = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.indexOf(lower));
+            assertEquals(i, LatencyHistogram.indexOf(upper));
+            if (i > 0) {
+                assertEquals(LatencyHistogram.upperBound(i - 1) + 1, lower);
+            }
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    @DisplayName("分位值误差在桶精度内")
+    void testPercentileAccuracy() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        SplittableRandom random = new SplittableRandom(1);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // 对数分布，覆盖 1ms ~ 60s
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(60_000));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[0], snapshot.getMin());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double p : new double[]{0.5, 0.9, 0.95, 0.99, 0.999}) {
+            long expected = values[(int) Math.ceil(p * values.length) - 1];
+            long actual = snapshot.getPercentile(p);
+            assertTrue(Math.abs(actual - expected) <= Math.max(1, expected / 16),
+                    "p" + p + " expected " + expected + " but was " + actual);
+        }
+    }
+
+    @Test
+    @DisplayName("并发写入不丢计数")
+    void testConcurrentRecord() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8;
+        int perThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(i % 1000);
+                }
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals((long) threads * perThread, snapshot.getCount());
+        assertEquals((long) threads * (perThread / 1000) * (999 * 1000 / 2), snapshot.getSum());
+        assertEquals(999, snapshot.getMax());
+        assertEquals(0, snapshot.getMin());
+    }
+
+    @Test
+    @DisplayName("超出上限的值计入最后一个桶")
+    void testClamp() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    @DisplayName("窗口轮换后旧数据不再计入")
+    void testRotation() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        RotatingLatencyHistogram histogram = new RotatingLatencyHistogram(3, 1_000, clock::get);
+        histogram.record(10);
+        histogram.record(20);
+
+        clock.addAndGet(1_000);
+        histogram.record(30);
+        assertEquals(3, histogram.recent(3_000).getCount());
+        assertEquals(1, histogram.recent(0).getCount());
+
+        // 超过保留的窗口数后，第一个窗口被覆盖
+        clock.addAndGet(2_000);
+        histogram.record(40);
+        LatencyHistogram.Snapshot snapshot = histogram.recent(histogram.retentionMillis());
+        assertEquals(2, snapshot.getCount());
+        assertEquals(30, snapshot.getMin());
+        assertEquals(40, snapshot.getMax());
+
+        // 长时间无写入，查询不应返回过期窗口
+        clock.addAndGet(10_000);
+        assertEquals(0, histogram.recent(histogram.retentionMillis()).getCount());
+    }
+}
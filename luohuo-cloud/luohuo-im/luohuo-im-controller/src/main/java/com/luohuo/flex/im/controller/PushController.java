@@ -1,6 +1,7 @@
 package com.luohuo.flex.im.controller;
 
 import com.luohuo.basic.base.R;
+import com.luohuo.basic.context.ContextUtil;
 import com.luohuo.flex.im.api.PushService;
 import com.luohuo.flex.im.api.PushStatistics;
 import io.swagger.v3.oas.annotations.Operation;
@@ -93,4 +94,27 @@ public class PushController {
         PushStatistics statistics = pushService.getStatistics(startTime, endTime);
         return R.success(statistics);
     }
+
+    @PostMapping("/device")
+    @Operation(summary = "注册推送设备", description = "登记当前用户的设备Token，用于离线推送")
+    public R<Boolean> registerDevice(
+            @Parameter(description = "设备类型：ios/android/huawei/xiaomi/oppo/vivo", required = true) @RequestParam String deviceType,
+            @Parameter(description = "设备Token", required = true) @RequestParam String deviceToken,
+            @Parameter(description = "App版本") @RequestParam(required = false) String appVersion,
+            @Parameter(description = "系统版本") @RequestParam(required = false) String osVersion,
+            @Parameter(description = "设备型号") @RequestParam(required = false) String deviceModel) {
+
+        boolean success = pushService.registerDevice(ContextUtil.getUid(), deviceType, deviceToken,
+                appVersion, osVersion, deviceModel);
+        return R.success(success);
+    }
+
+    @DeleteMapping("/device")
+    @Operation(summary = "注销推送设备", description = "退出登录或关闭通知时注销当前用户的设备Token")
+    public R<Boolean> unregisterDevice(
+            @Parameter(description = "设备Token", required = true) @RequestParam String deviceToken) {
+
+        boolean success = pushService.unregisterDevice(ContextUtil.getUid(), deviceToken);
+        return R.success(success);
+    }
 }
\ No newline at end of file
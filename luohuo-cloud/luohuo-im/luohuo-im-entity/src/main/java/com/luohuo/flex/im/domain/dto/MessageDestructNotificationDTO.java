@@ -5,6 +5,7 @@ import lombok.Builder;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 消息销毁通知DTO
@@ -23,6 +24,11 @@ public class MessageDestructNotificationDTO implements Serializable {
      */
     private Long messageId;
 
+    /**
+     * 批量销毁时同一会话内的全部消息ID，messageId 为其中最新的一条
+     */
+    private List<Long> messageIds;
+
     /**
      * 发送者ID
      */
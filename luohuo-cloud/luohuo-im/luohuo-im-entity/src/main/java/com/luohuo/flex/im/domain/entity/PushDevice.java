@@ -32,7 +32,7 @@ public class PushDevice {
     private Long userId;
 
     /**
-     * 设备类型：ios/android
+     * 设备类型：ios/android，厂商通道为 huawei/xiaomi/oppo/vivo
      */
     private String deviceType;
 
@@ -0,0 +1,45 @@
+package com.luohuo.flex.im.domain.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+/**
+ * 推送小时统计实体
+ *
+ * @author HuLa
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("im_push_stat_hourly")
+public class PushStatHourly {
+
+    /**
+     * 统计小时（整点）
+     */
+    private LocalDateTime statHour;
+
+    /**
+     * 推送类型：apns/fcm/huawei/xiaomi/oppo/vivo
+     */
+    private String pushType;
+
+    /**
+     * 推送记录数
+     */
+    private Long totalCount;
+
+    /**
+     * 成功数
+     */
+    private Long successCount;
+
+    /**
+     * 失败数
+     */
+    private Long failureCount;
+}
@@ -32,12 +32,12 @@ public interface PushService {
     int pushToUsers(List<Long> userIds, String title, String content, Object extra);
 
     /**
-     * 推送给所有用户
+     * 推送给所有用户（后台分批执行）
      *
      * @param title 标题
      * @param content 内容
      * @param extra 扩展信息
-     * @return 是否成功
+     * @return 广播任务是否已提交
      */
     boolean pushToAll(String title, String content, Object extra);
 
@@ -72,4 +72,27 @@ public interface PushService {
      * @return 统计信息
      */
     PushStatistics getStatistics(Long startTime, Long endTime);
+
+    /**
+     * 注册推送设备
+     *
+     * @param userId 用户ID
+     * @param deviceType 设备类型：ios/android，厂商通道为 huawei/xiaomi/oppo/vivo
+     * @param deviceToken 设备Token
+     * @param appVersion App版本
+     * @param osVersion 系统版本
+     * @param deviceModel 设备型号
+     * @return 是否成功
+     */
+    boolean registerDevice(Long userId, String deviceType, String deviceToken,
+                           String appVersion, String osVersion, String deviceModel);
+
+    /**
+     * 注销推送设备
+     *
+     * @param userId 用户ID
+     * @param deviceToken 设备Token
+     * @return 是否成功
+     */
+    boolean unregisterDevice(Long userId, String deviceToken);
 }
\ No newline at end of file
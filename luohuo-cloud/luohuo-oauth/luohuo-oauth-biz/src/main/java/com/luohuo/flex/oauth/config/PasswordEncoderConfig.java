@@ -1,5 +1,7 @@
 package com.luohuo.flex.oauth.config;
 
+import com.luohuo.flex.oauth.properties.PasswordHashProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
@@ -13,33 +15,37 @@ import org.springframework.security.crypto.password.PasswordEncoder;
  * Argon2特性:
  * - 2015年密码哈希比赛(PHC)获胜者, 行业最佳实践
  * - Argon2id模式: 结合Argon2i(抗侧信道)和Argon2d(抗GPU)优势
- * - 内存困难函数: 使用65536 KB内存, 使GPU/ASIC攻击成本极高
- * - 可调参数: 盐长度16字节, 哈希长度32字节, 3次迭代, 4并行度
+ * - 内存困难函数: 每次哈希占用 memory KB 内存, 使GPU/ASIC攻击成本极高
+ * - 可调参数: 见 PasswordHashProperties, 默认与 Spring Security 5.8 推荐值一致
  * - 自动处理盐值生成和存储
  * - 抗时间攻击、侧信道攻击、GPU/ASIC暴力破解
  *
- * 性能: 在现代硬件上约200-300ms (比BCrypt稍慢, 但安全性更高)
+ * 哈希计算统一交给 PasswordHashExecutor 限流, 避免登录高峰时大量并发哈希耗尽堆内存
  *
  * @author HuLa Security Team
  * @since 2025-12-13
  */
 @Configuration
+@EnableConfigurationProperties(PasswordHashProperties.class)
 public class PasswordEncoderConfig {
 
     /**
      * Argon2id密码编码器
      *
      * 参数说明:
-     * - saltLength: 16字节 (128位盐值)
-     * - hashLength: 32字节 (256位哈希)
-     * - parallelism: 4 (并行度, 利用多核CPU)
-     * - memory: 65536 KB (64 MB内存, 使GPU攻击成本高)
-     * - iterations: 3 (迭代次数, 平衡安全性和性能)
+     * - saltLength: 盐值长度
+     * - hashLength: 哈希长度
+     * - parallelism: 并行度
+     * - memory: 内存(KB)
+     * - iterations: 迭代次数
+     *
+     * 参数调大后, upgradeEncoding 对旧哈希返回 true, 登录成功时自动重新哈希
      *
      * @return Argon2id密码编码器
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8();
+    public PasswordEncoder passwordEncoder(PasswordHashProperties properties) {
+        return new Argon2PasswordEncoder(properties.getSaltLength(), properties.getHashLength(),
+                properties.getParallelism(), properties.getMemory(), properties.getIterations());
     }
 }
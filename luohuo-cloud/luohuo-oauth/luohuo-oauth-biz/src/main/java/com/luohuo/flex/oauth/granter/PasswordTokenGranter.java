@@ -144,8 +144,9 @@ public class PasswordTokenGranter extends AbstractTokenGranter implements TokenG
         }
 
         // ===== P0修复: 安全密码验证 (2025-12-13) =====
-        // 使用PasswordService验证密码 (兼容旧SHA-256和新BCrypt)
-        if (!passwordService.verifyPassword(password, user)) {
+        // 使用PasswordService验证密码 (兼容旧SHA-256、BCrypt和Argon2), 哈希计算在专用线程池中限流执行
+        PasswordService.VerifyResult verifyResult = passwordService.verifyAndRehash(password, user);
+        if (!verifyResult.matched()) {
             String msg = StrUtil.format("用户名或密码错误{}次，连续输错{}次您将被锁定！", (user.getPasswordErrorNum() + 1), maxPasswordErrorNum);
             // 密码错误事件
             SpringUtils.publishEvent(new LoginEvent(LoginStatusDTO.fail(user.getId(), LoginStatusEnum.PASSWORD_ERROR, msg)));
@@ -153,12 +154,10 @@ public class PasswordTokenGranter extends AbstractTokenGranter implements TokenG
         }
 
         // ===== P0修复: 自动密码升级 (2025-12-13) =====
-        // 如果用户使用旧SHA-256密码, 登录成功后自动升级为BCrypt
-        if (passwordService.needsPasswordUpgrade(user)) {
+        // 旧格式密码或Argon2参数调整后, 登录成功时保存按当前参数计算的新哈希
+        if (verifyResult.upgradedPassword() != null) {
             try {
-                log.info("自动升级用户 {} 的密码为BCrypt格式", user.getId());
-                String newPasswordHash = passwordService.upgradePassword(password);
-                user.setPassword(newPasswordHash);
+                user.setPassword(verifyResult.upgradedPassword());
                 user.setSalt(null);  // 清除salt字段, 标记为新格式
                 defUserService.updateById(user);
                 log.info("用户 {} 密码升级成功", user.getId());
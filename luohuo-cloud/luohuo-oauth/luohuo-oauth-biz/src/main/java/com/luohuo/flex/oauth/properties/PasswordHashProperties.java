@@ -0,0 +1,59 @@
+package com.luohuo.flex.oauth.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import com.luohuo.basic.constant.Constants;
+
+/**
+ * 密码哈希配置
+ * <p>
+ * Argon2 参数调大后，旧哈希会在用户下次登录成功时按新参数重新计算。
+ *
+ * @author 乾乾
+ * @date 2025-12-14
+ */
+@Setter
+@Getter
+@ConfigurationProperties(prefix = PasswordHashProperties.PREFIX)
+public class PasswordHashProperties {
+    public static final String PREFIX = Constants.PROJECT_PREFIX + ".password-hash";
+
+    /**
+     * 盐长度（字节）
+     */
+    private Integer saltLength = 16;
+    /**
+     * 哈希长度（字节）
+     */
+    private Integer hashLength = 32;
+    /**
+     * 并行度
+     */
+    private Integer parallelism = 1;
+    /**
+     * 单次哈希占用内存（KB）
+     */
+    private Integer memory = 1 << 14;
+    /**
+     * 迭代次数
+     */
+    private Integer iterations = 2;
+
+    /**
+     * 同时计算哈希可占用的最大堆内存比例，用于推算线程数
+     */
+    private Double memoryRatio = 0.25;
+    /**
+     * 最大线程数，0 表示按 CPU 核数和内存推算
+     */
+    private Integer maxThreads = 0;
+    /**
+     * 等待队列长度，0 表示线程数的 8 倍
+     */
+    private Integer queueCapacity = 0;
+    /**
+     * 单次校验的截止时间（毫秒），包含排队时间；超时按系统繁忙处理
+     */
+    private Long timeout = 3000L;
+}
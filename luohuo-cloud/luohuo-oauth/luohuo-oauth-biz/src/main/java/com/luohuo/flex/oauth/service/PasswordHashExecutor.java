@@ -0,0 +1,148 @@
+package com.luohuo.flex.oauth.service;
+
+import com.luohuo.basic.exception.BizException;
+import com.luohuo.basic.exception.code.ResponseEnum;
+import com.luohuo.flex.oauth.properties.PasswordHashProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 密码哈希专用线程池
+ * <p>
+ * Argon2 每次计算都要申请 memory KB 的内存，登录高峰时在请求线程上直接计算，
+ * 并发数不受控，瞬时堆占用可达 并发数 × memory。这里把哈希放到固定大小的线程池：
+ * 1. 线程数 = min(CPU 核数, 堆内存 × memoryRatio / 单次哈希内存)，堆占用有上限
+ * 2. 有界队列，队列满立即拒绝，返回可重试的"系统繁忙"
+ * 3. 每个任务带截止时间，排队超时的任务不再计算，调用方也不再等待
+ * <p>
+ * 指标: oauth.password.hash.queue / active / wait / duration / rejected
+ *
+ * @author 乾乾
+ * @date 2025-12-14
+ */
+@Slf4j
+@Component
+public class PasswordHashExecutor implements DisposableBean {
+    private static final String METRIC_PREFIX = "oauth.password.hash.";
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutNanos;
+    private final Timer waitTimer;
+    private final Timer hashTimer;
+    private final Counter saturatedCounter;
+    private final Counter timeoutCounter;
+
+    public PasswordHashExecutor(PasswordHashProperties properties, MeterRegistry meterRegistry) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long perHashBytes = properties.getMemory() * 1024L;
+        long budgetBytes = (long) (Runtime.getRuntime().maxMemory() * properties.getMemoryRatio());
+        int threads = (int) Math.max(1, Math.min(cores, budgetBytes / perHashBytes));
+        if (properties.getMaxThreads() > 0) {
+            threads = Math.min(threads, properties.getMaxThreads());
+        }
+        int queueCapacity = properties.getQueueCapacity() > 0 ? properties.getQueueCapacity() : threads * 8;
+
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "password-hash-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(properties.getTimeout());
+
+        Gauge.builder(METRIC_PREFIX + "queue", executor, e -> e.getQueue().size())
+                .description("等待计算的密码哈希数").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("正在计算的密码哈希数").register(meterRegistry);
+        this.waitTimer = Timer.builder(METRIC_PREFIX + "wait")
+                .description("密码哈希排队耗时").register(meterRegistry);
+        this.hashTimer = Timer.builder(METRIC_PREFIX + "duration")
+                .description("密码哈希计算耗时").register(meterRegistry);
+        this.saturatedCounter = Counter.builder(METRIC_PREFIX + "rejected").tag("reason", "saturated")
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder(METRIC_PREFIX + "rejected").tag("reason", "timeout")
+                .register(meterRegistry);
+
+        log.info("密码哈希线程池: 线程数={}, 队列长度={}, 单次内存={}KB, 超时={}ms",
+                threads, queueCapacity, properties.getMemory(), properties.getTimeout());
+    }
+
+    /**
+     * 在哈希线程池中执行任务并等待结果
+     *
+     * @param task 哈希计算
+     * @return 计算结果
+     * @throws BizException 线程池已满或超过截止时间，客户端可稍后重试
+     */
+    public <T> T execute(Callable<T> task) {
+        long submitAt = System.nanoTime();
+        long deadline = submitAt + timeoutNanos;
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startAt = System.nanoTime();
+                waitTimer.record(startAt - submitAt, TimeUnit.NANOSECONDS);
+                // 调用方已放弃等待，不再占用内存计算
+                if (startAt - deadline > 0) {
+                    throw new CancellationException("password hash deadline exceeded");
+                }
+                try {
+                    return task.call();
+                } finally {
+                    hashTimer.record(System.nanoTime() - startAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            saturatedCounter.increment();
+            throw busy();
+        }
+
+        try {
+            return future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | CancellationException e) {
+            future.cancel(false);
+            timeoutCounter.increment();
+            throw busy();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw busy();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CancellationException) {
+                timeoutCounter.increment();
+                throw busy();
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new BizException(cause.getMessage(), cause);
+        }
+    }
+
+    private static BizException busy() {
+        return BizException.wrap(ResponseEnum.TOO_MANY_REQUESTS.getCode(), "登录人数较多，请稍后重试");
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -21,6 +21,7 @@ import org.springframework.stereotype.Service;
  * - 新用户注册: 直接使用Argon2
  * - 旧用户登录: 验证成功后自动升级到Argon2
  * - 修改密码: 直接使用Argon2
+ * - Argon2参数调大: 登录成功后按新参数重新哈希
  *
  * @author HuLa Security Team
  * @since 2025-12-13
@@ -32,6 +33,9 @@ public class PasswordService {
     @Autowired
     private PasswordEncoder passwordEncoder;  // Argon2PasswordEncoder
 
+    @Autowired
+    private PasswordHashExecutor passwordHashExecutor;
+
     // BCrypt编码器用于验证旧BCrypt密码
     private static final BCryptPasswordEncoder bcryptEncoder = new BCryptPasswordEncoder(12);
 
@@ -92,15 +96,33 @@ public class PasswordService {
         return false;
     }
 
+    /**
+     * 在哈希线程池中验证密码, 验证通过且需要升级时一并计算新哈希
+     *
+     * @param rawPassword 明文密码
+     * @param user 用户对象
+     * @return 验证结果
+     * @throws com.luohuo.basic.exception.BizException 哈希线程池繁忙, 可稍后重试
+     */
+    public VerifyResult verifyAndRehash(String rawPassword, DefUser user) {
+        return passwordHashExecutor.execute(() -> {
+            if (!verifyPassword(rawPassword, user)) {
+                return VerifyResult.MISMATCH;
+            }
+            return new VerifyResult(true, needsPasswordUpgrade(user) ? upgradePassword(rawPassword) : null);
+        });
+    }
+
     /**
      * 判断是否需要密码升级
      *
      * 需要升级的情况:
      * 1. 使用SHA-256 + salt
      * 2. 使用BCrypt
+     * 3. Argon2参数低于当前配置
      *
      * @param user 用户对象
-     * @return true=需要升级, false=已是Argon2格式
+     * @return true=需要升级, false=已是当前参数的Argon2格式
      */
     public boolean needsPasswordUpgrade(DefUser user) {
         // SHA-256格式
@@ -115,8 +137,11 @@ public class PasswordService {
             return true;
         }
 
-        // Argon2格式不需要升级
-        return !storedPassword.startsWith("$argon2");
+        // Argon2格式: 内存或迭代次数低于当前配置时升级
+        if (storedPassword.startsWith("$argon2")) {
+            return passwordEncoder.upgradeEncoding(storedPassword);
+        }
+        return true;
     }
 
     /**
@@ -153,4 +178,14 @@ public class PasswordService {
 
         return "UNKNOWN";
     }
+
+    /**
+     * 密码验证结果
+     *
+     * @param matched 密码是否正确
+     * @param upgradedPassword 需要升级时的新哈希, 否则为null
+     */
+    public record VerifyResult(boolean matched, String upgradedPassword) {
+        static final VerifyResult MISMATCH = new VerifyResult(false, null);
+    }
 }
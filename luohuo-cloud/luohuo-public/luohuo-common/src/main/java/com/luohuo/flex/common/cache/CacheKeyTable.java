@@ -121,6 +121,11 @@ public interface CacheKeyTable {
 		 */
 		String GLOBAL_DEVICES_ONLINE = "global_devices_online";
 
+		/**
+		 * 用户在线设备集合
+		 */
+		String USER_DEVICES_ONLINE = "user_devices_online";
+
 		/**
 		 * 用户有多少个群的映射
 		 */
@@ -91,6 +91,26 @@ public class PresenceCacheKeyBuilder implements CacheKeyBuilder {
 		return new GlobalOnlineDevicesKeyBuilder().key();
 	}
 
+	/**
+	 * 用户当前在线的设备指纹集合
+	 * @param uid 用户id
+	 */
+	public static CacheKey userOnlineDevicesKey(Long uid) {
+		return new UserOnlineDevicesKeyBuilder().key(uid);
+	}
+
+	/**
+	 * 用户在线设备构建器，与全局在线设备ZSet同步维护，用于O(1)判断首个/最后一个设备
+	 */
+	private static class UserOnlineDevicesKeyBuilder implements CacheKeyBuilder {
+		@Override public String getPrefix() { return CacheKeyModular.PREFIX; }
+		@Override public String getTenant() { return StrPool.EMPTY; }
+		@Override public String getModular() { return CacheKeyModular.PRESENCE; }
+		@Override public String getTable() { return CacheKeyTable.Presence.USER_DEVICES_ONLINE; }
+		@Override public ValueType getValueType() { return ValueType.obj; }
+		@Override public Duration getExpire() { return Duration.ofDays(30); }
+	}
+
 	/**
 	 * 系统在线的所有用户 uid:clientId 的映射方式
 	 */
@@ -25,6 +25,7 @@ public enum WSRespTypeEnum {
     INVALID_USER("invalidUser", "拉黑用户", WSBlack.class),
     MSG_MARK_ITEM("msgMarkItem", "消息标记", WSMsgMark.class),
     MSG_RECALL("msgRecall", "消息撤回", WSMsgRecall.class),
+	MSG_UPDATE("msgUpdate", "消息内容更新", ChatMessageResp.class),
 	DELETE_FRIEND("deleteFriend", "删除好友", null),
 
 	NOTIFY_EVENT("notifyEvent", "通知总线", null),
@@ -41,6 +42,7 @@ public enum WSRespTypeEnum {
 	UNBLOCK("unblock", "你已解除屏蔽好友的消息", null),
 	memberChange("memberChange", "成员变动", WSMemberChange.class),
     OFFLINE("offline", "下线通知", WSOnlineNotify.class),
+	ONLINE_BATCH("onlineBatch", "上下线批量通知", WSOnlineNotifyBatch.class),
 	WSReconnect("WSReconnect", "ws消息重连", null),
 	JoinVideo("JoinVideo", "加入视频会议", null),
 	VideoCallRequest("VideoCallRequest","发起通话请求", null),
@@ -0,0 +1,24 @@
+package com.luohuo.flex.model.entity.ws;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上下线批量通知，同一时间窗口内发给同一个接收者的上下线变动合并成一帧
+ * @author 乾乾
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WSOnlineNotifyBatch {
+	@Schema(description = "窗口内上线的用户")
+	private List<WSOnlineNotify> online = new ArrayList<>();
+
+	@Schema(description = "窗口内下线的用户")
+	private List<WSOnlineNotify> offline = new ArrayList<>();
+}
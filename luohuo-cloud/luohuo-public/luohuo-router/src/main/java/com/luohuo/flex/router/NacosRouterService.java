@@ -12,13 +12,17 @@ import com.luohuo.basic.model.cache.CacheKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -27,9 +31,26 @@ import java.util.stream.Collectors;
 @Component
 public class NacosRouterService {
     private static final Logger log = LoggerFactory.getLogger(NacosRouterService.class);
+	/**
+	 * 单次流水线查询的用户数
+	 */
+	private static final int ROUTE_BATCH_SIZE = 500;
+	/**
+	 * 活跃节点快照有效期
+	 */
+	private static final long ACTIVE_NODES_TTL_MS = 1000L;
+	/**
+	 * 用户设备索引回填的互斥锁，同一时间只有一个节点扫描全局映射
+	 */
+	private static final String BACKFILL_LOCK_KEY = "luohuo:router:user-device-node:backfill";
+	private static final long BACKFILL_LOCK_MINUTES = 10L;
+
 	private final NamingService namingService;
 	RedisTemplate<String, Object> redisTemplate;
 
+	private volatile Set<String> activeNodesSnapshot;
+	private volatile long activeNodesExpireAt;
+
 	@Autowired
 	public NacosRouterService(
 			NacosServiceManager nacosServiceManager,
@@ -40,23 +61,82 @@ public class NacosRouterService {
 		this.redisTemplate = redisTemplate;
 	}
 
-	// 查询用户设备
-	public Set<String> getUserDevices(Long uid) {
-		CacheHashKey deviceNodeMap = RouterCacheKeyBuilder.buildDeviceNodeMap(uid + ":*");
-		// 扫描全局Hash中属于该用户的设备字段 (uid:*)
-		ScanOptions options = ScanOptions.scanOptions().match(uid + ":*").count(100).build();
+	/**
+	 * 启动后在后台把全局设备映射回填到用户设备索引
+	 * <p>
+	 * 索引上线前建立的连接、以及滚动发布期间仍连在旧版本节点上的设备只写了全局映射，
+	 * 每个节点启动时回填一次，最后一个节点升级完成后索引即完整。
+	 * 已存在的索引字段不覆盖，以连接时写入的为准。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void backfillUserDeviceNodes() {
+		Thread thread = new Thread(this::doBackfillUserDeviceNodes, "router-index-backfill");
+		thread.setDaemon(true);
+		thread.start();
+	}
 
-		Set<String> deviceFields = new HashSet<>();
-		try (Cursor<Map.Entry<Object, Object>> cursor =
-					 redisTemplate.opsForHash().scan(deviceNodeMap.getKey(), options)) {
+	private void doBackfillUserDeviceNodes() {
+		String owner = UUID.randomUUID().toString();
+		if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(BACKFILL_LOCK_KEY, owner, BACKFILL_LOCK_MINUTES, TimeUnit.MINUTES))) {
+			log.info("用户设备索引回填正在其他节点执行，跳过");
+			return;
+		}
+		String mappingKey = RouterCacheKeyBuilder.buildDeviceNodeMap("").getKey();
+		long total = 0;
+		ScanOptions options = ScanOptions.scanOptions().count(ROUTE_BATCH_SIZE).build();
+		try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(mappingKey, options)) {
+			List<Map.Entry<Object, Object>> chunk = new ArrayList<>(ROUTE_BATCH_SIZE);
 			while (cursor.hasNext()) {
-				Map.Entry<Object, Object> entry = cursor.next();
-				deviceFields.add((String) entry.getKey());
+				chunk.add(cursor.next());
+				if (chunk.size() >= ROUTE_BATCH_SIZE) {
+					total += writeUserDeviceNodes(chunk);
+					chunk.clear();
+				}
 			}
+			total += writeUserDeviceNodes(chunk);
+			log.info("用户设备索引回填完成, 设备数: {}", total);
+		} catch (Exception e) {
+			log.error("用户设备索引回填失败, 已回填设备数: {}", total, e);
+		} finally {
+			if (owner.equals(redisTemplate.opsForValue().get(BACKFILL_LOCK_KEY))) {
+				redisTemplate.delete(BACKFILL_LOCK_KEY);
+			}
+		}
+	}
+
+	/**
+	 * 一批全局映射（uid:clientId -> nodeId）流水线写入用户设备索引
+	 */
+	private int writeUserDeviceNodes(List<Map.Entry<Object, Object>> chunk) {
+		List<Map.Entry<Object, Object>> valid = chunk.stream()
+				.filter(entry -> entry.getValue() != null && entry.getKey().toString().indexOf(':') > 0)
+				.toList();
+		if (valid.isEmpty()) {
+			return 0;
 		}
+		redisTemplate.executePipelined(new SessionCallback<Object>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public <K, V> Object execute(RedisOperations<K, V> operations) {
+				RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+				valid.forEach(entry -> {
+					String deviceField = entry.getKey().toString();
+					int split = deviceField.indexOf(':');
+					Long uid = Long.valueOf(deviceField.substring(0, split));
+					ops.opsForHash().putIfAbsent(RouterCacheKeyBuilder.buildUserDeviceNodes(uid).getKey(), deviceField.substring(split + 1), entry.getValue());
+				});
+				return null;
+			}
+		});
+		return valid.size();
+	}
 
-		// 提取设备ID
-		return deviceFields.stream().map(field -> field.split(":")[1]).collect(Collectors.toSet());
+	// 查询用户设备
+	public Set<String> getUserDevices(Long uid) {
+		CacheHashKey userDeviceNodes = RouterCacheKeyBuilder.buildUserDeviceNodes(uid);
+		return redisTemplate.opsForHash().keys(userDeviceNodes.getKey()).stream()
+				.map(Object::toString)
+				.collect(Collectors.toSet());
 	}
 
 	/**
@@ -66,17 +146,22 @@ public class NacosRouterService {
 	 * @return 节点ID，如果找不到或节点不活跃则返回null
 	 */
 	public String getDeviceNode(Long uid, String clientId) {
-		// 1. 直接从全局Hash中获取设备对应的节点
-		String deviceField = uid + ":" + clientId;
-		CacheHashKey deviceNodeMap = RouterCacheKeyBuilder.buildDeviceNodeMap(deviceField);
-		String nodeId = (String) redisTemplate.opsForHash().get(deviceNodeMap.getKey(), deviceField);
+		// 1. 直接从用户设备索引中获取设备对应的节点
+		CacheHashKey userDeviceNodes = RouterCacheKeyBuilder.buildUserDeviceNodes(uid, clientId);
+		String nodeId = (String) redisTemplate.opsForHash().get(userDeviceNodes.getKey(), clientId);
+
+		// 2. 索引回填完成前，旧版本节点上的设备只在全局映射中
+		if (nodeId == null) {
+			String deviceField = uid + ":" + clientId;
+			nodeId = (String) redisTemplate.opsForHash().get(RouterCacheKeyBuilder.buildDeviceNodeMap(deviceField).getKey(), deviceField);
+		}
 
-		// 2. 如果节点不存在，直接返回null
+		// 3. 如果节点不存在，直接返回null
 		if (nodeId == null) {
 			return null;
 		}
 
-		// 3. 检查节点是否活跃
+		// 4. 检查节点是否活跃
 		Set<String> activeNodes = getAllActiveNodes();
 		return activeNodes.contains(nodeId) ? nodeId : null;
 	}
@@ -107,7 +192,10 @@ public class NacosRouterService {
 		CacheHashKey deviceNodeMap = RouterCacheKeyBuilder.buildDeviceNodeMap(deviceField);
 		redisTemplate.opsForHash().delete(deviceNodeMap.getKey(), deviceField);
 
-		// 2. 从节点设备集合中删除设备标识
+		// 2. 从用户设备索引中删除
+		redisTemplate.opsForHash().delete(RouterCacheKeyBuilder.buildUserDeviceNodes(uid).getKey(), clientId);
+
+		// 3. 从节点设备集合中删除设备标识
 		CacheKey cacheKey = RouterCacheKeyBuilder.buildNodeDevices(nodeId);
 		redisTemplate.opsForSet().remove(cacheKey.getKey(), deviceField);
 
@@ -116,45 +204,43 @@ public class NacosRouterService {
 
 	/**
 	 * 聚合节点 → 设备 → 用户映射
+	 * 按用户索引分批流水线读取，开销只与推送目标数量相关，与集群设备总量无关
 	 * @param uids 用户id
 	 */
 	public Map<String, Map<String, Long>> findNodeDeviceUser(List<Long> uids) {
 		// 0. 前置校验
 		if (CollUtil.isEmpty(uids)) return Collections.emptyMap();
 
-		// 1. 提取目标UID集合
-		Set<Long> targetUids = new HashSet<>(uids);
+		// 1. 去重目标UID
+		List<Long> targetUids = new ArrayList<>(new LinkedHashSet<>(uids));
 
-		// 2. 获取全局设备-节点映射（改用HSCAN分批加载）
-		CacheHashKey deviceNodeMap = RouterCacheKeyBuilder.buildDeviceNodeMap("");
-		Map<String, Map<String, Long>> result = new ConcurrentHashMap<>();
-
-		// 3. 过滤活跃节点
+		// 2. 过滤活跃节点
 		Set<String> activeNodes = getAllActiveNodes();
+		if (activeNodes.isEmpty()) return Collections.emptyMap();
 
-		// 5. 使用HSCAN游标分批遍历
-		ScanOptions options = ScanOptions.scanOptions().count(500).build();
-		try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(deviceNodeMap.getKey(), options)) {
-			while (cursor.hasNext()) {
-				Map.Entry<Object, Object> entry = cursor.next();
+		Map<String, Map<String, Long>> result = new HashMap<>();
 
-				// 5.1 直接使用字符串类型
-				String field = (String) entry.getKey();
-				String nodeId = (String) entry.getValue();
-				if (!activeNodes.contains(nodeId)) continue;
+		// 3. 每批一次流水线 HGETALL 用户设备索引
+		for (List<Long> batch : CollUtil.split(targetUids, ROUTE_BATCH_SIZE)) {
+			List<Object> batchResult = redisTemplate.executePipelined(new SessionCallback<Object>() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public <K, V> Object execute(RedisOperations<K, V> operations) {
+					RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+					batch.forEach(uid -> ops.opsForHash().entries(RouterCacheKeyBuilder.buildUserDeviceNodes(uid).getKey()));
+					return null;
+				}
+			});
 
-				// 5.2 按uid过滤目标用户
-				String[] parts = field.split(":");
-				if (parts.length != 2) continue;
+			// 4. 构建映射：节点 → 设备 → UID
+			for (int i = 0; i < batch.size() && i < batchResult.size(); i++) {
+				if (!(batchResult.get(i) instanceof Map<?, ?> devices) || devices.isEmpty()) continue;
 
-				Long uid = Long.parseLong(parts[0]);
-				String clientId = parts[1];
-
-				// 5.3 判断是否是推送数据
-				if (!targetUids.contains(uid)) continue;
-
-				// 5.5 构建映射：节点 → 设备 → UID
-				result.computeIfAbsent(nodeId, k -> new ConcurrentHashMap<>()).put(clientId, uid);
+				Long uid = batch.get(i);
+				devices.forEach((clientId, nodeId) -> {
+					if (nodeId == null || !activeNodes.contains(nodeId.toString())) return;
+					result.computeIfAbsent(nodeId.toString(), k -> new HashMap<>()).put(clientId.toString(), uid);
+				});
 			}
 		}
 		return result;
@@ -162,17 +248,28 @@ public class NacosRouterService {
 
 	/**
 	 * 获取所有活跃节点
+	 * 短时间内复用同一份快照，避免每次路由都遍历 Nacos 实例列表
 	 */
 	public Set<String> getAllActiveNodes() {
+		long now = System.currentTimeMillis();
+		Set<String> snapshot = activeNodesSnapshot;
+		if (snapshot != null && now < activeNodesExpireAt) {
+			return snapshot;
+		}
+
 		try {
 			List<Instance> instances = namingService.getAllInstances("ws-cluster", "WS_GROUP");
-			return instances.stream()
+			snapshot = instances.stream()
 					.filter(Instance::isHealthy)
 					.map(instance -> instance.getMetadata().get("nodeId"))
-					.collect(Collectors.toSet());
+					.filter(Objects::nonNull)
+					.collect(Collectors.toUnmodifiableSet());
 		} catch (NacosException e) {
 			throw new BizException("获取节点列表失败", e);
 		}
+		activeNodesSnapshot = snapshot;
+		activeNodesExpireAt = now + ACTIVE_NODES_TTL_MS;
+		return snapshot;
 	}
 
     // 获取节点详情
@@ -18,6 +18,17 @@ public class RouterCacheKeyBuilder {
 		return new NodeDevices().key(nodeId);
 	}
 
+	/**
+	 * 用户设备路由索引: 每个用户一个 hash，field 为设备指纹，value 为节点ID
+	 */
+	public static CacheHashKey buildUserDeviceNodes(Long uid, String clientId) {
+		return new UserDeviceNodes().hashFieldKey(clientId, uid);
+	}
+
+	public static CacheHashKey buildUserDeviceNodes(Long uid) {
+		return new UserDeviceNodes().hashKey(uid);
+	}
+
 	/**
 	 * 设备-节点映射表
 	 */
@@ -82,4 +93,39 @@ public class RouterCacheKeyBuilder {
             return Duration.ofSeconds(-1);
         }
     }
-}
\ No newline at end of file
+
+	/**
+	 * 用户 → 设备 → 节点 索引
+	 */
+	public static class UserDeviceNodes implements CacheKeyBuilder {
+		@Override
+		public String getPrefix() {
+			return "luohuo";
+		}
+
+		@Override
+		public String getTenant() {
+			return null;
+		}
+
+		@Override
+		public String getModular() {
+			return "router";
+		}
+
+		@Override
+		public String getTable() {
+			return "user-device-node";
+		}
+
+		@Override
+		public ValueType getValueType() {
+			return ValueType.string;
+		}
+
+		@Override
+		public Duration getExpire() {
+			return Duration.ofSeconds(-1);
+		}
+	}
+}
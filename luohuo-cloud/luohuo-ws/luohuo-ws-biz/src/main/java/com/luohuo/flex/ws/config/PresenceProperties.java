@@ -0,0 +1,22 @@
+package com.luohuo.flex.ws.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 上下线通知配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.presence")
+@Component
+@Data
+public class PresenceProperties {
+	// 合并窗口（毫秒），窗口内的上下线变动合并后统一推送
+	private long flushInterval = 500;
+	// 单个窗口最多处理的变动用户数，超出部分留到下个窗口
+	private int maxBatchSize = 5000;
+	// 在线人数超过该值的群不再推送上下线及在线人数，由客户端进群时主动拉取；0 表示不限制（默认）
+	private int largeGroupThreshold = 0;
+	// 是否合并为 onlineBatch 帧；默认关闭，按原 online/offline 帧逐条推送，客户端支持后再开启
+	private boolean batchFrame = false;
+}
@@ -0,0 +1,26 @@
+package com.luohuo.flex.ws.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 音视频信令转发配置属性
+ */
+@ConfigurationProperties(prefix = "luohuo.signal")
+@Component
+@Data
+public class SignalProperties {
+	// 是否启用节点直连通道；关闭时跨节点信令全部走 RocketMQ
+	private boolean relayEnabled = true;
+	// 节点直连通道的路径
+	private String relayPath = "/signal";
+	// 节点间共享密钥，用于握手和每一帧的 HMAC 签名；为空时不启用直连通道，对端连接一律拒绝
+	private String relaySecret = "";
+	// 建连失败后重试的最小间隔（毫秒），间隔内跨节点信令走 RocketMQ
+	private long reconnectInterval = 1000;
+	// 单个对端通道最多积压的信令帧数，超出时该帧改走 RocketMQ
+	private int maxPendingFrames = 1024;
+	// 本机缓存的房间成员有效期（毫秒）
+	private long memberCacheTtl = 3000;
+}
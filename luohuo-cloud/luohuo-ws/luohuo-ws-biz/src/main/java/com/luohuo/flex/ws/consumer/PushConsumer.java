@@ -3,6 +3,7 @@ package com.luohuo.flex.ws.consumer;
 import com.luohuo.flex.common.constant.MqConstant;
 import com.luohuo.flex.model.entity.WsBaseResp;
 import com.luohuo.flex.model.entity.dto.NodePushDTO;
+import com.luohuo.flex.ws.websocket.PreEncodedFrame;
 import com.luohuo.flex.ws.websocket.SessionManager;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
@@ -39,13 +40,18 @@ public class PushConsumer implements RocketMQListener<NodePushDTO> {
 		Map<String, Long> deviceUserMap = message.getDeviceUserMap();
 		WsBaseResp<?> msg = message.getWsBaseMsg();
 
+		// 只序列化一次，节点内所有设备共享同一帧
+		PreEncodedFrame frame = PreEncodedFrame.of(msg);
+
 		Flux.fromIterable(deviceUserMap.entrySet())
 				.parallel() // 并行推送
 				.runOn(Schedulers.boundedElastic())
 				.flatMap(entry ->
-						sessionManager.sendToDevice(entry.getValue(), entry.getKey(), msg)
+						sessionManager.sendToDevice(entry.getValue(), entry.getKey(), frame)
 								.subscribeOn(Schedulers.boundedElastic()) // 设备级并行
 				)
+				.then()
+				.doFinally(signal -> frame.release())
 				.subscribe(null, ex -> log.error("推送失败: {}", ex.getMessage()),
 						() -> log.debug("节点推送完成 (设备数: {})", deviceUserMap.size()));
 	}
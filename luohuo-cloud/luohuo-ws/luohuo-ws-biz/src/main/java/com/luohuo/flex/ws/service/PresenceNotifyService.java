@@ -0,0 +1,287 @@
+package com.luohuo.flex.ws.service;
+
+import cn.hutool.core.collection.CollUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.luohuo.basic.cache.repository.CachePlusOps;
+import com.luohuo.basic.utils.TimeUtils;
+import com.luohuo.flex.common.cache.FriendCacheKeyBuilder;
+import com.luohuo.flex.common.cache.PresenceCacheKeyBuilder;
+import com.luohuo.flex.model.entity.WSRespTypeEnum;
+import com.luohuo.flex.model.entity.WsBaseResp;
+import com.luohuo.flex.model.entity.ws.WSOnlineNotify;
+import com.luohuo.flex.model.entity.ws.WSOnlineNotifyBatch;
+import com.luohuo.flex.ws.config.PresenceProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上下线通知合并推送
+ * <p>
+ * 用户首个设备上线/最后一个设备下线时只登记事件，由后台线程按窗口（默认500ms）统一处理：
+ * 1. 同一用户窗口内多次变动只保留最后一次
+ * 2. 反向好友、好友在线数、群在线成员在一个窗口内各只查询一次（管道批量）
+ * 3. 每个接收者只收到一帧合并后的通知，内容相同的接收者共用一次推送
+ * @author 乾乾
+ */
+@Slf4j
+@Service
+public class PresenceNotifyService {
+
+	// 单次管道的命令数
+	private static final int PIPELINE_BATCH_SIZE = 500;
+
+	@Resource
+	private PresenceProperties presenceProperties;
+	@Resource
+	private CachePlusOps cachePlusOps;
+	@Resource
+	private RedisTemplate<String, Object> redisTemplate;
+	@Resource
+	private PushService pushService;
+
+	// uid → 窗口内最新的上下线事件
+	private final ConcurrentHashMap<Long, PresenceEvent> pendingEvents = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService flushExecutor;
+
+	/**
+	 * 登记上下线事件，等待窗口合并后推送
+	 * @param uid 上下线用户
+	 * @param clientId 触发变动的设备
+	 * @param online 上线/下线
+	 * @param roomIds 用户所在的群
+	 */
+	public void publish(Long uid, String clientId, boolean online, List<Long> roomIds) {
+		pendingEvents.put(uid, new PresenceEvent(uid, clientId, online, roomIds, TimeUtils.getTime()));
+	}
+
+	@PostConstruct
+	public void init() {
+		long interval = Math.max(50, presenceProperties.getFlushInterval());
+		flushExecutor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("presence-flush-%d").setDaemon(true).build());
+		flushExecutor.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		flushExecutor.shutdown();
+		try {
+			if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+				flushExecutor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			flushExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		// 推送最后一个窗口
+		while (!pendingEvents.isEmpty()) {
+			flushQuietly();
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			log.error("上下线通知推送失败", e);
+		}
+	}
+
+	/**
+	 * 处理一个窗口内的全部事件
+	 */
+	void flush() {
+		List<PresenceEvent> events = drain(presenceProperties.getMaxBatchSize());
+		if (events.isEmpty()) return;
+
+		// 接收者 → 该接收者在本窗口要收到的通知
+		Map<Long, WSOnlineNotifyBatch> inbox = new HashMap<>();
+		collectFriendNotifies(events, inbox);
+		collectGroupNotifies(events, inbox);
+		dispatch(inbox, events);
+		log.debug("上下线通知窗口处理完成: 事件数={}, 接收者={}", events.size(), inbox.size());
+	}
+
+	private List<PresenceEvent> drain(int limit) {
+		List<PresenceEvent> events = new ArrayList<>();
+		Iterator<Long> it = pendingEvents.keySet().iterator();
+		while (it.hasNext() && events.size() < limit) {
+			PresenceEvent event = pendingEvents.remove(it.next());
+			if (event != null) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * 通知反向好友，并为每个好友计算一次他的好友在线数
+	 */
+	private void collectFriendNotifies(List<PresenceEvent> events, Map<Long, WSOnlineNotifyBatch> inbox) {
+		// 1. 批量获取反向好友（需要知道该用户在线状态的uid）
+		List<String> reverseKeys = events.stream().map(e -> FriendCacheKeyBuilder.reverseFriendsKey(e.uid()).getKey()).toList();
+		List<Set<Object>> reverseFriends = pipelinedMembers(reverseKeys);
+
+		Map<Long, List<PresenceEvent>> recipientEvents = new HashMap<>();
+		for (int i = 0; i < events.size(); i++) {
+			for (Object friend : reverseFriends.get(i)) {
+				recipientEvents.computeIfAbsent(Long.parseLong(friend.toString()), k -> new ArrayList<>()).add(events.get(i));
+			}
+		}
+		if (recipientEvents.isEmpty()) return;
+
+		// 2. 每个接收者的好友列表只取一次
+		List<Long> recipients = new ArrayList<>(recipientEvents.keySet());
+		List<Set<Object>> recipientFriends = pipelinedMembers(recipients.stream().map(uid -> FriendCacheKeyBuilder.userFriendsKey(uid).getKey()).toList());
+
+		// 3. 所有好友去重后一次性管道查询在线状态
+		Set<Long> allFriends = new HashSet<>();
+		recipientFriends.forEach(friends -> friends.forEach(obj -> allFriends.add(Long.parseLong(obj.toString()))));
+		Set<Long> onlineFriends = filterOnline(new ArrayList<>(allFriends));
+
+		// 4. 生成通知
+		for (int i = 0; i < recipients.size(); i++) {
+			long onlineCount = recipientFriends.get(i).stream().filter(obj -> onlineFriends.contains(Long.parseLong(obj.toString()))).count();
+			WSOnlineNotifyBatch batch = inbox.computeIfAbsent(recipients.get(i), k -> new WSOnlineNotifyBatch());
+			for (PresenceEvent event : recipientEvents.get(recipients.get(i))) {
+				event.target(batch).add(new WSOnlineNotify(event.uid(), event.clientId(), event.lastOptTime(), onlineCount, 2));
+			}
+		}
+	}
+
+	/**
+	 * 通知群内在线成员，每个群在一个窗口内只查询一次
+	 */
+	private void collectGroupNotifies(List<PresenceEvent> events, Map<Long, WSOnlineNotifyBatch> inbox) {
+		Map<Long, List<PresenceEvent>> roomEvents = new LinkedHashMap<>();
+		events.forEach(event -> event.roomIds().forEach(roomId -> roomEvents.computeIfAbsent(roomId, k -> new ArrayList<>()).add(event)));
+		if (roomEvents.isEmpty()) return;
+
+		// 1. 批量统计群在线人数
+		List<Long> roomIds = new ArrayList<>(roomEvents.keySet());
+		List<Long> counts = new ArrayList<>(roomIds.size());
+		for (List<Long> batch : CollUtil.split(roomIds, PIPELINE_BATCH_SIZE)) {
+			counts.addAll(cachePlusOps.sMultiCard(batch.stream().map(id -> PresenceCacheKeyBuilder.onlineGroupMembersKey(id).getKey()).toList()));
+		}
+
+		// 2. 配置了大群阈值时，大群不推送上下线与在线人数
+		List<Long> notifyRooms = new ArrayList<>();
+		Map<Long, Long> onlineNums = new HashMap<>();
+		int largeGroupThreshold = presenceProperties.getLargeGroupThreshold();
+		for (int i = 0; i < roomIds.size(); i++) {
+			Long count = counts.get(i);
+			if (count == null || count <= 0) continue;
+			if (largeGroupThreshold > 0 && count > largeGroupThreshold) {
+				log.debug("大群跳过上下线通知: roomId={}, 在线人数={}", roomIds.get(i), count);
+				continue;
+			}
+			notifyRooms.add(roomIds.get(i));
+			onlineNums.put(roomIds.get(i), count);
+		}
+		if (notifyRooms.isEmpty()) return;
+
+		// 3. 批量获取在线成员
+		List<Set<Object>> members = pipelinedMembers(notifyRooms.stream().map(id -> PresenceCacheKeyBuilder.onlineGroupMembersKey(id).getKey()).toList());
+		for (int i = 0; i < notifyRooms.size(); i++) {
+			Long roomId = notifyRooms.get(i);
+			List<WSOnlineNotify> online = new ArrayList<>();
+			List<WSOnlineNotify> offline = new ArrayList<>();
+			for (PresenceEvent event : roomEvents.get(roomId)) {
+				(event.online() ? online : offline).add(new WSOnlineNotify(roomId, event.uid(), event.clientId(), event.lastOptTime(), onlineNums.get(roomId), 1));
+			}
+			for (Object member : members.get(i)) {
+				WSOnlineNotifyBatch batch = inbox.computeIfAbsent(Long.parseLong(member.toString()), k -> new WSOnlineNotifyBatch());
+				batch.getOnline().addAll(online);
+				batch.getOffline().addAll(offline);
+			}
+		}
+	}
+
+	/**
+	 * 内容相同的接收者合并为一次推送
+	 */
+	private void dispatch(Map<Long, WSOnlineNotifyBatch> inbox, List<PresenceEvent> events) {
+		Map<WSOnlineNotifyBatch, List<Long>> payloads = new HashMap<>();
+		inbox.forEach((uid, batch) -> payloads.computeIfAbsent(batch, k -> new ArrayList<>()).add(uid));
+
+		// 只有一个变动用户时保留操作人，便于链路追踪
+		Long cuid = events.size() == 1 ? events.get(0).uid() : null;
+		payloads.forEach((batch, uids) -> {
+			if (presenceProperties.isBatchFrame() && batch.getOnline().size() + batch.getOffline().size() > 1) {
+				pushService.sendPushMsg(buildResp(WSRespTypeEnum.ONLINE_BATCH, batch), uids, cuid);
+				return;
+			}
+			batch.getOnline().forEach(notify -> pushService.sendPushMsg(buildResp(WSRespTypeEnum.ONLINE, notify), uids, cuid));
+			batch.getOffline().forEach(notify -> pushService.sendPushMsg(buildResp(WSRespTypeEnum.OFFLINE, notify), uids, cuid));
+		});
+	}
+
+	private WsBaseResp<Object> buildResp(WSRespTypeEnum type, Object data) {
+		WsBaseResp<Object> resp = new WsBaseResp<>();
+		resp.setType(type.getType());
+		resp.setData(data);
+		return resp;
+	}
+
+	/**
+	 * 管道查询在线用户
+	 */
+	private Set<Long> filterOnline(List<Long> uids) {
+		String onlineKey = PresenceCacheKeyBuilder.globalOnlineUsersKey().getKey();
+		Set<Long> online = new HashSet<>();
+		for (List<Long> batch : CollUtil.split(uids, PIPELINE_BATCH_SIZE)) {
+			List<Object> scores = cachePlusOps.getZSetScores(onlineKey, batch);
+			for (int i = 0; i < batch.size() && i < scores.size(); i++) {
+				if (scores.get(i) != null) {
+					online.add(batch.get(i));
+				}
+			}
+		}
+		return online;
+	}
+
+	/**
+	 * 管道批量 SMEMBERS，结果顺序与 keys 一致
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Set<Object>> pipelinedMembers(List<String> keys) {
+		List<Set<Object>> result = new ArrayList<>(keys.size());
+		for (List<String> batch : CollUtil.split(keys, PIPELINE_BATCH_SIZE)) {
+			List<Object> members = redisTemplate.executePipelined(new SessionCallback<Object>() {
+				@Override
+				public <K, V> Object execute(RedisOperations<K, V> operations) {
+					RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+					batch.forEach(key -> ops.opsForSet().members(key));
+					return null;
+				}
+			});
+			for (int i = 0; i < batch.size(); i++) {
+				Object value = i < members.size() ? members.get(i) : null;
+				result.add(value instanceof Set<?> set ? (Set<Object>) set : Collections.emptySet());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 上下线事件
+	 */
+	private record PresenceEvent(Long uid, String clientId, boolean online, List<Long> roomIds, Long lastOptTime) {
+		List<WSOnlineNotify> target(WSOnlineNotifyBatch batch) {
+			return online ? batch.getOnline() : batch.getOffline();
+		}
+	}
+}
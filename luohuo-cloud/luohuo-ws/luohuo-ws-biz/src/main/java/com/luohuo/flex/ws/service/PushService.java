@@ -6,6 +6,7 @@ import com.luohuo.flex.model.entity.WsBaseResp;
 import com.luohuo.flex.model.entity.dto.NodePushDTO;
 import com.luohuo.flex.router.NacosRouterService;
 import com.luohuo.flex.ws.config.ThreadPoolProperties;
+import com.luohuo.flex.ws.websocket.PreEncodedFrame;
 import com.luohuo.flex.ws.websocket.SessionManager;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
@@ -117,16 +118,21 @@ public class PushService {
 		// 1. 按设备数动态调整并行度, 最大32 线程并发
 		int parallelism = Math.min(deviceUserMap.size(), 32);
 
+		// 2. 只序列化一次，所有设备共享同一帧
+		PreEncodedFrame frame = PreEncodedFrame.of(msg);
+
 		Flux.fromIterable(deviceUserMap.entrySet())
 				.parallel(parallelism)
 				.runOn(localPushScheduler)
 				.flatMap(entry ->
-						// 2. 增加超时中断机制
-						sessionManager.sendToDevice(entry.getValue(), entry.getKey(), msg)
+						// 3. 增加超时中断机制
+						sessionManager.sendToDevice(entry.getValue(), entry.getKey(), frame)
 								.timeout(Duration.ofSeconds(5))
 								.onErrorResume(e -> {
 									log.error("设备推送超时: {}", entry.getKey());return Mono.empty();})
-				).subscribe(null, e -> log.error("本地批量推送失败", e),
+				).then()
+				.doFinally(signal -> frame.release())
+				.subscribe(null, e -> log.error("本地批量推送失败", e),
 						() -> log.debug("本地推送完成: {}设备", deviceUserMap.size()));
 	}
 
@@ -137,7 +143,7 @@ public class PushService {
 	 * @param msg 消息内容
 	 * @param cuid 操作人
 	 */
-	private void sendToNodeViaMQ(String nodeId, WsBaseResp<?> msg, Map<String, Long> deviceUserMap, Long cuid) {
+	public void sendToNodeViaMQ(String nodeId, WsBaseResp<?> msg, Map<String, Long> deviceUserMap, Long cuid) {
 		try {
 			// 生成消息唯一标识：使用时间戳 + 节点ID哈希 + 消息类型 + 操作人ID 组合
 			// 这样可以确保在分布式环境下消息的唯一性，同时支持消息去重和追踪
@@ -0,0 +1,387 @@
+package com.luohuo.flex.ws.service;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.luohuo.flex.model.entity.WsBaseResp;
+import com.luohuo.flex.router.NacosRouterService;
+import com.luohuo.flex.ws.config.SignalProperties;
+import com.luohuo.flex.ws.websocket.PreEncodedFrame;
+import com.luohuo.flex.ws.websocket.SessionManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 音视频信令转发通道
+ * <p>
+ * 信令（offer/answer/candidate）在通话建立时密集出现，走通用推送要经过 RocketMQ，每一跳都会放大建连耗时。
+ * 这里在 ws 节点之间维持一条长连接：本机设备直接写会话，其他节点的设备按节点打包成一帧经长连接发给对端，
+ * 对端解包后原样写给设备，消息体只序列化一次。
+ * 通道未建立、正在重连或积压过多时，该帧退回 {@link PushService#sendToNodeViaMQ} 走 RocketMQ。
+ * <p>
+ * 通道与客户端共用 ws 端口，必须配置 {@code luohuo.signal.relay-secret} 才会启用，未配置时拒绝所有对端连接。
+ * 握手携带发起节点id、目标节点id、时间戳、本次连接随机生成的通道id及它们的 HMAC，密钥本身不在网络上传输。
+ * 通道id在有效期内只能握手一次，截获的握手请求无法重放。
+ * 每一帧携带通道id和连接内递增的序号，二者与帧体一起签名，接收端只接受本通道且序号大于上一帧的帧，重放或重复的帧直接丢弃。
+ * 连接断开时还积压在发送队列里的帧退回 RocketMQ，不会随连接丢失。
+ * <p>
+ * 节点间帧格式：{@code HMAC\n通道id:序号\n{"clientId":uid,...}\n消息json}，设备列表是 JSON 对象，JSON 字符串中不会出现换行
+ *
+ * @author 乾乾
+ */
+@Slf4j
+@Service
+public class SignalRelayService {
+
+	private static final String NODE_HEADER = "X-Signal-Node";
+	private static final String TIMESTAMP_HEADER = "X-Signal-Timestamp";
+	private static final String SIGNATURE_HEADER = "X-Signal-Signature";
+	private static final String CHANNEL_HEADER = "X-Signal-Channel";
+	// 握手时间戳允许的偏差（毫秒）
+	private static final long HANDSHAKE_SKEW = TimeUnit.MINUTES.toMillis(1);
+	private static final String METRIC_PREFIX = "ws.signal.";
+
+	@Resource
+	private SignalProperties properties;
+	@Resource
+	private NacosRouterService routerService;
+	@Resource
+	private PushService pushService;
+	@Resource
+	private MeterRegistry meterRegistry;
+	@Resource@Lazy
+	private SessionManager sessionManager;
+
+	@Value("${luohuo.node-id}")
+	private String nodeId;
+
+	private final ReactorNettyWebSocketClient client = new ReactorNettyWebSocketClient();
+	// nodeId -> 到对端节点的通道
+	private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+	// 已接受握手的通道id -> 过期时间，过期后握手时间戳本身已超出允许偏差
+	private final Map<String, Long> acceptedChannels = new ConcurrentHashMap<>();
+
+	private Timer forwardTimer;
+	private Counter fallbackCounter;
+	private Counter rejectedCounter;
+
+	@PostConstruct
+	public void init() {
+		forwardTimer = Timer.builder(METRIC_PREFIX + "forward")
+				.description("Time to route and hand off one signal")
+				.publishPercentiles(0.5, 0.99)
+				.register(meterRegistry);
+		fallbackCounter = Counter.builder(METRIC_PREFIX + "fallback")
+				.description("Signal frames sent through RocketMQ instead of the node relay")
+				.register(meterRegistry);
+		rejectedCounter = Counter.builder(METRIC_PREFIX + "rejected")
+				.description("Relay frames dropped for a bad signature, foreign channel or stale sequence")
+				.register(meterRegistry);
+		if (properties.isRelayEnabled() && !isSecretConfigured()) {
+			log.warn("未配置 luohuo.signal.relay-secret，信令直连通道不启用，跨节点信令走 RocketMQ");
+		}
+	}
+
+	/**
+	 * 转发信令
+	 * @param msg 信令消息
+	 * @param uidList 接收人
+	 * @param cuid 发送人
+	 */
+	public void forward(WsBaseResp<?> msg, List<Long> uidList, Long cuid) {
+		long start = System.nanoTime();
+		Map<String, Map<String, Long>> nodeDeviceUser = routerService.findNodeDeviceUser(uidList);
+		if (nodeDeviceUser.isEmpty()) {
+			return;
+		}
+
+		String json = JSONUtil.toJsonStr(msg);
+		nodeDeviceUser.forEach((targetNode, deviceUserMap) -> {
+			if (nodeId.equals(targetNode)) {
+				deliver(deviceUserMap, json);
+			} else if (!relay(new Outbound(targetNode, msg, deviceUserMap, cuid, json))) {
+				fallback(targetNode, msg, deviceUserMap, cuid);
+			}
+		});
+		forwardTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	private void fallback(String targetNode, WsBaseResp<?> msg, Map<String, Long> deviceUserMap, Long cuid) {
+		fallbackCounter.increment();
+		pushService.sendToNodeViaMQ(targetNode, msg, deviceUserMap, cuid);
+	}
+
+	/**
+	 * 对端节点连入的信令通道
+	 */
+	public Mono<Void> handleRelay(WebSocketSession session) {
+		HttpHeaders headers = session.getHandshakeInfo().getHeaders();
+		String peerNode = headers.getFirst(NODE_HEADER);
+		String channel = headers.getFirst(CHANNEL_HEADER);
+		if (!isTrustedPeer(peerNode, headers.getFirst(TIMESTAMP_HEADER), channel, headers.getFirst(SIGNATURE_HEADER))) {
+			log.warn("拒绝信令通道连接: node={}, remote={}", peerNode, session.getHandshakeInfo().getRemoteAddress());
+			return session.close(CloseStatus.POLICY_VIOLATION);
+		}
+
+		log.info("信令通道已接入: node={}, channel={}", peerNode, channel);
+		// 同一连接的帧按顺序到达，这里只在接收线程上读写
+		AtomicLong lastSeq = new AtomicLong();
+		return session.receive()
+				.doOnNext(message -> dispatch(peerNode, channel, lastSeq, message.getPayloadAsText()))
+				.doFinally(signal -> log.info("信令通道已断开: node={}", peerNode))
+				.then();
+	}
+
+	/**
+	 * 校验并解包对端发来的一帧，推送到本机设备
+	 */
+	private void dispatch(String peerNode, String channel, AtomicLong lastSeq, String frame) {
+		int signatureEnd = frame.indexOf('\n');
+		int headerEnd = signatureEnd < 0 ? -1 : frame.indexOf('\n', signatureEnd + 1);
+		int devicesEnd = headerEnd < 0 ? -1 : frame.indexOf('\n', headerEnd + 1);
+		if (devicesEnd < 0) {
+			log.warn("丢弃格式错误的信令帧: node={}", peerNode);
+			rejectedCounter.increment();
+			return;
+		}
+		String body = frame.substring(signatureEnd + 1);
+		if (!verify(frame.substring(0, signatureEnd), body)) {
+			log.warn("丢弃签名错误的信令帧: node={}", peerNode);
+			rejectedCounter.increment();
+			return;
+		}
+		String header = frame.substring(signatureEnd + 1, headerEnd);
+		int separator = header.lastIndexOf(':');
+		String seq = separator < 0 ? null : header.substring(separator + 1);
+		if (separator < 0 || !channel.equals(header.substring(0, separator)) || !StrUtil.isNumeric(seq)
+				|| Long.parseLong(seq) <= lastSeq.get()) {
+			log.warn("丢弃重放或过期的信令帧: node={}, header={}", peerNode, header);
+			rejectedCounter.increment();
+			return;
+		}
+		lastSeq.set(Long.parseLong(seq));
+		JSONObject devices = JSONUtil.parseObj(frame.substring(headerEnd + 1, devicesEnd));
+		Map<String, Long> deviceUserMap = new HashMap<>(devices.size());
+		devices.forEach((clientId, uid) -> deviceUserMap.put(clientId, Long.parseLong(uid.toString())));
+		deliver(deviceUserMap, frame.substring(devicesEnd + 1));
+	}
+
+	private void deliver(Map<String, Long> deviceUserMap, String json) {
+		PreEncodedFrame frame = PreEncodedFrame.ofJson(json);
+		Flux.fromIterable(deviceUserMap.entrySet())
+				.flatMap(entry -> sessionManager.sendToDevice(entry.getValue(), entry.getKey(), frame))
+				.then()
+				.doFinally(signal -> frame.release())
+				.subscribe(null, e -> log.error("信令推送失败", e));
+	}
+
+	private boolean relay(Outbound outbound) {
+		if (!properties.isRelayEnabled() || !isSecretConfigured()) {
+			return false;
+		}
+		return peers.computeIfAbsent(outbound.targetNode(), Peer::new).send(outbound);
+	}
+
+	/**
+	 * 未配置密钥时一律拒绝；对端必须是在线节点，握手时间戳在允许偏差内、签名正确，且通道id没有握手过
+	 */
+	private boolean isTrustedPeer(String peerNode, String timestamp, String channel, String signature) {
+		if (!isSecretConfigured() || StrUtil.isEmpty(peerNode) || nodeId.equals(peerNode)
+				|| !StrUtil.isNumeric(timestamp) || StrUtil.isEmpty(channel) || StrUtil.isEmpty(signature)) {
+			return false;
+		}
+		long handshakeAt = Long.parseLong(timestamp);
+		if (Math.abs(System.currentTimeMillis() - handshakeAt) > HANDSHAKE_SKEW) {
+			return false;
+		}
+		if (!verify(signature, handshakeContent(peerNode, nodeId, timestamp, channel))) {
+			return false;
+		}
+		if (!routerService.getAllActiveNodes().contains(peerNode)) {
+			return false;
+		}
+		return acceptedChannels.putIfAbsent(channel, handshakeAt + HANDSHAKE_SKEW) == null;
+	}
+
+	/**
+	 * 握手签名内容，包含目标节点，同一个握手请求不能转投到其他节点
+	 */
+	private static String handshakeContent(String fromNode, String toNode, String timestamp, String channel) {
+		return fromNode + ':' + toNode + ':' + timestamp + ':' + channel;
+	}
+
+	private boolean isSecretConfigured() {
+		return StrUtil.isNotBlank(properties.getRelaySecret());
+	}
+
+	private String sign(String content) {
+		return SecureUtil.hmacSha256(properties.getRelaySecret()).digestHex(content);
+	}
+
+	private boolean verify(String signature, String content) {
+		return MessageDigest.isEqual(sign(content).getBytes(StandardCharsets.US_ASCII), signature.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * 回收已下线节点的通道
+	 */
+	@Scheduled(fixedDelay = 60000)
+	public void cleanInactivePeers() {
+		long now = System.currentTimeMillis();
+		acceptedChannels.values().removeIf(expireAt -> expireAt < now);
+
+		Set<String> activeNodes = routerService.getAllActiveNodes();
+		peers.entrySet().removeIf(entry -> {
+			if (activeNodes.contains(entry.getKey())) {
+				return false;
+			}
+			entry.getValue().close();
+			return true;
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		peers.values().forEach(Peer::close);
+		peers.clear();
+	}
+
+	/**
+	 * 待发往对端节点的一帧，连接断开时凭其中的消息退回 RocketMQ
+	 */
+	private record Outbound(String targetNode, WsBaseResp<?> msg, Map<String, Long> deviceUserMap, Long cuid, String json) {
+	}
+
+	/**
+	 * 到一个对端节点的出站通道，断开后在下一次发送时按间隔重连
+	 */
+	private final class Peer {
+		private final String targetNode;
+		private volatile Sinks.Many<Outbound> outbound;
+		private volatile Disposable connection;
+		private boolean connecting;
+		private long lastAttempt;
+		// 当前连接已分配的最大序号，随连接重建归零，只在发送线程上递增
+		private long seq;
+
+		private Peer(String targetNode) {
+			this.targetNode = targetNode;
+		}
+
+		boolean send(Outbound frame) {
+			Sinks.Many<Outbound> sink = outbound;
+			if (sink == null) {
+				connect();
+				return false;
+			}
+			synchronized (this) {
+				return sink.tryEmitNext(frame).isSuccess();
+			}
+		}
+
+		/**
+		 * 在发送线程上按出队顺序编号并签名，序号与帧在连接上的顺序一致
+		 */
+		private WebSocketMessage encode(WebSocketSession session, String channel, Outbound frame) {
+			String body = channel + ':' + (++seq) + '\n' + JSONUtil.toJsonStr(frame.deviceUserMap()) + '\n' + frame.json();
+			return session.textMessage(sign(body) + '\n' + body);
+		}
+
+		private void connect() {
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+				if (connecting || now - lastAttempt < properties.getReconnectInterval()) {
+					return;
+				}
+				connecting = true;
+				lastAttempt = now;
+			}
+
+			connection = Mono.fromCallable(() -> routerService.getNodeDetail(targetNode))
+					.flatMap(this::open)
+					.subscribeOn(Schedulers.boundedElastic())
+					.doFinally(signal -> {
+						synchronized (this) {
+							outbound = null;
+							connecting = false;
+						}
+					})
+					.subscribe(null, e -> log.warn("信令通道连接失败: node={}, {}", targetNode, e.getMessage()));
+		}
+
+		private Mono<Void> open(Instance instance) {
+			URI uri = URI.create("ws://" + instance.getIp() + ":" + instance.getPort() + properties.getRelayPath());
+			String timestamp = String.valueOf(System.currentTimeMillis());
+			String channelId = IdUtil.fastSimpleUUID();
+			HttpHeaders headers = new HttpHeaders();
+			headers.set(NODE_HEADER, nodeId);
+			headers.set(TIMESTAMP_HEADER, timestamp);
+			headers.set(CHANNEL_HEADER, channelId);
+			headers.set(SIGNATURE_HEADER, sign(handshakeContent(nodeId, targetNode, timestamp, channelId)));
+			return client.execute(uri, headers, session -> {
+				Sinks.Many<Outbound> sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<Outbound>get(properties.getMaxPendingFrames()).get());
+				synchronized (this) {
+					outbound = sink;
+					connecting = false;
+					seq = 0;
+				}
+				log.info("信令通道已建立: node={}, uri={}", targetNode, uri);
+				// 任意一端结束即关闭通道，下一次发送时重连；连接结束时队列里尚未发出的帧被丢弃，改走 RocketMQ
+				return Mono.firstWithSignal(
+						session.send(sink.asFlux()
+								.map(frame -> encode(session, channelId, frame))
+								.doOnDiscard(Outbound.class, this::requeue)),
+						session.receive().then());
+			});
+		}
+
+		private void requeue(Outbound frame) {
+			Schedulers.boundedElastic().schedule(() -> fallback(frame.targetNode(), frame.msg(), frame.deviceUserMap(), frame.cuid()));
+		}
+
+		void close() {
+			Sinks.Many<String> sink = outbound;
+			if (sink != null) {
+				sink.tryEmitComplete();
+			}
+			Disposable current = connection;
+			if (current != null) {
+				current.dispose();
+			}
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package com.luohuo.flex.ws.service;
 
 import cn.hutool.extra.spring.SpringUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.luohuo.basic.cache.repository.CachePlusOps;
 import com.luohuo.basic.exception.BizException;
 import com.luohuo.flex.common.OnlineService;
@@ -11,13 +13,16 @@ import com.luohuo.flex.im.domain.entity.Room;
 import com.luohuo.flex.im.core.chat.service.cache.GroupMemberCache;
 import com.luohuo.flex.ws.cache.UserRoomsCacheKeyBuilder;
 import com.luohuo.flex.ws.cache.VideoRoomsCacheKeyBuilder;
+import com.luohuo.flex.ws.config.SignalProperties;
 import com.luohuo.flex.ws.vo.MediaControlVO;
 import com.luohuo.flex.ws.vo.UserJoinRoomVO;
 import com.luohuo.flex.ws.vo.VideoSignalVO;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -35,7 +40,7 @@ import java.util.stream.Collectors;
  * 5. 清理房间数据
  *
  * 关键特性：
- * - 所有房间操作都通过分布式锁保证原子性
+ * - 房间成员变更通过分布式锁保证原子性，信令转发只读不加锁
  * - 支持点对点和群组视频通话
  * - 集成消息队列进行通知推送
  */
@@ -48,12 +53,25 @@ public class VideoChatService {
 	private final PushService pushService;
 	private final RoomMetadataService roomMetadataService;
 	private final GroupMemberCache groupMemberCache;
+	private final SignalRelayService signalRelayService;
+	private final SignalProperties signalProperties;
+
+	// roomId -> 群成员，信令转发时使用，成员列表与进出视频房间无关，按有效期过期
+	private Cache<Long, List<Long>> signalMemberCache;
 
 	/**
 	 * 私聊房间最大人数
 	 */
 	private static final int PRIVATE_ROOM_MAX_MEMBERS = 2;
 
+	@PostConstruct
+	public void init() {
+		signalMemberCache = Caffeine.newBuilder()
+				.expireAfterWrite(Duration.ofMillis(signalProperties.getMemberCacheTtl()))
+				.maximumSize(10000)
+				.build();
+	}
+
 	public Room getRoomMetadata(Long roomId) {
 		List<Room> rooms = cachePlusOps.mGet(Collections.singletonList("luohuo:roomInfo:roomId_" + roomId), Room.class);
 		return rooms.isEmpty() ? null : rooms.get(0);
@@ -154,7 +172,6 @@ public class VideoChatService {
 	}
 
 	/**
-	 * waitTime = 100 信令转发需要更低延迟
 	 * 转发视频信令给房间内其他用户：注意! 这里必须转发给所有在线的人员，包含已经加入视频的人员
 	 * 在线成员未加入会议的显示：一键加入，正在进行通话等按钮
 	 * 在线且加入会议的显示：信令此次转发内容
@@ -162,12 +179,12 @@ public class VideoChatService {
 	 * @param roomId 房间ID
 	 * @param signal 视频信令内容
 	 * @param signalType VideoSignal=视频 AudioSignal=语音
+	 * 信令只读取房间成员，不再加分布式锁；成员取本机缓存，经节点直连通道转发
 	 */
-	@RedissonLock(key = "#roomId", prefixKey = "lock:room:signal", waitTime = 100, unit = TimeUnit.MILLISECONDS)
 	public void forwardSignal(Long senderUid, Long roomId, String signal, String signalType) {
 		// 1. 获取房间内其他成员
 		try {
-			List<Long> uidList = getUserList(roomId);
+			List<Long> uidList = new ArrayList<>(signalMemberCache.get(roomId, this::getUserList));
 			uidList.remove(senderUid);
 
 			if (uidList.isEmpty()) return;
@@ -178,9 +195,9 @@ public class VideoChatService {
 			resp.setData(new VideoSignalVO(senderUid, roomId, signalType, signal));
 
 			// 3. 批量推送
-			pushService.sendPushMsg(resp, uidList, senderUid);
+			signalRelayService.forward(resp, uidList, senderUid);
 		} catch (Exception e) {
-			// 在锁外刷新，避免锁竞争
+			log.error("信令转发失败: uid={}, roomId={}", senderUid, roomId, e);
 			SpringUtil.getBean(RoomTimeoutService.class).refreshRoomActivity(roomId);
 		}
 	}
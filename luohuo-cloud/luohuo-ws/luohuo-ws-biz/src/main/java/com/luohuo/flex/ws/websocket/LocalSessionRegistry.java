@@ -0,0 +1,328 @@
+package com.luohuo.flex.ws.websocket;
+
+import io.netty.util.collection.LongObjectHashMap;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 本机会话注册表
+ * <p>
+ * uid 按分片存放在 long 主键的原生 map 中，每个分片一把锁，写操作只锁所在分片；
+ * 用户的设备、设备的会话都是写时复制的数组，读取时拿到数组引用即可在锁外遍历，查询不产生额外对象。
+ * 会话数、设备数、用户数在增删时同步维护，统计时不需要遍历全部会话。
+ */
+public final class LocalSessionRegistry {
+
+	private static final WebSocketSession[] EMPTY_SESSIONS = new WebSocketSession[0];
+
+	private final Shard[] shards;
+	private final int shardMask;
+	// sessionId -> 会话归属, 通过会话反向查找用户与设备指纹
+	private final ConcurrentHashMap<String, SessionRef> sessionIndex = new ConcurrentHashMap<>();
+
+	private final AtomicInteger sessionCount = new AtomicInteger();
+	private final AtomicInteger deviceCount = new AtomicInteger();
+	private final AtomicInteger userCount = new AtomicInteger();
+
+	/**
+	 * @param shardCount 分片数，向上取整为 2 的幂
+	 */
+	public LocalSessionRegistry(int shardCount) {
+		int size = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+		shards = new Shard[size];
+		for (int i = 0; i < size; i++) {
+			shards[i] = new Shard();
+		}
+		shardMask = size - 1;
+	}
+
+	/**
+	 * 注册会话
+	 * @return 注册后该设备上的会话数，1 表示设备首次连接
+	 */
+	public int register(long uid, String clientId, WebSocketSession session) {
+		Shard shard = shard(uid);
+		int deviceSessions;
+		boolean added;
+		synchronized (shard) {
+			Device[] devices = shard.users.get(uid);
+			if (devices == null) {
+				shard.users.put(uid, new Device[]{new Device(clientId, session)});
+				userCount.incrementAndGet();
+				deviceCount.incrementAndGet();
+				deviceSessions = 1;
+				added = true;
+			} else {
+				Device device = find(devices, clientId);
+				if (device == null) {
+					Device[] expanded = Arrays.copyOf(devices, devices.length + 1);
+					expanded[devices.length] = new Device(clientId, session);
+					shard.users.put(uid, expanded);
+					deviceCount.incrementAndGet();
+					deviceSessions = 1;
+					added = true;
+				} else {
+					added = device.add(session);
+					deviceSessions = device.sessions.length;
+				}
+			}
+			if (added) {
+				sessionIndex.put(session.getId(), new SessionRef(uid, clientId, session));
+			}
+		}
+		if (added) {
+			sessionCount.incrementAndGet();
+		}
+		return deviceSessions;
+	}
+
+	/**
+	 * 注销会话
+	 * @return 会话归属及设备上剩余的会话数，会话不存在时返回 null
+	 */
+	public Removal unregister(String sessionId) {
+		SessionRef ref = sessionIndex.get(sessionId);
+		if (ref == null) {
+			return null;
+		}
+		Shard shard = shard(ref.uid());
+		int remaining;
+		synchronized (shard) {
+			if (!sessionIndex.remove(sessionId, ref)) {
+				return null;
+			}
+			Device[] devices = shard.users.get(ref.uid());
+			Device device = devices == null ? null : find(devices, ref.clientId());
+			if (device == null) {
+				remaining = 0;
+			} else {
+				device.remove(sessionId);
+				remaining = device.sessions.length;
+				if (remaining == 0) {
+					removeDevice(shard, ref.uid(), devices, device);
+				}
+			}
+		}
+		sessionCount.decrementAndGet();
+		return new Removal(ref.uid(), ref.clientId(), remaining);
+	}
+
+	/**
+	 * 设备上的会话，返回内部数组，调用方不可修改
+	 */
+	public WebSocketSession[] getDeviceSessions(long uid, String clientId) {
+		Device[] devices = getDevices(uid);
+		if (devices == null) {
+			return EMPTY_SESSIONS;
+		}
+		Device device = find(devices, clientId);
+		return device == null ? EMPTY_SESSIONS : device.sessions;
+	}
+
+	/**
+	 * 遍历用户所有设备上的会话
+	 */
+	public void forEachUserSession(long uid, Consumer<WebSocketSession> action) {
+		Device[] devices = getDevices(uid);
+		if (devices == null) {
+			return;
+		}
+		for (Device device : devices) {
+			for (WebSocketSession session : device.sessions) {
+				action.accept(session);
+			}
+		}
+	}
+
+	public int getUserSessionCount(long uid) {
+		Device[] devices = getDevices(uid);
+		if (devices == null) {
+			return 0;
+		}
+		int count = 0;
+		for (Device device : devices) {
+			count += device.sessions.length;
+		}
+		return count;
+	}
+
+	public SessionRef getSession(String sessionId) {
+		return sessionIndex.get(sessionId);
+	}
+
+	public int getSessionCount() {
+		return sessionCount.get();
+	}
+
+	public int getDeviceCount() {
+		return deviceCount.get();
+	}
+
+	public int getUserCount() {
+		return userCount.get();
+	}
+
+	/**
+	 * 取部分设备指纹，用于节点元数据展示
+	 * @param limit 最多返回的数量
+	 */
+	public List<String> getClientIds(int limit) {
+		List<String> clientIds = new ArrayList<>(Math.min(limit, deviceCount.get()));
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				for (Device[] devices : shard.users.values()) {
+					for (Device device : devices) {
+						if (clientIds.size() >= limit) {
+							return clientIds;
+						}
+						clientIds.add(device.clientId);
+					}
+				}
+			}
+		}
+		return clientIds;
+	}
+
+	/**
+	 * 所有用户的设备快照
+	 */
+	public Map<Long, List<String>> snapshotDevices() {
+		Map<Long, List<String>> snapshot = new HashMap<>(userCount.get());
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				for (LongObjectHashMap.PrimitiveEntry<Device[]> entry : shard.users.entries()) {
+					List<String> clientIds = new ArrayList<>(entry.value().length);
+					for (Device device : entry.value()) {
+						clientIds.add(device.clientId);
+					}
+					snapshot.put(entry.key(), clientIds);
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * 所有会话快照
+	 */
+	public List<WebSocketSession> snapshotSessions() {
+		List<WebSocketSession> sessions = new ArrayList<>(sessionCount.get());
+		sessionIndex.values().forEach(ref -> sessions.add(ref.session()));
+		return sessions;
+	}
+
+	public void clear() {
+		for (Shard shard : shards) {
+			synchronized (shard) {
+				shard.users.clear();
+			}
+		}
+		sessionIndex.clear();
+		sessionCount.set(0);
+		deviceCount.set(0);
+		userCount.set(0);
+	}
+
+	private Device[] getDevices(long uid) {
+		Shard shard = shard(uid);
+		synchronized (shard) {
+			return shard.users.get(uid);
+		}
+	}
+
+	private void removeDevice(Shard shard, long uid, Device[] devices, Device device) {
+		deviceCount.decrementAndGet();
+		if (devices.length == 1) {
+			shard.users.remove(uid);
+			userCount.decrementAndGet();
+			return;
+		}
+		Device[] shrunk = new Device[devices.length - 1];
+		int i = 0;
+		for (Device d : devices) {
+			if (d != device) {
+				shrunk[i++] = d;
+			}
+		}
+		shard.users.put(uid, shrunk);
+	}
+
+	private Shard shard(long uid) {
+		// 雪花id低位分布不均, 混合高位后再取模
+		long h = uid ^ (uid >>> 32);
+		return shards[(int) (h ^ (h >>> 16)) & shardMask];
+	}
+
+	private static Device find(Device[] devices, String clientId) {
+		for (Device device : devices) {
+			if (device.clientId.equals(clientId)) {
+				return device;
+			}
+		}
+		return null;
+	}
+
+	private static final class Shard {
+		private final LongObjectHashMap<Device[]> users = new LongObjectHashMap<>();
+	}
+
+	/**
+	 * 设备及其会话，会话数组写时复制，只在分片锁内修改
+	 */
+	private static final class Device {
+		private final String clientId;
+		private volatile WebSocketSession[] sessions;
+
+		private Device(String clientId, WebSocketSession session) {
+			this.clientId = clientId;
+			this.sessions = new WebSocketSession[]{session};
+		}
+
+		private boolean add(WebSocketSession session) {
+			WebSocketSession[] current = sessions;
+			for (WebSocketSession s : current) {
+				if (s.getId().equals(session.getId())) {
+					return false;
+				}
+			}
+			WebSocketSession[] expanded = Arrays.copyOf(current, current.length + 1);
+			expanded[current.length] = session;
+			sessions = expanded;
+			return true;
+		}
+
+		private void remove(String sessionId) {
+			WebSocketSession[] current = sessions;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i].getId().equals(sessionId)) {
+					WebSocketSession[] shrunk = new WebSocketSession[current.length - 1];
+					System.arraycopy(current, 0, shrunk, 0, i);
+					System.arraycopy(current, i + 1, shrunk, i, current.length - i - 1);
+					sessions = shrunk;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 会话归属
+	 */
+	public record SessionRef(long uid, String clientId, WebSocketSession session) {
+	}
+
+	/**
+	 * 注销结果
+	 * @param deviceSessions 设备上剩余的会话数，0 表示设备已无连接
+	 */
+	public record Removal(long uid, String clientId, int deviceSessions) {
+	}
+}
@@ -1,6 +1,8 @@
 package com.luohuo.flex.ws.websocket;
 
 import io.netty.channel.ChannelOption;
+import com.luohuo.flex.ws.config.SignalProperties;
+import com.luohuo.flex.ws.service.SignalRelayService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
 import org.springframework.context.annotation.Bean;
@@ -24,9 +26,13 @@ import java.util.Map;
 public class NettyServerConfig {
 
 	private  ReactiveWebSocketHandler webSocketHandler;
+	private final SignalRelayService signalRelayService;
+	private final SignalProperties signalProperties;
 
-	public NettyServerConfig(ReactiveWebSocketHandler webSocketHandler) {
+	public NettyServerConfig(ReactiveWebSocketHandler webSocketHandler, SignalRelayService signalRelayService, SignalProperties signalProperties) {
 		this.webSocketHandler = webSocketHandler;
+		this.signalRelayService = signalRelayService;
+		this.signalProperties = signalProperties;
 	}
 
 	@Bean
@@ -45,8 +51,10 @@ public class NettyServerConfig {
 
 	@Bean
 	public HandlerMapping webSocketMapping() {
-		// 配置连接地址
-		Map<String, WebSocketHandler> map = Map.of("/ws", messageWebSocketHandler());
+		// 配置连接地址，信令通道只供 ws 节点之间互连
+		Map<String, WebSocketHandler> map = Map.of(
+				"/ws", messageWebSocketHandler(),
+				signalProperties.getRelayPath(), signalRelayService::handleRelay);
 		SimpleUrlHandlerMapping handlerMapping = new SimpleUrlHandlerMapping();
 		handlerMapping.setUrlMap(map);
 		handlerMapping.setOrder(-1); // 最高优先级
@@ -0,0 +1,70 @@
+package com.luohuo.flex.ws.websocket;
+
+import cn.hutool.json.JSONUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 预编码的文本帧
+ * <p>
+ * 同一条消息推送给多个会话时只序列化一次，所有会话共享同一块引用计数的 ByteBuf，
+ * 每次写出只是 retainedDuplicate，写完由 Netty 释放对应的引用。
+ * 持有者在分发结束后调用 {@link #release()} 释放自己的那一份引用。
+ */
+public final class PreEncodedFrame {
+
+	private final ByteBuf content;
+
+	private PreEncodedFrame(ByteBuf content) {
+		this.content = content;
+	}
+
+	/**
+	 * 序列化消息
+	 * @param payload 消息体
+	 */
+	public static PreEncodedFrame of(Object payload) {
+		return ofJson(JSONUtil.toJsonStr(payload));
+	}
+
+	/**
+	 * 使用已序列化的 json，节点间转发时不再重复序列化
+	 * @param json 消息体 json
+	 */
+	public static PreEncodedFrame ofJson(String json) {
+		return new PreEncodedFrame(Unpooled.wrappedBuffer(json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * 为指定会话生成一条共享内容的文本消息
+	 * @param session 目标会话
+	 */
+	public WebSocketMessage toMessage(WebSocketSession session) {
+		DataBufferFactory bufferFactory = session.bufferFactory();
+		DataBuffer buffer;
+		if (bufferFactory instanceof NettyDataBufferFactory nettyBufferFactory) {
+			buffer = nettyBufferFactory.wrap(content.retainedDuplicate());
+		} else {
+			byte[] bytes = new byte[content.readableBytes()];
+			content.getBytes(content.readerIndex(), bytes);
+			buffer = bufferFactory.wrap(bytes);
+		}
+		return new WebSocketMessage(WebSocketMessage.Type.TEXT, buffer);
+	}
+
+	/**
+	 * 释放持有者的引用
+	 */
+	public void release() {
+		if (content.refCnt() > 0) {
+			content.release();
+		}
+	}
+}
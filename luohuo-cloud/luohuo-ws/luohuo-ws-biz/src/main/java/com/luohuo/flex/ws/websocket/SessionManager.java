@@ -1,26 +1,34 @@
 package com.luohuo.flex.ws.websocket;
 
 import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.map.MapUtil;
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.luohuo.basic.cache.repository.CachePlusOps;
 import com.luohuo.basic.model.cache.CacheKey;
-import com.luohuo.basic.utils.TimeUtils;
-import com.luohuo.flex.common.cache.FriendCacheKeyBuilder;
 import com.luohuo.flex.common.cache.PresenceCacheKeyBuilder;
-import com.luohuo.flex.model.entity.WSRespTypeEnum;
 import com.luohuo.flex.model.entity.WsBaseResp;
-import com.luohuo.flex.model.entity.ws.WSOnlineNotify;
 import com.luohuo.flex.model.redis.annotation.RedissonLock;
 import com.luohuo.flex.ws.config.ThreadPoolProperties;
-import com.luohuo.flex.ws.service.PushService;
+import com.luohuo.flex.ws.service.PresenceNotifyService;
 import com.luohuo.flex.ws.websocket.nacos.NacosSessionRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.socket.CloseStatus;
 import org.springframework.web.reactive.socket.WebSocketSession;
@@ -30,7 +38,6 @@ import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -48,28 +55,70 @@ import java.util.stream.Collectors;
 @Component
 public class SessionManager {
 
+	/**
+	 * 设备上下线脚本
+	 * KEYS[1] 全局在线设备ZSet, KEYS[2] 用户在线设备Set
+	 * ARGV[1] uid:clientId, ARGV[2] clientId, ARGV[3] 时间戳, ARGV[4] 1上线/0下线, ARGV[5] 用户设备集合过期秒数
+	 * 返回 1 表示上线时为首个设备 / 下线时为最后一个设备
+	 * 下线的设备不在用户集合中（重复下线，或回填尚未覆盖到的设备）时不判定为最后一个设备
+	 * <p>
+	 * 两个 key 分属全局与用户维度，无法用 hash tag 放到同一个槽，脚本与回填脚本都要求单机或哨兵模式的 Redis，不支持 Redis Cluster
+	 */
+	private static final RedisScript<Long> DEVICE_ONLINE_SCRIPT = new DefaultRedisScript<>("""
+			if tonumber(ARGV[4]) == 1 then
+				redis.call('zadd', KEYS[1], ARGV[3], ARGV[1])
+				redis.call('sadd', KEYS[2], ARGV[2])
+				redis.call('expire', KEYS[2], ARGV[5])
+				if redis.call('scard', KEYS[2]) == 1 then return 1 end
+				return 0
+			end
+			redis.call('zrem', KEYS[1], ARGV[1])
+			if redis.call('srem', KEYS[2], ARGV[2]) == 0 then return 0 end
+			if redis.call('scard', KEYS[2]) == 0 then return 1 end
+			return 0
+			""", Long.class);
+
+	/**
+	 * 用户在线设备集合回填脚本：设备仍在全局在线设备ZSet中才加入
+	 * KEYS[1] 全局在线设备ZSet, KEYS[2] 用户在线设备Set
+	 * ARGV[1] uid:clientId, ARGV[2] clientId, ARGV[3] 用户设备集合过期秒数
+	 */
+	private static final RedisScript<Long> DEVICE_BACKFILL_SCRIPT = new DefaultRedisScript<>("""
+			if not redis.call('zscore', KEYS[1], ARGV[1]) then return 0 end
+			redis.call('sadd', KEYS[2], ARGV[2])
+			redis.call('expire', KEYS[2], ARGV[3])
+			return 1
+			""", Long.class);
+
+	private static final String BACKFILL_RUNNING = "running";
+	private static final String BACKFILL_DONE = "done";
+	private static final int BACKFILL_BATCH_SIZE = 1000;
+
+	private static final RedisSerializer<Long> LONG_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
+	private static final Duration USER_DEVICES_EXPIRE = PresenceCacheKeyBuilder.userOnlineDevicesKey(0L).getExpire();
+
 	@Resource
 	private CachePlusOps cachePlusOps;
 
+	@Resource
+	private RedisTemplate<String, Object> redisTemplate;
+
 	@Resource
 	private NacosSessionRegistry nacosSessionRegistry;
 
 	@Resource
 	private ThreadPoolProperties threadPoolProperties;
 	@Resource
-	private PushService pushService;
+	private PresenceNotifyService presenceNotifyService;
 
 	// 线程池实例数组（按节点分片）
 	private ThreadPoolExecutor[] sessionExecutors;
 	// 服务状态 -> 默认可用
 	private final AtomicBoolean acceptingNewConnections = new AtomicBoolean(true);
 
-	// Session -> clientId, 通过用户会话反向查找用户设备指纹
-	public final ConcurrentHashMap<String, String> SESSION_CLIENT_MAP = new ConcurrentHashMap<>();
-	// sessionId -> uid, 通过用户设备指纹反向查找用户id [目前的作用仅仅反向查找会话是哪个uid的]
-	public final ConcurrentHashMap<String, Long> SESSION_USER_MAP = new ConcurrentHashMap<>();
-	// uid → (clientId → 会话集合) 管理的是单个用户在此服务上所有ws链接，CopyOnWriteArrayList 频繁写入性能较差 所以用Set
-	private final ConcurrentHashMap<Long, Map<String, Set<WebSocketSession>>> USER_DEVICE_SESSION_MAP = new ConcurrentHashMap<>();
+	// uid → clientId → 会话 管理的是单个用户在此服务上所有ws链接，附带 sessionId 反向索引与会话/设备/用户计数
+	private final LocalSessionRegistry sessionRegistry = new LocalSessionRegistry(64);
 
 	public void setAcceptingNewConnections(boolean accepting) {
 		acceptingNewConnections.set(accepting);
@@ -84,111 +133,78 @@ public class SessionManager {
 	 * 获取会话数量，[同一个设备可能有多个会话]
 	 */
 	public int getSessionCount() {
-		return USER_DEVICE_SESSION_MAP.values().stream()
-				.flatMap(deviceMap -> deviceMap.values().stream())
-				.mapToInt(Set::size)
-				.sum();
+		return sessionRegistry.getSessionCount();
+	}
+
+	/**
+	 * 获取在线设备数量
+	 */
+	public int getDeviceCount() {
+		return sessionRegistry.getDeviceCount();
+	}
+
+	/**
+	 * 获取在线用户数量
+	 */
+	public int getUserCount() {
+		return sessionRegistry.getUserCount();
 	}
 
 	/**
 	 * 获取用户会话
 	 */
 	public Set<WebSocketSession> getUserSessions(Long uid) {
-		Map<String, Set<WebSocketSession>> deviceMap = USER_DEVICE_SESSION_MAP.get(uid);
-		if (deviceMap == null) return Collections.emptySet();
-
-		return deviceMap.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+		Set<WebSocketSession> sessions = new HashSet<>();
+		sessionRegistry.forEachUserSession(uid, sessions::add);
+		return sessions;
 	}
 
 	/**
-	 * 获取所有客户端ID
+	 * 获取部分客户端ID
+	 * @param limit 最多返回的数量
 	 */
-	public List<String> getClientIds() {
-		return USER_DEVICE_SESSION_MAP.values().stream()
-				.flatMap(deviceMap -> deviceMap.keySet().stream())
-				.collect(Collectors.toList());
+	public List<String> getClientIds(int limit) {
+		return sessionRegistry.getClientIds(limit);
 	}
 
 	// 注册会话
 	public void registerSession(WebSocketSession session, String clientId, Long uid) {
-		// 1. 设备级会话注册
-		USER_DEVICE_SESSION_MAP.compute(uid, (key, deviceMap) -> {
-			if (deviceMap == null) deviceMap = new ConcurrentHashMap<>();
-			deviceMap.compute(clientId, (k, sessions) -> {
-				if (sessions == null) sessions = new HashSet<>();
-				sessions.add(session);
-				return sessions;
-			});
-			return deviceMap;
-		});
-
-		// 2. 反向索引更新 (会话 → 用户+设备)
-		SESSION_USER_MAP.put(session.getId(), uid);
-		SESSION_CLIENT_MAP.put(session.getId(), clientId);
+		// 1. 设备级会话注册，同时维护会话 → 用户+设备的反向索引
+		int clientNum = sessionRegistry.register(uid, clientId, session);
 
-		// 3. 首次连接设备时触发路由注册
-		boolean isFirstSession = USER_DEVICE_SESSION_MAP.get(uid).compute(clientId, (k, sessions) -> {
-			if (sessions == null) {
-				sessions = new HashSet<>();
-				sessions.add(session);
-				return sessions;
-			}
-			sessions.add(session);
-			return sessions;
-		}).size() == 1;
-
-		if (isFirstSession) {
+		// 2. 首次连接设备时触发路由注册
+		if (clientNum == 1) {
 			nacosSessionRegistry.addUserRoute(uid, clientId);
 			syncOnline(uid, clientId, true); // 同步设备在线状态
-			log.info("会话注册: clientId={}, uid={},  客户端映射={}, 用户会话={}", clientId, uid, getClientNum(uid, clientId), getUserSessions(uid).size());
+			log.info("会话注册: clientId={}, uid={},  客户端映射={}, 用户会话={}", clientId, uid, clientNum, sessionRegistry.getUserSessionCount(uid));
 		} else {
-			log.info("新增会话: clientId={}, uid={}, 当前客户端映射会话数={}, 用户会话={}", clientId, uid, getClientNum(uid, clientId), getUserSessions(uid).size());
+			log.info("新增会话: clientId={}, uid={}, 当前客户端映射会话数={}, 用户会话={}", clientId, uid, clientNum, sessionRegistry.getUserSessionCount(uid));
 		}
 	}
 
-	private int getClientNum(Long uid, String clientId) {
-		Map<String, Set<WebSocketSession>> map = USER_DEVICE_SESSION_MAP.get(uid);
-		if(MapUtil.isEmpty(map)) return 0;
-
-		Set<WebSocketSession> sessions = map.get(clientId);
-		if(CollUtil.isEmpty(sessions)) return 0;
-
-		return sessions.size();
-	}
-
 	/**
-	 * 查询其它设备是否在线
+	 * 原子更新设备在线状态，同时维护全局在线设备ZSet与用户在线设备集合
 	 * @param uid 当前用户id
-	 * @param excludeDeviceKey 要排除的指纹
-	 * @return 没设备在线返回true 有设备在线返回false
+	 * @param clientId 设备指纹
+	 * @param online 上线/下线
+	 * @param millis 上线时间
+	 * @return 上线时是首个在线设备、下线时是最后一个在线设备返回true
 	 */
-	private boolean isFirstOrLastDevice(Long uid, String excludeDeviceKey) {
-		String onlineDevicesKey = PresenceCacheKeyBuilder.globalOnlineDevicesKey().getKey();
-		String prefix = uid + ":";
-
-		// 分批获取设备
-		int batchSize = 1000;
-		long total = cachePlusOps.zCard(onlineDevicesKey);
-
-		for (int i = 0; i < total; i += batchSize) {
-			Set<Object> batchDevices = cachePlusOps.zRangeByScoreWithScores(
-							onlineDevicesKey,
-							Double.MIN_VALUE,
-							Double.MAX_VALUE,
-							i,
-							i + batchSize
-					).stream()
-					.map(ZSetOperations.TypedTuple::getValue)
-					.collect(Collectors.toSet());
-
-			for (Object deviceObj : batchDevices) {
-				String device = deviceObj.toString();
-				if (device.startsWith(prefix) && !device.equals(excludeDeviceKey)) {
-					return false; // 发现其他设备
-				}
-			}
-		}
-		return true;
+	@SuppressWarnings("unchecked")
+	private boolean switchDeviceOnline(Long uid, String clientId, boolean online, long millis) {
+		List<String> keys = Arrays.asList(
+				PresenceCacheKeyBuilder.globalOnlineDevicesKey().getKey(),
+				PresenceCacheKeyBuilder.userOnlineDevicesKey(uid).getKey()
+		);
+		// 成员需与 zAdd/sAdd 的序列化保持一致，数字参数以纯文本传入供 Lua 解析
+		RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+		Long transition = redisTemplate.execute(DEVICE_ONLINE_SCRIPT, RedisSerializer.byteArray(), LONG_SERIALIZER, keys,
+				valueSerializer.serialize(uid + ":" + clientId),
+				valueSerializer.serialize(clientId),
+				StrUtil.utf8Bytes(String.valueOf(millis)),
+				StrUtil.utf8Bytes(online ? "1" : "0"),
+				StrUtil.utf8Bytes(String.valueOf(USER_DEVICES_EXPIRE.getSeconds())));
+		return transition != null && transition == 1L;
 	}
 
 	/**
@@ -232,105 +248,36 @@ public class SessionManager {
 	/**
 	 * 1. 同步在线状态, 即使节点宕机也会被NodeDownMessageListener监听到，从而触发下线
 	 * 2. 用户上线之后需要主动推送给用户所有在线好友 + 用户所在群的所有在线成员。如若采用实时轮询的方式会有更多的无效请求!
+	 *    推送由 PresenceNotifyService 按窗口合并后统一发送
 	 *
 	 * @param uid    用户id
 	 * @param online 在线状态
 	 */
 	@RedissonLock(prefixKey = "syncOnline:", key = "#uid")
 	public void syncOnline(Long uid, String clientId, boolean online) {
-		// 1. 生成用户设备key、全局在线状态key
-		String deviceKey = uid + ":" + clientId;
-		String onlineDevicesKey = PresenceCacheKeyBuilder.globalOnlineDevicesKey().getKey();
+		// 1. 生成全局在线状态key
 		String onlineUsersKey = PresenceCacheKeyBuilder.globalOnlineUsersKey().getKey();
 
-		// 2. 获取用户所有群组
-		List<Long> roomIds = getRoomIds(uid);
+		// 2. 原子更新设备状态，并判断是否是首个/最后一个设备
+		long millis = System.currentTimeMillis();
+		boolean noOtherDevices = switchDeviceOnline(uid, clientId, online, millis);
+		if (!noOtherDevices) {
+			return;
+		}
 
-		// 2. 检查设备状态（原子操作）
-		boolean noOtherDevices = isFirstOrLastDevice(uid, deviceKey);
+		// 3. 获取用户所有群组
+		List<Long> roomIds = getRoomIds(uid);
 
 		if (online) {
-			// 3. 上线逻辑
-			long millis = System.currentTimeMillis();
-			cachePlusOps.zAdd(onlineDevicesKey, deviceKey, millis);
-			// 仅仅是首个设备登录时才添加用户在线状态
-			if (noOtherDevices) {
-				cachePlusOps.zAdd(onlineUsersKey, uid, millis);
-				updateGroupPresence(roomIds, uid, true);
-				pushDeviceStatusChange(roomIds, uid, clientId, WSRespTypeEnum.ONLINE.getType(), onlineUsersKey);
-			}
+			// 4. 上线逻辑: 仅仅是首个设备登录时才添加用户在线状态
+			cachePlusOps.zAdd(onlineUsersKey, uid, millis);
+			updateGroupPresence(roomIds, uid, true);
+			presenceNotifyService.publish(uid, clientId, true, roomIds);
 		} else {
-			// 4. 下线逻辑
-			cachePlusOps.zRemove(onlineDevicesKey, deviceKey);
-
-			// 所有设备都下线之后移除用户的在线状态
-			if (noOtherDevices) {
-				cachePlusOps.zRemove(onlineUsersKey, uid);
-				updateGroupPresence(roomIds, uid, false);
-				pushDeviceStatusChange(roomIds, uid, clientId, WSRespTypeEnum.OFFLINE.getType(), onlineUsersKey);
-			}
-		}
-	}
-
-	/**
-	 * 通知所有与自己有关的所有人
-	 * @param uid 登录用户
-	 * @param clientId 登录设备
-	 * @param type 登录状态
-	 * @param onlineKey 全局在线用户的key
-	 */
-	private void pushDeviceStatusChange(List<Long> roomIds, Long uid, String clientId, String type, String onlineKey) {
-		// 1. 获取反向好友列表（需要知道该用户在线状态的uid） [推送数据各个不一致]
-		CacheKey reverseFriendsKey = FriendCacheKeyBuilder.reverseFriendsKey(uid);
-		Set<Long> friends = cachePlusOps.sMembers(reverseFriendsKey).stream().map(obj -> Long.parseLong(obj.toString())).collect(Collectors.toSet());
-
-		for (Long friendUid : friends) {
-			// 1.0 获取该好友的全部好友列表
-			CacheKey friendsKey = FriendCacheKeyBuilder.userFriendsKey(friendUid);
-			List<Long> hisFriends = cachePlusOps.sMembers(friendsKey).stream().map(obj -> Long.parseLong(obj.toString())).collect(Collectors.toList());
-
-			// 1.1 管道批量查询分数
-			List<Object> scores = cachePlusOps.getZSetScores(onlineKey, hisFriends);
-
-			// 1.2 计算当前好友的在线数量
-			long onlineCount = scores.stream().filter(Objects::nonNull).count();
-
-			// 1.3 构建推送消息
-			WsBaseResp resp = new WsBaseResp();
-			resp.setType(type);
-			resp.setData(new WSOnlineNotify(uid, clientId, TimeUtils.getTime(), onlineCount, 2));
-
-			// 1.5 定向推送
-			pushService.sendPushMsg(resp, friendUid, uid);
-		}
-
-		List<String> keys = roomIds.stream().map(id -> PresenceCacheKeyBuilder.onlineGroupMembersKey(id).getKey()).collect(Collectors.toList());
-		List<Long> counts = cachePlusOps.sMultiCard(keys);
-		Map<Long, Long> result = new HashMap<>();
-		for (int i = 0; i < roomIds.size(); i++) {
-			Long count = counts.get(i);
-			if (count > 0) {
-				result.put(roomIds.get(i), count);
-			}
-		}
-
-		// 2.1 推送给用户的所有群
-		for (Long roomId : result.keySet()) {
-			CacheKey cacheKey = PresenceCacheKeyBuilder.onlineGroupMembersKey(roomId);
-
-			// 2.2 拿到在线群成员
-			List<Long> memberIdList = cachePlusOps.sMembers(cacheKey).stream().map(obj -> Long.parseLong(obj.toString())).collect(Collectors.toList());
-
-			WsBaseResp resp = new WsBaseResp();
-			resp.setType(type);
-			resp.setData(new WSOnlineNotify(roomId, uid, clientId, TimeUtils.getTime(), result.get(roomId), 1));
-
-			// 2.3 定向分批发送
-			int pageSize = 200;
-			for (int i = 0; i < memberIdList.size(); i += pageSize) {
-				List<Long> page = memberIdList.subList(i, Math.min(i+pageSize, memberIdList.size()));
-				pushService.sendPushMsg(resp, page, uid);
-			}
+			// 5. 下线逻辑: 所有设备都下线之后移除用户的在线状态
+			cachePlusOps.zRemove(onlineUsersKey, uid);
+			updateGroupPresence(roomIds, uid, false);
+			presenceNotifyService.publish(uid, clientId, false, roomIds);
 		}
 	}
 
@@ -340,20 +287,23 @@ public class SessionManager {
 	 * @param message 消息内容
 	 */
 	public void sendToUser(Long uid, com.luohuo.flex.model.ws.WSBaseReq message) {
-		Set<WebSocketSession> sessions = getUserSessions(uid);
-		if (CollUtil.isEmpty(sessions)) {
+		if (sessionRegistry.getUserSessionCount(uid) == 0) {
 			log.debug("用户 {} 无在线会话", uid);
 			return;
 		}
 
-		String jsonMessage = JSONUtil.toJsonStr(message);
-		sessions.stream()
-				.filter(WebSocketSession::isOpen)
-				.forEach(session -> {
-					session.send(Mono.just(session.textMessage(jsonMessage)))
+		PreEncodedFrame frame = PreEncodedFrame.of(message);
+		try {
+			sessionRegistry.forEachUserSession(uid, session -> {
+				if (session.isOpen()) {
+					session.send(Mono.just(frame.toMessage(session)))
 							.doOnError(e -> log.error("发送消息给用户 {} 失败", uid, e))
 							.subscribe();
-				});
+				}
+			});
+		} finally {
+			frame.release();
+		}
 	}
 
 	/**
@@ -372,20 +322,22 @@ public class SessionManager {
 			return;
 		}
 
-		String jsonMessage = JSONUtil.toJsonStr(message);
-		memberIds.stream()
-				.map(obj -> Long.parseLong(obj.toString()))
-				.filter(memberId -> !memberId.equals(senderId))
-				.forEach(memberId -> {
-					Set<WebSocketSession> sessions = getUserSessions(memberId);
-					sessions.stream()
-							.filter(WebSocketSession::isOpen)
-							.forEach(session -> {
-								session.send(Mono.just(session.textMessage(jsonMessage)))
-										.doOnError(e -> log.error("广播消息给用户 {} 失败", memberId, e))
-										.subscribe();
-							});
-				});
+		// 只序列化一次，所有成员会话共享同一帧
+		PreEncodedFrame frame = PreEncodedFrame.of(message);
+		try {
+			memberIds.stream()
+					.map(obj -> Long.parseLong(obj.toString()))
+					.filter(memberId -> !memberId.equals(senderId))
+					.forEach(memberId -> sessionRegistry.forEachUserSession(memberId, session -> {
+						if (session.isOpen()) {
+							session.send(Mono.just(frame.toMessage(session)))
+									.doOnError(e -> log.error("广播消息给用户 {} 失败", memberId, e))
+									.subscribe();
+						}
+					}));
+		} finally {
+			frame.release();
+		}
 	}
 
 	/**
@@ -396,35 +348,23 @@ public class SessionManager {
 	 */
 	public Mono<Void> sendMessageToSession(String sessionId, com.luohuo.flex.model.ws.WSBaseReq message) {
 		// 通过 sessionId 查找对应的会话
-		Long uid = SESSION_USER_MAP.get(sessionId);
-		String clientId = SESSION_CLIENT_MAP.get(sessionId);
-
-		if (uid == null || clientId == null) {
+		LocalSessionRegistry.SessionRef ref = sessionRegistry.getSession(sessionId);
+		if (ref == null) {
 			log.warn("未找到会话: {}", sessionId);
 			return Mono.empty();
 		}
 
-		Map<String, Set<WebSocketSession>> deviceMap = USER_DEVICE_SESSION_MAP.get(uid);
-		if (deviceMap == null) {
-			return Mono.empty();
-		}
-
-		Set<WebSocketSession> sessions = deviceMap.get(clientId);
-		if (CollUtil.isEmpty(sessions)) {
+		WebSocketSession session = ref.session();
+		if (!session.isOpen()) {
 			return Mono.empty();
 		}
 
 		String jsonMessage = JSONUtil.toJsonStr(message);
-		return Flux.fromIterable(sessions)
-				.filter(session -> session.getId().equals(sessionId) && session.isOpen())
-				.flatMap(session ->
-						session.send(Mono.just(session.textMessage(jsonMessage)))
-								.onErrorResume(e -> {
-									log.error("发送消息到会话 {} 失败", sessionId, e);
-									return Mono.empty();
-								})
-				)
-				.then();
+		return session.send(Mono.just(session.textMessage(jsonMessage)))
+				.onErrorResume(e -> {
+					log.error("发送消息到会话 {} 失败", sessionId, e);
+					return Mono.empty();
+				});
 	}
 
 	/**
@@ -434,22 +374,28 @@ public class SessionManager {
 	 * @param resp 消息内容
 	 */
 	public Mono<Void> sendToDevice(Long uid, String clientId, WsBaseResp<?> resp) {
-		return Mono.defer(() -> {
-			Map<String, Set<WebSocketSession>> deviceMap = USER_DEVICE_SESSION_MAP.get(uid);
-			if (deviceMap == null) return Mono.empty();
+		return Mono.using(() -> PreEncodedFrame.of(resp), frame -> sendToDevice(uid, clientId, frame), PreEncodedFrame::release);
+	}
 
-			Set<WebSocketSession> sessions = deviceMap.get(clientId);
-			if (CollUtil.isEmpty(sessions)) return Mono.empty();
+	/**
+	 * 精确推送预编码帧到当前服务上的连接，批量推送时由调用方统一序列化并在结束后释放
+	 * @param uid 要推送的用户id
+	 * @param clientId 当前用户的指纹
+	 * @param frame 已序列化的消息帧
+	 */
+	public Mono<Void> sendToDevice(Long uid, String clientId, PreEncodedFrame frame) {
+		return Mono.defer(() -> {
+			WebSocketSession[] sessions = sessionRegistry.getDeviceSessions(uid, clientId);
+			if (sessions.length == 0) return Mono.empty();
 
-			return Flux.fromIterable(sessions)
+			return Flux.fromArray(sessions)
 					.filter(WebSocketSession::isOpen)
 					.flatMap(session ->
-							session.send(Mono.just(session.textMessage(JSONUtil.toJsonStr(resp)))
+							session.send(Mono.just(frame.toMessage(session)))
 									.onErrorResume(e -> {
 										log.error("发送失败: uid={}, clientId={}, sessionId={}", uid, clientId, session.getId(), e);
 										return Mono.empty();
-									})// 将 Mono<Void> 转为 Mono<Void>
-							))
+									}))
 					.then();
 		});
 	}
@@ -463,13 +409,10 @@ public class SessionManager {
 		nacosSessionRegistry.deregisterNode();
 
 		// 1. 收集所有设备信息
-		Map<Long, Set<String>> offlineDevices = new HashMap<>();
-		USER_DEVICE_SESSION_MAP.forEach((uid, deviceMap) -> offlineDevices.put(uid, new HashSet<>(deviceMap.keySet())));
+		Map<Long, List<String>> offlineDevices = sessionRegistry.snapshotDevices();
 
 		// 2. 批量关闭会话 + 等待完成（超时控制）
-		List<Mono<Void>> closeTasks = USER_DEVICE_SESSION_MAP.values().stream()
-				.flatMap(deviceMap -> deviceMap.values().stream())
-				.flatMap(Collection::stream)
+		List<Mono<Void>> closeTasks = sessionRegistry.snapshotSessions().stream()
 				.filter(WebSocketSession::isOpen)
 				.map(session ->
 						session.close(CloseStatus.GOING_AWAY)
@@ -487,43 +430,12 @@ public class SessionManager {
 		offlineDevices.forEach((uid, clientIds) -> clientIds.forEach(clientId -> syncOnline(uid, clientId, false)));
 
 		// 5. 清空本地映射
-		SESSION_USER_MAP.clear();
-		SESSION_CLIENT_MAP.clear();
-		USER_DEVICE_SESSION_MAP.clear();
+		sessionRegistry.clear();
 
 		// 6. 清理路由与节点
 		nacosSessionRegistry.cleanupNodeRoutes("");
 	}
 
-	/**
-	 * 原子化清理设备指纹级会话
-	 *
-	 * @param uid       用户id
-	 * @param clientId  用户指纹
-	 * @param sessionId 当前绑定的会话
-	 * @return
-	 */
-	private boolean cleanDeviceSession(Long uid, String clientId, String sessionId) {
-		AtomicBoolean isLastSession = new AtomicBoolean(false);
-		USER_DEVICE_SESSION_MAP.compute(uid, (u, deviceMap) -> {
-			if (deviceMap == null) return null;
-			deviceMap.compute(clientId, (c, sessions) -> {
-				if (sessions != null) {
-					sessions.removeIf(s -> s.getId().equals(sessionId));
-					if (sessions.isEmpty()) {
-						// 标记为最后会话
-						isLastSession.set(true);
-						// 移除设备条目
-						return null;
-					}
-				}
-				return sessions;
-			});
-			return deviceMap.isEmpty() ? null : deviceMap;
-		});
-		return isLastSession.get();
-	}
-
 	/**
 	 * 清理会话
 	 * @param session 当前会话
@@ -535,23 +447,20 @@ public class SessionManager {
 					.doAfterTerminate(() -> {
 						String sessionId = session.getId();
 
-						// 1. 获取反向索引
-						String clientId = SESSION_CLIENT_MAP.remove(sessionId);
-						Long uid = SESSION_USER_MAP.remove(sessionId);
+						// 1. 原子化清理反向索引与设备指纹级核心映射
+						LocalSessionRegistry.Removal removal = sessionRegistry.unregister(sessionId);
 
-						if (clientId != null && uid != null) {
-							// 2. 原子化清理设备指纹级核心映射
-							boolean isLastSession = cleanDeviceSession(uid, clientId, sessionId);
+						if (removal != null) {
+							Long uid = removal.uid();
+							String clientId = removal.clientId();
 
-							// 3. 若设备无会话，清理路由
-							if (isLastSession) {
+							// 2. 若设备无会话，清理路由
+							if (removal.deviceSessions() == 0) {
 								nacosSessionRegistry.removeDeviceRoute(uid, clientId);
 								syncOnline(uid, clientId, false); // 通知下线
 							}
 
-							Set<WebSocketSession> clientSessions = Optional.ofNullable(USER_DEVICE_SESSION_MAP.get(uid)).map(deviceMap -> deviceMap.get(clientId)).orElse(Collections.emptySet());
-							Set<WebSocketSession> sessions = getUserSessions(uid);
-							log.info("清理会话: sessionId={}, clientId={}, uid={}, 客户端映射={}, 用户会话={}", sessionId, clientId, uid, CollUtil.isEmpty(clientSessions) ? 0 : clientSessions.size(), CollUtil.isEmpty(sessions) ? 0 : sessions.size());
+							log.info("清理会话: sessionId={}, clientId={}, uid={}, 客户端映射={}, 用户会话={}", sessionId, clientId, uid, removal.deviceSessions(), sessionRegistry.getUserSessionCount(uid));
 						}
 					})
 					.doOnSuccess(v -> log.debug("会话关闭成功: {}", session.getId()))
@@ -576,6 +485,100 @@ public class SessionManager {
 		}
 	}
 
+	/**
+	 * 用户在线设备集合上线前只有全局在线设备ZSet，首次部署时由一个节点按全局ZSet回填。
+	 * 启动完成后在后台执行，不阻塞接入连接；回填期间下线的设备若还不在用户集合中，脚本不会判定为最后一个设备。
+	 * 由标记 key 保证只有一个节点执行，回填完成的标记永久保留，失败时标记10分钟后过期，由之后启动的节点重试。
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void backfillUserDevices() {
+		Thread thread = new Thread(this::doBackfillUserDevices, "user-devices-backfill");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void doBackfillUserDevices() {
+		String globalKey = PresenceCacheKeyBuilder.globalOnlineDevicesKey().getKey();
+		String flagKey = globalKey + ":user_devices_backfill";
+		long count = 0;
+		try {
+			Boolean owner = redisTemplate.opsForValue().setIfAbsent(flagKey, BACKFILL_RUNNING, Duration.ofMinutes(10));
+			if (!Boolean.TRUE.equals(owner)) {
+				return;
+			}
+
+			ScanOptions options = ScanOptions.scanOptions().count(BACKFILL_BATCH_SIZE).build();
+			try (Cursor<ZSetOperations.TypedTuple<Object>> cursor = redisTemplate.opsForZSet().scan(globalKey, options)) {
+				List<String> chunk = new ArrayList<>(BACKFILL_BATCH_SIZE);
+				while (cursor.hasNext()) {
+					chunk.add(String.valueOf(cursor.next().getValue()));
+					if (chunk.size() >= BACKFILL_BATCH_SIZE) {
+						count += backfillDevices(globalKey, chunk);
+						chunk.clear();
+					}
+				}
+				count += backfillDevices(globalKey, chunk);
+			}
+			redisTemplate.opsForValue().set(flagKey, BACKFILL_DONE);
+			log.info("用户在线设备集合回填完成: {} 个设备", count);
+		} catch (Exception e) {
+			log.error("用户在线设备集合回填失败, 已回填: {} 个设备", count, e);
+		}
+	}
+
+	/**
+	 * 一批 uid:clientId 用 EVALSHA 在同一个管道里回填，脚本缓存被清空时先 SCRIPT LOAD 再重发一次
+	 */
+	private long backfillDevices(String globalKey, List<String> members) {
+		List<byte[][]> scripts = new ArrayList<>(members.size());
+		for (String member : members) {
+			int index = member.indexOf(':');
+			if (index <= 0) {
+				continue;
+			}
+			Long uid = Long.parseLong(member.substring(0, index));
+			scripts.add(backfillArgs(globalKey, uid, member.substring(index + 1), member));
+		}
+		if (scripts.isEmpty()) {
+			return 0;
+		}
+		List<Object> results;
+		try {
+			results = pipelineBackfill(scripts);
+		} catch (DataAccessException e) {
+			if (e.getMostSpecificCause().getMessage() == null || !e.getMostSpecificCause().getMessage().contains("NOSCRIPT")) {
+				throw e;
+			}
+			byte[] script = StrUtil.utf8Bytes(DEVICE_BACKFILL_SCRIPT.getScriptAsString());
+			redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(script));
+			results = pipelineBackfill(scripts);
+		}
+		return results.stream().filter(added -> Long.valueOf(1L).equals(added)).count();
+	}
+
+	private List<Object> pipelineBackfill(List<byte[][]> scripts) {
+		String sha = DEVICE_BACKFILL_SCRIPT.getSha1();
+		return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			scripts.forEach(keysAndArgs -> connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 2, keysAndArgs));
+			return null;
+		});
+	}
+
+	/**
+	 * DEVICE_BACKFILL_SCRIPT 的 key 与参数，成员需与 zAdd/sAdd 的序列化保持一致
+	 */
+	@SuppressWarnings("unchecked")
+	private byte[][] backfillArgs(String globalKey, Long uid, String clientId, String member) {
+		RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+		return new byte[][]{
+				StrUtil.utf8Bytes(globalKey),
+				StrUtil.utf8Bytes(PresenceCacheKeyBuilder.userOnlineDevicesKey(uid).getKey()),
+				valueSerializer.serialize(member),
+				valueSerializer.serialize(clientId),
+				StrUtil.utf8Bytes(String.valueOf(USER_DEVICES_EXPIRE.getSeconds()))
+		};
+	}
+
 	@PreDestroy
 	public void destroy() {
 		log.info("关闭会话管理线程池...");
@@ -136,10 +136,13 @@ public class NacosSessionRegistry {
 		// 1. 设备指纹→节点映射
 		cachePlusOps.hSet(RouterCacheKeyBuilder.buildDeviceNodeMap(deviceField), nodeId);
 
-		// 2. 节点→设备指纹映射
+		// 2. 用户→设备指纹→节点索引 [推送路由按uid直接定位]
+		cachePlusOps.hSet(RouterCacheKeyBuilder.buildUserDeviceNodes(uid, clientId), nodeId);
+
+		// 3. 节点→设备指纹映射
 		cachePlusOps.sAdd(RouterCacheKeyBuilder.buildNodeDevices(nodeId), deviceField);
 
-		// 3. 更新节点元数据
+		// 4. 更新节点元数据
 		Map<String, String> metadata = nodeInstance.getMetadata();
 		metadata.put("lastActive", Instant.now().toString());
 		nodeInstance.setMetadata(metadata);
@@ -157,6 +160,9 @@ public class NacosSessionRegistry {
 		CacheHashKey deviceNodeMap = RouterCacheKeyBuilder.buildDeviceNodeMap(deviceField);
 		cachePlusOps.hDel(deviceNodeMap);
 
+		// 清理用户设备索引
+		cachePlusOps.hDel(RouterCacheKeyBuilder.buildUserDeviceNodes(uid, clientId));
+
 		// 清理节点→设备映射
 		CacheKey nodeDevices = RouterCacheKeyBuilder.buildNodeDevices(nodeId);
 		cachePlusOps.sRem(nodeDevices, deviceField);
@@ -176,12 +182,40 @@ public class NacosSessionRegistry {
 			CacheHashKey deviceNodeMap = RouterCacheKeyBuilder.buildDeviceNodeMap("");
 			redisTemplate.opsForHash().delete(deviceNodeMap.getKey(), deviceFields.toArray());
 
+			// 批量清理用户设备索引
+			removeUserDeviceIndex(deviceFields);
+
 			// 清理节点本地映射
 			redisTemplate.delete(cacheKey.getKey());
 		}
 		log.info("节点路由清理完成: nodeId={}, 清理设备数={}", cleanNodeId, deviceFields != null ? deviceFields.size() : 0);
 	}
 
+	/**
+	 * 流水线删除用户设备索引中的设备
+	 * @param deviceFields uid:clientId 集合
+	 */
+	private void removeUserDeviceIndex(Set<Object> deviceFields) {
+		Map<Long, List<Object>> uidToClients = deviceFields.stream()
+				.map(field -> field.toString().split(":"))
+				.filter(parts -> parts.length == 2)
+				.collect(Collectors.groupingBy(
+						parts -> Long.parseLong(parts[0]),
+						Collectors.mapping(parts -> (Object) parts[1], Collectors.toList())
+				));
+
+		redisTemplate.executePipelined(new SessionCallback<Object>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public <K, V> Object execute(RedisOperations<K, V> operations) {
+				RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+				uidToClients.forEach((uid, clients) ->
+						ops.opsForHash().delete(RouterCacheKeyBuilder.buildUserDeviceNodes(uid).getKey(), clients.toArray()));
+				return null;
+			}
+		});
+	}
+
 	public void deregisterNode() {
 		try {
 			namingService.deregisterInstance("ws-cluster", "WS_GROUP", nodeIp, nodePort);
@@ -198,11 +232,13 @@ public class NacosSessionRegistry {
 			Map<String, String> metadata = new HashMap<>(nodeInstance.getMetadata());
 			metadata.put("lastHeartbeat", Instant.now().toString());
 			metadata.put("sessionCount", String.valueOf(sessionManager.getSessionCount()));
+			metadata.put("deviceCount", String.valueOf(sessionManager.getDeviceCount()));
+			metadata.put("userCount", String.valueOf(sessionManager.getUserCount()));
 
 			// 添加客户端ID列表
-			List<String> clientIds = sessionManager.getClientIds();
+			List<String> clientIds = sessionManager.getClientIds(10);
 			if (!clientIds.isEmpty()) {
-				metadata.put("clientIds", String.join(",", clientIds.subList(0, Math.min(10, clientIds.size()))));
+				metadata.put("clientIds", String.join(",", clientIds));
 			}
 
 			// 重新注册更新后的实例
@@ -16,7 +16,7 @@ import java.util.List;
  * 功能：其他没有依赖luohuo-router的服务，比如oauth服务; 需要将消息推送给任何一个用户就需要先将消息推送到当前消费者，再由当前消费者将消息推送到目标 uidList 所在的ws节点
  * 直接走 PushService 的服务：直接转发到 websocket_push 子节点，从而跳过当前消息信箱，节省一次网络io + 序列化
  * MessageRouterService 目前有TokenExpireListener事件、私聊群聊音视频在用; TokenExpireListener在 oauth服务，oauth无法知道目标在那个节点，因此需要经过当前路由工具
- * 动态路由: 使用 Redis 存储 com.luohuo.flex.router.RouterCacheKeyBuilder.DeviceNodeMapping({uid}:{clientId}) 映射关系, NacosRouterService.findNodeDeviceUser() 批量查询用户所在节点
+ * 动态路由: 使用 Redis 存储 com.luohuo.flex.router.RouterCacheKeyBuilder.UserDeviceNodes({uid} → {clientId}:{nodeId}) 索引, NacosRouterService.findNodeDeviceUser() 按uid流水线批量查询用户所在节点
  * 高效分发: 从本质上避免广播风暴，减少网络开销
  * 节点隔离: 每个节点只处理自己的 websocket_push{nodeId} 消息, 推送时只处理本节点连接的用户
  */
@@ -0,0 +1,180 @@
+package com.luohuo.flex.ws.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.HandshakeInfo;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 本机会话注册表基准测试
+ * <p>
+ * 预置 users × devices 个会话（默认 5 万用户 × 2 设备 = 10 万会话），
+ * 分别测量注册+注销、按设备查询、按用户遍历、统计计数的耗时。
+ * 运行: 在 IDE 中执行 main，或 mvn test-compile 后以 test classpath 启动本类。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LocalSessionRegistryBenchmark {
+
+	private static final AtomicLong SESSION_SEQ = new AtomicLong();
+
+	@Param({"50000"})
+	private int users;
+
+	@Param({"2"})
+	private int devices;
+
+	private LocalSessionRegistry registry;
+	private String[] clientIds;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		registry = new LocalSessionRegistry(64);
+		clientIds = new String[devices];
+		for (int d = 0; d < devices; d++) {
+			clientIds[d] = "client-" + d;
+		}
+		for (long uid = 1; uid <= users; uid++) {
+			for (String clientId : clientIds) {
+				registry.register(uid, clientId, new StubSession("s-" + SESSION_SEQ.incrementAndGet()));
+			}
+		}
+	}
+
+	/**
+	 * 新会话连入后断开，覆盖注册与清理两条路径，注册表规模保持不变
+	 */
+	@Benchmark
+	public LocalSessionRegistry.Removal registerAndCleanup() {
+		long uid = randomUid() + users;
+		StubSession session = new StubSession("s-" + SESSION_SEQ.incrementAndGet());
+		registry.register(uid, clientIds[0], session);
+		return registry.unregister(session.getId());
+	}
+
+	@Benchmark
+	public WebSocketSession[] lookupDevice() {
+		return registry.getDeviceSessions(randomUid(), clientIds[ThreadLocalRandom.current().nextInt(devices)]);
+	}
+
+	@Benchmark
+	public void lookupUser(Blackhole blackhole) {
+		registry.forEachUserSession(randomUid(), blackhole::consume);
+	}
+
+	@Benchmark
+	public int counters() {
+		return registry.getSessionCount() + registry.getDeviceCount() + registry.getUserCount();
+	}
+
+	private long randomUid() {
+		return ThreadLocalRandom.current().nextLong(1, users + 1);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(LocalSessionRegistryBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * 注册表只用到会话id，其余方法不会被调用
+	 */
+	private record StubSession(String id) implements WebSocketSession {
+		@Override
+		public String getId() {
+			return id;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public HandshakeInfo getHandshakeInfo() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public DataBufferFactory bufferFactory() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Flux<WebSocketMessage> receive() {
+			return Flux.empty();
+		}
+
+		@Override
+		public Mono<Void> send(Publisher<WebSocketMessage> messages) {
+			return Mono.empty();
+		}
+
+		@Override
+		public Mono<Void> close(CloseStatus status) {
+			return Mono.empty();
+		}
+
+		@Override
+		public Mono<CloseStatus> closeStatus() {
+			return Mono.empty();
+		}
+
+		@Override
+		public WebSocketMessage textMessage(String payload) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public WebSocketMessage binaryMessage(Function<DataBufferFactory, DataBuffer> payloadFactory) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public WebSocketMessage pingMessage(Function<DataBufferFactory, DataBuffer> payloadFactory) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public WebSocketMessage pongMessage(Function<DataBufferFactory, DataBuffer> payloadFactory) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.luohuo.flex.ws.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 本机会话注册表测试：注册、注销、查询及计数，并发注册注销后注册表与计数保持一致
+ */
+class LocalSessionRegistryTest {
+
+	@Test
+	void registerAndLookup() {
+		LocalSessionRegistry registry = new LocalSessionRegistry(4);
+		WebSocketSession first = session("s1");
+		WebSocketSession second = session("s2");
+		WebSocketSession other = session("s3");
+
+		assertEquals(1, registry.register(1L, "pc", first));
+		assertEquals(2, registry.register(1L, "pc", second));
+		assertEquals(1, registry.register(1L, "mobile", other));
+		// 重复注册同一会话不计数
+		assertEquals(2, registry.register(1L, "pc", first));
+
+		assertArrayEquals(new WebSocketSession[]{first, second}, registry.getDeviceSessions(1L, "pc"));
+		assertEquals(0, registry.getDeviceSessions(1L, "pad").length);
+		assertEquals(0, registry.getDeviceSessions(2L, "pc").length);
+		assertEquals(3, registry.getUserSessionCount(1L));
+
+		LocalSessionRegistry.SessionRef ref = registry.getSession("s3");
+		assertEquals(1L, ref.uid());
+		assertEquals("mobile", ref.clientId());
+		assertSame(other, ref.session());
+
+		List<WebSocketSession> visited = new ArrayList<>();
+		registry.forEachUserSession(1L, visited::add);
+		assertEquals(Set.of(first, second, other), new HashSet<>(visited));
+
+		assertEquals(3, registry.getSessionCount());
+		assertEquals(2, registry.getDeviceCount());
+		assertEquals(1, registry.getUserCount());
+		assertEquals(Map.of(1L, List.of("pc", "mobile")), registry.snapshotDevices());
+	}
+
+	@Test
+	void unregisterRemovesEmptyDevicesAndUsers() {
+		LocalSessionRegistry registry = new LocalSessionRegistry(4);
+		registry.register(1L, "pc", session("s1"));
+		registry.register(1L, "pc", session("s2"));
+		registry.register(1L, "mobile", session("s3"));
+
+		LocalSessionRegistry.Removal removal = registry.unregister("s1");
+		assertEquals(new LocalSessionRegistry.Removal(1L, "pc", 1), removal);
+		assertEquals(2, registry.getDeviceCount());
+
+		assertEquals(0, registry.unregister("s2").deviceSessions());
+		assertEquals(0, registry.getDeviceSessions(1L, "pc").length);
+		assertEquals(1, registry.getDeviceCount());
+		assertEquals(1, registry.getUserCount());
+
+		assertEquals(0, registry.unregister("s3").deviceSessions());
+		assertNull(registry.unregister("s3"));
+		assertNull(registry.getSession("s3"));
+		assertEquals(0, registry.getUserSessionCount(1L));
+		assertEquals(0, registry.getSessionCount());
+		assertEquals(0, registry.getDeviceCount());
+		assertEquals(0, registry.getUserCount());
+		assertTrue(registry.snapshotDevices().isEmpty());
+	}
+
+	@Test
+	void concurrentRegisterAndUnregisterKeepCountsConsistent() throws Exception {
+		LocalSessionRegistry registry = new LocalSessionRegistry(8);
+		int threads = 8;
+		int perThread = 2000;
+		// 少量用户、设备让各线程竞争同一分片和同一设备
+		int users = 16;
+		String[] clientIds = {"pc", "mobile", "pad"};
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<List<String>>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					start.await();
+					List<String> kept = new ArrayList<>();
+					for (int i = 0; i < perThread; i++) {
+						String sessionId = thread + "-" + i;
+						long uid = i % users;
+						registry.register(uid, clientIds[i % clientIds.length], session(sessionId));
+						// 一半会话随即注销，另一半保留
+						if (i % 2 == 0) {
+							assertNotNull(registry.unregister(sessionId));
+							assertNull(registry.getSession(sessionId));
+						} else {
+							kept.add(sessionId);
+						}
+					}
+					return kept;
+				}));
+			}
+			start.countDown();
+
+			Set<String> kept = new HashSet<>();
+			for (Future<List<String>> future : futures) {
+				kept.addAll(future.get(30, TimeUnit.SECONDS));
+			}
+
+			assertEquals(kept.size(), registry.getSessionCount());
+			assertEquals(kept.size(), registry.snapshotSessions().size());
+			int sessions = 0;
+			for (long uid = 0; uid < users; uid++) {
+				sessions += registry.getUserSessionCount(uid);
+			}
+			assertEquals(kept.size(), sessions);
+			for (String sessionId : kept) {
+				LocalSessionRegistry.SessionRef ref = registry.getSession(sessionId);
+				assertNotNull(ref);
+				assertTrue(List.of(registry.getDeviceSessions(ref.uid(), ref.clientId())).contains(ref.session()));
+			}
+			Map<Long, List<String>> devices = registry.snapshotDevices();
+			assertEquals(devices.size(), registry.getUserCount());
+			assertEquals(devices.values().stream().mapToInt(List::size).sum(), registry.getDeviceCount());
+
+			// 并发注销剩余会话后全部归零
+			List<Future<?>> removals = new ArrayList<>();
+			for (String sessionId : kept) {
+				removals.add(executor.submit(() -> assertNotNull(registry.unregister(sessionId))));
+			}
+			for (Future<?> removal : removals) {
+				removal.get(30, TimeUnit.SECONDS);
+			}
+			assertEquals(0, registry.getSessionCount());
+			assertEquals(0, registry.getDeviceCount());
+			assertEquals(0, registry.getUserCount());
+			assertTrue(registry.snapshotDevices().isEmpty());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static WebSocketSession session(String id) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn(id);
+		return session;
+	}
+}
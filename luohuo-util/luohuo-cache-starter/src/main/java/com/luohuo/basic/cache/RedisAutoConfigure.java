@@ -3,6 +3,10 @@ package com.luohuo.basic.cache;
 import com.google.common.collect.Maps;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -11,6 +15,7 @@ import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
@@ -28,6 +33,7 @@ import com.luohuo.basic.cache.properties.SerializerType;
 import com.luohuo.basic.cache.redis2.RedisOps;
 import com.luohuo.basic.cache.repository.CacheOps;
 import com.luohuo.basic.cache.repository.CachePlusOps;
+import com.luohuo.basic.cache.repository.impl.NearCacheOpsImpl;
 import com.luohuo.basic.cache.repository.impl.RedisOpsImpl;
 import com.luohuo.basic.cache.utils.ProtoStuffSerializer;
 import com.luohuo.basic.cache.utils.RedisObjectSerializer;
@@ -50,6 +56,7 @@ import java.util.Optional;
 public class RedisAutoConfigure {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(RedisAutoConfigure.class);
     private final CustomCacheProperties cacheProperties;
+    private NearCacheOpsImpl nearCacheOps;
 
     public RedisAutoConfigure(CustomCacheProperties cacheProperties) {
         this.cacheProperties = cacheProperties;
@@ -119,7 +126,7 @@ public class RedisAutoConfigure {
     @ConditionalOnMissingBean
     public CacheOps cacheOps(RedisOps redisOps) {
         log.warn("检查到缓存采用了 Redis模式");
-        return new RedisOpsImpl(redisOps);
+        return createOps(redisOps);
     }
 
     /**
@@ -131,7 +138,20 @@ public class RedisAutoConfigure {
     @Bean
     @ConditionalOnMissingBean
     public CachePlusOps cachePlusOps(RedisOps redisOps) {
-        return new RedisOpsImpl(redisOps);
+        return createOps(redisOps);
+    }
+
+    /**
+     * 启用二级缓存时 CacheOps 和 CachePlusOps 必须共用同一份本地缓存，否则一边写入后另一边读到旧值
+     */
+    private synchronized RedisOpsImpl createOps(RedisOps redisOps) {
+        if (!cacheProperties.getNear().isEnabled()) {
+            return new RedisOpsImpl(redisOps);
+        }
+        if (nearCacheOps == null) {
+            nearCacheOps = new NearCacheOpsImpl(redisOps, cacheProperties.getNear());
+        }
+        return nearCacheOps;
     }
 
     /**
@@ -202,4 +222,22 @@ public class RedisAutoConfigure {
     public RedisOps getRedisOps(@Qualifier("redisTemplate") RedisTemplate<String, Object> redisTemplate, StringRedisTemplate stringRedisTemplate) {
         return new RedisOps(redisTemplate, stringRedisTemplate, cacheProperties.getCacheNullVal());
     }
+
+    /**
+     * 二级缓存的本地命中率指标：cache.gets{cache=缓存名, result=hit|miss} 等
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnProperty(prefix = CustomCacheProperties.PREFIX, name = "near.enabled", havingValue = "true")
+    static class NearCacheMetricsConfigure {
+
+        @Bean
+        public SmartInitializingSingleton nearCacheMetricsBinder(ObjectProvider<MeterRegistry> meterRegistry, ObjectProvider<CachePlusOps> cachePlusOps) {
+            return () -> meterRegistry.ifAvailable(registry -> {
+                if (cachePlusOps.getIfAvailable() instanceof NearCacheOpsImpl near) {
+                    near.getLocalCaches().forEach((name, cache) -> CaffeineCacheMetrics.monitor(registry, cache, name, "level", "local"));
+                }
+            });
+        }
+    }
 }
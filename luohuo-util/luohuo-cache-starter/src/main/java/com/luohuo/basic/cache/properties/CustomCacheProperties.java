@@ -5,6 +5,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import com.luohuo.basic.constant.Constants;
 
 import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -52,12 +53,19 @@ public class CustomCacheProperties {
      * configs的key需要配置成@Cacheable注解的value
      */
     private Map<String, Cache> configs;
+    /**
+     * 二级缓存：在 redis 前面加一层本地 Caffeine 缓存
+     * <p>
+     * 只对 type=REDIS 有效
+     */
+    private Near near = new Near();
 
     public Cache getDef() { return def; }
     public Map<String, Cache> getConfigs() { return configs; }
     public SerializerType getSerializerType() { return serializerType; }
     public Boolean getCacheNullVal() { return cacheNullVal; }
     public Integer getRedisScanBatchSize() { return redisScanBatchSize; }
+    public Near getNear() { return near; }
 
     @Data
     public static class Cache {
@@ -100,4 +108,59 @@ public class CustomCacheProperties {
         public int getMaxSize() { return maxSize; }
     }
 
+    @Data
+    public static class Near {
+
+        /**
+         * 是否启用本地一级缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 广播失效 key 的 redis 频道
+         */
+        private String channel = Constants.PROJECT_PREFIX + ":cache:near:invalidate";
+
+        /**
+         * 启用本地缓存的 key，未配置的 key 仍直接读写 redis
+         * <p>
+         * map 的 key 为缓存名，用于区分监控指标
+         * eg:
+         * caches:
+         *   roomInfo:
+         *     keyPrefix: luohuo:roomInfo:
+         *     maxSize: 20000
+         *     timeToLive: 5m
+         */
+        private Map<String, NearCache> caches = new LinkedHashMap<>();
+
+        public boolean isEnabled() { return enabled; }
+        public String getChannel() { return channel; }
+        public Map<String, NearCache> getCaches() { return caches; }
+    }
+
+    @Data
+    public static class NearCache {
+
+        /**
+         * 完整 redis key 的前缀，以此前缀开头的 key 进入本缓存
+         */
+        private String keyPrefix;
+
+        /**
+         * 本地最大缓存个数
+         */
+        private int maxSize = 10000;
+
+        /**
+         * 本地缓存写入后的过期时间
+         * 其他节点的失效广播丢失时，本地最多旧这么久
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        public String getKeyPrefix() { return keyPrefix; }
+        public int getMaxSize() { return maxSize; }
+        public Duration getTimeToLive() { return timeToLive; }
+    }
+
 }
@@ -0,0 +1,486 @@
+package com.luohuo.basic.cache.repository.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.luohuo.basic.cache.properties.CustomCacheProperties;
+import com.luohuo.basic.cache.redis2.CacheResult;
+import com.luohuo.basic.cache.redis2.RedisOps;
+import com.luohuo.basic.model.cache.CacheKey;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 二级缓存 Repository
+ * <p>
+ * 在 redis 前面加一层按缓存名划分的本地 Caffeine 缓存，只有 key 前缀命中 luohuo.cache.near.caches 配置的字符串值才进入本地缓存，
+ * hash/set/zset/计数器等仍直接读写 redis。
+ * <p>
+ * 写入、删除、计数和修改过期时间都先改 redis，再失效本机并通过 redis 频道广播 key，其他节点收到后失效各自的本地缓存。
+ * 读 redis 前记下 key 所在分段的版本号，回填本地缓存时版本号变了（期间收到过失效）就放弃回填，避免把旧值写回本地。
+ * <p>
+ * 本地缓存返回的是同一个对象，调用方不要修改读到的值。
+ *
+ * @author 乾乾
+ */
+public class NearCacheOpsImpl extends RedisOpsImpl implements InitializingBean, DisposableBean {
+	private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(NearCacheOpsImpl.class);
+
+	/**
+	 * 版本号分段数，必须是 2 的幂
+	 */
+	private static final int VERSION_STRIPES = 4096;
+	private static final char SEPARATOR = '\n';
+
+	private final StringRedisTemplate stringRedisTemplate;
+	private final String channel;
+	/**
+	 * 本节点标识，忽略自己发出的广播
+	 */
+	private final String instanceId = UUID.randomUUID().toString();
+	/**
+	 * 缓存名 -> 本地缓存
+	 */
+	private final Map<String, Region> regions = new LinkedHashMap<>();
+	private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+	private final RedisMessageListenerContainer listenerContainer = new RedisMessageListenerContainer();
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	public NearCacheOpsImpl(RedisOps redisOps, CustomCacheProperties.Near near) {
+		super(redisOps);
+		this.stringRedisTemplate = redisOps.getStringRedisTemplate();
+		this.channel = near.getChannel();
+		near.getCaches().forEach((name, config) -> {
+			if (StrUtil.isEmpty(config.getKeyPrefix())) {
+				log.warn("二级缓存 {} 未配置 keyPrefix，已忽略", name);
+				return;
+			}
+			Cache<String, Object> cache = Caffeine.newBuilder()
+					.maximumSize(config.getMaxSize())
+					.expireAfterWrite(config.getTimeToLive())
+					.recordStats()
+					.build();
+			regions.put(name, new Region(config.getKeyPrefix(), cache));
+		});
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		// CacheOps 和 CachePlusOps 共用同一个实例，回调会进来两次
+		if (!started.compareAndSet(false, true)) {
+			return;
+		}
+		listenerContainer.setConnectionFactory(Objects.requireNonNull(getRedisTemplate().getConnectionFactory()));
+		listenerContainer.addMessageListener(this::onInvalidate, new ChannelTopic(channel));
+		listenerContainer.afterPropertiesSet();
+		listenerContainer.start();
+		log.info("二级缓存已启用, caches={}, channel={}", regions.keySet(), channel);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (started.compareAndSet(true, false)) {
+			listenerContainer.destroy();
+		}
+	}
+
+	/**
+	 * 缓存名 -> 本地缓存，用于注册监控指标
+	 */
+	public Map<String, Cache<String, Object>> getLocalCaches() {
+		Map<String, Cache<String, Object>> map = new LinkedHashMap<>();
+		regions.forEach((name, region) -> map.put(name, region.cache));
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * 各缓存的本地命中统计
+	 */
+	public Map<String, CacheStats> stats() {
+		Map<String, CacheStats> map = new LinkedHashMap<>();
+		regions.forEach((name, region) -> map.put(name, region.cache.stats()));
+		return map;
+	}
+
+	// ---------------------------- 读 ----------------------------
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> CacheResult<T> get(@NonNull CacheKey key, boolean... cacheNullValues) {
+		Region region = regionOf(key.getKey());
+		if (region == null) {
+			return super.get(key, cacheNullValues);
+		}
+		Object value = region.cache.getIfPresent(key.getKey());
+		if (value != null) {
+			return new CacheResult<>(key, (T) value);
+		}
+		long stamp = stamp(key.getKey());
+		CacheResult<T> result = super.get(key, cacheNullValues);
+		fill(region, key.getKey(), result.getRawValue(), stamp);
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> CacheResult<T> get(@NonNull String key, boolean... cacheNullValues) {
+		Region region = regionOf(key);
+		if (region == null) {
+			return super.get(key, cacheNullValues);
+		}
+		Object value = region.cache.getIfPresent(key);
+		if (value != null) {
+			return new CacheResult<>(key, (T) value);
+		}
+		long stamp = stamp(key);
+		CacheResult<T> result = super.get(key, cacheNullValues);
+		fill(region, key, result.getRawValue(), stamp);
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> CacheResult<T> get(@NonNull CacheKey key, Function<CacheKey, ? extends T> loader, boolean... cacheNullValues) {
+		Region region = regionOf(key.getKey());
+		if (region == null) {
+			return super.get(key, loader, cacheNullValues);
+		}
+		Object value = region.cache.getIfPresent(key.getKey());
+		if (value != null) {
+			return new CacheResult<>(key, (T) value);
+		}
+		long stamp = stamp(key.getKey());
+		CacheResult<T> result = super.get(key, loader, cacheNullValues);
+		fill(region, key.getKey(), result.getRawValue(), stamp);
+		return result;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> List<CacheResult<T>> find(@NonNull Collection<CacheKey> keys) {
+		List<CacheKey> keyList = new ArrayList<>(keys);
+		List<Object> values = multiGet(keyList.stream().map(CacheKey::getKey).toList());
+		List<CacheResult<T>> resultList = new ArrayList<>(keyList.size());
+		for (int i = 0; i < keyList.size(); i++) {
+			resultList.add(new CacheResult<>(keyList.get(i), (T) values.get(i)));
+		}
+		return resultList;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> List<CacheResult<T>> mGet(List<String> frequencyKeys) {
+		List<Object> values = multiGet(frequencyKeys);
+		List<CacheResult<T>> resultList = new ArrayList<>(frequencyKeys.size());
+		for (int i = 0; i < frequencyKeys.size(); i++) {
+			resultList.add(new CacheResult<>(frequencyKeys.get(i), (T) values.get(i)));
+		}
+		return resultList;
+	}
+
+	@Override
+	public <T> List<T> mGet(Collection<String> keys, Class<T> tClass) {
+		return toBeanOrNull(multiGet(new ArrayList<>(keys)), tClass);
+	}
+
+	/**
+	 * 批量读取：本地命中的直接返回，其余 key 一次 MGET 从 redis 读取后回填本地
+	 *
+	 * @return 与 keys 一一对应，不存在的位置为 null
+	 */
+	private List<Object> multiGet(List<String> keys) {
+		if (keys.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Object[] values = new Object[keys.size()];
+		List<Integer> missIndexes = new ArrayList<>();
+		for (int i = 0; i < keys.size(); i++) {
+			Region region = regionOf(keys.get(i));
+			Object value = region == null ? null : region.cache.getIfPresent(keys.get(i));
+			if (value == null) {
+				missIndexes.add(i);
+			} else {
+				values[i] = value;
+			}
+		}
+		if (missIndexes.isEmpty()) {
+			return Arrays.asList(values);
+		}
+
+		List<String> missKeys = new ArrayList<>(missIndexes.size());
+		long[] stamps = new long[missIndexes.size()];
+		for (int i = 0; i < missIndexes.size(); i++) {
+			String key = keys.get(missIndexes.get(i));
+			missKeys.add(key);
+			stamps[i] = stamp(key);
+		}
+		List<Object> loaded = getRedisTemplate().opsForValue().multiGet(missKeys);
+		if (loaded == null) {
+			return Arrays.asList(values);
+		}
+		for (int i = 0; i < missIndexes.size(); i++) {
+			Object value = loaded.get(i);
+			values[missIndexes.get(i)] = value;
+			Region region = regionOf(missKeys.get(i));
+			if (region != null) {
+				fill(region, missKeys.get(i), value, stamps[i]);
+			}
+		}
+		return Arrays.asList(values);
+	}
+
+	// ---------------------------- 写 ----------------------------
+
+	@Override
+	public void set(@NonNull CacheKey key, Object value, boolean... cacheNullValues) {
+		super.set(key, value, cacheNullValues);
+		invalidate(List.of(key.getKey()));
+	}
+
+	@Override
+	public <T> void mSet(Map<String, T> map, long time) {
+		super.mSet(map, time);
+		invalidate(map.keySet());
+	}
+
+	@Override
+	public Long del(@NonNull CacheKey... keys) {
+		Long count = super.del(keys);
+		invalidate(Arrays.stream(keys).map(CacheKey::getKey).toList());
+		return count;
+	}
+
+	@Override
+	public Long del(@NonNull Collection<CacheKey> keys) {
+		Long count = super.del(keys);
+		invalidate(keys.stream().map(CacheKey::getKey).toList());
+		return count;
+	}
+
+	@Override
+	public Long del(String... keys) {
+		Long count = super.del(keys);
+		invalidate(Arrays.asList(keys));
+		return count;
+	}
+
+	@Override
+	public Long incr(@NonNull CacheKey key) {
+		Long value = super.incr(key);
+		invalidate(List.of(key.getKey()));
+		return value;
+	}
+
+	@Override
+	public Long getCounter(CacheKey key, Function<CacheKey, Long> loader) {
+		// key 不存在时会用 loader 的结果写回 redis
+		Long value = super.getCounter(key, loader);
+		invalidate(List.of(key.getKey()));
+		return value;
+	}
+
+	@Override
+	public Long incrBy(@NonNull CacheKey key, long increment) {
+		Long value = super.incrBy(key, increment);
+		invalidate(List.of(key.getKey()));
+		return value;
+	}
+
+	@Override
+	public Double incrByFloat(@NonNull CacheKey key, double increment) {
+		Double value = super.incrByFloat(key, increment);
+		invalidate(List.of(key.getKey()));
+		return value;
+	}
+
+	@Override
+	public Long decr(@NonNull CacheKey key) {
+		Long value = super.decr(key);
+		invalidate(List.of(key.getKey()));
+		return value;
+	}
+
+	@Override
+	public Long decrBy(@NonNull CacheKey key, long decrement) {
+		Long value = super.decrBy(key, decrement);
+		invalidate(List.of(key.getKey()));
+		return value;
+	}
+
+	@Override
+	public Long inc(String k, Integer time, TimeUnit unit) {
+		Long value = super.inc(k, time, unit);
+		invalidate(List.of(k));
+		return value;
+	}
+
+	@Override
+	public int integerInc(String loginCode, int minutes, TimeUnit timeUnit) {
+		int value = super.integerInc(loginCode, minutes, timeUnit);
+		invalidate(List.of(loginCode));
+		return value;
+	}
+
+	@Override
+	public Boolean expire(@NonNull CacheKey key) {
+		Boolean result = super.expire(key);
+		invalidate(List.of(key.getKey()));
+		return result;
+	}
+
+	@Override
+	public Boolean persist(@NonNull CacheKey key) {
+		Boolean result = super.persist(key);
+		invalidate(List.of(key.getKey()));
+		return result;
+	}
+
+	@Override
+	public void scanUnlink(@NonNull String pattern) {
+		super.scanUnlink(pattern);
+		invalidateAll();
+	}
+
+	@Override
+	public void flushDb() {
+		super.flushDb();
+		invalidateAll();
+	}
+
+	// ---------------------------- 失效 ----------------------------
+
+	/**
+	 * 失效本机并广播，只处理配置了本地缓存的 key
+	 */
+	private void invalidate(Collection<String> keys) {
+		StringBuilder frame = null;
+		for (String key : keys) {
+			Region region = regionOf(key);
+			if (region == null) {
+				continue;
+			}
+			evict(region, key);
+			if (frame == null) {
+				frame = new StringBuilder(instanceId);
+			}
+			frame.append(SEPARATOR).append(key);
+		}
+		if (frame != null) {
+			publish(frame.toString());
+		}
+	}
+
+	/**
+	 * 清空本机并广播，广播帧不带 key 表示清空全部
+	 */
+	private void invalidateAll() {
+		if (regions.isEmpty()) {
+			return;
+		}
+		clearLocal();
+		publish(instanceId);
+	}
+
+	private void publish(String frame) {
+		try {
+			stringRedisTemplate.convertAndSend(channel, frame);
+		} catch (Exception e) {
+			// 广播失败时其他节点最多在本地过期后才能看到新值
+			log.error("二级缓存失效广播失败, channel={}", channel, e);
+		}
+	}
+
+	/**
+	 * 收到其他节点的失效广播
+	 */
+	private void onInvalidate(Message message, byte[] pattern) {
+		String frame = new String(message.getBody(), StandardCharsets.UTF_8);
+		int split = frame.indexOf(SEPARATOR);
+		String source = split < 0 ? frame : frame.substring(0, split);
+		if (instanceId.equals(source)) {
+			return;
+		}
+		if (split < 0) {
+			clearLocal();
+			return;
+		}
+		for (String key : StrUtil.split(frame.substring(split + 1), SEPARATOR)) {
+			Region region = regionOf(key);
+			if (region != null) {
+				evict(region, key);
+			}
+		}
+	}
+
+	private void clearLocal() {
+		for (int i = 0; i < VERSION_STRIPES; i++) {
+			versions.incrementAndGet(i);
+		}
+		regions.values().forEach(region -> region.cache.invalidateAll());
+	}
+
+	/**
+	 * 先推进版本号再移除，正在读 redis 的线程回填时会发现版本号已变
+	 */
+	private void evict(Region region, String key) {
+		versions.incrementAndGet(stripe(key));
+		region.cache.asMap().remove(key);
+	}
+
+	/**
+	 * 回填本地缓存。compute 与 evict 中的 remove 对同一 key 串行执行，
+	 * 版本号检查在 compute 内完成，失效要么先于检查被发现，要么在回填之后把值移除
+	 */
+	private void fill(Region region, String key, Object value, long stamp) {
+		if (value == null) {
+			return;
+		}
+		int stripe = stripe(key);
+		region.cache.asMap().compute(key, (k, old) -> versions.get(stripe) == stamp ? value : old);
+	}
+
+	private long stamp(String key) {
+		return versions.get(stripe(key));
+	}
+
+	private static int stripe(String key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (VERSION_STRIPES - 1);
+	}
+
+	private Region regionOf(String key) {
+		if (key == null) {
+			return null;
+		}
+		for (Region region : regions.values()) {
+			if (key.startsWith(region.keyPrefix)) {
+				return region;
+			}
+		}
+		return null;
+	}
+
+	private record Region(String keyPrefix, Cache<String, Object> cache) {
+	}
+}
@@ -0,0 +1,182 @@
+package com.luohuo.basic.cache.repository.impl;
+
+import com.luohuo.basic.cache.properties.CustomCacheProperties;
+import com.luohuo.basic.cache.redis2.CacheResult;
+import com.luohuo.basic.cache.redis2.RedisOps;
+import com.luohuo.basic.model.cache.CacheKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 二级缓存测试：各写操作改完 redis 后失效本地缓存并广播，并发读写下本地缓存不会回填旧值
+ */
+class NearCacheOpsImplTest {
+
+	private static final String CHANNEL = "test:near:invalidate";
+	private static final String PREFIX = "test:near:";
+	private static final String KEY = PREFIX + "1";
+
+	/**
+	 * 模拟 redis 中的字符串值
+	 */
+	private final Map<String, Object> redis = new ConcurrentHashMap<>();
+	private RedisOps redisOps;
+	private StringRedisTemplate stringRedisTemplate;
+	private NearCacheOpsImpl ops;
+
+	@BeforeEach
+	void setUp() {
+		redisOps = mock(RedisOps.class);
+		stringRedisTemplate = mock(StringRedisTemplate.class);
+		when(redisOps.getStringRedisTemplate()).thenReturn(stringRedisTemplate);
+		when(redisOps.get(anyString(), any(boolean[].class)))
+				.thenAnswer(inv -> {
+					String key = inv.getArgument(0);
+					Object value = redis.get(key);
+					// 拉长读 redis 与回填之间的窗口，让并发测试更容易撞上失效
+					Thread.yield();
+					return new CacheResult<>(key, value);
+				});
+		doAnswer(inv -> {
+			redis.put(((CacheKey) inv.getArgument(0)).getKey(), inv.getArgument(1));
+			return null;
+		}).when(redisOps).set(any(CacheKey.class), any(), any(boolean[].class));
+		when(redisOps.getCounter(any(CacheKey.class), any(Function.class))).thenReturn(1L);
+		when(redisOps.integerInc(anyString(), anyInt(), any(TimeUnit.class))).thenReturn(1);
+		when(redisOps.expire(anyString(), any(Duration.class))).thenReturn(true);
+		when(redisOps.persist(anyString())).thenReturn(true);
+
+		CustomCacheProperties.NearCache cache = new CustomCacheProperties.NearCache();
+		cache.setKeyPrefix(PREFIX);
+		CustomCacheProperties.Near near = new CustomCacheProperties.Near();
+		near.setChannel(CHANNEL);
+		near.getCaches().put("test", cache);
+		ops = new NearCacheOpsImpl(redisOps, near);
+	}
+
+	@Test
+	void readsAreServedLocallyUntilInvalidated() {
+		redis.put(KEY, "v1");
+		assertEquals("v1", ops.get(KEY).getRawValue());
+		redis.put(KEY, "v2");
+		assertEquals("v1", ops.get(KEY).getRawValue());
+		verify(redisOps, times(1)).get(eq(KEY), any(boolean[].class));
+
+		ops.set(new CacheKey(KEY), "v3");
+		assertEquals("v3", ops.get(KEY).getRawValue());
+	}
+
+	@Test
+	void getCounterInvalidates() {
+		assertInvalidatedBy(() -> ops.getCounter(new CacheKey(KEY), key -> 1L));
+	}
+
+	@Test
+	void integerIncInvalidates() {
+		assertInvalidatedBy(() -> ops.integerInc(KEY, 1, TimeUnit.MINUTES));
+	}
+
+	@Test
+	void expireInvalidates() {
+		assertInvalidatedBy(() -> ops.expire(new CacheKey(KEY, Duration.ofSeconds(30))));
+	}
+
+	@Test
+	void persistInvalidates() {
+		assertInvalidatedBy(() -> ops.persist(new CacheKey(KEY)));
+	}
+
+	@Test
+	void delInvalidates() {
+		assertInvalidatedBy(() -> ops.del(KEY));
+	}
+
+	@Test
+	void keysWithoutNearCacheAreNotBroadcast() {
+		ops.expire(new CacheKey("other:1", Duration.ofSeconds(30)));
+		ops.persist(new CacheKey("other:1"));
+		ops.integerInc("other:1", 1, TimeUnit.MINUTES);
+		verify(stringRedisTemplate, never()).convertAndSend(anyString(), anyString());
+	}
+
+	@Test
+	void concurrentReadsNeverKeepStaleValue() throws Exception {
+		int readers = 8;
+		int writes = 2000;
+		redis.put(KEY, 0);
+		ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int r = 0; r < readers; r++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					while (writing.get()) {
+						assertNotNull(ops.get(KEY).getRawValue());
+					}
+					return null;
+				}));
+			}
+			futures.add(executor.submit(() -> {
+				start.await();
+				try {
+					for (int i = 1; i <= writes; i++) {
+						ops.set(new CacheKey(KEY), i);
+					}
+				} finally {
+					writing.set(false);
+				}
+				return null;
+			}));
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+
+			// 最后一次写入之后的读取不会从本地缓存拿到旧值
+			assertEquals(writes, ops.get(KEY).getRawValue());
+			assertEquals(writes, ops.getLocalCaches().get("test").getIfPresent(KEY));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * 本地缓存住旧值，redis 在背后改成新值，执行写操作后应读到新值并广播失效
+	 */
+	private void assertInvalidatedBy(Runnable mutation) {
+		redis.put(KEY, "old");
+		assertEquals("old", ops.get(KEY).getRawValue());
+		redis.put(KEY, "new");
+		assertEquals("old", ops.get(KEY).getRawValue());
+
+		mutation.run();
+
+		assertNull(ops.getLocalCaches().get("test").getIfPresent(KEY));
+		assertEquals("new", ops.get(KEY).getRawValue());
+		verify(stringRedisTemplate).convertAndSend(eq(CHANNEL), contains(KEY));
+	}
+}